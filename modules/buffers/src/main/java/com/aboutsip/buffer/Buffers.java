@@ -38,6 +38,50 @@ public final class Buffers {
         return new InputStreamBuffer(is);
     }
 
+    /**
+     * Stitch the readable bytes of the supplied buffers together into a
+     * single buffer. None of the bytes are copied.
+     * 
+     * @param buffers
+     * @return
+     */
+    public static Buffer wrap(final Buffer... buffers) {
+        if ((buffers == null) || (buffers.length == 0)) {
+            throw new IllegalArgumentException("You must specify at least one buffer");
+        }
+
+        if (buffers.length == 1) {
+            return buffers[0].slice();
+        }
+
+        return CompositeBuffer.create(buffers);
+    }
+
+    /**
+     * Get a {@link java.nio.ByteBuffer} view of the readable bytes of the
+     * buffer, e.g. for handing it to a channel. If the buffer is backed by a
+     * single byte array no bytes are copied, which means that the returned
+     * {@link java.nio.ByteBuffer} must not be written to.
+     * 
+     * @param buffer
+     * @return
+     */
+    public static java.nio.ByteBuffer toByteBuffer(final Buffer buffer) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("The buffer cannot be null");
+        }
+
+        if (buffer instanceof ByteBuffer) {
+            final ByteBuffer b = (ByteBuffer) buffer;
+            return java.nio.ByteBuffer.wrap(b.buffer, b.lowerBoundary + b.readerIndex, b.readableBytes());
+        }
+
+        if (!buffer.hasReadableBytes()) {
+            return java.nio.ByteBuffer.allocate(0);
+        }
+        return java.nio.ByteBuffer.wrap(buffer.getArray());
+    }
+
     /**
      * Wrap the supplied byte array
      * 
@@ -153,7 +153,7 @@ public final class ByteBuffer extends AbstractBuffer {
     public int getInt(final int index) {
         final int i = this.lowerBoundary + index;
         checkIndex(i);
-        checkIndex(i + 4);
+        checkIndex(i + 3);
         return ((this.buffer[i] & 0xff) << 24) | ((this.buffer[i + 1] & 0xff) << 16)
                 | ((this.buffer[i + 2] & 0xff) << 8) | ((this.buffer[i + 3] & 0xff) << 0);
     }
@@ -165,7 +165,7 @@ public final class ByteBuffer extends AbstractBuffer {
     public short getShort(final int index) {
         final int i = this.lowerBoundary + index;
         checkIndex(i);
-        checkIndex(i + 2);
+        checkIndex(i + 1);
         return (short) ((this.buffer[i] << 8) | (this.buffer[i + 1] & 0xFF));
     }
 
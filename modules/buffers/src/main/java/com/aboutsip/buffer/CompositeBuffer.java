@@ -0,0 +1,350 @@
+/**
+ * 
+ */
+package com.aboutsip.buffer;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A buffer that stitches together several other buffers into one without
+ * copying any of the bytes. Useful when a message has been split up into
+ * several pieces, such as an ip datagram that has been fragmented, and you
+ * want to treat all the pieces as one.
+ * 
+ * The indexes of this buffer are mapped onto the underlying buffers, which
+ * means that changes to the underlying buffers will be visible through this
+ * buffer and vice versa. A slice that falls within a single underlying buffer
+ * is simply a slice of that buffer.
+ * 
+ * @author jonas@jonasborjesson.com
+ */
+public final class CompositeBuffer extends AbstractBuffer {
+
+    /**
+     * The underlying buffers
+     */
+    private final Buffer[] parts;
+
+    /**
+     * Where each of the underlying buffers starts. The last element is the
+     * total capacity of all the underlying buffers.
+     */
+    private final int[] starts;
+
+    private CompositeBuffer(final int readerIndex, final int lowerBoundary, final int upperBoundary,
+            final Buffer[] parts, final int[] starts) {
+        super(readerIndex, lowerBoundary, upperBoundary);
+        this.parts = parts;
+        this.starts = starts;
+    }
+
+    /**
+     * 
+     * @param buffers the readable bytes of these buffers, in order, will make
+     *            up the new buffer.
+     * @return
+     */
+    static CompositeBuffer create(final Buffer... buffers) {
+        final Buffer[] parts = visibleParts(buffers);
+        final int[] starts = computeStarts(parts);
+        return new CompositeBuffer(0, 0, starts[parts.length], parts, starts);
+    }
+
+    /**
+     * Only keep the readable bytes of the buffers and get rid of the empty
+     * ones altogether.
+     */
+    private static Buffer[] visibleParts(final Buffer[] buffers) {
+        int count = 0;
+        final Buffer[] parts = new Buffer[buffers.length];
+        for (final Buffer buffer : buffers) {
+            if ((buffer != null) && buffer.hasReadableBytes()) {
+                parts[count++] = buffer.slice();
+            }
+        }
+        return Arrays.copyOf(parts, count);
+    }
+
+    private static int[] computeStarts(final Buffer[] parts) {
+        final int[] starts = new int[parts.length + 1];
+        for (int i = 0; i < parts.length; ++i) {
+            starts[i + 1] = starts[i] + parts[i].capacity();
+        }
+        return starts;
+    }
+
+    /**
+     * Find the underlying buffer that contains the byte at the given index
+     * within the entire composite.
+     */
+    private int findPart(final int absoluteIndex) {
+        int low = 0;
+        int high = this.parts.length - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (this.starts[middle] <= absoluteIndex) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private byte get(final int absoluteIndex) {
+        final int part = findPart(absoluteIndex);
+        try {
+            return this.parts[part].getByte(absoluteIndex - this.starts[part]);
+        } catch (final IOException e) {
+            throw new BufferException("Unable to read from the underlying buffer", e);
+        }
+    }
+
+    /**
+     * Convenience method for checking the index and translating it into the
+     * index within the entire composite.
+     */
+    private int toAbsolute(final int index) throws IndexOutOfBoundsException {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        final int i = this.lowerBoundary + index;
+        checkIndex(i);
+        return i;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer slice(final int start, final int stop) {
+        checkIndex(this.lowerBoundary + start);
+        checkIndex((this.lowerBoundary + stop) - 1);
+        final int absoluteStart = this.lowerBoundary + start;
+        final int absoluteStop = this.lowerBoundary + stop;
+        if (absoluteStop > absoluteStart) {
+            final int part = findPart(absoluteStart);
+            if (absoluteStop <= this.starts[part + 1]) {
+                final int offset = this.starts[part];
+                return this.parts[part].slice(absoluteStart - offset, absoluteStop - offset);
+            }
+        }
+        return new CompositeBuffer(0, absoluteStart, absoluteStop, this.parts, this.starts);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer readBytes(final int length) throws IndexOutOfBoundsException {
+        checkReadableBytes(length);
+        final int start = this.readerIndex;
+        this.readerIndex += length;
+        return slice(start, this.readerIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasReadableBytes() {
+        return readableBytes() > 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        return readableBytes() == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte getByte(final int index) throws IndexOutOfBoundsException {
+        return get(toAbsolute(index));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] getArray() {
+        final int length = readableBytes();
+        final byte[] array = new byte[length];
+        int absolute = this.lowerBoundary + this.readerIndex;
+        int written = 0;
+        while (written < length) {
+            final int part = findPart(absolute);
+            final int offset = this.starts[part];
+            final int stop = Math.min(this.starts[part + 1], absolute + (length - written));
+            final byte[] chunk = this.parts[part].slice(absolute - offset, stop - offset).getArray();
+            System.arraycopy(chunk, 0, array, written, chunk.length);
+            written += chunk.length;
+            absolute += chunk.length;
+        }
+        return array;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte readByte() throws IndexOutOfBoundsException {
+        checkReadableBytes(1);
+        return getByte(this.readerIndex++);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte peekByte() throws IndexOutOfBoundsException {
+        checkReadableBytes(1);
+        return getByte(this.readerIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long readUnsignedInt() throws IndexOutOfBoundsException {
+        return readInt() & 0xFFFFFFFFL;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int readInt() throws IndexOutOfBoundsException {
+        final int value = getInt(this.readerIndex);
+        this.readerIndex += 4;
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public short readShort() throws IndexOutOfBoundsException {
+        final short value = getShort(this.readerIndex);
+        this.readerIndex += 2;
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int readUnsignedShort() {
+        return readShort() & 0xFFFF;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getInt(final int index) {
+        final int i = toAbsolute(index);
+        checkIndex(i + 3);
+        return ((get(i) & 0xff) << 24) | ((get(i + 1) & 0xff) << 16) | ((get(i + 2) & 0xff) << 8)
+                | (get(i + 3) & 0xff);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public short getShort(final int index) {
+        final int i = toAbsolute(index);
+        checkIndex(i + 1);
+        return (short) ((get(i) << 8) | (get(i + 1) & 0xFF));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getUnsignedShort(final int index) throws IndexOutOfBoundsException {
+        return getShort(index) & 0xFFFF;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public short getUnsignedByte(final int index) throws IndexOutOfBoundsException {
+        return (short) (getByte(index) & 0xFF);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String dumpAsHex() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * The clone is a regular buffer backed by a single byte-array.
+     */
+    @Override
+    public Buffer clone() {
+        final int readerIndex = this.readerIndex;
+        this.readerIndex = 0;
+        final byte[] copy = getArray();
+        this.readerIndex = readerIndex;
+        return new ByteBuffer(copy);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setByte(final int index, final byte value) throws IndexOutOfBoundsException {
+        final int i = toAbsolute(index);
+        final int part = findPart(i);
+        this.parts[part].setByte(i - this.starts[part], value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int i = this.lowerBoundary + this.readerIndex; i < this.upperBoundary; ++i) {
+            result = (31 * result) + get(i);
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(final Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (this == obj) {
+            return true;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final CompositeBuffer other = (CompositeBuffer) obj;
+        return Arrays.equals(getArray(), other.getArray());
+    }
+
+    @Override
+    public String toString() {
+        return new String(getArray());
+    }
+
+}
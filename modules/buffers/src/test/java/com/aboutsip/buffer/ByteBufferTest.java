@@ -57,6 +57,25 @@ public class ByteBufferTest extends AbstractBufferTest {
         assertBuffers(sliceClone, slice);
     }
 
+    /**
+     * A {@link ByteBuffer} should be handed out as a view of the readable
+     * bytes, not as a copy.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testToByteBuffer() throws Exception {
+        final byte[] array = allocateByteArray(100);
+        final Buffer buffer = Buffers.wrap(array).slice(10, 50);
+        buffer.readBytes(5);
+        final java.nio.ByteBuffer nio = Buffers.toByteBuffer(buffer);
+        assertThat(nio.remaining(), is(35));
+        assertThat(nio.get(), is(array[15]));
+        assertThat(nio.array() == array, is(true));
+
+        assertThat(Buffers.toByteBuffer(buffer.slice(0, 0)).remaining(), is(0));
+    }
+
     @Test
     public void testMap() throws Exception {
         final Buffer a = createBuffer("hello");
@@ -0,0 +1,106 @@
+/**
+ * 
+ */
+package com.aboutsip.buffer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class CompositeBufferTest extends AbstractBufferTest {
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    /**
+     * Split the array up into three pieces so that all the tests run across
+     * the boundaries of the underlying buffers.
+     * 
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer createBuffer(final byte[] array) {
+        final Buffer buffer = Buffers.wrap(array);
+        if (array.length < 3) {
+            return Buffers.wrap(buffer, Buffers.EMPTY_BUFFER);
+        }
+        final int first = array.length / 3;
+        final int second = (2 * array.length) / 3;
+        return Buffers.wrap(buffer.slice(0, first), buffer.slice(first, second),
+                buffer.slice(second, array.length));
+    }
+
+    @Test
+    public void testAcrossParts() throws Exception {
+        final Buffer buffer = Buffers.wrap(Buffers.wrap(new byte[] { 0x01, 0x02, 0x03 }),
+                Buffers.wrap(new byte[] { 0x04 }), Buffers.wrap(new byte[] { 0x05, 0x06 }));
+        assertThat(buffer.capacity(), is(6));
+        assertThat(buffer.getInt(1), is(0x02030405));
+        assertThat(buffer.getUnsignedShort(2), is(0x0304));
+        assertThat(buffer.getArray(), is(new byte[] { 0x01, 0x02, 0x03, 0x04, 0x05, 0x06 }));
+
+        final Buffer slice = buffer.slice(2, 5);
+        assertThat(slice.getArray(), is(new byte[] { 0x03, 0x04, 0x05 }));
+        assertThat(slice.readByte(), is((byte) 0x03));
+        assertThat(slice.readUnsignedShort(), is(0x0405));
+        assertThat(slice.hasReadableBytes(), is(false));
+    }
+
+    /**
+     * A slice that is within one of the underlying buffers doesn't have to
+     * be a composite.
+     */
+    @Test
+    public void testSliceWithinPart() throws Exception {
+        final Buffer first = Buffers.wrap(new byte[] { 0x01, 0x02, 0x03 });
+        final Buffer buffer = Buffers.wrap(first, Buffers.wrap(new byte[] { 0x04 }));
+        final Buffer slice = buffer.slice(1, 3);
+        assertThat(slice instanceof CompositeBuffer, is(false));
+        assertThat(slice.getArray(), is(new byte[] { 0x02, 0x03 }));
+    }
+
+    /**
+     * No bytes are copied so changes to the underlying buffers are visible.
+     */
+    @Test
+    public void testNoCopy() throws Exception {
+        final byte[] array = new byte[] { 0x01, 0x02 };
+        final Buffer buffer = Buffers.wrap(Buffers.wrap(array), Buffers.wrap(new byte[] { 0x03 }));
+        array[1] = 0x0F;
+        assertThat(buffer.getByte(1), is((byte) 0x0F));
+        buffer.setByte(0, (byte) 0x0A);
+        assertThat(array[0], is((byte) 0x0A));
+
+        final Buffer clone = buffer.clone();
+        array[0] = 0x00;
+        assertThat(clone.getByte(0), is((byte) 0x0A));
+    }
+
+    /**
+     * Only the readable bytes of the underlying buffers are used.
+     */
+    @Test
+    public void testReadableBytesOnly() throws Exception {
+        final Buffer first = Buffers.wrap(new byte[] { 0x01, 0x02, 0x03 });
+        first.readByte();
+        final Buffer buffer = Buffers.wrap(first, Buffers.wrap(new byte[] { 0x04 }));
+        assertThat(buffer.getArray(), is(new byte[] { 0x02, 0x03, 0x04 }));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testOutOfBounds() throws Exception {
+        Buffers.wrap(Buffers.wrap(new byte[] { 0x01 }), Buffers.wrap(new byte[] { 0x02 })).getByte(2);
+    }
+
+}
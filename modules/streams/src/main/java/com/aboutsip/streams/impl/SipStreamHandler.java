@@ -11,10 +11,13 @@ import com.aboutsip.streams.StreamId;
 import com.aboutsip.streams.StreamListener;
 import com.aboutsip.yajpcap.frame.Frame;
 import com.aboutsip.yajpcap.frame.SipFrame;
+import com.aboutsip.yajpcap.metrics.PipelineMetrics;
 import com.aboutsip.yajpcap.packet.PacketParseException;
 import com.aboutsip.yajpcap.packet.sip.SipMessage;
 import com.aboutsip.yajpcap.packet.sip.impl.SipParseException;
 import com.aboutsip.yajpcap.protocol.Protocol;
+import com.aboutsip.yajpcap.trace.TraceEvent;
+import com.aboutsip.yajpcap.trace.Tracer;
 
 /**
  * @author jonas@jonasborjesson.com
@@ -45,6 +48,10 @@ public class SipStreamHandler {
             if (stream == null) {
                 stream = new DefaultSipStream(id);
                 stream.addMessage(msg);
+                if (PipelineMetrics.isEnabled()) {
+                    PipelineMetrics.getInstance().streamStarted();
+                }
+                Tracer.event(TraceEvent.Type.STREAM_START, id.toString());
                 this.sipListener.startStream(stream, msg);
                 this.sipStreams.put(id, stream);
             } else {
@@ -52,6 +59,10 @@ public class SipStreamHandler {
                 stream.addMessage(msg);
                 this.sipListener.packetReceived(stream, msg);
                 if (!wasAlreadyTerminated && stream.isTerminated()) {
+                    if (PipelineMetrics.isEnabled()) {
+                        PipelineMetrics.getInstance().streamEnded();
+                    }
+                    Tracer.event(TraceEvent.Type.STREAM_END, id.toString());
                     this.sipListener.endStream(stream);
                 }
             }
@@ -1,10 +1,7 @@
 package com.aboutsip.tools;
 
-import java.io.BufferedOutputStream;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -12,7 +9,9 @@ import java.util.Map;
 
 import com.aboutsip.yajpcap.FrameHandler;
 import com.aboutsip.yajpcap.Pcap;
-import com.aboutsip.yajpcap.PcapOutputStream;
+import com.aboutsip.yajpcap.PcapExtractor;
+import com.aboutsip.yajpcap.flow.FlowKey;
+import com.aboutsip.yajpcap.flow.FlowMap;
 import com.aboutsip.yajpcap.frame.Frame;
 import com.aboutsip.yajpcap.frame.RtpFrame;
 import com.aboutsip.yajpcap.frame.SipFrame;
@@ -39,19 +38,28 @@ public class RTPSplitter {
         final String filename = "/home/jonas/development/private/aboutsip/countdown.pcap";
         // final String filename = "cool_0.pcap";
 
-        final InputStream stream = new FileInputStream(filename);
-        final Pcap pcap = Pcap.openStream(stream);
+        // open it as a file so that we can copy the records straight
+        // out of it when saving the streams
+        final Pcap pcap = Pcap.openFile(new File(filename));
         final FrameHandlerImpl handler = new FrameHandlerImpl();
         pcap.loop(handler);
         pcap.close();
 
-        handler.saveSipFlows(pcap, "siptraffic_again");
-        handler.saveAllRtpStreams(pcap, "rtpstream_again");
+        final PcapExtractor extractor = pcap.createExtractor();
+        try {
+            handler.saveSipFlows(extractor, "siptraffic_again");
+            handler.saveAllRtpStreams(extractor, "rtpstream_again");
+        } finally {
+            extractor.close();
+        }
     }
 
     private static class FrameHandlerImpl implements FrameHandler {
 
-        private final Map<String, RtpStream> streams = new HashMap<String, RtpStream>();
+        /**
+         * All the RTP streams keyed by their source endpoint
+         */
+        private final FlowMap<RtpStream> streams = new FlowMap<RtpStream>();
 
         private final Map<String, SipFlow> sipFlows = new HashMap<String, SipFlow>();
 
@@ -72,22 +80,18 @@ public class RTPSplitter {
             }
         }
 
-        public void saveSipFlows(final Pcap pcap, final String prefix) throws IOException {
+        public void saveSipFlows(final PcapExtractor extractor, final String prefix) throws IOException {
             int count = 0;
             for (final SipFlow stream : this.sipFlows.values()) {
-                final PcapOutputStream out = pcap.createOutputStream((new BufferedOutputStream(new FileOutputStream(
-                        prefix + "_" + count + ".pcap"))));
-                stream.saveStream(out);
+                stream.saveStream(extractor, new File(prefix + "_" + count + ".pcap"));
                 ++count;
             }
         }
 
-        public void saveAllRtpStreams(final Pcap pcap, final String prefix) throws IOException {
+        public void saveAllRtpStreams(final PcapExtractor extractor, final String prefix) throws IOException {
             int count = 0;
-            for (final RtpStream stream : this.streams.values()) {
-                final PcapOutputStream out = pcap.createOutputStream((new BufferedOutputStream(new FileOutputStream(
-                        prefix + "_" + count + ".pcap"))));
-                stream.saveStream(out);
+            for (final RtpStream stream : this.streams) {
+                stream.saveStream(extractor, new File(prefix + "_" + count + ".pcap"));
                 ++count;
             }
         }
@@ -106,11 +110,14 @@ public class RTPSplitter {
         private void processRtpFrame(final RtpFrame rtpFrame) throws PacketParseException {
             final RtpPacket rtp = rtpFrame.parse();
             System.out.println(rtp);
-            final String key = rtp.getSourceIP() + rtp.getSourcePort();
-            RtpStream stream = this.streams.get(key);
+            final int ip = rtp.getRawSourceIp();
+            final int port = rtp.getSourcePort();
+            final long addresses = FlowKey.packAddresses(ip, port, 0, 0);
+            final long ports = FlowKey.packPorts(ip, port, 0, 0, Protocol.UDP);
+            RtpStream stream = this.streams.get(addresses, ports);
             if (stream == null) {
                 stream = new RtpStream();
-                this.streams.put(key, stream);
+                this.streams.put(addresses, ports, stream);
             }
 
             stream.addPacket(rtpFrame);
@@ -128,12 +135,8 @@ public class RTPSplitter {
             this.stream.add(frame);
         }
 
-        public void saveStream(final PcapOutputStream out) throws IOException {
-            for (final SipFrame frame : this.stream) {
-                out.write(frame);
-            }
-            out.flush();
-            out.close();
+        public void saveStream(final PcapExtractor extractor, final File file) throws IOException {
+            extractor.extract(this.stream, file);
         }
 
     }
@@ -150,14 +153,8 @@ public class RTPSplitter {
             this.stream.add(frame);
         }
 
-        public void saveStream(final PcapOutputStream out) throws IOException {
-            for (final RtpFrame frame : this.stream) {
-                out.write(frame);
-            }
-            out.flush();
-            out.close();
-            // final byte[] s = byteStream.toByteArray();
-            // System.out.println(HexDump.dumpHexString(s));
+        public void saveStream(final PcapExtractor extractor, final File file) throws IOException {
+            extractor.extract(this.stream, file);
         }
 
     }
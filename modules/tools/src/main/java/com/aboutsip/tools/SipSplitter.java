@@ -3,6 +3,7 @@
  */
 package com.aboutsip.tools;
 
+import java.io.BufferedOutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -47,7 +48,8 @@ public final class SipSplitter implements StreamListener<SipMessage> {
         final String dir = (directory == null) || directory.isEmpty() ? "." : directory;
         for (final SipStream stream : this.streams) {
             final StreamId id = stream.getStreamIdentifier();
-            final PcapOutputStream out = pcap.createOutputStream(new FileOutputStream(dir + "/" + id + ".pcap"));
+            final PcapOutputStream out = pcap.createOutputStream(new BufferedOutputStream(new FileOutputStream(dir
+                    + "/" + id + ".pcap"), 64 * 1024));
             try {
                 stream.write(out);
             } catch (final IOException e) {
@@ -1,16 +1,42 @@
 package com.aboutsip.yajpcap;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
 
 import com.aboutsip.buffer.Buffer;
 import com.aboutsip.buffer.Buffers;
+import com.aboutsip.yajpcap.cursor.CursorHandler;
+import com.aboutsip.yajpcap.cursor.PacketCursor;
+import com.aboutsip.yajpcap.filter.Filter;
+import com.aboutsip.yajpcap.filter.Filters;
+import com.aboutsip.yajpcap.flow.FlowTable;
 import com.aboutsip.yajpcap.frame.Frame;
 import com.aboutsip.yajpcap.frame.PcapGlobalHeader;
 import com.aboutsip.yajpcap.framer.FramerManager;
+import com.aboutsip.yajpcap.framer.FramingDepth;
+import com.aboutsip.yajpcap.framer.FramingError;
+import com.aboutsip.yajpcap.framer.IPv4Reassembler;
+import com.aboutsip.yajpcap.framer.TCPReassembler;
 import com.aboutsip.yajpcap.framer.PcapFramer;
+import com.aboutsip.yajpcap.index.TimeIndex;
+import com.aboutsip.yajpcap.index.TimeIndexer;
+import com.aboutsip.yajpcap.record.FollowingRecordReader;
+import com.aboutsip.yajpcap.record.PcapNgInterface;
+import com.aboutsip.yajpcap.record.PcapNgRecordReader;
+import com.aboutsip.yajpcap.record.PcapRecordReader;
+import com.aboutsip.yajpcap.record.RawRecord;
+import com.aboutsip.yajpcap.record.RecordReader;
+import com.aboutsip.yajpcap.trace.Tracer;
 
 /**
  * 
@@ -20,28 +46,386 @@ import com.aboutsip.yajpcap.framer.PcapFramer;
 public class Pcap {
 
     private final PcapGlobalHeader header;
+    private final InputStream stream;
     private final Buffer buffer;
     private final FramerManager framerManager;
 
-    private Pcap(final PcapGlobalHeader header, final Buffer buffer) {
+    /**
+     * If this is a pcapng capture, this is the reader that already has read
+     * the section header and the first interface description off of the
+     * stream. Null for regular pcaps.
+     */
+    private final PcapNgRecordReader pcapNgReader;
+
+    /**
+     * If this {@link Pcap} was opened through {@link #follow(File, Pattern)},
+     * this is the reader that keeps on reading as the file grows.
+     */
+    private final FollowingRecordReader follower;
+
+    /**
+     * The file and the channel we are reading from, if this {@link Pcap} was
+     * opened through {@link #openFile(File)}. Needed in order to seek.
+     */
+    private File file;
+    private FileChannel channel;
+
+    /**
+     * The index of the file, which is loaded the first time we seek.
+     */
+    private TimeIndex timeIndex;
+
+    /**
+     * If set, all the records we read will be added to the indexer.
+     */
+    private TimeIndexer timeIndexer;
+
+    /**
+     * If true, every frame will be fully framed before it is handed over to
+     * the {@link FrameHandler}
+     */
+    private boolean eagerFraming;
+
+    private Pcap(final PcapGlobalHeader header, final InputStream stream, final Buffer buffer) {
         assert header != null;
+        assert stream != null;
         assert buffer != null;
         this.header = header;
+        this.stream = stream;
         this.buffer = buffer;
-        this.framerManager = FramerManager.getInstance();
+        this.pcapNgReader = null;
+        this.follower = null;
+        this.framerManager = FramerManager.createInstance();
+        this.framerManager.setDataLinkType(header.getDataLinkType());
+    }
+
+    private Pcap(final PcapGlobalHeader header, final InputStream stream, final PcapNgRecordReader reader) {
+        assert header != null;
+        assert stream != null;
+        assert reader != null;
+        this.header = header;
+        this.stream = stream;
+        this.buffer = null;
+        this.pcapNgReader = reader;
+        this.follower = null;
+        this.framerManager = FramerManager.createInstance();
+        this.framerManager.setDataLinkType(header.getDataLinkType());
+    }
+
+    private Pcap(final PcapGlobalHeader header, final FollowingRecordReader follower) {
+        assert header != null;
+        assert follower != null;
+        this.header = header;
+        this.stream = null;
+        this.buffer = null;
+        this.pcapNgReader = null;
+        this.follower = follower;
+        this.framerManager = FramerManager.createInstance();
+        this.framerManager.setDataLinkType(header.getDataLinkType());
+    }
+
+    /**
+     * Whether this is a pcapng capture.
+     * 
+     * @return
+     */
+    public boolean isPcapNg() {
+        return this.pcapNgReader != null;
+    }
+
+    /**
+     * The interfaces described in a pcapng capture, including the interface
+     * statistics, if present. Note that the statistics typically are found at
+     * the end of the capture so they may not be available until you have
+     * looped over all of it.
+     * 
+     * @return the interfaces or an empty list if this isn't a pcapng capture
+     */
+    public List<PcapNgInterface> getInterfaces() {
+        if (this.pcapNgReader == null) {
+            return Collections.emptyList();
+        }
+        return this.pcapNgReader.getInterfaces();
+    }
+
+    /**
+     * The {@link FlowTable} keeps track of the protocol carried by each flow
+     * in this capture. Use it to e.g. only allow RTP on flows that have been
+     * negotiated through SDP.
+     * 
+     * @return
+     */
+    public FlowTable getFlowTable() {
+        return this.framerManager.getFlowTable();
+    }
+
+    /**
+     * The {@link IPv4Reassembler} puts fragmented ip datagrams back together.
+     * Use it to configure how long to wait for fragments and how much memory
+     * the fragments may use.
+     * 
+     * @return
+     */
+    public IPv4Reassembler getIPv4Reassembler() {
+        return this.framerManager.getIPv4Reassembler();
+    }
+
+    /**
+     * The {@link TCPReassembler} puts the streams of TCP connections carrying
+     * SIP back together. Use it to configure how long idle connections are
+     * remembered and how much memory each connection may use.
+     * 
+     * @return
+     */
+    public TCPReassembler getTCPReassembler() {
+        return this.framerManager.getTCPReassembler();
+    }
+
+    /**
+     * Set how far down the protocol stack the frames of this {@link Pcap}
+     * will be framed. The default is to frame all the way up to the
+     * application layer. If all you care about is e.g. UDP and TCP ports,
+     * there is no reason to pay for figuring out what the payload is.
+     * 
+     * @param depth
+     */
+    public void setFramingDepth(final FramingDepth depth) {
+        this.framerManager.setFramingDepth(depth);
+    }
+
+    public FramingDepth getFramingDepth() {
+        return this.framerManager.getFramingDepth();
+    }
+
+    /**
+     * The number of frames in this capture whose payload couldn't be framed
+     * for the given reason. Since framing is done lazily, only frames that
+     * actually have been framed are counted so unless you use
+     * {@link #setEagerFraming(boolean)} this depends on what your handler
+     * asks for.
+     * 
+     * @param error
+     * @return
+     */
+    public long getFramingErrorCount(final FramingError error) {
+        return this.framerManager.getErrorCount(error);
+    }
+
+    /**
+     * Normally all framing is done lazily, i.e., a layer isn't framed until
+     * someone asks for it. With eager framing turned on, all frames will be
+     * framed as far as the {@link FramingDepth} allows before they are handed
+     * over to the {@link FrameHandler}. Useful when the frames are handed off
+     * to other threads, which then only will be reading the already framed
+     * frames.
+     * 
+     * @param eagerFraming
+     */
+    public void setEagerFraming(final boolean eagerFraming) {
+        this.eagerFraming = eagerFraming;
+    }
+
+    public boolean isEagerFraming() {
+        return this.eagerFraming;
+    }
+
+    /**
+     * Build a {@link TimeIndex} on the fly while looping over this
+     * {@link Pcap}. Every record read will be added to the indexer so once
+     * you are done with the loop, the index is complete.
+     * 
+     * @param indexer
+     */
+    public void setTimeIndexer(final TimeIndexer indexer) {
+        this.timeIndexer = indexer;
+    }
+
+    /**
+     * Position this {@link Pcap} so that the next loop starts at, or slightly
+     * before, the first record that arrived at the given time. The seek uses
+     * the {@link TimeIndex} stored in the sidecar file next to the capture
+     * and if there is none, it will be built (by only reading the record
+     * headers) and saved for the next time.
+     * 
+     * @param timestamp the time in micro seconds
+     * @throws IOException
+     * @throws IllegalStateException in case this isn't a pcap file opened
+     *             through {@link #openFile(File)}
+     */
+    public void seek(final long timestamp) throws IOException, IllegalStateException {
+        if ((this.channel == null) || (this.pcapNgReader != null)) {
+            throw new IllegalStateException("Can only seek in pcap files opened through openFile");
+        }
+
+        if (this.timeIndex == null) {
+            this.timeIndex = TimeIndex.load(this.file);
+        }
+
+        final long offset = this.timeIndex.find(timestamp);
+        this.channel.position(offset == -1 ? this.channel.size() : offset);
+    }
+
+    /**
+     * Loop over all the frames that arrived within the given time window.
+     * Instead of reading through everything that came before the window, we
+     * {@link #seek(long)} straight to it.
+     * 
+     * @param from the start of the window (inclusive) in micro seconds
+     * @param to the end of the window (exclusive) in micro seconds
+     * @param callback
+     * @throws IOException
+     * @throws IllegalStateException in case this isn't a pcap file opened
+     *             through {@link #openFile(File)}
+     */
+    public void loop(final long from, final long to, final FrameHandler callback) throws IOException,
+            IllegalStateException {
+        seek(from);
+        final RecordReader reader = createRecordReader();
+        final RawRecord record = reader.createRecord();
+        final Tracer.Batch batch = Tracer.batch();
+
+        try {
+            while (reader.next(record)) {
+                final long time = record.getArrivalTime();
+                if (time >= to) {
+                    break;
+                }
+                batch.add();
+                this.framerManager.tick(time);
+                if (time >= from) {
+                    dispatch(record.toFrame(this.framerManager), callback);
+                }
+            }
+        } finally {
+            batch.end();
+        }
     }
 
     public void loop(final FrameHandler callback) throws IOException {
+        // we need the offsets of the records for seeking and indexing, which
+        // only the record readers keep track of
+        if ((this.buffer == null) || (this.channel != null) || (this.timeIndexer != null)) {
+            loop(Filters.ALL, callback);
+            return;
+        }
+
         final ByteOrder byteOrder = this.header.getByteOrder();
         final PcapFramer framer = new PcapFramer(byteOrder, this.framerManager);
 
+        final Tracer.Batch batch = Tracer.batch();
         Frame frame = null;
-        while ((frame = framer.frame(null, this.buffer)) != null) {
-            final long time = frame.getArrivalTime();
-            this.framerManager.tick(time);
-            callback.nextFrame(frame);
+        try {
+            while ((frame = framer.frame(null, this.buffer)) != null) {
+                batch.add();
+                final long time = frame.getArrivalTime();
+                this.framerManager.tick(time);
+                dispatch(frame, callback);
+            }
+        } finally {
+            batch.end();
+        }
+
+    }
+
+    /**
+     * Loop over all the records in the pcap but only frame the ones accepted
+     * by the {@link Filter}. The filter is evaluated against the raw bytes of
+     * each record so the records that are filtered out never cause any
+     * objects to be created.
+     * 
+     * Note, just like {@link #loop(FrameHandler)}, this consumes the
+     * underlying stream so you can only loop over a {@link Pcap} once.
+     * 
+     * @param filter see {@link Filters} for how to create one
+     * @param callback
+     * @throws IOException
+     */
+    public void loop(final Filter filter, final FrameHandler callback) throws IOException {
+        final RecordReader reader = createRecordReader();
+        final RawRecord record = reader.createRecord();
+        final Tracer.Batch batch = Tracer.batch();
+
+        try {
+            while (reader.next(record)) {
+                batch.add();
+                final long time = record.getArrivalTime();
+                this.framerManager.tick(time);
+                if (this.timeIndexer != null) {
+                    this.timeIndexer.add(record);
+                }
+                if (filter.accept(record)) {
+                    dispatch(record.toFrame(this.framerManager), callback);
+                }
+            }
+        } finally {
+            batch.end();
+        }
+    }
+
+    /**
+     * Loop over all the records in flyweight mode. Instead of framing every
+     * record, the {@link CursorHandler} is handed a {@link PacketCursor} that
+     * is reset to point to the next record, which means that no objects are
+     * created per packet.
+     * 
+     * This isn't an overload of {@link #loop(FrameHandler)} since both
+     * handlers have a single method, which would make a lambda ambiguous.
+     * 
+     * @param handler
+     * @throws IOException
+     */
+    public void loopCursor(final CursorHandler handler) throws IOException {
+        loopCursor(Filters.ALL, handler);
+    }
+
+    /**
+     * Same as {@link #loopCursor(CursorHandler)} but only the records accepted by
+     * the {@link Filter} will be handed to the {@link CursorHandler}
+     * 
+     * @param filter
+     * @param handler
+     * @throws IOException
+     */
+    public void loopCursor(final Filter filter, final CursorHandler handler) throws IOException {
+        final RecordReader reader = createRecordReader();
+        final RawRecord record = reader.createRecord();
+        final PacketCursor cursor = new PacketCursor();
+        final Tracer.Batch batch = Tracer.batch();
+
+        try {
+            while (reader.next(record)) {
+                batch.add();
+                final long time = record.getArrivalTime();
+                this.framerManager.tick(time);
+                if (this.timeIndexer != null) {
+                    this.timeIndexer.add(record);
+                }
+                if (filter.accept(record)) {
+                    cursor.reset(record);
+                    handler.nextPacket(cursor);
+                }
+            }
+        } finally {
+            batch.end();
         }
+    }
 
+    RecordReader createRecordReader() throws IOException {
+        if (this.follower != null) {
+            return this.follower;
+        } else if (this.pcapNgReader != null) {
+            return this.pcapNgReader;
+        } else if (this.channel != null) {
+            return new PcapRecordReader(this.header, this.stream, this.channel.position());
+        }
+        return new PcapRecordReader(this.header, this.stream);
+    }
+
+    private void dispatch(final Frame frame, final FrameHandler callback) throws IOException {
+        if (this.eagerFraming) {
+            frame.frameAll();
+        }
+        callback.nextFrame(frame);
     }
 
     /**
@@ -52,6 +436,10 @@ public class Pcap {
      * {@link PcapOutputStream}. Good for those applications that needs to
      * filter a {@link Pcap} and write out new files.
      * 
+     * For a pcapng capture, the header is based on the first interface, which
+     * means that frames captured on interfaces with another data link type
+     * can't be written to the same {@link PcapOutputStream}.
+     * 
      * @param out
      * @return
      * @throws IllegalArgumentException
@@ -61,20 +449,164 @@ public class Pcap {
     }
 
     /**
-     * Capture packets from the input stream
+     * Create a {@link PcapChannelWriter} based on this {@link Pcap}, which
+     * just like {@link #createOutputStream(OutputStream)} will use the same
+     * {@link PcapGlobalHeader} as this {@link Pcap}. Use this one when a lot
+     * of frames have to be written since it batches them up into gathering
+     * writes instead of copying them through a stream.
+     * 
+     * @param channel
+     * @return
+     * @throws IOException
+     *             in case we fail to write the global header to the channel
+     */
+    public PcapChannelWriter createChannelWriter(final GatheringByteChannel channel) throws IOException {
+        return PcapChannelWriter.create(this.header, channel);
+    }
+
+    /**
+     * Create a {@link RotatingPcapWriter} based on this {@link Pcap}, which
+     * will write to a new file according to the {@link RotatingPcapWriter.Rotation}.
+     * Good for those long running jobs where you e.g. want one file for
+     * every hour of traffic.
+     * 
+     * @param template
+     *            the template for the file names, see
+     *            {@link RotatingPcapWriter}
+     * @param rotation
+     * @return
+     * @throws IllegalArgumentException
+     */
+    public RotatingPcapWriter createRotatingWriter(final String template, final RotatingPcapWriter.Rotation rotation)
+            throws IllegalArgumentException {
+        return RotatingPcapWriter.create(this.header, template, rotation);
+    }
+
+    /**
+     * Create a {@link PcapExtractor} for the file of this {@link Pcap}, which
+     * allows you to write the frames you have found while looping over this
+     * {@link Pcap} to a new pcap by copying their records straight out of the
+     * file. The extractor has its own handle to the file so it can still be
+     * used after this {@link Pcap} has been closed.
+     * 
+     * @return
+     * @throws IOException
+     * @throws IllegalStateException in case this isn't a pcap file opened
+     *             through {@link #openFile(File)}
+     */
+    public PcapExtractor createExtractor() throws IOException, IllegalStateException {
+        if (this.file == null) {
+            throw new IllegalStateException("Can only extract from pcap files opened through openFile");
+        }
+        return PcapExtractor.open(this.file);
+    }
+
+    /**
+     * Capture packets from the input stream, which can be either a regular
+     * pcap or a pcapng capture.
      * 
      * @param is
      * @return
      * @throws IOException
      */
     public static Pcap openStream(final InputStream is) throws IOException {
-        final Buffer stream = Buffers.wrap(is);
+        final PushbackInputStream in = new PushbackInputStream(is, 4);
+        final byte[] magic = new byte[4];
+        int count = 0;
+        int read = 0;
+        while ((count < 4) && ((read = in.read(magic, count, 4 - count)) != -1)) {
+            count += read;
+        }
+        in.unread(magic, 0, count);
+
+        if ((count == 4) && PcapNgRecordReader.isPcapNg(magic)) {
+            final PcapNgRecordReader reader = new PcapNgRecordReader(in);
+            final int dataLinkType = reader.getDataLinkType();
+            final PcapGlobalHeader header = dataLinkType == -1 ? PcapGlobalHeader.createDefaultHeader()
+                    : PcapGlobalHeader.createDefaultHeader(dataLinkType);
+            return new Pcap(header, in, reader);
+        }
+
+        final Buffer stream = Buffers.wrap(in);
         final PcapGlobalHeader header = PcapGlobalHeader.parse(stream);
-        return new Pcap(header, stream);
+        return new Pcap(header, in, stream);
+    }
+
+    /**
+     * Open the pcap file. Unlike {@link #openStream(InputStream)}, this
+     * allows you to {@link #seek(long)} within the capture.
+     * 
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static Pcap openFile(final File file) throws IOException {
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            final Pcap pcap = openStream(in);
+            pcap.file = file;
+            pcap.channel = in.getChannel();
+            return pcap;
+        } catch (final IOException e) {
+            in.close();
+            throw e;
+        } catch (final RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Follow a pcap file that still is being written to. Unlike
+     * {@link #openFile(File)}, looping over the returned {@link Pcap} won't
+     * stop at the end of the file but will wait for more packets to be
+     * written, until the {@link Pcap} is closed through {@link #close()},
+     * which typically is done from another thread.
+     * 
+     * See {@link FollowingRecordReader} for the details.
+     * 
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static Pcap follow(final File file) throws IOException {
+        return follow(file, null);
+    }
+
+    /**
+     * Same as {@link #follow(File)} but for captures that are rotated into
+     * new files, such as the ones written by <code>tcpdump -G</code>. Once a
+     * file that matches the pattern, and whose name sorts after the one we
+     * currently are reading from, shows up in the same directory we'll move
+     * on to that file.
+     * 
+     * @param file the file to start with
+     * @param rotation the pattern the names of the rotated files match, e.g.
+     *            <code>Pattern.compile("sip-\\d+\\.pcap")</code>
+     * @return
+     * @throws IOException
+     */
+    public static Pcap follow(final File file, final Pattern rotation) throws IOException {
+        final FollowingRecordReader reader = FollowingRecordReader.open(file, rotation);
+        return new Pcap(reader.getPcapHeader(), reader);
     }
 
     public void close() {
-        // TODO
+        if (this.follower != null) {
+            try {
+                this.follower.close();
+            } catch (final IOException e) {
+                // nothing we can do about it
+            }
+        }
+
+        if (this.channel != null) {
+            try {
+                this.channel.close();
+            } catch (final IOException e) {
+                // nothing we can do about it
+            }
+        }
     }
 
 }
@@ -0,0 +1,496 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.GatheringByteChannel;
+
+import com.aboutsip.buffer.Buffers;
+import com.aboutsip.yajpcap.frame.Frame;
+import com.aboutsip.yajpcap.frame.PcapFrame;
+import com.aboutsip.yajpcap.frame.PcapGlobalHeader;
+import com.aboutsip.yajpcap.frame.PcapRecordHeader;
+import com.aboutsip.yajpcap.packet.Packet;
+import com.aboutsip.yajpcap.record.RawRecord;
+
+/**
+ * A pcap writer for when a lot of data has to be written fast. Instead of
+ * pushing every record header and payload through an {@link java.io.OutputStream}
+ * the records are collected into a batch and then handed to a
+ * {@link GatheringByteChannel} in as few calls as possible.
+ *
+ * The record headers are encoded straight into a pre-allocated area and
+ * the payload of a {@link PcapFrame} is referenced as is, i.e., it is not
+ * copied. A {@link RawRecord} on the other hand is re-used by the readers so
+ * its data is copied into a staging area until the next flush.
+ *
+ * Note that this class is not thread safe.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class PcapChannelWriter implements Closeable, Flushable {
+
+    /**
+     * The default number of records we will collect before flushing.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 512;
+
+    /**
+     * The default number of bytes we will collect before flushing, which is
+     * also the size of the staging area for copied records.
+     */
+    public static final int DEFAULT_FLUSH_THRESHOLD = 1024 * 1024;
+
+    private static final int RECORD_HEADER_SIZE = 16;
+
+    private final GatheringByteChannel channel;
+
+    /**
+     * The {@link PcapGlobalHeader} that tells us how to write out the various
+     * info to the channel such as the byte order.
+     */
+    private final PcapGlobalHeader pcapHeader;
+
+    /**
+     * One pre-allocated view per record in the batch, which the record
+     * headers are encoded into.
+     */
+    private final ByteBuffer[] headers;
+
+    /**
+     * Data that must be copied, such as the data of a {@link RawRecord}, goes
+     * in here.
+     */
+    private final ByteBuffer staging;
+
+    /**
+     * The header and payload of every record in the batch, which is what we
+     * hand over to the channel.
+     */
+    private final ByteBuffer[] batch;
+
+    private final int flushThreshold;
+
+    /**
+     * The number of records currently in the batch.
+     */
+    private int count;
+
+    /**
+     * The number of bytes currently in the batch.
+     */
+    private long pending;
+
+    private boolean closed;
+
+    private final FrameCollector collector = new FrameCollector();
+
+    /**
+     * Create a new {@link PcapChannelWriter} with the default batch size and
+     * flush threshold. The global header is written to the channel right
+     * away.
+     *
+     * @param pcapHeader
+     * @param channel
+     * @return
+     * @throws IOException
+     *             in case we fail to write the global header
+     */
+    public static PcapChannelWriter create(final PcapGlobalHeader pcapHeader, final GatheringByteChannel channel)
+            throws IOException {
+        return create(pcapHeader, channel, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_THRESHOLD);
+    }
+
+    /**
+     * Create a new {@link PcapChannelWriter} writing to the file, which will
+     * be truncated if it already exists.
+     *
+     * @param pcapHeader
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static PcapChannelWriter create(final PcapGlobalHeader pcapHeader, final File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("The file cannot be null");
+        }
+
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            return create(pcapHeader, out.getChannel());
+        } catch (final IOException e) {
+            out.close();
+            throw e;
+        } catch (final IllegalArgumentException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    /**
+     *
+     * @param pcapHeader
+     * @param channel
+     * @param batchSize
+     *            the max number of records to collect before flushing
+     * @param flushThreshold
+     *            the number of bytes to collect before flushing.
+     * @return
+     * @throws IOException
+     */
+    public static PcapChannelWriter create(final PcapGlobalHeader pcapHeader, final GatheringByteChannel channel,
+            final int batchSize, final int flushThreshold) throws IOException {
+        if (pcapHeader == null) {
+            throw new IllegalArgumentException("The PcapGlobalHeader cannot be null");
+        }
+
+        if (channel == null) {
+            throw new IllegalArgumentException("The channel cannot be null");
+        }
+
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be greater than zero");
+        }
+
+        if (flushThreshold <= 0) {
+            throw new IllegalArgumentException("The flush threshold must be greater than zero");
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(24);
+        pcapHeader.write(out);
+        writeFully(channel, ByteBuffer.wrap(out.toByteArray()));
+
+        return new PcapChannelWriter(pcapHeader, channel, batchSize, flushThreshold);
+    }
+
+    /**
+     *
+     */
+    private PcapChannelWriter(final PcapGlobalHeader pcapHeader, final GatheringByteChannel channel,
+            final int batchSize, final int flushThreshold) {
+        this.pcapHeader = pcapHeader;
+        this.channel = channel;
+        this.flushThreshold = flushThreshold;
+        this.batch = new ByteBuffer[batchSize * 2];
+        this.staging = ByteBuffer.allocate(flushThreshold);
+
+        final ByteOrder byteOrder = pcapHeader.getByteOrder();
+        final ByteBuffer area = ByteBuffer.allocate(batchSize * RECORD_HEADER_SIZE);
+        this.headers = new ByteBuffer[batchSize];
+        for (int i = 0; i < batchSize; ++i) {
+            area.limit((i + 1) * RECORD_HEADER_SIZE);
+            area.position(i * RECORD_HEADER_SIZE);
+            this.headers[i] = area.slice().order(byteOrder);
+        }
+    }
+
+    /**
+     * Write a {@link Frame} to the channel. As long as the frame is
+     * encapsulated by a {@link PcapFrame}, which every frame read from a
+     * {@link Pcap} is, its data will not be copied.
+     *
+     * @param frame
+     *            the frame to write. If null is passed in, it will silently be
+     *            ignored.
+     * @throws IllegalArgumentException
+     *             in case the frame has another data link type than this pcap
+     */
+    public void write(final Frame frame) throws IOException, IllegalArgumentException {
+        if (frame == null) {
+            return;
+        }
+
+        ensureOpen();
+        if (frame instanceof PcapFrame) {
+            writeFrame((PcapFrame) frame);
+            return;
+        }
+
+        // all frames write themselves out by asking their parent to do so
+        // and once that reaches the pcap frame, it will hand itself over to
+        // the collector instead of copying its data.
+        this.collector.reset();
+        frame.write(this.collector);
+        final PcapFrame pcapFrame = this.collector.getFrame();
+        if (pcapFrame != null) {
+            writeFrame(pcapFrame);
+        } else {
+            writeRaw(this.collector.toByteArray());
+        }
+    }
+
+    private void writeFrame(final PcapFrame frame) throws IOException {
+        if (frame.getDataLinkType() != -1) {
+            ensureDataLinkType(frame.getDataLinkType());
+        }
+        final PcapRecordHeader header = frame.getRecordHeader();
+        final ByteBuffer payload = Buffers.toByteBuffer(frame.getPayload());
+        add(header.getTimeStampSeconds(), header.getTimeStampMicroSeconds(), header.getTotalLength(), payload);
+    }
+
+    /**
+     * Write a {@link Packet} to the channel. A packet may have been modified
+     * so it will be serialized through its own
+     * {@link Packet#write(java.io.OutputStream)}, which means that it will
+     * be copied.
+     *
+     * @param packet
+     *            the packet to write. If null is passed in, it will silently be
+     *            ignored.
+     */
+    public void write(final Packet packet) throws IOException {
+        if (packet == null) {
+            return;
+        }
+
+        ensureOpen();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        packet.write(out);
+        writeRaw(out.toByteArray());
+    }
+
+    /**
+     * Write a {@link RawRecord} to the channel without framing it first. The
+     * data of the record is copied since the record will be re-used by the
+     * reader.
+     *
+     * @param record
+     *            the record to write. If null is passed in, it will silently
+     *            be ignored.
+     * @throws IllegalArgumentException
+     *             in case the record has another data link type than this
+     *             pcap, since a pcap can only contain one kind of link layer.
+     */
+    public void write(final RawRecord record) throws IOException, IllegalArgumentException {
+        if (record == null) {
+            return;
+        }
+
+        ensureOpen();
+        ensureDataLinkType(record.getDataLinkType());
+
+        // a flush clears the staging area so if the batch is full, flush it
+        // before the data is staged rather than when it is added.
+        if ((this.count + 1) > this.headers.length) {
+            flush();
+        }
+        final ByteBuffer payload = stage(record.getArray(), 0, record.getCapturedLength());
+        add(record.getTimeStampSeconds(), record.getTimeStampMicroSeconds(), record.getTotalLength(), payload);
+    }
+
+    /**
+     * Write whatever is in the batch to the channel.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() throws IOException {
+        final int length = this.count * 2;
+        int offset = 0;
+        while (offset < length) {
+            this.channel.write(this.batch, offset, length - offset);
+            while ((offset < length) && !this.batch[offset].hasRemaining()) {
+                this.batch[offset++] = null;
+            }
+        }
+
+        this.count = 0;
+        this.pending = 0;
+        this.staging.clear();
+    }
+
+    /**
+     * Flush and close the underlying channel.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+
+        this.closed = true;
+        try {
+            flush();
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Some frames and packets know how to write themselves, record header
+     * and all, in which case we only need to take it through the batch as is.
+     */
+    private void writeRaw(final byte[] raw) throws IOException {
+        if (raw.length == 0) {
+            return;
+        }
+
+        if ((this.count + 1) > this.headers.length) {
+            flush();
+        }
+
+        final ByteBuffer empty = this.headers[this.count];
+        empty.clear();
+        empty.limit(0);
+        this.batch[this.count * 2] = empty;
+        this.batch[(this.count * 2) + 1] = ByteBuffer.wrap(raw);
+        ++this.count;
+        this.pending += raw.length;
+        if (this.pending >= this.flushThreshold) {
+            flush();
+        }
+    }
+
+    private void add(final long seconds, final long microSeconds, final long totalLength, final ByteBuffer payload)
+            throws IOException {
+        if ((this.count + 1) > this.headers.length) {
+            flush();
+        }
+
+        final int capturedLength = payload.remaining();
+        final ByteBuffer header = this.headers[this.count];
+        header.clear();
+        header.putInt((int) seconds);
+        header.putInt((int) microSeconds);
+        header.putInt(capturedLength);
+        header.putInt((int) totalLength);
+        header.flip();
+
+        this.batch[this.count * 2] = header;
+        this.batch[(this.count * 2) + 1] = payload;
+        ++this.count;
+        this.pending += RECORD_HEADER_SIZE + capturedLength;
+        if (this.pending >= this.flushThreshold) {
+            flush();
+        }
+    }
+
+    /**
+     * Copy the data into the staging area, flushing first if it doesn't fit.
+     * Data that is larger than the staging area as a whole is simply copied
+     * into its own array.
+     */
+    private ByteBuffer stage(final byte[] data, final int offset, final int length) throws IOException {
+        if (length > this.staging.capacity()) {
+            final byte[] copy = new byte[length];
+            System.arraycopy(data, offset, copy, 0, length);
+            return ByteBuffer.wrap(copy);
+        }
+
+        if (length > this.staging.remaining()) {
+            flush();
+        }
+
+        final int position = this.staging.position();
+        this.staging.put(data, offset, length);
+        final ByteBuffer view = this.staging.duplicate();
+        view.limit(position + length);
+        view.position(position);
+        return view;
+    }
+
+    /**
+     * Find the {@link PcapFrame} of the frame by asking the frame to write
+     * itself to a {@link FrameCollector}.
+     *
+     * @param frame
+     * @return the pcap frame or null if the frame isn't encapsulated by one
+     * @throws IOException
+     */
+    static PcapFrame toPcapFrame(final Frame frame) throws IOException {
+        if (frame instanceof PcapFrame) {
+            return (PcapFrame) frame;
+        }
+
+        final FrameCollector collector = new FrameCollector();
+        frame.write(collector);
+        return collector.getFrame();
+    }
+
+    private void ensureDataLinkType(final int dataLinkType) {
+        if (dataLinkType != this.pcapHeader.getDataLinkType()) {
+            throw new IllegalArgumentException("Cannot write a record with data link type " + dataLinkType
+                    + " to a pcap with data link type " + this.pcapHeader.getDataLinkType());
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (this.closed) {
+            throw new IOException("The writer has been closed");
+        }
+    }
+
+    private static void writeFully(final GatheringByteChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * The {@link OutputStream} we hand to {@link Frame#write(OutputStream)}.
+     * A {@link PcapFrame} will recognize it and give itself up instead of
+     * writing its data into it. Any other data written to it is simply
+     * collected.
+     */
+    public static final class FrameCollector extends OutputStream {
+
+        private final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+
+        private PcapFrame frame;
+
+        private FrameCollector() {
+            // only we create these
+        }
+
+        /**
+         * Called by the {@link PcapFrame} when it is asked to write itself
+         * to this stream.
+         *
+         * @param frame
+         */
+        public void collect(final PcapFrame frame) {
+            this.frame = frame;
+        }
+
+        private PcapFrame getFrame() {
+            return this.frame;
+        }
+
+        private byte[] toByteArray() {
+            return this.raw.toByteArray();
+        }
+
+        private void reset() {
+            this.frame = null;
+            this.raw.reset();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            this.raw.write(b, off, len);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void write(final int b) throws IOException {
+            this.raw.write(b);
+        }
+    }
+
+}
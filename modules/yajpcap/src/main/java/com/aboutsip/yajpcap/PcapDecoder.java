@@ -0,0 +1,275 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.aboutsip.buffer.Buffer;
+import com.aboutsip.buffer.Buffers;
+import com.aboutsip.yajpcap.frame.PcapFrame;
+import com.aboutsip.yajpcap.frame.PcapGlobalHeader;
+import com.aboutsip.yajpcap.frame.PcapRecordHeader;
+import com.aboutsip.yajpcap.framer.FramerManager;
+
+/**
+ * A push based alternative to {@link Pcap} for when the capture is coming in
+ * over e.g. a socket or a pipe. Instead of having a thread blocked reading
+ * from an {@link java.io.InputStream}, you hand the decoder whatever bytes
+ * you have, in chunks of any size, and every record that is completed by
+ * those bytes is framed and handed over to the {@link FrameHandler} right
+ * away.
+ *
+ * The first 24 bytes of the stream must be the pcap global header. pcapng
+ * isn't supported.
+ *
+ * A record that has only partially been received is kept in a carry-over
+ * buffer until the rest of it shows up. Records that are complete within a
+ * chunk are copied straight out of it so you are free to re-use your buffers
+ * as soon as {@link #decode(ByteBuffer)} returns.
+ *
+ * The decoder is not thread safe.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class PcapDecoder {
+
+    /**
+     * Records with a captured length larger than the snap length of the
+     * capture, or this, whichever is larger, are considered to be corrupt.
+     * Without a limit we could end up carrying over gigabytes of garbage.
+     */
+    public static final int MAX_RECORD_LENGTH = 262144;
+
+    private final FrameHandler handler;
+
+    private final FramerManager framerManager;
+
+    /**
+     * The global header, which is null until we have received all of it.
+     */
+    private PcapGlobalHeader pcapHeader;
+
+    private ByteOrder byteOrder;
+
+    private long maxRecordLength;
+
+    /**
+     * The carry-over buffer holding the beginning of the next record (or the
+     * global header).
+     */
+    private byte[] pending = new byte[2048];
+
+    private int pendingLength;
+
+    /**
+     * Only used for chunks that aren't backed by an array, such as direct
+     * byte buffers.
+     */
+    private byte[] scratch;
+
+    /**
+     * Create a new decoder that will hand all the frames it decodes over to
+     * the handler.
+     *
+     * @param handler
+     * @return
+     */
+    public static PcapDecoder create(final FrameHandler handler) {
+        if (handler == null) {
+            throw new IllegalArgumentException("The FrameHandler cannot be null");
+        }
+        return new PcapDecoder(handler);
+    }
+
+    /**
+     *
+     */
+    private PcapDecoder(final FrameHandler handler) {
+        this.handler = handler;
+        this.framerManager = FramerManager.createInstance();
+    }
+
+    /**
+     * The global header of the capture.
+     *
+     * @return the global header or null if we haven't received all of it yet
+     */
+    public PcapGlobalHeader getPcapHeader() {
+        return this.pcapHeader;
+    }
+
+    /**
+     * The number of bytes we are holding on to while waiting for the rest of
+     * the record they belong to.
+     *
+     * @return
+     */
+    public int getPendingBytes() {
+        return this.pendingLength;
+    }
+
+    /**
+     * Decode all the remaining bytes of the chunk, which will be consumed.
+     *
+     * @param chunk
+     * @throws IOException
+     *             in case the stream is corrupt
+     * @throws IllegalArgumentException
+     *             in case the stream doesn't start with a pcap global header
+     */
+    public void decode(final ByteBuffer chunk) throws IOException, IllegalArgumentException {
+        if (chunk == null) {
+            throw new IllegalArgumentException("The chunk cannot be null");
+        }
+
+        final int length = chunk.remaining();
+        if (chunk.hasArray()) {
+            decode(chunk.array(), chunk.arrayOffset() + chunk.position(), length);
+            chunk.position(chunk.limit());
+            return;
+        }
+
+        if ((this.scratch == null) || (this.scratch.length < length)) {
+            this.scratch = new byte[Math.max(length, 4096)];
+        }
+        chunk.get(this.scratch, 0, length);
+        decode(this.scratch, 0, length);
+    }
+
+    /**
+     * Decode the given bytes.
+     *
+     * @param chunk
+     * @param offset
+     * @param length
+     * @throws IOException
+     *             in case the stream is corrupt
+     * @throws IllegalArgumentException
+     *             in case the stream doesn't start with a pcap global header
+     */
+    public void decode(final byte[] chunk, final int offset, final int length) throws IOException,
+            IllegalArgumentException {
+        if (chunk == null) {
+            throw new IllegalArgumentException("The chunk cannot be null");
+        }
+
+        if ((offset < 0) || (length < 0) || ((offset + length) > chunk.length)) {
+            throw new IllegalArgumentException("The offset and length are outside of the chunk");
+        }
+
+        final int end = offset + length;
+        int index = offset;
+        while (index < end) {
+            if (this.pcapHeader == null) {
+                index = fill(chunk, index, end, 24);
+                if (this.pendingLength < 24) {
+                    return;
+                }
+                readPcapHeader();
+                continue;
+            }
+
+            if (this.pendingLength > 0) {
+                // finish off the record we have already started on
+                index = fill(chunk, index, end, 16);
+                if (this.pendingLength < 16) {
+                    return;
+                }
+
+                final int total = getRecordLength(this.pending, 0);
+                index = fill(chunk, index, end, total);
+                if (this.pendingLength < total) {
+                    return;
+                }
+
+                dispatch(this.pending, 0, total);
+                this.pendingLength = 0;
+                continue;
+            }
+
+            if ((end - index) < 16) {
+                fill(chunk, index, end, 16);
+                return;
+            }
+
+            final int total = getRecordLength(chunk, index);
+            if ((end - index) < total) {
+                fill(chunk, index, end, total);
+                return;
+            }
+
+            dispatch(chunk, index, total);
+            index += total;
+        }
+    }
+
+    private void readPcapHeader() throws IOException {
+        final byte[] header = new byte[24];
+        System.arraycopy(this.pending, 0, header, 0, 24);
+        this.pendingLength = 0;
+
+        this.pcapHeader = PcapGlobalHeader.parse(Buffers.wrap(header));
+        this.byteOrder = this.pcapHeader.getByteOrder();
+        this.maxRecordLength = Math.max(this.pcapHeader.getSnapLength(), MAX_RECORD_LENGTH);
+        this.framerManager.setDataLinkType(this.pcapHeader.getDataLinkType());
+    }
+
+    /**
+     * Get the total length of the record, i.e., including the record header,
+     * that starts at the given offset.
+     */
+    private int getRecordLength(final byte[] buffer, final int offset) throws IOException {
+        final long length = PcapGlobalHeader.getUnsignedInt(offset + 8, buffer, this.byteOrder) & 0xFFFFFFFFL;
+        if (length > this.maxRecordLength) {
+            throw new IOException("Corrupt pcap record, captured length is " + length);
+        }
+        return 16 + (int) length;
+    }
+
+    /**
+     * Copy as many bytes as we can, but no more than needed to get the
+     * carry-over buffer up to the given length.
+     *
+     * @return the index of the first byte of the chunk that wasn't copied
+     */
+    private int fill(final byte[] chunk, final int index, final int end, final int length) {
+        if (this.pending.length < length) {
+            int size = this.pending.length;
+            while (size < length) {
+                size <<= 1;
+            }
+            final byte[] pending = new byte[size];
+            System.arraycopy(this.pending, 0, pending, 0, this.pendingLength);
+            this.pending = pending;
+        }
+
+        final int count = Math.min(end - index, length - this.pendingLength);
+        if (count <= 0) {
+            return index;
+        }
+        System.arraycopy(chunk, index, this.pending, this.pendingLength, count);
+        this.pendingLength += count;
+        return index + count;
+    }
+
+    /**
+     * Copy the record into a buffer of its own, frame it and hand it over to
+     * the handler.
+     */
+    private void dispatch(final byte[] buffer, final int offset, final int length) {
+        final byte[] record = new byte[length];
+        System.arraycopy(buffer, offset, record, 0, length);
+
+        final Buffer data = Buffers.wrap(record);
+        final PcapRecordHeader header = new PcapRecordHeader(this.byteOrder, data.slice(0, 16));
+        final Buffer payload = length == 16 ? Buffers.EMPTY_BUFFER : data.slice(16, length);
+        final PcapFrame frame = new PcapFrame(this.framerManager, header, payload);
+
+        this.framerManager.tick(frame.getArrivalTime());
+        this.handler.nextFrame(frame);
+    }
+
+}
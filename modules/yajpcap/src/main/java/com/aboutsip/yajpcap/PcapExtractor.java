@@ -0,0 +1,240 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import com.aboutsip.buffer.Buffers;
+import com.aboutsip.yajpcap.frame.Frame;
+import com.aboutsip.yajpcap.frame.PcapFrame;
+import com.aboutsip.yajpcap.frame.PcapGlobalHeader;
+
+/**
+ * Copies the records of frames straight out of the pcap file they were read
+ * from. Every {@link PcapFrame} read from a file knows where its record is
+ * within that file (see {@link PcapFrame#getOffset()}) so instead of writing
+ * the frame out again, byte by byte, we can ask the {@link FileChannel} to
+ * transfer the record to wherever it needs to go, which typically means that
+ * the data never even makes it into the JVM.
+ *
+ * Records that follow each other in the file are transferred in one go.
+ *
+ * Frames that don't have an offset, e.g. because they were read off of a
+ * stream, are simply written out the regular way. However, if you hand the
+ * extractor a frame that was read from another file, you will get whatever
+ * data is at that offset in this file so that is up to you.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class PcapExtractor implements Closeable {
+
+    private final FileChannel channel;
+
+    private final PcapGlobalHeader pcapHeader;
+
+    /**
+     * Open the pcap file to extract records from. Only regular pcap files are
+     * supported since the records within a pcapng file can't be copied into
+     * a pcap as is.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     * @throws IllegalArgumentException
+     *             in case the file isn't a pcap file
+     */
+    public static PcapExtractor open(final File file) throws IOException, IllegalArgumentException {
+        if (file == null) {
+            throw new IllegalArgumentException("The file cannot be null");
+        }
+
+        final FileInputStream in = new FileInputStream(file);
+        final FileChannel channel = in.getChannel();
+        try {
+            final ByteBuffer header = ByteBuffer.allocate(24);
+            while (header.hasRemaining()) {
+                if (channel.read(header) == -1) {
+                    throw new IllegalArgumentException("Not a pcap file, it is too short");
+                }
+            }
+            return new PcapExtractor(channel, PcapGlobalHeader.parse(Buffers.wrap(header.array())));
+        } catch (final IOException e) {
+            in.close();
+            throw e;
+        } catch (final IllegalArgumentException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     *
+     */
+    private PcapExtractor(final FileChannel channel, final PcapGlobalHeader pcapHeader) {
+        this.channel = channel;
+        this.pcapHeader = pcapHeader;
+    }
+
+    /**
+     * The header of the pcap file we are extracting from, which also is the
+     * header that {@link #extract(Iterable, WritableByteChannel)} writes.
+     *
+     * @return
+     */
+    public PcapGlobalHeader getPcapHeader() {
+        return this.pcapHeader;
+    }
+
+    /**
+     * Write a new pcap, global header and all, containing the records of all
+     * the frames in the order given.
+     *
+     * @param frames
+     * @param target
+     * @return the number of bytes written
+     * @throws IOException
+     */
+    public long extract(final Iterable<? extends Frame> frames, final WritableByteChannel target)
+            throws IOException {
+        if (frames == null) {
+            throw new IllegalArgumentException("The frames cannot be null");
+        }
+
+        if (target == null) {
+            throw new IllegalArgumentException("The target channel cannot be null");
+        }
+
+        final ByteArrayOutputStream header = new ByteArrayOutputStream(24);
+        this.pcapHeader.write(header);
+        long written = write(header.toByteArray(), target);
+
+        long start = -1;
+        long end = -1;
+        for (final Frame frame : frames) {
+            if (frame == null) {
+                continue;
+            }
+
+            final PcapFrame pcapFrame = PcapChannelWriter.toPcapFrame(frame);
+            if ((pcapFrame == null) || (pcapFrame.getOffset() < 0)) {
+                written += transfer(start, end, target);
+                start = -1;
+                end = -1;
+                written += writeFrame(frame, target);
+            } else if (pcapFrame.getOffset() == end) {
+                end += pcapFrame.getRecordLength();
+            } else {
+                written += transfer(start, end, target);
+                start = pcapFrame.getOffset();
+                end = start + pcapFrame.getRecordLength();
+            }
+        }
+
+        written += transfer(start, end, target);
+        return written;
+    }
+
+    /**
+     * Same as {@link #extract(Iterable, WritableByteChannel)} but to a file,
+     * which will be truncated if it already exists.
+     *
+     * @param frames
+     * @param file
+     * @return the number of bytes written
+     * @throws IOException
+     */
+    public long extract(final Iterable<? extends Frame> frames, final File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("The file cannot be null");
+        }
+
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            return extract(frames, out.getChannel());
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Transfer the record of a single frame, without any global header, to
+     * the target.
+     *
+     * @param frame
+     * @param target
+     * @return the number of bytes written
+     * @throws IOException
+     */
+    public long transferTo(final Frame frame, final WritableByteChannel target) throws IOException {
+        if (frame == null) {
+            throw new IllegalArgumentException("The frame cannot be null");
+        }
+
+        if (target == null) {
+            throw new IllegalArgumentException("The target channel cannot be null");
+        }
+
+        final PcapFrame pcapFrame = PcapChannelWriter.toPcapFrame(frame);
+        if ((pcapFrame == null) || (pcapFrame.getOffset() < 0)) {
+            return writeFrame(frame, target);
+        }
+
+        final long start = pcapFrame.getOffset();
+        return transfer(start, start + pcapFrame.getRecordLength(), target);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    private long transfer(final long start, final long end, final WritableByteChannel target) throws IOException {
+        if (start < 0) {
+            return 0;
+        }
+
+        if (end > this.channel.size()) {
+            throw new IOException("The record at offset " + start + " is beyond the end of the pcap file");
+        }
+
+        long position = start;
+        while (position < end) {
+            final long transferred = this.channel.transferTo(position, end - position, target);
+            if (transferred <= 0) {
+                // e.g. a non-blocking target that can't take any more data,
+                // trying again would just spin
+                throw new IOException("Unable to transfer the record at offset " + start + ", stopped at offset "
+                        + position);
+            }
+            position += transferred;
+        }
+        return end - start;
+    }
+
+    private static long writeFrame(final Frame frame, final WritableByteChannel target) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        frame.write(out);
+        return write(out.toByteArray(), target);
+    }
+
+    private static long write(final byte[] data, final WritableByteChannel target) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+        return data.length;
+    }
+
+}
@@ -0,0 +1,201 @@
+/**
+ * 
+ */
+package com.aboutsip.yajpcap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.aboutsip.yajpcap.filter.Filter;
+import com.aboutsip.yajpcap.filter.Filters;
+import com.aboutsip.yajpcap.flow.FlowTable;
+import com.aboutsip.yajpcap.framer.FramerManager;
+import com.aboutsip.yajpcap.record.RawRecord;
+import com.aboutsip.yajpcap.record.RecordReader;
+
+/**
+ * Merges several captures, e.g. the same call captured on several probes or
+ * a set of rotated files, into one stream of frames ordered by arrival time.
+ * 
+ * The captures are merged lazily. Every capture keeps exactly one record in
+ * memory, the next one it has to offer, and the captures are kept in a heap
+ * ordered by the arrival time of that record, so merging N captures costs
+ * log(N) per record no matter how large the captures are. Records with the
+ * same arrival time are delivered in the order the captures were given to
+ * the merger.
+ * 
+ * All the frames share the same {@link FramerManager} so that e.g. media
+ * negotiated through SIP captured on one probe is recognized when the media
+ * shows up in another capture.
+ * 
+ * Just like a {@link Pcap} you can only loop over the merged captures once.
+ * 
+ * @author jonas@jonasborjesson.com
+ */
+public final class PcapMerger {
+
+    private final List<Pcap> pcaps;
+
+    private final FramerManager framerManager;
+
+    /**
+     * 
+     * @param pcaps the captures to merge.
+     * @throws IllegalArgumentException in case there are no captures to merge
+     */
+    public PcapMerger(final List<Pcap> pcaps) throws IllegalArgumentException {
+        if ((pcaps == null) || pcaps.isEmpty()) {
+            throw new IllegalArgumentException("You must specify at least one capture to merge");
+        }
+        this.pcaps = new ArrayList<Pcap>(pcaps);
+        this.framerManager = FramerManager.createInstance();
+    }
+
+    /**
+     * Open all the files and merge them.
+     * 
+     * @param files
+     * @return
+     * @throws IOException
+     */
+    public static PcapMerger open(final List<File> files) throws IOException {
+        final List<Pcap> pcaps = new ArrayList<Pcap>(files.size());
+        try {
+            for (final File file : files) {
+                pcaps.add(Pcap.openFile(file));
+            }
+        } catch (final IOException e) {
+            for (final Pcap pcap : pcaps) {
+                pcap.close();
+            }
+            throw e;
+        }
+        return new PcapMerger(pcaps);
+    }
+
+    /**
+     * The {@link FlowTable} shared by all the captures.
+     * 
+     * @return
+     */
+    public FlowTable getFlowTable() {
+        return this.framerManager.getFlowTable();
+    }
+
+    public void loop(final FrameHandler callback) throws IOException {
+        loop(Filters.ALL, callback);
+    }
+
+    /**
+     * Loop over the records of all the captures in order of their arrival
+     * time, but only frame the ones accepted by the {@link Filter}.
+     * 
+     * @param filter
+     * @param callback
+     * @throws IOException
+     */
+    public void loop(final Filter filter, final FrameHandler callback) throws IOException {
+        final PriorityQueue<Input> queue = createQueue();
+        Input input = null;
+        while ((input = queue.poll()) != null) {
+            final RawRecord record = input.record;
+            this.framerManager.tick(record.getArrivalTime());
+            if (filter.accept(record)) {
+                callback.nextFrame(record.toFrame(this.framerManager));
+            }
+            if (input.reader.next(record)) {
+                queue.add(input);
+            }
+        }
+    }
+
+    /**
+     * Write all the records of all the captures, ordered by their arrival
+     * time, to the {@link PcapOutputStream}. The records are copied as is
+     * without being framed.
+     * 
+     * @param out
+     * @throws IOException
+     * @throws IllegalArgumentException in case the captures have different
+     *             data link types, which can't be stored in the same pcap.
+     */
+    public void write(final PcapOutputStream out) throws IOException, IllegalArgumentException {
+        final PriorityQueue<Input> queue = createQueue();
+        Input input = null;
+        while ((input = queue.poll()) != null) {
+            out.write(input.record);
+            if (input.reader.next(input.record)) {
+                queue.add(input);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Create a {@link PcapOutputStream} with the same {@link com.aboutsip.yajpcap.frame.PcapGlobalHeader}
+     * as the first of the captures.
+     * 
+     * @param out
+     * @return
+     * @throws IllegalArgumentException
+     */
+    public PcapOutputStream createOutputStream(final OutputStream out) throws IllegalArgumentException {
+        return this.pcaps.get(0).createOutputStream(out);
+    }
+
+    public void close() {
+        for (final Pcap pcap : this.pcaps) {
+            pcap.close();
+        }
+    }
+
+    /**
+     * Read the first record of every capture and put the ones that aren't
+     * empty in the queue.
+     */
+    private PriorityQueue<Input> createQueue() throws IOException {
+        final PriorityQueue<Input> queue = new PriorityQueue<Input>(this.pcaps.size(), INPUT_COMPARATOR);
+        for (int i = 0; i < this.pcaps.size(); ++i) {
+            final RecordReader reader = this.pcaps.get(i).createRecordReader();
+            final RawRecord record = reader.createRecord();
+            if (reader.next(record)) {
+                queue.add(new Input(i, reader, record));
+            }
+        }
+        return queue;
+    }
+
+    private static final Comparator<Input> INPUT_COMPARATOR = new Comparator<Input>() {
+        @Override
+        public int compare(final Input a, final Input b) {
+            final long timeA = a.record.getArrivalTime();
+            final long timeB = b.record.getArrivalTime();
+            if (timeA != timeB) {
+                return timeA < timeB ? -1 : 1;
+            }
+            return a.index - b.index;
+        }
+    };
+
+    /**
+     * One of the captures we are merging together with the next record it
+     * has to offer.
+     */
+    private static final class Input {
+        private final int index;
+        private final RecordReader reader;
+        private final RawRecord record;
+
+        private Input(final int index, final RecordReader reader, final RawRecord record) {
+            this.index = index;
+            this.reader = reader;
+            this.record = record;
+        }
+    }
+
+}
@@ -9,6 +9,7 @@ import java.io.OutputStream;
 import com.aboutsip.yajpcap.frame.Frame;
 import com.aboutsip.yajpcap.frame.PcapGlobalHeader;
 import com.aboutsip.yajpcap.packet.Packet;
+import com.aboutsip.yajpcap.record.RawRecord;
 
 /**
  * @author jonas@jonasborjesson.com
@@ -83,6 +84,38 @@ public class PcapOutputStream extends OutputStream {
         packet.write(this);
     }
 
+    /**
+     * Write a {@link RawRecord} straight to the outputstream without framing
+     * it first.
+     * 
+     * @param record
+     *            the record to write. If null is passed in, it will silently
+     *            be ignored.
+     * @throws IllegalArgumentException
+     *             in case the record has another data link type than this
+     *             pcap, since a pcap can only contain one kind of link layer.
+     */
+    public void write(final RawRecord record) throws IOException, IllegalArgumentException {
+        if (record == null) {
+            return;
+        }
+
+        if (record.getDataLinkType() != this.pcapHeader.getDataLinkType()) {
+            throw new IllegalArgumentException("Cannot write a record with data link type "
+                    + record.getDataLinkType() + " to a pcap with data link type "
+                    + this.pcapHeader.getDataLinkType());
+        }
+        record.write(this.out, this.pcapHeader.getByteOrder());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        this.out.write(b, off, len);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,596 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.aboutsip.yajpcap.frame.Frame;
+import com.aboutsip.yajpcap.frame.PcapFrame;
+import com.aboutsip.yajpcap.frame.PcapGlobalHeader;
+import com.aboutsip.yajpcap.framer.FramerManager;
+import com.aboutsip.yajpcap.record.RawRecord;
+
+/**
+ * Writes frames to a sequence of pcap files, starting a new file whenever
+ * the current one has grown too big, has too many records in it or when the
+ * capture time has moved into a new interval. See {@link Rotation}.
+ *
+ * All the actual I/O is done by a background thread so that whoever is
+ * writing, typically a {@link FrameHandler} within {@link Pcap#loop}, only
+ * has to wait for the disk when it falls behind. The frames are handed over
+ * through a bounded queue and what happens when that queue is full is given
+ * by the {@link Overflow}. By default the caller is blocked until there is
+ * room, so nothing is lost, but when keeping up with a live capture matters
+ * more than getting every frame, the frame can be dropped and counted
+ * instead (see {@link #getDroppedCount()}).
+ *
+ * The names of the files are created from a template where:
+ * <ul>
+ * <li><code>{index}</code> is replaced by the sequence number of the file,
+ * starting at zero.</li>
+ * <li><code>{time}</code> is replaced by the capture time (UTC) of the start
+ * of the file, as <code>yyyyMMdd-HHmmss</code>. When rotating by interval,
+ * this is the start of the interval.</li>
+ * </ul>
+ *
+ * E.g. <code>/var/captures/sip-{time}.pcap</code>.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class RotatingPcapWriter implements Closeable {
+
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+
+    public static final String INDEX = "{index}";
+
+    public static final String TIME = "{time}";
+
+    /**
+     * Marks the end of the queue.
+     */
+    private static final Object CLOSE = new Object();
+
+    private final PcapGlobalHeader pcapHeader;
+
+    private final String template;
+
+    private final Rotation rotation;
+
+    private final BlockingQueue<Object> queue;
+
+    private final Overflow overflow;
+
+    /**
+     * The frames created out of raw records are only written, never framed,
+     * but they still shouldn't share any state with the frames of whoever
+     * else is using the shared {@link FramerManager}.
+     */
+    private final FramerManager framerManager;
+
+    private final Thread thread;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final List<File> files = Collections.synchronizedList(new ArrayList<File>());
+
+    private volatile IOException failure;
+
+    private volatile boolean closed;
+
+    // everything below is only touched by the background thread
+
+    private final SimpleDateFormat dateFormat;
+
+    private FileChannel channel;
+
+    private PcapChannelWriter writer;
+
+    private int index;
+
+    private long records;
+
+    private long bytes;
+
+    private long intervalEnd;
+
+    /**
+     * Create a new {@link RotatingPcapWriter} with the default queue size.
+     *
+     * @param pcapHeader
+     *            the header that all the files will have
+     * @param template
+     *            the template for the file names, which must contain
+     *            <code>{index}</code> unless we only rotate by interval, in
+     *            which case <code>{time}</code> is enough.
+     * @param rotation
+     *            when to start a new file
+     * @return
+     */
+    public static RotatingPcapWriter create(final PcapGlobalHeader pcapHeader, final String template,
+            final Rotation rotation) {
+        return create(pcapHeader, template, rotation, DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * Create a new {@link RotatingPcapWriter} that blocks the caller whenever
+     * the queue is full.
+     *
+     * @param pcapHeader
+     * @param template
+     * @param rotation
+     * @param queueSize
+     *            the number of frames that can be waiting to be written before
+     *            the caller is blocked.
+     * @return
+     */
+    public static RotatingPcapWriter create(final PcapGlobalHeader pcapHeader, final String template,
+            final Rotation rotation, final int queueSize) {
+        return create(pcapHeader, template, rotation, queueSize, Overflow.BLOCK);
+    }
+
+    /**
+     *
+     * @param pcapHeader
+     * @param template
+     * @param rotation
+     * @param queueSize
+     *            the number of frames that can be waiting to be written.
+     * @param overflow
+     *            what to do with a frame when there already are that many
+     *            frames waiting.
+     * @return
+     */
+    public static RotatingPcapWriter create(final PcapGlobalHeader pcapHeader, final String template,
+            final Rotation rotation, final int queueSize, final Overflow overflow) {
+        if (pcapHeader == null) {
+            throw new IllegalArgumentException("The PcapGlobalHeader cannot be null");
+        }
+
+        if (rotation == null) {
+            throw new IllegalArgumentException("The rotation cannot be null");
+        }
+
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("The queue size must be greater than zero");
+        }
+
+        if (overflow == null) {
+            throw new IllegalArgumentException("The overflow cannot be null");
+        }
+
+        if ((template == null) || template.isEmpty()) {
+            throw new IllegalArgumentException("The file name template cannot be null or empty");
+        }
+
+        final boolean intervalOnly = (rotation.getInterval() > 0) && (rotation.getMaxBytes() <= 0)
+                && (rotation.getMaxRecords() <= 0);
+        if (!template.contains(INDEX) && !(intervalOnly && template.contains(TIME))) {
+            throw new IllegalArgumentException("The file name template must contain " + INDEX
+                    + " or, when only rotating by interval, " + TIME + " or the files will overwrite each other");
+        }
+
+        final RotatingPcapWriter writer = new RotatingPcapWriter(pcapHeader, template, rotation, queueSize,
+                overflow);
+        writer.thread.start();
+        return writer;
+    }
+
+    /**
+     *
+     */
+    private RotatingPcapWriter(final PcapGlobalHeader pcapHeader, final String template, final Rotation rotation,
+            final int queueSize, final Overflow overflow) {
+        this.pcapHeader = pcapHeader;
+        this.template = template;
+        this.rotation = rotation;
+        this.queue = new ArrayBlockingQueue<Object>(queueSize);
+        this.overflow = overflow;
+        this.framerManager = FramerManager.createInstance();
+        this.dateFormat = new SimpleDateFormat("yyyyMMdd-HHmmss");
+        this.dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "yajpcap-rotating-writer");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Write a {@link Frame}. The frame has to be encapsulated by a
+     * {@link PcapFrame}, which every frame read from a {@link Pcap} is.
+     *
+     * @param frame
+     *            the frame to write. If null is passed in, it will silently be
+     *            ignored.
+     * @throws IOException
+     *             in case the writer has been closed, the background thread
+     *             has failed to write to disk or the caller was interrupted
+     *             while waiting for room in the queue.
+     * @throws IllegalArgumentException
+     *             in case the frame has another data link type than this pcap
+     *             or if the frame isn't encapsulated by a {@link PcapFrame}.
+     */
+    public void write(final Frame frame) throws IOException, IllegalArgumentException {
+        if (frame == null) {
+            return;
+        }
+
+        ensureOpen();
+        final PcapFrame pcapFrame = PcapChannelWriter.toPcapFrame(frame);
+        if (pcapFrame == null) {
+            throw new IllegalArgumentException("The frame is not encapsulated by a PcapFrame");
+        }
+
+        if (pcapFrame.getDataLinkType() != -1) {
+            ensureDataLinkType(pcapFrame.getDataLinkType());
+        }
+        enqueue(pcapFrame);
+    }
+
+    /**
+     * Write a {@link RawRecord}. The data of the record is copied since the
+     * record will be re-used by the reader.
+     *
+     * @param record
+     *            the record to write. If null is passed in, it will silently
+     *            be ignored.
+     * @throws IOException
+     *             in case the writer has been closed, the background thread
+     *             has failed to write to disk or the caller was interrupted
+     *             while waiting for room in the queue.
+     * @throws IllegalArgumentException
+     *             in case the record has another data link type than this
+     *             pcap.
+     */
+    public void write(final RawRecord record) throws IOException, IllegalArgumentException {
+        if (record == null) {
+            return;
+        }
+
+        ensureOpen();
+        ensureDataLinkType(record.getDataLinkType());
+        enqueue(record.toFrame(this.framerManager));
+    }
+
+    /**
+     * The number of frames that were dropped because the queue was full,
+     * which only happens with {@link Overflow#DROP}.
+     *
+     * @return
+     */
+    public long getDroppedCount() {
+        return this.dropped.get();
+    }
+
+    /**
+     * All the files that have been created so far, in the order they were
+     * created. The last one may still be written to.
+     *
+     * @return
+     */
+    public List<File> getFiles() {
+        synchronized (this.files) {
+            return new ArrayList<File>(this.files);
+        }
+    }
+
+    /**
+     * Write everything that is waiting in the queue, close the current file
+     * and stop the background thread. This call will block until all of that
+     * is done.
+     *
+     * {@inheritDoc}
+     *
+     * @throws IOException
+     *             in case the background thread failed to write to disk at
+     *             any point.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+
+        this.closed = true;
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    this.queue.put(CLOSE);
+                    this.thread.join();
+                    break;
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (this.failure != null) {
+            throw this.failure;
+        }
+    }
+
+    private void enqueue(final PcapFrame frame) throws IOException {
+        if (this.overflow == Overflow.DROP) {
+            if (!this.queue.offer(frame)) {
+                this.dropped.incrementAndGet();
+            }
+            return;
+        }
+
+        try {
+            this.queue.put(frame);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for room in the queue");
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (this.closed) {
+            throw new IOException("The writer has been closed");
+        }
+
+        if (this.failure != null) {
+            throw new IOException("Failed to write to disk", this.failure);
+        }
+    }
+
+    private void ensureDataLinkType(final int dataLinkType) {
+        if (dataLinkType != this.pcapHeader.getDataLinkType()) {
+            throw new IllegalArgumentException("Cannot write a record with data link type " + dataLinkType
+                    + " to a pcap with data link type " + this.pcapHeader.getDataLinkType());
+        }
+    }
+
+    /**
+     * The loop of the background thread. Once we fail to write we will keep
+     * on emptying the queue, so that nobody is blocked, but nothing else is
+     * written.
+     */
+    private void drain() {
+        while (true) {
+            final Object next;
+            try {
+                next = this.queue.take();
+            } catch (final InterruptedException e) {
+                // only close() can stop us
+                continue;
+            }
+
+            if (next == CLOSE) {
+                break;
+            }
+
+            if (this.failure == null) {
+                try {
+                    writeFrame((PcapFrame) next);
+                } catch (final IOException e) {
+                    this.failure = e;
+                }
+            }
+        }
+
+        try {
+            closeFile();
+        } catch (final IOException e) {
+            if (this.failure == null) {
+                this.failure = e;
+            }
+        }
+    }
+
+    private void writeFrame(final PcapFrame frame) throws IOException {
+        final long time = frame.getArrivalTime();
+        final long size = 16 + frame.getRecordHeader().getCapturedLength();
+        if ((this.writer == null) || shouldRotate(time, size)) {
+            closeFile();
+            openFile(time);
+        }
+
+        this.writer.write(frame);
+        ++this.records;
+        this.bytes += size;
+    }
+
+    private boolean shouldRotate(final long time, final long size) {
+        if ((this.rotation.getMaxRecords() > 0) && (this.records >= this.rotation.getMaxRecords())) {
+            return true;
+        }
+
+        if ((this.rotation.getMaxBytes() > 0) && (this.records > 0)
+                && ((this.bytes + size) > this.rotation.getMaxBytes())) {
+            return true;
+        }
+
+        return (this.rotation.getInterval() > 0) && (time >= this.intervalEnd);
+    }
+
+    private void openFile(final long time) throws IOException {
+        long start = time;
+        final long interval = this.rotation.getInterval();
+        if (interval > 0) {
+            start = time - (time % interval);
+            this.intervalEnd = start + interval;
+        }
+
+        final String name = this.template.replace(INDEX, Integer.toString(this.index++)).replace(TIME,
+                this.dateFormat.format(new Date(start / 1000)));
+        final File file = new File(name);
+        final FileOutputStream out = new FileOutputStream(file);
+        this.channel = out.getChannel();
+        this.files.add(file);
+        try {
+            this.writer = PcapChannelWriter.create(this.pcapHeader, this.channel);
+        } catch (final IOException e) {
+            this.channel.close();
+            this.channel = null;
+            throw e;
+        }
+
+        this.records = 0;
+        this.bytes = 24;
+    }
+
+    /**
+     * Make sure that the file actually made it to disk before we let go of
+     * it.
+     */
+    private void closeFile() throws IOException {
+        if (this.writer == null) {
+            return;
+        }
+
+        final PcapChannelWriter current = this.writer;
+        this.writer = null;
+        try {
+            current.flush();
+            this.channel.force(false);
+        } finally {
+            this.channel = null;
+            current.close();
+        }
+    }
+
+    /**
+     * What to do with a frame that is written while the queue is full.
+     */
+    public static enum Overflow {
+        /**
+         * Block the caller until the background thread has made room for the
+         * frame.
+         */
+        BLOCK,
+
+        /**
+         * Drop the frame and count it.
+         */
+        DROP;
+    }
+
+    /**
+     * Describes when the {@link RotatingPcapWriter} should start a new file.
+     * If more than one limit is given, whichever is reached first wins.
+     */
+    public static final class Rotation {
+
+        private final long maxBytes;
+
+        private final long maxRecords;
+
+        private final long interval;
+
+        private Rotation(final long maxBytes, final long maxRecords, final long interval) {
+            this.maxBytes = maxBytes;
+            this.maxRecords = maxRecords;
+            this.interval = interval;
+        }
+
+        /**
+         * Start a new file when the current one would grow beyond the given
+         * size. A file always gets at least one record though, even if that
+         * record by itself is larger than the limit.
+         *
+         * @param maxBytes
+         * @return
+         */
+        public static Rotation bySize(final long maxBytes) {
+            return new Rotation(0, 0, 0).orBySize(maxBytes);
+        }
+
+        /**
+         * Start a new file when the current one has this many records in it.
+         *
+         * @param maxRecords
+         * @return
+         */
+        public static Rotation byCount(final long maxRecords) {
+            return new Rotation(0, 0, 0).orByCount(maxRecords);
+        }
+
+        /**
+         * Start a new file for every interval of capture time (not wall
+         * clock time). The intervals are aligned to the epoch so rotating
+         * every hour gives one file per hour of the day.
+         *
+         * @param interval
+         * @param unit
+         * @return
+         */
+        public static Rotation byInterval(final long interval, final TimeUnit unit) {
+            return new Rotation(0, 0, 0).orByInterval(interval, unit);
+        }
+
+        public Rotation orBySize(final long maxBytes) {
+            if (maxBytes <= 0) {
+                throw new IllegalArgumentException("The max size must be greater than zero");
+            }
+            return new Rotation(maxBytes, this.maxRecords, this.interval);
+        }
+
+        public Rotation orByCount(final long maxRecords) {
+            if (maxRecords <= 0) {
+                throw new IllegalArgumentException("The max number of records must be greater than zero");
+            }
+            return new Rotation(this.maxBytes, maxRecords, this.interval);
+        }
+
+        public Rotation orByInterval(final long interval, final TimeUnit unit) {
+            if (unit == null) {
+                throw new IllegalArgumentException("The time unit cannot be null");
+            }
+
+            final long micros = unit.toMicros(interval);
+            if (micros <= 0) {
+                throw new IllegalArgumentException("The interval must be at least one micro second");
+            }
+            return new Rotation(this.maxBytes, this.maxRecords, micros);
+        }
+
+        /**
+         * @return the max size of a file or zero if we don't rotate by size
+         */
+        public long getMaxBytes() {
+            return this.maxBytes;
+        }
+
+        /**
+         * @return the max number of records in a file or zero if we don't
+         *         rotate by count
+         */
+        public long getMaxRecords() {
+            return this.maxRecords;
+        }
+
+        /**
+         * @return the interval in micro seconds, which is what the arrival
+         *         time of a frame is in, or zero if we don't rotate by time
+         */
+        public long getInterval() {
+            return this.interval;
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.cursor;
+
+import com.aboutsip.yajpcap.record.RawRecord;
+
+/**
+ * Base class for all the cursors. A cursor is simply a pointer to where a
+ * particular layer starts within the raw record.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+abstract class AbstractCursor {
+
+    protected RawRecord record;
+
+    protected int offset;
+
+    /**
+     * Point this cursor to a new location.
+     *
+     * @param record
+     * @param offset the offset, within the record, to where this layer starts.
+     */
+    final void reset(final RawRecord record, final int offset) {
+        this.record = record;
+        this.offset = offset;
+    }
+
+    /**
+     * The offset within the record to where this layer starts.
+     *
+     * @return
+     */
+    public final int getOffset() {
+        return this.offset;
+    }
+
+    protected final int getUnsignedByte(final int index) {
+        return this.record.getByte(this.offset + index) & 0xFF;
+    }
+
+    protected final int getUnsignedShort(final int index) {
+        return this.record.getUnsignedShort(this.offset + index);
+    }
+
+    protected final int getInt(final int index) {
+        return this.record.getInt(this.offset + index);
+    }
+
+    protected final long getUnsignedInt(final int index) {
+        return getInt(index) & 0xFFFFFFFFL;
+    }
+
+}
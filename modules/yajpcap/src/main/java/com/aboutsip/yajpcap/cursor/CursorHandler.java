@@ -0,0 +1,24 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.cursor;
+
+/**
+ * The flyweight counterpart of the {@link com.aboutsip.yajpcap.FrameHandler}.
+ * Instead of getting a fully fledged frame for every packet, you get a
+ * {@link PacketCursor} pointing into the raw data of the current record.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public interface CursorHandler {
+
+    /**
+     * Called for every record in the pcap.
+     *
+     * @param packet the cursor for the current record. The very same instance
+     *            is handed to you over and over again, pointing to different
+     *            records, so do not hold on to it or any of its layers.
+     */
+    void nextPacket(PacketCursor packet);
+
+}
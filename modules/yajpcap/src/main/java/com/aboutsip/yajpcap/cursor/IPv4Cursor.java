@@ -0,0 +1,97 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.cursor;
+
+/**
+ * Flyweight view of an IPv4 header. See
+ * http://en.wikipedia.org/wiki/IPv4 for a description of the fields.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class IPv4Cursor extends AbstractCursor {
+
+    IPv4Cursor() {
+        // only the PacketCursor should create these
+    }
+
+    public int getVersion() {
+        return getUnsignedByte(0) >>> 4;
+    }
+
+    /**
+     * The length of the header in bytes (including options)
+     *
+     * @return
+     */
+    public int getHeaderLength() {
+        return (getUnsignedByte(0) & 0x0F) * 4;
+    }
+
+    public int getTotalLength() {
+        return getUnsignedShort(2);
+    }
+
+    public int getIdentification() {
+        return getUnsignedShort(4);
+    }
+
+    public boolean isDontFragment() {
+        return (getUnsignedByte(6) & 0x40) == 0x40;
+    }
+
+    public boolean isMoreFragments() {
+        return (getUnsignedByte(6) & 0x20) == 0x20;
+    }
+
+    /**
+     * The fragment offset in bytes.
+     *
+     * @return
+     */
+    public int getFragmentOffset() {
+        return (getUnsignedShort(6) & 0x1FFF) * 8;
+    }
+
+    public int getTimeToLive() {
+        return getUnsignedByte(8);
+    }
+
+    /**
+     * The protocol carried in this ip packet. E.g. 17 for UDP and 6 for TCP.
+     *
+     * @return
+     */
+    public int getProtocol() {
+        return getUnsignedByte(9);
+    }
+
+    public int getChecksum() {
+        return getUnsignedShort(10);
+    }
+
+    /**
+     * Get the raw source ip.
+     *
+     * Note, these are the raw bits and should be treated as such. If you really
+     * want to print it, then you should treat it as unsigned
+     *
+     * @return
+     */
+    public int getRawSourceIp() {
+        return getInt(12);
+    }
+
+    /**
+     * Get the raw destination ip.
+     *
+     * Note, these are the raw bits and should be treated as such. If you really
+     * want to print it, then you should treat it as unsigned
+     *
+     * @return
+     */
+    public int getRawDestinationIp() {
+        return getInt(16);
+    }
+
+}
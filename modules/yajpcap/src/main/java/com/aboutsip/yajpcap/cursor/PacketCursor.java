@@ -0,0 +1,178 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.cursor;
+
+import com.aboutsip.yajpcap.record.RawRecord;
+
+/**
+ * A {@link PacketCursor} is a flyweight, allocation free, alternative to the
+ * regular frames. There is one cursor per layer and all of them are reset to
+ * point to the new record for every record in the pcap, which means that
+ * handlers that only are interested in e.g. counting bytes per port will run
+ * without creating any garbage at all.
+ *
+ * The price you pay is that you can't keep any of the cursors around, nor can
+ * you use them from any other thread than the one that is looping over the
+ * pcap. If you need to keep a packet, use {@link #getRecord()} and
+ * {@link RawRecord#toFrame(com.aboutsip.yajpcap.framer.FramerManager)}.
+ *
+ * A layer that isn't present in the current record will be null, e.g.
+ * {@link #getUDP()} returns null for TCP packets.
+ *
+ * RTP is detected the same way as the RTP framer does it, i.e., any UDP
+ * payload of at least 12 bytes with the version bits set to 2 is considered
+ * to be RTP.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class PacketCursor {
+
+    private final IPv4Cursor ipv4 = new IPv4Cursor();
+
+    private final UDPCursor udp = new UDPCursor();
+
+    private final TCPCursor tcp = new TCPCursor();
+
+    private final RtpCursor rtp = new RtpCursor();
+
+    private RawRecord record;
+
+    private boolean hasIPv4;
+
+    private boolean hasUDP;
+
+    private boolean hasTCP;
+
+    private boolean hasRtp;
+
+    public PacketCursor() {
+        // left empty intentionally
+    }
+
+    /**
+     * Point all the cursors to the new record.
+     *
+     * @param record
+     */
+    public void reset(final RawRecord record) {
+        this.record = record;
+        this.hasIPv4 = record.isIPv4();
+        this.hasUDP = record.isUDP();
+        this.hasTCP = record.isTCP();
+        this.hasRtp = false;
+
+        if (this.hasIPv4) {
+            this.ipv4.reset(record, record.getNetworkOffset());
+        }
+
+        if (this.hasUDP) {
+            this.udp.reset(record, record.getTransportOffset());
+            final int payload = record.getPayloadOffset();
+            // RTCP looks the same on the first byte, see RFC 5761
+            final int type = record.getPayloadLength() >= 12 ? record.getByte(payload + 1) & 0xFF : 0;
+            if ((record.getPayloadLength() >= 12) && (((record.getByte(payload) & 0xC0) >> 6) == 0x02)
+                    && ((type < 192) || (type > 223))) {
+                this.rtp.reset(record, payload);
+                this.hasRtp = true;
+            }
+        } else if (this.hasTCP) {
+            this.tcp.reset(record, record.getTransportOffset());
+        }
+    }
+
+    /**
+     * The raw record this cursor currently is pointing to.
+     *
+     * @return
+     */
+    public RawRecord getRecord() {
+        return this.record;
+    }
+
+    /**
+     * The arrival time in micro seconds.
+     *
+     * @return
+     */
+    public long getArrivalTime() {
+        return this.record.getArrivalTime();
+    }
+
+    /**
+     * The number of bytes of the packet that actually was captured.
+     *
+     * @return
+     */
+    public int getCapturedLength() {
+        return this.record.getCapturedLength();
+    }
+
+    /**
+     * The length of the packet as it was on the wire.
+     *
+     * @return
+     */
+    public long getTotalLength() {
+        return this.record.getTotalLength();
+    }
+
+    /**
+     * @return the ether type or -1 (negative one) if unknown
+     */
+    public int getEtherType() {
+        return this.record.getEtherType();
+    }
+
+    public boolean hasIPv4() {
+        return this.hasIPv4;
+    }
+
+    public IPv4Cursor getIPv4() {
+        return this.hasIPv4 ? this.ipv4 : null;
+    }
+
+    public boolean hasUDP() {
+        return this.hasUDP;
+    }
+
+    public UDPCursor getUDP() {
+        return this.hasUDP ? this.udp : null;
+    }
+
+    public boolean hasTCP() {
+        return this.hasTCP;
+    }
+
+    public TCPCursor getTCP() {
+        return this.hasTCP ? this.tcp : null;
+    }
+
+    public boolean hasRtp() {
+        return this.hasRtp;
+    }
+
+    public RtpCursor getRtp() {
+        return this.hasRtp ? this.rtp : null;
+    }
+
+    /**
+     * The offset within the record to the UDP or TCP payload.
+     *
+     * @return the offset or -1 (negative one) if this isn't a UDP or TCP
+     *         packet
+     */
+    public int getPayloadOffset() {
+        return this.record.getPayloadOffset();
+    }
+
+    /**
+     * The number of bytes of UDP or TCP payload.
+     *
+     * @return
+     */
+    public int getPayloadLength() {
+        return this.record.getPayloadLength();
+    }
+
+}
@@ -0,0 +1,59 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.cursor;
+
+/**
+ * Flyweight view of an RTP header. See RFC 3550.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class RtpCursor extends AbstractCursor {
+
+    RtpCursor() {
+        // only the PacketCursor should create these
+    }
+
+    public int getVersion() {
+        return getUnsignedByte(0) >>> 6;
+    }
+
+    public boolean hasPadding() {
+        return (getUnsignedByte(0) & 0x20) == 0x20;
+    }
+
+    public boolean hasExtensions() {
+        return (getUnsignedByte(0) & 0x10) == 0x10;
+    }
+
+    /**
+     * The number of contributing sources (CSRC) that follows the fixed
+     * header.
+     *
+     * @return
+     */
+    public int getContributingSourceCount() {
+        return getUnsignedByte(0) & 0x0F;
+    }
+
+    public boolean hasMarker() {
+        return (getUnsignedByte(1) & 0x80) == 0x80;
+    }
+
+    public int getPayloadType() {
+        return getUnsignedByte(1) & 0x7F;
+    }
+
+    public int getSeqNumber() {
+        return getUnsignedShort(2);
+    }
+
+    public long getTimestamp() {
+        return getUnsignedInt(4);
+    }
+
+    public long getSyncronizationSource() {
+        return getUnsignedInt(8);
+    }
+
+}
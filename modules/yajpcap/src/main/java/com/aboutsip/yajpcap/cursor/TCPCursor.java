@@ -0,0 +1,82 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.cursor;
+
+/**
+ * Flyweight view of a TCP header.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class TCPCursor extends AbstractCursor {
+
+    TCPCursor() {
+        // only the PacketCursor should create these
+    }
+
+    public int getSourcePort() {
+        return getUnsignedShort(0);
+    }
+
+    public int getDestinationPort() {
+        return getUnsignedShort(2);
+    }
+
+    public long getSequenceNumber() {
+        return getUnsignedInt(4);
+    }
+
+    public long getAcknowledgementNumber() {
+        return getUnsignedInt(8);
+    }
+
+    /**
+     * The length of the header in bytes (including options)
+     *
+     * @return
+     */
+    public int getHeaderLength() {
+        return (getUnsignedByte(12) >>> 4) * 4;
+    }
+
+    public int getWindowSize() {
+        return getUnsignedShort(14);
+    }
+
+    public int getChecksum() {
+        return getUnsignedShort(16);
+    }
+
+    public boolean isFIN() {
+        return (getUnsignedByte(13) & 0x01) == 0x01;
+    }
+
+    public boolean isSYN() {
+        return (getUnsignedByte(13) & 0x02) == 0x02;
+    }
+
+    public boolean isRST() {
+        return (getUnsignedByte(13) & 0x04) == 0x04;
+    }
+
+    public boolean isPSH() {
+        return (getUnsignedByte(13) & 0x08) == 0x08;
+    }
+
+    public boolean isACK() {
+        return (getUnsignedByte(13) & 0x10) == 0x10;
+    }
+
+    public boolean isURG() {
+        return (getUnsignedByte(13) & 0x20) == 0x20;
+    }
+
+    public boolean isECE() {
+        return (getUnsignedByte(13) & 0x40) == 0x40;
+    }
+
+    public boolean isCWR() {
+        return (getUnsignedByte(13) & 0x80) == 0x80;
+    }
+
+}
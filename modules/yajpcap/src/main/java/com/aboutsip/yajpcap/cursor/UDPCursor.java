@@ -0,0 +1,38 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.cursor;
+
+/**
+ * Flyweight view of a UDP header.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class UDPCursor extends AbstractCursor {
+
+    UDPCursor() {
+        // only the PacketCursor should create these
+    }
+
+    public int getSourcePort() {
+        return getUnsignedShort(0);
+    }
+
+    public int getDestinationPort() {
+        return getUnsignedShort(2);
+    }
+
+    /**
+     * The length of the header and the data as stated in the UDP header.
+     *
+     * @return
+     */
+    public int getLength() {
+        return getUnsignedShort(4);
+    }
+
+    public int getChecksum() {
+        return getUnsignedShort(6);
+    }
+
+}
@@ -0,0 +1,30 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.filter;
+
+import com.aboutsip.yajpcap.record.RawRecord;
+
+/**
+ * A {@link Filter} is evaluated against the raw bytes of a pcap record before
+ * anything has been framed. Only the records the filter accepts will be
+ * turned into frames and handed over to the
+ * {@link com.aboutsip.yajpcap.FrameHandler}.
+ *
+ * Filters must not allocate any objects since they are evaluated for every
+ * single record in the capture. Use {@link Filters} to create them.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public interface Filter {
+
+    /**
+     * Check whether the record should be processed or not.
+     *
+     * @param record the raw record. Note that the record is reused so do not
+     *            hold on to it.
+     * @return true if the record should be processed
+     */
+    boolean accept(RawRecord record);
+
+}
@@ -0,0 +1,251 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.filter;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * Simple recursive descent parser for the filter expressions described in
+ * {@link Filters}.
+ *
+ * <pre>
+ * expr    := and ( ("or" | "||") and )*
+ * and     := unary ( ("and" | "&&") unary )*
+ * unary   := ("not" | "!") unary | "(" expr ")" | primitive
+ * </pre>
+ *
+ * @author jonas@jonasborjesson.com
+ */
+final class FilterParser {
+
+    private final String expression;
+
+    private final List<String> tokens;
+
+    private int index;
+
+    FilterParser(final String expression) {
+        this.expression = expression;
+        this.tokens = tokenize(expression);
+    }
+
+    Filter parse() throws IllegalArgumentException {
+        final Filter filter = parseOr();
+        if (this.index != this.tokens.size()) {
+            throw error("Unexpected token '" + this.tokens.get(this.index) + "'");
+        }
+        return filter;
+    }
+
+    private Filter parseOr() {
+        Filter filter = parseAnd();
+        while (accept("or") || accept("||")) {
+            filter = Filters.or(filter, parseAnd());
+        }
+        return filter;
+    }
+
+    private Filter parseAnd() {
+        Filter filter = parseUnary();
+        while (accept("and") || accept("&&")) {
+            filter = Filters.and(filter, parseUnary());
+        }
+        return filter;
+    }
+
+    private Filter parseUnary() {
+        if (accept("not") || accept("!")) {
+            return Filters.not(parseUnary());
+        }
+
+        if (accept("(")) {
+            final Filter filter = parseOr();
+            expect(")");
+            return filter;
+        }
+
+        return parsePrimitive();
+    }
+
+    private Filter parsePrimitive() {
+        final String token = next();
+        if ("ip".equals(token)) {
+            return Filters.protocol(Protocol.IPv4);
+        } else if ("udp".equals(token)) {
+            return Filters.protocol(Protocol.UDP);
+        } else if ("tcp".equals(token)) {
+            return Filters.protocol(Protocol.TCP);
+        } else if ("icmp".equals(token)) {
+            return Filters.protocol(Protocol.ICMP);
+        } else if ("sctp".equals(token)) {
+            return Filters.protocol(Protocol.SCTP);
+        } else if ("payload".equals(token)) {
+            return Filters.payloadPrefix(toBytes(unquote(next())));
+        } else if ("src".equals(token) || "dst".equals(token)) {
+            return parseAddressing(token, next());
+        }
+        return parseAddressing(null, token);
+    }
+
+    /**
+     * Parse the host, port and portrange primitives, which may be qualified
+     * with a direction.
+     *
+     * @param direction "src", "dst" or null if either
+     * @param type
+     * @return
+     */
+    private Filter parseAddressing(final String direction, final String type) {
+        final boolean src = "src".equals(direction);
+        final boolean dst = "dst".equals(direction);
+        if ("host".equals(type)) {
+            final int ip = parseIp(next());
+            return src ? Filters.srcHost(ip) : dst ? Filters.dstHost(ip) : Filters.host(ip);
+        } else if ("port".equals(type)) {
+            final int port = parsePort(next());
+            return src ? Filters.srcPort(port) : dst ? Filters.dstPort(port) : Filters.port(port);
+        } else if ("portrange".equals(type)) {
+            final String range = next();
+            final int dash = range.indexOf('-');
+            if (dash == -1) {
+                throw error("Expected a port range such as 5060-5070 but got '" + range + "'");
+            }
+            final int low = parsePort(range.substring(0, dash));
+            final int high = parsePort(range.substring(dash + 1));
+            if (low > high) {
+                throw error("Invalid port range '" + range + "'");
+            }
+            return src ? Filters.srcPortRange(low, high) : dst ? Filters.dstPortRange(low, high) : Filters
+                    .portRange(low, high);
+        }
+
+        throw error("Unknown filter primitive '" + type + "'");
+    }
+
+    private int parsePort(final String value) {
+        try {
+            final int port = Integer.parseInt(value);
+            if ((port < 0) || (port > 0xFFFF)) {
+                throw error("Invalid port '" + value + "'");
+            }
+            return port;
+        } catch (final NumberFormatException e) {
+            throw error("Invalid port '" + value + "'");
+        }
+    }
+
+    private int parseIp(final String value) {
+        final String[] parts = value.split("\\.");
+        if (parts.length != 4) {
+            throw error("Invalid IPv4 address '" + value + "'");
+        }
+
+        int ip = 0;
+        for (final String part : parts) {
+            try {
+                final int octet = Integer.parseInt(part);
+                if ((octet < 0) || (octet > 255)) {
+                    throw error("Invalid IPv4 address '" + value + "'");
+                }
+                ip = (ip << 8) | octet;
+            } catch (final NumberFormatException e) {
+                throw error("Invalid IPv4 address '" + value + "'");
+            }
+        }
+        return ip;
+    }
+
+    private static String unquote(final String value) {
+        if ((value.length() >= 2) && (value.charAt(0) == '"') && (value.charAt(value.length() - 1) == '"')) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    private byte[] toBytes(final String value) {
+        if (value.isEmpty()) {
+            throw error("The payload prefix cannot be empty");
+        }
+        try {
+            return value.getBytes("UTF-8");
+        } catch (final UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new RuntimeException(e);
+        }
+    }
+
+    private boolean accept(final String token) {
+        if ((this.index < this.tokens.size()) && token.equals(this.tokens.get(this.index))) {
+            ++this.index;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(final String token) {
+        if (!accept(token)) {
+            throw error("Expected '" + token + "'");
+        }
+    }
+
+    private String next() {
+        if (this.index >= this.tokens.size()) {
+            throw error("Unexpected end of expression");
+        }
+        return this.tokens.get(this.index++);
+    }
+
+    private IllegalArgumentException error(final String msg) {
+        return new IllegalArgumentException(msg + " in filter expression \"" + this.expression + "\"");
+    }
+
+    /**
+     * Split the expression into tokens. Parenthesis and the operators '!',
+     * '&&' and '||' are tokens of their own and a double quoted string is
+     * always one token (including the quotes).
+     */
+    private static List<String> tokenize(final String expression) {
+        final List<String> tokens = new ArrayList<String>();
+        final int length = expression.length();
+        int i = 0;
+        while (i < length) {
+            final char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                ++i;
+            } else if ((c == '(') || (c == ')') || (c == '!')) {
+                tokens.add(String.valueOf(c));
+                ++i;
+            } else if (((c == '&') || (c == '|')) && ((i + 1) < length) && (expression.charAt(i + 1) == c)) {
+                tokens.add(expression.substring(i, i + 2));
+                i += 2;
+            } else if (c == '"') {
+                final int end = expression.indexOf('"', i + 1);
+                if (end == -1) {
+                    throw new IllegalArgumentException("Unterminated string in filter expression \"" + expression
+                            + "\"");
+                }
+                tokens.add(expression.substring(i, end + 1));
+                i = end + 1;
+            } else {
+                final int start = i;
+                while ((i < length) && !Character.isWhitespace(expression.charAt(i))
+                        && ("()!&|".indexOf(expression.charAt(i)) == -1)) {
+                    ++i;
+                }
+
+                // a single '&' or '|' ends up here
+                if (i == start) {
+                    ++i;
+                }
+                tokens.add(expression.substring(start, i));
+            }
+        }
+        return tokens;
+    }
+
+}
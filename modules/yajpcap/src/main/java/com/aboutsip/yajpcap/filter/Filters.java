@@ -0,0 +1,290 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.filter;
+
+import com.aboutsip.yajpcap.protocol.Protocol;
+import com.aboutsip.yajpcap.record.RawRecord;
+
+/**
+ * Factory methods for creating {@link Filter}s, either programmatically or by
+ * compiling a filter expression. The expression language is a small subset of
+ * what you may be used to from tcpdump and wireshark capture filters:
+ *
+ * <pre>
+ * ip | udp | tcp | icmp | sctp
+ * [src|dst] host &lt;a.b.c.d&gt;
+ * [src|dst] port &lt;port&gt;
+ * [src|dst] portrange &lt;port&gt;-&lt;port&gt;
+ * payload &lt;prefix&gt;        (the prefix may be quoted, e.g. payload "SIP/2.0 ")
+ * </pre>
+ *
+ * Expressions can be combined with <code>and</code> (<code>&amp;&amp;</code>),
+ * <code>or</code> (<code>||</code>), <code>not</code> (<code>!</code>) and
+ * parenthesis. E.g., <code>udp and port 5060</code>
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class Filters {
+
+    /**
+     * A filter that accepts everything.
+     */
+    public static final Filter ALL = new Filter() {
+        @Override
+        public boolean accept(final RawRecord record) {
+            return true;
+        }
+    };
+
+    private Filters() {
+        // left empty intentionally
+    }
+
+    /**
+     * Compile the filter expression.
+     *
+     * @param expression
+     * @return
+     * @throws IllegalArgumentException in case the expression is not valid
+     */
+    public static Filter compile(final String expression) throws IllegalArgumentException {
+        if (expression == null) {
+            throw new IllegalArgumentException("The filter expression cannot be null");
+        }
+
+        if (expression.trim().isEmpty()) {
+            return ALL;
+        }
+
+        return new FilterParser(expression).parse();
+    }
+
+    /**
+     * Only accept records carrying the given protocol. Only IPv4, UDP, TCP,
+     * ICMP and SCTP are supported.
+     *
+     * @param protocol
+     * @return
+     */
+    public static Filter protocol(final Protocol protocol) throws IllegalArgumentException {
+        if (protocol == Protocol.IPv4) {
+            return new Filter() {
+                @Override
+                public boolean accept(final RawRecord record) {
+                    return record.isIPv4();
+                }
+            };
+        }
+
+        final int code;
+        switch (protocol) {
+        case UDP:
+            code = RawRecord.IP_PROTOCOL_UDP;
+            break;
+        case TCP:
+            code = RawRecord.IP_PROTOCOL_TCP;
+            break;
+        case ICMP:
+            code = 1;
+            break;
+        case SCTP:
+            code = 132;
+            break;
+        default:
+            throw new IllegalArgumentException("Cannot filter on protocol " + protocol);
+        }
+
+        return new Filter() {
+            @Override
+            public boolean accept(final RawRecord record) {
+                return record.getIpProtocol() == code;
+            }
+        };
+    }
+
+    /**
+     * Accept records where either the source or the destination is the given
+     * host.
+     *
+     * @param ip the raw ipv4 address
+     * @return
+     */
+    public static Filter host(final int ip) {
+        return new Filter() {
+            @Override
+            public boolean accept(final RawRecord record) {
+                return record.isIPv4() && ((record.getRawSourceIp() == ip) || (record.getRawDestinationIp() == ip));
+            }
+        };
+    }
+
+    public static Filter srcHost(final int ip) {
+        return new Filter() {
+            @Override
+            public boolean accept(final RawRecord record) {
+                return record.isIPv4() && (record.getRawSourceIp() == ip);
+            }
+        };
+    }
+
+    public static Filter dstHost(final int ip) {
+        return new Filter() {
+            @Override
+            public boolean accept(final RawRecord record) {
+                return record.isIPv4() && (record.getRawDestinationIp() == ip);
+            }
+        };
+    }
+
+    /**
+     * Accept UDP and TCP records where either the source or destination port
+     * is the given port.
+     *
+     * @param port
+     * @return
+     */
+    public static Filter port(final int port) {
+        return portRange(port, port);
+    }
+
+    public static Filter srcPort(final int port) {
+        return srcPortRange(port, port);
+    }
+
+    public static Filter dstPort(final int port) {
+        return dstPortRange(port, port);
+    }
+
+    /**
+     * Accept UDP and TCP records where either the source or destination port
+     * is within the range.
+     *
+     * @param low the lower port (inclusive)
+     * @param high the upper port (inclusive)
+     * @return
+     */
+    public static Filter portRange(final int low, final int high) {
+        return portRange(low, high, true, true);
+    }
+
+    /**
+     * Accept UDP and TCP records where the source port is within the range.
+     *
+     * @param low the lower port (inclusive)
+     * @param high the upper port (inclusive)
+     * @return
+     */
+    public static Filter srcPortRange(final int low, final int high) {
+        return portRange(low, high, true, false);
+    }
+
+    /**
+     * Accept UDP and TCP records where the destination port is within the
+     * range.
+     *
+     * @param low the lower port (inclusive)
+     * @param high the upper port (inclusive)
+     * @return
+     */
+    public static Filter dstPortRange(final int low, final int high) {
+        return portRange(low, high, false, true);
+    }
+
+    /**
+     * All the port filters go through here so that they all reject records
+     * without a UDP or TCP header the same way, before any of the ports are
+     * read.
+     *
+     * @param src whether to match the source port
+     * @param dst whether to match the destination port
+     */
+    private static Filter portRange(final int low, final int high, final boolean src, final boolean dst) {
+        checkPortRange(low, high);
+        return new Filter() {
+            @Override
+            public boolean accept(final RawRecord record) {
+                if (record.getTransportOffset() < 0) {
+                    return false;
+                }
+                if (src) {
+                    final int port = record.getSourcePort();
+                    if ((port >= low) && (port <= high)) {
+                        return true;
+                    }
+                }
+                if (dst) {
+                    final int port = record.getDestinationPort();
+                    return (port >= low) && (port <= high);
+                }
+                return false;
+            }
+        };
+    }
+
+    private static void checkPortRange(final int low, final int high) {
+        if ((low < 0) || (high > 0xFFFF) || (low > high)) {
+            throw new IllegalArgumentException("Invalid port range " + low + "-" + high);
+        }
+    }
+
+    /**
+     * Accept UDP and TCP records whose payload starts with the given bytes.
+     * E.g., use "SIP/2.0 " to find all SIP responses.
+     *
+     * @param prefix
+     * @return
+     */
+    public static Filter payloadPrefix(final byte[] prefix) {
+        if ((prefix == null) || (prefix.length == 0)) {
+            throw new IllegalArgumentException("The prefix cannot be null or empty");
+        }
+
+        final byte[] copy = prefix.clone();
+        return new Filter() {
+            @Override
+            public boolean accept(final RawRecord record) {
+                if (record.getPayloadLength() < copy.length) {
+                    return false;
+                }
+
+                final byte[] data = record.getArray();
+                final int offset = record.getPayloadOffset();
+                for (int i = 0; i < copy.length; ++i) {
+                    if (data[offset + i] != copy[i]) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        };
+    }
+
+    public static Filter and(final Filter a, final Filter b) {
+        return new Filter() {
+            @Override
+            public boolean accept(final RawRecord record) {
+                return a.accept(record) && b.accept(record);
+            }
+        };
+    }
+
+    public static Filter or(final Filter a, final Filter b) {
+        return new Filter() {
+            @Override
+            public boolean accept(final RawRecord record) {
+                return a.accept(record) || b.accept(record);
+            }
+        };
+    }
+
+    public static Filter not(final Filter filter) {
+        return new Filter() {
+            @Override
+            public boolean accept(final RawRecord record) {
+                return !filter.accept(record);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,394 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.flow;
+
+import java.util.Arrays;
+
+import com.aboutsip.yajpcap.packet.IPv6Address;
+import com.aboutsip.yajpcap.packet.TransportPacket;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * Identifies a flow, i.e., the 5-tuple of source/destination ip,
+ * source/destination port and transport protocol. The entire key is packed
+ * into two primitive longs so it is cheap to create, compare and hash and it
+ * can be stored in a {@link FlowMap} without any additional objects.
+ *
+ * The key is normalized so that both directions of a flow end up being the
+ * same key, i.e., A -> B and B -> A is the same flow.
+ *
+ * A single endpoint (e.g. a media endpoint learned through SDP) is represented
+ * as a flow where the other side is all zeros. See
+ * {@link #endpoint(int, int, Protocol)}
+ *
+ * IPv6 flows are packed into the same two longs, see
+ * {@link #packAddresses(long, long, int, long, long, int)} and
+ * {@link #packPorts(long, long, int, long, long, int, Protocol)}, but since each
+ * 128-bit address is folded into 32 bits two different IPv6 flows may end up
+ * with the same packed key. Therefore, an IPv6 key also carries the full
+ * addresses, see {@link #create(long, long, int, long, long, int, Protocol)}.
+ * If both addresses are IPv4-mapped the int versions are used instead, i.e.,
+ * the flow ends up as a regular IPv4 flow.
+ *
+ * The {@link FlowKey} methods of a {@link FlowMap} only take IPv4 flows but
+ * the {@link FlowTable} stores IPv6 flows under their packed key as well. It
+ * keeps the full 128-bit addresses of every flow and verifies them on lookup
+ * and if two flows collide, the latter one replaces the former.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class FlowKey {
+
+    private static final Protocol[] PROTOCOLS = Protocol.values();
+
+    /**
+     * The two ip addresses, the lower one (as in unsigned) in the upper 32
+     * bits.
+     */
+    private final long addresses;
+
+    /**
+     * The port belonging to the lower address in bits 32-47, the other port in
+     * bits 16-31 and the transport protocol in the lowest 8 bits.
+     */
+    private final long ports;
+
+    /**
+     * The upper and lower 64 bits of address A followed by the same for
+     * address B, or null if this is an IPv4 flow.
+     */
+    private final long[] ipv6;
+
+    private FlowKey(final long addresses, final long ports) {
+        this(addresses, ports, null);
+    }
+
+    private FlowKey(final long addresses, final long ports, final long[] ipv6) {
+        this.addresses = addresses;
+        this.ports = ports;
+        this.ipv6 = ipv6;
+    }
+
+    /**
+     * Create a new {@link FlowKey}. The order of the source and destination
+     * doesn't matter.
+     *
+     * @param srcIp the raw source ipv4 address
+     * @param srcPort
+     * @param dstIp the raw destination ipv4 address
+     * @param dstPort
+     * @param transport the transport protocol, typically UDP or TCP.
+     * @return
+     */
+    public static FlowKey create(final int srcIp, final int srcPort, final int dstIp, final int dstPort,
+            final Protocol transport) {
+        return new FlowKey(packAddresses(srcIp, srcPort, dstIp, dstPort),
+                packPorts(srcIp, srcPort, dstIp, dstPort, transport));
+    }
+
+    /**
+     * Create a new {@link FlowKey} based on the ips and ports of the packet.
+     *
+     * @param pkt
+     * @param transport the transport protocol, typically UDP or TCP.
+     * @return
+     */
+    public static FlowKey create(final TransportPacket pkt, final Protocol transport) {
+        return create(pkt.getRawSourceIp(), pkt.getSourcePort(), pkt.getRawDestinationIp(),
+                pkt.getDestinationPort(), transport);
+    }
+
+    /**
+     * Create a new {@link FlowKey} for two 128-bit addresses, given as their
+     * upper and lower 64 bits. If both addresses are IPv4-mapped addresses you
+     * will get the same key as {@link #create(int, int, int, int, Protocol)}
+     * would give you.
+     *
+     * @param srcHigh
+     * @param srcLow
+     * @param srcPort
+     * @param dstHigh
+     * @param dstLow
+     * @param dstPort
+     * @param transport the transport protocol, typically UDP or TCP.
+     * @return
+     */
+    public static FlowKey create(final long srcHigh, final long srcLow, final int srcPort, final long dstHigh,
+            final long dstLow, final int dstPort, final Protocol transport) {
+        if (IPv6Address.isIPv4Mapped(srcHigh, srcLow) && IPv6Address.isIPv4Mapped(dstHigh, dstLow)) {
+            return create((int) srcLow, srcPort, (int) dstLow, dstPort, transport);
+        }
+
+        final long addresses = packAddresses(srcHigh, srcLow, srcPort, dstHigh, dstLow, dstPort);
+        final long ports = packPorts(srcHigh, srcLow, srcPort, dstHigh, dstLow, dstPort, transport);
+        if (swap(srcHigh, srcLow, srcPort, dstHigh, dstLow, dstPort)) {
+            return new FlowKey(addresses, ports, new long[] { dstHigh, dstLow, srcHigh, srcLow });
+        }
+        return new FlowKey(addresses, ports, new long[] { srcHigh, srcLow, dstHigh, dstLow });
+    }
+
+    /**
+     * Same as {@link #packAddresses(int, int, int, int)} but for two 128-bit
+     * addresses. Unless both addresses are IPv4-mapped, the addresses are
+     * folded into 32 bits each so two different IPv6 flows may end up with
+     * the same packed key, which is why the full addresses must be kept
+     * alongside it.
+     *
+     * @return
+     */
+    public static long packAddresses(final long srcHigh, final long srcLow, final int srcPort, final long dstHigh,
+            final long dstLow, final int dstPort) {
+        if (IPv6Address.isIPv4Mapped(srcHigh, srcLow) && IPv6Address.isIPv4Mapped(dstHigh, dstLow)) {
+            return packAddresses((int) srcLow, srcPort, (int) dstLow, dstPort);
+        }
+
+        if (swap(srcHigh, srcLow, srcPort, dstHigh, dstLow, dstPort)) {
+            return (unsigned(fold(dstHigh, dstLow)) << 32) | unsigned(fold(srcHigh, srcLow));
+        }
+        return (unsigned(fold(srcHigh, srcLow)) << 32) | unsigned(fold(dstHigh, dstLow));
+    }
+
+    /**
+     * Same as {@link #packPorts(int, int, int, int, Protocol)} but for two
+     * 128-bit addresses.
+     *
+     * @return
+     */
+    public static long packPorts(final long srcHigh, final long srcLow, final int srcPort, final long dstHigh,
+            final long dstLow, final int dstPort, final Protocol transport) {
+        if (IPv6Address.isIPv4Mapped(srcHigh, srcLow) && IPv6Address.isIPv4Mapped(dstHigh, dstLow)) {
+            return packPorts((int) srcLow, srcPort, (int) dstLow, dstPort, transport);
+        }
+
+        final long protocol = transport == null ? 0xFF : transport.ordinal();
+        if (swap(srcHigh, srcLow, srcPort, dstHigh, dstLow, dstPort)) {
+            return ((dstPort & 0xFFFFL) << 32) | ((srcPort & 0xFFFFL) << 16) | protocol;
+        }
+        return ((srcPort & 0xFFFFL) << 32) | ((dstPort & 0xFFFFL) << 16) | protocol;
+    }
+
+    private static boolean swap(final long srcHigh, final long srcLow, final int srcPort, final long dstHigh,
+            final long dstLow, final int dstPort) {
+        final int c = compare(srcHigh, srcLow, dstHigh, dstLow);
+        return (c > 0) || ((c == 0) && ((srcPort & 0xFFFF) > (dstPort & 0xFFFF)));
+    }
+
+    /**
+     * Create a {@link FlowKey} representing a single 128-bit endpoint.
+     *
+     * @param high the upper 64 bits of the address
+     * @param low the lower 64 bits of the address
+     * @param port
+     * @param transport
+     * @return
+     */
+    public static FlowKey endpoint(final long high, final long low, final int port, final Protocol transport) {
+        if (IPv6Address.isIPv4Mapped(high, low)) {
+            return endpoint((int) low, port, transport);
+        }
+        return create(high, low, port, 0, 0, 0, transport);
+    }
+
+    private static int compare(final long aHigh, final long aLow, final long bHigh, final long bLow) {
+        if (aHigh != bHigh) {
+            return (aHigh + Long.MIN_VALUE) < (bHigh + Long.MIN_VALUE) ? -1 : 1;
+        }
+        if (aLow != bLow) {
+            return (aLow + Long.MIN_VALUE) < (bLow + Long.MIN_VALUE) ? -1 : 1;
+        }
+        return 0;
+    }
+
+    private static int fold(final long high, final long low) {
+        final long l = high ^ low;
+        return (int) (l ^ (l >>> 32));
+    }
+
+    /**
+     * Create a {@link FlowKey} representing a single endpoint.
+     *
+     * @param ip the raw ipv4 address
+     * @param port
+     * @param transport
+     * @return
+     */
+    public static FlowKey endpoint(final int ip, final int port, final Protocol transport) {
+        return create(ip, port, 0, 0, transport);
+    }
+
+    /**
+     * Pack the two addresses into a long. The lower address (unsigned) ends up
+     * in the upper 32 bits. Use together with
+     * {@link #packPorts(int, int, int, int, Protocol)} when you want to avoid
+     * creating a {@link FlowKey} object.
+     *
+     * @return
+     */
+    public static long packAddresses(final int srcIp, final int srcPort, final int dstIp, final int dstPort) {
+        if (swap(srcIp, srcPort, dstIp, dstPort)) {
+            return (unsigned(dstIp) << 32) | unsigned(srcIp);
+        }
+        return (unsigned(srcIp) << 32) | unsigned(dstIp);
+    }
+
+    /**
+     * Pack the two ports and the transport protocol into a long, normalized
+     * the same way as {@link #packAddresses(int, int, int, int)}.
+     *
+     * @return
+     */
+    public static long packPorts(final int srcIp, final int srcPort, final int dstIp, final int dstPort,
+            final Protocol transport) {
+        final long protocol = transport == null ? 0xFF : transport.ordinal();
+        if (swap(srcIp, srcPort, dstIp, dstPort)) {
+            return ((dstPort & 0xFFFFL) << 32) | ((srcPort & 0xFFFFL) << 16) | protocol;
+        }
+        return ((srcPort & 0xFFFFL) << 32) | ((dstPort & 0xFFFFL) << 16) | protocol;
+    }
+
+    private static boolean swap(final int srcIp, final int srcPort, final int dstIp, final int dstPort) {
+        final long src = unsigned(srcIp);
+        final long dst = unsigned(dstIp);
+        return (src > dst) || ((src == dst) && ((srcPort & 0xFFFF) > (dstPort & 0xFFFF)));
+    }
+
+    private static long unsigned(final int value) {
+        return value & 0xFFFFFFFFL;
+    }
+
+    /**
+     * The two packed addresses. Mainly useful together with {@link FlowMap}
+     *
+     * @return
+     */
+    public long getAddresses() {
+        return this.addresses;
+    }
+
+    /**
+     * The two packed ports and transport protocol. Mainly useful together with
+     * {@link FlowMap}
+     *
+     * @return
+     */
+    public long getPorts() {
+        return this.ports;
+    }
+
+    /**
+     * Whether this is an IPv6 flow.
+     *
+     * @return
+     */
+    public boolean isIPv6() {
+        return this.ipv6 != null;
+    }
+
+    /**
+     * The lower of the two ip addresses (treated as unsigned). For IPv6 flows
+     * this is just a hash of the address.
+     *
+     * @return
+     */
+    public int getIpA() {
+        return (int) (this.addresses >>> 32);
+    }
+
+    /**
+     * The port belonging to {@link #getIpA()}
+     *
+     * @return
+     */
+    public int getPortA() {
+        return (int) ((this.ports >>> 32) & 0xFFFF);
+    }
+
+    /**
+     * The higher of the two ip addresses (treated as unsigned). For IPv6 flows
+     * this is just a hash of the address.
+     *
+     * @return
+     */
+    public int getIpB() {
+        return (int) this.addresses;
+    }
+
+    /**
+     * The port belonging to {@link #getIpB()}
+     *
+     * @return
+     */
+    public int getPortB() {
+        return (int) ((this.ports >>> 16) & 0xFFFF);
+    }
+
+    /**
+     * The transport protocol of this flow.
+     *
+     * @return the transport protocol or null if none was specified
+     */
+    public Protocol getTransport() {
+        final int ordinal = (int) (this.ports & 0xFF);
+        return ordinal < PROTOCOLS.length ? PROTOCOLS[ordinal] : null;
+    }
+
+    /**
+     * Hash the two packed longs. Shared with {@link FlowMap} so the two always
+     * agree.
+     */
+    static int hash(final long addresses, final long ports) {
+        long h = (addresses * 0x9E3779B97F4A7C15L) ^ ports;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash(this.addresses, this.ports);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if ((obj == null) || (getClass() != obj.getClass())) {
+            return false;
+        }
+        final FlowKey other = (FlowKey) obj;
+        return (this.addresses == other.addresses) && (this.ports == other.ports)
+                && Arrays.equals(this.ipv6, other.ipv6);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        if (this.ipv6 != null) {
+            sb.append('[').append(IPv6Address.toString(this.ipv6[0], this.ipv6[1])).append("]:").append(getPortA());
+            sb.append(" <-> ");
+            sb.append('[').append(IPv6Address.toString(this.ipv6[2], this.ipv6[3])).append("]:").append(getPortB());
+        } else {
+            appendIp(sb, getIpA()).append(':').append(getPortA());
+            sb.append(" <-> ");
+            appendIp(sb, getIpB()).append(':').append(getPortB());
+        }
+        final Protocol transport = getTransport();
+        if (transport != null) {
+            sb.append(' ').append(transport.getName());
+        }
+        return sb.toString();
+    }
+
+    private static StringBuilder appendIp(final StringBuilder sb, final int ip) {
+        sb.append((ip >>> 24) & 0xFF).append('.');
+        sb.append((ip >>> 16) & 0xFF).append('.');
+        sb.append((ip >>> 8) & 0xFF).append('.');
+        return sb.append(ip & 0xFF);
+    }
+
+}
@@ -0,0 +1,287 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.flow;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A map from {@link FlowKey} to whatever per-flow state you need to keep
+ * track of. The keys are stored as primitive longs in open addressing tables
+ * (linear probing) so the only objects the map holds on to are the values
+ * themselves. Compared to a {@link java.util.HashMap} there is no entry object
+ * per flow and no key object per flow, which matters a lot once you are
+ * tracking millions of flows.
+ *
+ * All operations are also available for the packed representation of the key
+ * (see {@link FlowKey#packAddresses(int, int, int, int)} and
+ * {@link FlowKey#packPorts(int, int, int, int, com.aboutsip.yajpcap.protocol.Protocol)}
+ * ) so that a lookup doesn't have to create any objects at all.
+ *
+ * Null values are not allowed since an empty slot is marked by a null value.
+ * The methods taking a {@link FlowKey} only support IPv4 flows since the
+ * packed form of an IPv6 flow isn't unique. IPv6 flows can still be stored
+ * through their packed form but then it is up to the caller to verify the full
+ * addresses, which is what the {@link FlowTable} does.
+ *
+ * Note: this map is not thread safe.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class FlowMap<V> implements Iterable<V> {
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] addresses;
+
+    private long[] ports;
+
+    private Object[] values;
+
+    private int mask;
+
+    private int threshold;
+
+    private int size;
+
+    public FlowMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     *
+     * @param expectedSize the number of flows you expect to keep track of.
+     */
+    public FlowMap(final int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("The expected size cannot be negative");
+        }
+        allocate(tableSizeFor((int) Math.min((expectedSize / LOAD_FACTOR) + 1, 1 << 30)));
+    }
+
+    private static int tableSizeFor(final int size) {
+        int n = 2;
+        while (n < size) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    private void allocate(final int capacity) {
+        this.addresses = new long[capacity];
+        this.ports = new long[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        this.threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public V get(final FlowKey key) {
+        return key.isIPv6() ? null : get(key.getAddresses(), key.getPorts());
+    }
+
+    /**
+     * Get the value for the packed key.
+     *
+     * @param addresses see {@link FlowKey#getAddresses()}
+     * @param ports see {@link FlowKey#getPorts()}
+     * @return the value or null if there is no such flow
+     */
+    @SuppressWarnings("unchecked")
+    public V get(final long addresses, final long ports) {
+        final int i = indexOf(addresses, ports);
+        return i == -1 ? null : (V) this.values[i];
+    }
+
+    public boolean containsKey(final FlowKey key) {
+        return !key.isIPv6() && (indexOf(key.getAddresses(), key.getPorts()) != -1);
+    }
+
+    /**
+     * @throws IllegalArgumentException in case the value is null or the key
+     *             is an IPv6 flow, which doesn't fit in the packed form.
+     */
+    public V put(final FlowKey key, final V value) throws IllegalArgumentException {
+        if (key.isIPv6()) {
+            throw new IllegalArgumentException("IPv6 flows can't be stored in a FlowMap");
+        }
+        return put(key.getAddresses(), key.getPorts(), value);
+    }
+
+    /**
+     * Associate the value with the packed key.
+     *
+     * @param addresses see {@link FlowKey#getAddresses()}
+     * @param ports see {@link FlowKey#getPorts()}
+     * @param value
+     * @return the previous value or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(final long addresses, final long ports, final V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("The value cannot be null");
+        }
+
+        int i = FlowKey.hash(addresses, ports) & this.mask;
+        while (this.values[i] != null) {
+            if ((this.addresses[i] == addresses) && (this.ports[i] == ports)) {
+                final V old = (V) this.values[i];
+                this.values[i] = value;
+                return old;
+            }
+            i = (i + 1) & this.mask;
+        }
+
+        this.addresses[i] = addresses;
+        this.ports[i] = ports;
+        this.values[i] = value;
+        if (++this.size > this.threshold) {
+            rehash(this.values.length << 1);
+        }
+        return null;
+    }
+
+    public V remove(final FlowKey key) {
+        return key.isIPv6() ? null : remove(key.getAddresses(), key.getPorts());
+    }
+
+    /**
+     * Remove the flow.
+     *
+     * @param addresses see {@link FlowKey#getAddresses()}
+     * @param ports see {@link FlowKey#getPorts()}
+     * @return the value that was removed or null if there was no such flow
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(final long addresses, final long ports) {
+        final int i = indexOf(addresses, ports);
+        if (i == -1) {
+            return null;
+        }
+
+        final V old = (V) this.values[i];
+        delete(i);
+        return old;
+    }
+
+    /**
+     * Remove everything.
+     */
+    public void clear() {
+        for (int i = 0; i < this.values.length; ++i) {
+            this.values[i] = null;
+        }
+        this.size = 0;
+    }
+
+    /**
+     * Iterate over all the values. The order is undefined and the map must not
+     * be modified during the iteration.
+     */
+    @Override
+    public Iterator<V> iterator() {
+        return new ValueIterator();
+    }
+
+    private int indexOf(final long addresses, final long ports) {
+        int i = FlowKey.hash(addresses, ports) & this.mask;
+        while (this.values[i] != null) {
+            if ((this.addresses[i] == addresses) && (this.ports[i] == ports)) {
+                return i;
+            }
+            i = (i + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Delete the entry at the given slot and shift back any following entries
+     * in the same probe sequence so that we never need tombstones.
+     *
+     * @param slot
+     */
+    private void delete(final int slot) {
+        int hole = slot;
+        int i = (slot + 1) & this.mask;
+        while (this.values[i] != null) {
+            final int home = FlowKey.hash(this.addresses[i], this.ports[i]) & this.mask;
+
+            // can the entry at i be moved into the hole? Only if its home
+            // slot is not within (hole, i] (cyclically)
+            if (((i - home) & this.mask) >= ((i - hole) & this.mask)) {
+                this.addresses[hole] = this.addresses[i];
+                this.ports[hole] = this.ports[i];
+                this.values[hole] = this.values[i];
+                hole = i;
+            }
+            i = (i + 1) & this.mask;
+        }
+        this.values[hole] = null;
+        --this.size;
+    }
+
+    private void rehash(final int capacity) {
+        final long[] oldAddresses = this.addresses;
+        final long[] oldPorts = this.ports;
+        final Object[] oldValues = this.values;
+        allocate(capacity);
+
+        for (int j = 0; j < oldValues.length; ++j) {
+            if (oldValues[j] != null) {
+                int i = FlowKey.hash(oldAddresses[j], oldPorts[j]) & this.mask;
+                while (this.values[i] != null) {
+                    i = (i + 1) & this.mask;
+                }
+                this.addresses[i] = oldAddresses[j];
+                this.ports[i] = oldPorts[j];
+                this.values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private final class ValueIterator implements Iterator<V> {
+        private int next = -1;
+
+        private ValueIterator() {
+            advance();
+        }
+
+        private void advance() {
+            do {
+                ++this.next;
+            } while ((this.next < FlowMap.this.values.length) && (FlowMap.this.values[this.next] == null));
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next < FlowMap.this.values.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final int current = this.next;
+            advance();
+            return (V) FlowMap.this.values[current];
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Use FlowMap.remove instead");
+        }
+    }
+
+}
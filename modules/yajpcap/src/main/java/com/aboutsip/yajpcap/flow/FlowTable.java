@@ -0,0 +1,718 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.flow;
+
+import java.io.IOException;
+
+import com.aboutsip.buffer.Buffer;
+import com.aboutsip.yajpcap.Clock;
+import com.aboutsip.yajpcap.frame.IPFrame;
+import com.aboutsip.yajpcap.frame.IPv4Frame;
+import com.aboutsip.yajpcap.frame.Layer3Frame;
+import com.aboutsip.yajpcap.frame.SDPFrame;
+import com.aboutsip.yajpcap.packet.IPv6Address;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * The {@link FlowTable} remembers the layer 7 protocol of every flow (the
+ * 5-tuple of source/destination ip, source/destination port and transport
+ * protocol) we have seen so far within a capture. Once a flow has been
+ * classified, all following packets on that flow can go straight to the
+ * correct framer instead of asking every registered framer whether it
+ * accepts the data.
+ *
+ * Media flows are typically negotiated through SDP so whenever we frame an
+ * SDP we will also learn the media endpoints (the <code>c=</code> and
+ * <code>m=</code> lines) ahead of time. This is a lot more reliable than the
+ * RTP accept check, which only looks at the version bits.
+ *
+ * Flows are direction agnostic, i.e., A -> B and B -> A is the same flow.
+ *
+ * The flows are kept in {@link FlowMap}s and looked up through their packed
+ * keys so a lookup, which is done for every packet, doesn't create any
+ * objects. Once we go above the max number of flows, the least recently used
+ * ones are forgotten, and if the table has a {@link Clock}, so are the flows
+ * that haven't seen any traffic within the idle timeout.
+ *
+ * Note: the flow table is not thread safe and is meant to be used by a single
+ * capture.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class FlowTable {
+
+    /**
+     * The default maximum number of flows and media endpoints we keep track
+     * of. Once we go above this limit, the least recently used ones will be
+     * forgotten.
+     */
+    public static final int DEFAULT_MAX_FLOWS = 65536;
+
+    /**
+     * The default time, in milliseconds, a flow or media endpoint may go
+     * without any traffic before we forget about it.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 5 * 60 * 1000;
+
+    private final int maxFlows;
+
+    /**
+     * The clock driven by the capture, or null if we only forget about flows
+     * when we go above the max.
+     */
+    private final Clock clock;
+
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    /**
+     * All the flows that we have classified so far.
+     */
+    private final Table flows;
+
+    /**
+     * All the media endpoints we have learned through SDP.
+     */
+    private final Table media;
+
+    /**
+     * If true, we will only classify a flow as RTP if we have learned about it
+     * through SDP. See {@link #setSdpRequiredForRtp(boolean)}
+     */
+    private boolean sdpRequiredForRtp;
+
+    public FlowTable() {
+        this(null, DEFAULT_MAX_FLOWS);
+    }
+
+    /**
+     *
+     * @param maxFlows the maximum number of flows (and media endpoints) to
+     *            keep track of.
+     */
+    public FlowTable(final int maxFlows) {
+        this(null, maxFlows);
+    }
+
+    /**
+     *
+     * @param clock the clock driven by the capture, which is used for
+     *            forgetting about idle flows. If null, flows are only
+     *            forgotten once we go above the max.
+     * @param maxFlows the maximum number of flows (and media endpoints) to
+     *            keep track of.
+     */
+    public FlowTable(final Clock clock, final int maxFlows) {
+        if (maxFlows <= 0) {
+            throw new IllegalArgumentException("The maximum number of flows must be greater than zero");
+        }
+        this.clock = clock;
+        this.maxFlows = maxFlows;
+        this.flows = new Table(maxFlows);
+        this.media = new Table(maxFlows);
+    }
+
+    /**
+     * The RTP framer will accept pretty much anything that has the version
+     * bits set to 2, which means that a lot of non-RTP traffic will be
+     * classified as RTP. By turning this flag on, the only way for a flow to
+     * be classified as RTP is if we have seen it in an SDP.
+     *
+     * @param sdpRequiredForRtp
+     */
+    public void setSdpRequiredForRtp(final boolean sdpRequiredForRtp) {
+        this.sdpRequiredForRtp = sdpRequiredForRtp;
+    }
+
+    public boolean isSdpRequiredForRtp() {
+        return this.sdpRequiredForRtp;
+    }
+
+    public int getMaxFlows() {
+        return this.maxFlows;
+    }
+
+    /**
+     * @param idleTimeout the time in milliseconds a flow may go without any
+     *            traffic before we forget about it, zero means never. Only
+     *            has an effect if the table has a {@link Clock}.
+     * @throws IllegalArgumentException in case the timeout is negative
+     */
+    public void setIdleTimeout(final long idleTimeout) throws IllegalArgumentException {
+        if (idleTimeout < 0) {
+            throw new IllegalArgumentException("The idle timeout cannot be negative");
+        }
+        this.idleTimeout = idleTimeout;
+    }
+
+    public long getIdleTimeout() {
+        return this.idleTimeout;
+    }
+
+    /**
+     * The number of classified flows we currently are keeping track of.
+     *
+     * @return
+     */
+    public int size() {
+        return this.flows.size();
+    }
+
+    /**
+     * The number of media endpoints we currently have learned through SDP.
+     *
+     * @return
+     */
+    public int mediaSize() {
+        return this.media.size();
+    }
+
+    /**
+     * Forget about everything.
+     */
+    public void clear() {
+        this.flows.clear();
+        this.media.clear();
+    }
+
+    /**
+     * Lookup the layer 7 protocol of the flow.
+     *
+     * @param ip the ip frame carrying the transport frame.
+     * @param transport the transport protocol (UDP or TCP)
+     * @param srcPort
+     * @param dstPort
+     * @return the protocol or null if we don't know anything about this flow
+     */
+    public Protocol lookup(final Layer3Frame ip, final Protocol transport, final int srcPort, final int dstPort) {
+        if (!(ip instanceof IPv4Frame)) {
+            return ip instanceof IPFrame ? lookup128((IPFrame) ip, transport, srcPort, dstPort) : null;
+        }
+
+        final long now = expire();
+        final IPv4Frame ipv4 = (IPv4Frame) ip;
+        final int srcIp = ipv4.getRawSourceIp();
+        final int dstIp = ipv4.getRawDestinationIp();
+
+        final Entry flow = this.flows.get(FlowKey.packAddresses(srcIp, srcPort, dstIp, dstPort),
+                FlowKey.packPorts(srcIp, srcPort, dstIp, dstPort, transport), 0, IPv6Address.mapIPv4(srcIp), 0,
+                IPv6Address.mapIPv4(dstIp), now);
+        if (flow != null) {
+            return flow.protocol;
+        }
+
+        if (this.media.isEmpty()) {
+            return null;
+        }
+
+        final Entry dst = getEndpoint(0, IPv6Address.mapIPv4(dstIp), dstPort, transport, now);
+        if (dst != null) {
+            return dst.protocol;
+        }
+
+        final Entry src = getEndpoint(0, IPv6Address.mapIPv4(srcIp), srcPort, transport, now);
+        return src == null ? null : src.protocol;
+    }
+
+    /**
+     * Same as {@link #lookup(Layer3Frame, Protocol, int, int)} but for ip
+     * frames whose addresses don't fit in 32 bits, i.e., IPv6.
+     */
+    private Protocol lookup128(final IPFrame ip, final Protocol transport, final int srcPort, final int dstPort) {
+        final long now = expire();
+        final long srcHigh = ip.getRawSourceIpHigh();
+        final long srcLow = ip.getRawSourceIpLow();
+        final long dstHigh = ip.getRawDestinationIpHigh();
+        final long dstLow = ip.getRawDestinationIpLow();
+
+        final Entry flow = this.flows.get(FlowKey.packAddresses(srcHigh, srcLow, srcPort, dstHigh, dstLow, dstPort),
+                FlowKey.packPorts(srcHigh, srcLow, srcPort, dstHigh, dstLow, dstPort, transport), srcHigh, srcLow,
+                dstHigh, dstLow, now);
+        if (flow != null) {
+            return flow.protocol;
+        }
+
+        if (this.media.isEmpty()) {
+            return null;
+        }
+
+        final Entry dst = getEndpoint(dstHigh, dstLow, dstPort, transport, now);
+        if (dst != null) {
+            return dst.protocol;
+        }
+
+        final Entry src = getEndpoint(srcHigh, srcLow, srcPort, transport, now);
+        return src == null ? null : src.protocol;
+    }
+
+    private Entry getEndpoint(final long high, final long low, final int port, final Protocol transport,
+            final long now) {
+        return this.media.get(packEndpointAddresses(high, low, port), packEndpointPorts(high, low, port, transport),
+                high, low, 0, 0, now);
+    }
+
+    /**
+     * The packed addresses of a single endpoint, the same as
+     * {@link FlowKey#endpoint(long, long, int, Protocol)} would give you.
+     */
+    private static long packEndpointAddresses(final long high, final long low, final int port) {
+        if (IPv6Address.isIPv4Mapped(high, low)) {
+            return FlowKey.packAddresses((int) low, port, 0, 0);
+        }
+        return FlowKey.packAddresses(high, low, port, 0, 0, 0);
+    }
+
+    private static long packEndpointPorts(final long high, final long low, final int port, final Protocol transport) {
+        if (IPv6Address.isIPv4Mapped(high, low)) {
+            return FlowKey.packPorts((int) low, port, 0, 0, transport);
+        }
+        return FlowKey.packPorts(high, low, port, 0, 0, 0, transport);
+    }
+
+    /**
+     * Forget about everything that has been idle for too long.
+     *
+     * @return the current time
+     */
+    private long expire() {
+        if (this.clock == null) {
+            return 0;
+        }
+
+        final long now = this.clock.currentTimeMillis();
+        if (this.idleTimeout > 0) {
+            this.flows.expire(now - this.idleTimeout);
+            this.media.expire(now - this.idleTimeout);
+        }
+        return now;
+    }
+
+    /**
+     * Remember the layer 7 protocol of a flow.
+     *
+     * @param ip the ip frame carrying the transport frame.
+     * @param transport the transport protocol (UDP or TCP)
+     * @param srcPort
+     * @param dstPort
+     * @param protocol the layer 7 protocol of the flow
+     */
+    public void learn(final Layer3Frame ip, final Protocol transport, final int srcPort, final int dstPort,
+            final Protocol protocol) {
+        if (protocol == null) {
+            return;
+        }
+
+        final long now = expire();
+        if (ip instanceof IPv4Frame) {
+            final IPv4Frame ipv4 = (IPv4Frame) ip;
+            final int srcIp = ipv4.getRawSourceIp();
+            final int dstIp = ipv4.getRawDestinationIp();
+            this.flows.put(FlowKey.packAddresses(srcIp, srcPort, dstIp, dstPort),
+                    FlowKey.packPorts(srcIp, srcPort, dstIp, dstPort, transport), 0, IPv6Address.mapIPv4(srcIp), 0,
+                    IPv6Address.mapIPv4(dstIp), protocol, now);
+        } else if (ip instanceof IPFrame) {
+            final IPFrame ipv6 = (IPFrame) ip;
+            final long srcHigh = ipv6.getRawSourceIpHigh();
+            final long srcLow = ipv6.getRawSourceIpLow();
+            final long dstHigh = ipv6.getRawDestinationIpHigh();
+            final long dstLow = ipv6.getRawDestinationIpLow();
+            this.flows.put(FlowKey.packAddresses(srcHigh, srcLow, srcPort, dstHigh, dstLow, dstPort),
+                    FlowKey.packPorts(srcHigh, srcLow, srcPort, dstHigh, dstLow, dstPort, transport), srcHigh,
+                    srcLow, dstHigh, dstLow, protocol, now);
+        }
+    }
+
+    /**
+     * Remember that the media endpoint will be carrying the given protocol.
+     *
+     * @param ip the raw ipv4 address of the endpoint
+     * @param port
+     * @param transport the transport protocol (typically UDP)
+     * @param protocol the layer 7 protocol (typically RTP)
+     */
+    public void learnMedia(final int ip, final int port, final Protocol transport, final Protocol protocol) {
+        learnMedia(0, IPv6Address.mapIPv4(ip), port, transport, protocol);
+    }
+
+    /**
+     * Remember that the media endpoint will be carrying the given protocol.
+     *
+     * @param high the upper 64 bits of the address
+     * @param low the lower 64 bits of the address
+     * @param port
+     * @param transport the transport protocol (typically UDP)
+     * @param protocol the layer 7 protocol (typically RTP)
+     */
+    public void learnMedia(final long high, final long low, final int port, final Protocol transport,
+            final Protocol protocol) {
+        if (protocol == null) {
+            return;
+        }
+
+        final long now = expire();
+        this.media.put(packEndpointAddresses(high, low, port), packEndpointPorts(high, low, port, transport), high,
+                low, 0, 0, protocol, now);
+    }
+
+    /**
+     * Learn all the media endpoints described by the SDP. Currently, only RTP
+     * is recognized.
+     *
+     * @param sdp
+     */
+    public void learn(final SDPFrame sdp) throws IOException {
+        final Buffer buffer = sdp.getRawSDP();
+
+        // all addresses are kept as 128 bits, zero means no address
+        final long[] address = new long[2];
+        final long[] sessionAddress = new long[2];
+        final long[] mediaAddress = new long[2];
+        int mediaPort = -1;
+
+        Buffer line = null;
+        while (buffer.hasReadableBytes() && ((line = buffer.readLine()) != null)) {
+            if ((line.capacity() < 2) || (line.getByte(1) != '=')) {
+                continue;
+            }
+
+            final byte type = line.getByte(0);
+            if (type == 'c') {
+                if (!parseConnectionAddress(line, address)) {
+                    address[0] = 0;
+                    address[1] = 0;
+                }
+                System.arraycopy(address, 0, mediaPort == -1 ? sessionAddress : mediaAddress, 0, 2);
+            } else if (type == 'm') {
+                learnMedia(isSet(mediaAddress) ? mediaAddress : sessionAddress, mediaPort);
+                mediaPort = parseRtpMediaPort(line);
+                mediaAddress[0] = 0;
+                mediaAddress[1] = 0;
+            }
+        }
+
+        learnMedia(isSet(mediaAddress) ? mediaAddress : sessionAddress, mediaPort);
+    }
+
+    private static boolean isSet(final long[] address) {
+        return (address[0] != 0) || (address[1] != 0);
+    }
+
+    private void learnMedia(final long[] address, final int port) {
+        if (isSet(address) && (port > 0)) {
+            learnMedia(address[0], address[1], port, Protocol.UDP, Protocol.RTP);
+        }
+    }
+
+    /**
+     * Parse out the port of a media line, which looks something like
+     * <code>m=audio 6001 RTP/AVP 0</code>. We are only interested in RTP
+     * media so anything else will return -1.
+     *
+     * @param line
+     * @return the port or -1 (negative one) if this isn't an RTP media line
+     * @throws IOException
+     */
+    private static int parseRtpMediaPort(final Buffer line) throws IOException {
+        int i = 2;
+        final int length = line.capacity();
+
+        // skip the media type
+        while ((i < length) && (line.getByte(i) != ' ')) {
+            ++i;
+        }
+        ++i;
+
+        int port = 0;
+        boolean hasDigits = false;
+        while (i < length) {
+            final byte b = line.getByte(i);
+            if ((b < '0') || (b > '9')) {
+                break;
+            }
+            port = (port * 10) + (b - '0');
+            hasDigits = true;
+            ++i;
+        }
+
+        // there may be a "/<number of ports>" here as well but
+        // we'll only learn the first one.
+        while ((i < length) && (line.getByte(i) != ' ')) {
+            ++i;
+        }
+        ++i;
+
+        if (!hasDigits || (port > 0xFFFF) || !isRtpProfile(line, i)) {
+            return -1;
+        }
+
+        return port;
+    }
+
+    /**
+     * Check whether the transport of a media line is any of the RTP profiles,
+     * i.e., RTP/AVP, RTP/SAVP, RTP/AVPF, RTP/SAVPF or UDP/TLS/RTP/SAVPF
+     */
+    private static boolean isRtpProfile(final Buffer line, final int start) throws IOException {
+        final int length = line.capacity();
+        for (int i = start; (i + 3) < length; ++i) {
+            final byte b = line.getByte(i);
+            if (b == ' ') {
+                return false;
+            }
+            if ((b == 'R') && (line.getByte(i + 1) == 'T') && (line.getByte(i + 2) == 'P')
+                    && (line.getByte(i + 3) == '/')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parse the connection line, which looks like
+     * <code>c=IN IP4 127.0.0.1</code> or <code>c=IN IP6 2001:db8::1</code>.
+     *
+     * @param line
+     * @param result the upper and lower 64 bits of the address, IPv4
+     *            addresses are IPv4-mapped.
+     * @return false if we couldn't find an address
+     * @throws IOException
+     */
+    private static boolean parseConnectionAddress(final Buffer line, final long[] result) throws IOException {
+        final int length = line.capacity();
+        if ((length >= 10) && (line.getByte(2) == 'I') && (line.getByte(3) == 'N') && (line.getByte(4) == ' ')
+                && (line.getByte(5) == 'I') && (line.getByte(6) == 'P') && (line.getByte(7) == '6')) {
+            int i = 8;
+            while ((i < length) && (line.getByte(i) == ' ')) {
+                ++i;
+            }
+            return IPv6Address.parse(line, i, result) && isSet(result);
+        }
+
+        final int address = parseConnectionAddress(line);
+        result[0] = 0;
+        result[1] = IPv6Address.mapIPv4(address);
+        return address != 0;
+    }
+
+    /**
+     * Parse the connection line, which looks like
+     * <code>c=IN IP4 127.0.0.1</code>.
+     *
+     * @param line
+     * @return the raw ipv4 address or zero if this isn't an IPv4 address
+     * @throws IOException
+     */
+    private static int parseConnectionAddress(final Buffer line) throws IOException {
+        final int length = line.capacity();
+        if ((length < 10) || (line.getByte(2) != 'I') || (line.getByte(3) != 'N') || (line.getByte(4) != ' ')
+                || (line.getByte(5) != 'I') || (line.getByte(6) != 'P') || (line.getByte(7) != '4')) {
+            return 0;
+        }
+
+        int i = 8;
+        while ((i < length) && (line.getByte(i) == ' ')) {
+            ++i;
+        }
+
+        int address = 0;
+        int octet = 0;
+        int octets = 0;
+        boolean hasDigits = false;
+        for (; i < length; ++i) {
+            final byte b = line.getByte(i);
+            if ((b >= '0') && (b <= '9')) {
+                octet = (octet * 10) + (b - '0');
+                hasDigits = true;
+            } else if ((b == '.') && hasDigits) {
+                address = (address << 8) | (octet & 0xFF);
+                ++octets;
+                octet = 0;
+                hasDigits = false;
+            } else {
+                // could be a "/ttl" for multicast addresses,
+                // either way we are done
+                break;
+            }
+        }
+
+        if (!hasDigits || (octets != 3) || (octet > 255)) {
+            return 0;
+        }
+
+        return (address << 8) | octet;
+    }
+
+    /**
+     * What we know about a flow or a media endpoint.
+     */
+    private static final class Entry {
+
+        private final long addresses;
+
+        private final long ports;
+
+        /**
+         * The full 128-bit addresses, IPv4 addresses are IPv4-mapped. The
+         * packed key of an IPv6 flow is only a hash of the addresses so these
+         * are what tells two flows with the same packed key apart.
+         */
+        private long aHigh;
+
+        private long aLow;
+
+        private long bHigh;
+
+        private long bLow;
+
+        private Protocol protocol;
+
+        /**
+         * When we last saw any traffic on the flow, in milliseconds.
+         */
+        private long lastSeen;
+
+        /**
+         * The entry that was used right before this one.
+         */
+        private Entry newer;
+
+        private Entry older;
+
+        private Entry(final long addresses, final long ports) {
+            this.addresses = addresses;
+            this.ports = ports;
+        }
+
+        /**
+         * Whether this is the flow between a and b, in any direction.
+         */
+        private boolean matches(final long aHigh, final long aLow, final long bHigh, final long bLow) {
+            return ((this.aHigh == aHigh) && (this.aLow == aLow) && (this.bHigh == bHigh) && (this.bLow == bLow))
+                    || ((this.aHigh == bHigh) && (this.aLow == bLow) && (this.bHigh == aHigh) && (this.bLow == aLow));
+        }
+    }
+
+    /**
+     * A {@link FlowMap} of {@link Entry}s that also keeps the entries in a
+     * list, the most recently used one first, so that the least recently used
+     * and idle ones can be found without searching.
+     */
+    private static final class Table {
+
+        private final int max;
+
+        private final FlowMap<Entry> map;
+
+        private Entry newest;
+
+        private Entry oldest;
+
+        private Table(final int max) {
+            this.max = max;
+            this.map = new FlowMap<Entry>(Math.min(max, 1024));
+        }
+
+        private int size() {
+            return this.map.size();
+        }
+
+        private boolean isEmpty() {
+            return this.map.isEmpty();
+        }
+
+        private void clear() {
+            this.map.clear();
+            this.newest = null;
+            this.oldest = null;
+        }
+
+        /**
+         * Find the entry and mark it as the most recently used one.
+         *
+         * @return the entry or null if there is no such flow
+         */
+        private Entry get(final long addresses, final long ports, final long aHigh, final long aLow,
+                final long bHigh, final long bLow, final long now) {
+            final Entry entry = this.map.get(addresses, ports);
+            if ((entry == null) || !entry.matches(aHigh, aLow, bHigh, bLow)) {
+                return null;
+            }
+
+            entry.lastSeen = now;
+            unlink(entry);
+            link(entry);
+            return entry;
+        }
+
+        /**
+         * Add or update the entry. If another flow happens to have the same
+         * packed key, which only can happen for IPv6 flows, that flow is
+         * forgotten.
+         */
+        private void put(final long addresses, final long ports, final long aHigh, final long aLow,
+                final long bHigh, final long bLow, final Protocol protocol, final long now) {
+            Entry entry = this.map.get(addresses, ports);
+            if (entry == null) {
+                entry = new Entry(addresses, ports);
+                this.map.put(addresses, ports, entry);
+            } else {
+                unlink(entry);
+            }
+
+            entry.aHigh = aHigh;
+            entry.aLow = aLow;
+            entry.bHigh = bHigh;
+            entry.bLow = bLow;
+            entry.protocol = protocol;
+            entry.lastSeen = now;
+            link(entry);
+
+            while (this.map.size() > this.max) {
+                remove(this.oldest);
+            }
+        }
+
+        /**
+         * Remove all the entries that haven't been used since the given time.
+         */
+        private void expire(final long before) {
+            while ((this.oldest != null) && (this.oldest.lastSeen < before)) {
+                remove(this.oldest);
+            }
+        }
+
+        private void remove(final Entry entry) {
+            unlink(entry);
+            this.map.remove(entry.addresses, entry.ports);
+        }
+
+        private void link(final Entry entry) {
+            entry.older = this.newest;
+            entry.newer = null;
+            if (this.newest != null) {
+                this.newest.newer = entry;
+            }
+            this.newest = entry;
+            if (this.oldest == null) {
+                this.oldest = entry;
+            }
+        }
+
+        private void unlink(final Entry entry) {
+            if (entry.newer != null) {
+                entry.newer.older = entry.older;
+            } else {
+                this.newest = entry.older;
+            }
+
+            if (entry.older != null) {
+                entry.older.newer = entry.newer;
+            } else {
+                this.oldest = entry.newer;
+            }
+            entry.newer = null;
+            entry.older = null;
+        }
+    }
+
+}
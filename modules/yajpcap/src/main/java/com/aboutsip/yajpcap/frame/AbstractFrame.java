@@ -8,7 +8,11 @@ import java.io.ObjectInput;
 
 import com.aboutsip.buffer.Buffer;
 import com.aboutsip.yajpcap.framer.FramerManager;
+import com.aboutsip.yajpcap.framer.FramingError;
+import com.aboutsip.yajpcap.metrics.PipelineMetrics;
 import com.aboutsip.yajpcap.protocol.Protocol;
+import com.aboutsip.yajpcap.trace.TraceEvent;
+import com.aboutsip.yajpcap.trace.Tracer;
 
 /**
  * @author jonas@jonasborjesson.com
@@ -37,6 +41,17 @@ public abstract class AbstractFrame implements Frame {
      */
     private Frame nextFrame;
 
+    /**
+     * Whether we have tried to frame the payload or not. The next frame may
+     * still be null if we didn't recognize the payload.
+     */
+    private boolean framed;
+
+    /**
+     * The reason why we failed to frame the payload, if we did.
+     */
+    private FramingError framingError;
+
     /**
      * 
      */
@@ -46,6 +61,9 @@ public abstract class AbstractFrame implements Frame {
         this.framerManager = framerManager;
         this.protocol = p;
         this.payload = payload;
+        if (PipelineMetrics.isEnabled()) {
+            PipelineMetrics.getInstance().frame(p, payload == null ? 0 : payload.readableBytes());
+        }
     }
 
     /**
@@ -86,7 +104,10 @@ public abstract class AbstractFrame implements Frame {
      */
     @Override
     public final void frameAll() throws IOException {
-        // TODO Auto-generated method stub
+        Frame frame = getNextFrame();
+        while (frame != null) {
+            frame = frame.getNextFrame();
+        }
     }
 
     /**
@@ -102,13 +123,98 @@ public abstract class AbstractFrame implements Frame {
      */
     @Override
     public final Frame getNextFrame() throws IOException {
-        if (this.nextFrame == null) {
+        if (!this.framed) {
+            if ((this.payload == null) || !this.framerManager.getFramingDepth().allows(getPayloadLayer())) {
+                return null;
+            }
+            final long start = Tracer.start(TraceEvent.Type.FRAME);
             this.nextFrame = framePayload(this.framerManager, this.payload.slice());
+            this.framed = true;
+            if (start != Tracer.NOT_TRACED) {
+                final String name = this.nextFrame == null ? Protocol.UNKNOWN.getName() : this.nextFrame.getName();
+                Tracer.end(TraceEvent.Type.FRAME, start, name, this.payload.readableBytes());
+            }
         }
 
         return this.nextFrame;
     }
 
+    /**
+     * Set the next frame directly instead of having it framed lazily from the
+     * payload. This is only meant for decoders that frame several layers in
+     * one go, such as the {@link com.aboutsip.yajpcap.framer.FastPathDecoder}.
+     * 
+     * @param next the next frame, or null if the payload isn't recognized
+     * @throws IllegalStateException in case this frame already has been
+     *             framed
+     */
+    public final void setNextFrame(final Frame next) throws IllegalStateException {
+        if (this.framed) {
+            throw new IllegalStateException("The payload of this frame has already been framed");
+        }
+        this.nextFrame = next;
+        this.framed = true;
+    }
+
+    /**
+     * Whether we have tried to frame the payload of this frame yet, i.e.,
+     * whether {@link #getNextFrame()} can be called without framing anything.
+     * 
+     * @return
+     */
+    final boolean isFramed() {
+        return this.framed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final FramingError getFramingError() {
+        return this.framingError;
+    }
+
+    /**
+     * Mark this frame as having a payload that couldn't be framed. You
+     * shouldn't call this one directly but rather report the error through
+     * {@link FramerManager#reportError(Frame, FramingError)}, which also will
+     * keep count of the error.
+     * 
+     * @param error
+     */
+    public final void setFramingError(final FramingError error) {
+        this.framingError = error;
+    }
+
+    /**
+     * Convenience method for frames that fail to frame their payload.
+     * 
+     * @param error the reason why we failed
+     * @return always null so that you can just return the result of this
+     *         method from {@link #framePayload(FramerManager, Buffer)}
+     */
+    protected final Frame fail(final FramingError error) {
+        this.framerManager.reportError(this, error);
+        return null;
+    }
+
+    /**
+     * The layer the payload of this frame belongs to. Everything above the
+     * transport layer is considered layer 7.
+     * 
+     * @return
+     */
+    private int getPayloadLayer() {
+        if (this instanceof Layer1Frame) {
+            return 2;
+        } else if (this instanceof Layer2Frame) {
+            return 3;
+        } else if (this instanceof Layer3Frame) {
+            return 4;
+        }
+        return 7;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -126,12 +232,31 @@ public abstract class AbstractFrame implements Frame {
     protected abstract Frame framePayload(FramerManager framerManager, Buffer payload) throws IOException;
 
     /**
+     * If the frame is a SIP frame carrying a body, go ahead and frame the
+     * body right away. If the body is an SDP the {@link FramerManager} will
+     * learn about the media flows before we see the first media packet.
+     *
+     * @param frame
+     * @return the same frame as passed in
+     * @throws IOException
+     */
+    protected static Frame learnMedia(final Frame frame) throws IOException {
+        if ((frame instanceof SipFrame) && (frame.getPayload() != null)) {
+            frame.getNextFrame();
+        }
+        return frame;
+    }
+
+    /**
+     * Frames are immutable so they can't be read into, use
+     * {@link FrameCodec#decode(FramerManager, java.io.DataInput)} to read
+     * back what {@link #writeExternal(java.io.ObjectOutput)} wrote.
+     * 
      * {@inheritDoc}
      */
     @Override
     public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
-        // we don't support this way of reading right now. Should probably add that, can't
-        // be hard...
+        throw new IOException("Frames are immutable, use FrameCodec.decode to read them");
     }
 
 }
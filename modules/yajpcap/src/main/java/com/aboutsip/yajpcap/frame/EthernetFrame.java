@@ -10,6 +10,7 @@ import java.io.OutputStream;
 import com.aboutsip.buffer.Buffer;
 import com.aboutsip.yajpcap.framer.Framer;
 import com.aboutsip.yajpcap.framer.FramerManager;
+import com.aboutsip.yajpcap.framer.FramingError;
 import com.aboutsip.yajpcap.packet.MACPacket;
 import com.aboutsip.yajpcap.packet.MACPacketImpl;
 import com.aboutsip.yajpcap.packet.Packet;
@@ -26,6 +27,12 @@ public final class EthernetFrame extends AbstractFrame implements Layer2Frame {
     private final Buffer srcMacAddress;
     private final EtherType type;
 
+    /**
+     * The 802.1Q/802.1ad tags, four bytes each with the outermost tag first,
+     * or null if the frame isn't VLAN tagged.
+     */
+    private final Buffer vlanTags;
+
     /**
      * 
      */
@@ -33,15 +40,59 @@ public final class EthernetFrame extends AbstractFrame implements Layer2Frame {
             final Buffer srcMacAddress,
             final EtherType type,
             final Buffer payload) {
+        this(framerManager, parentFrame, destMacAddress, srcMacAddress, null, type, payload);
+    }
+
+    /**
+     * 
+     * @param vlanTags the raw VLAN tags or null if there are none
+     */
+    public EthernetFrame(final FramerManager framerManager, final Layer1Frame parentFrame, final Buffer destMacAddress,
+            final Buffer srcMacAddress, final Buffer vlanTags, final EtherType type, final Buffer payload) {
         super(framerManager, Protocol.ETHERNET_II, payload);
         assert parentFrame != null;
+        assert (vlanTags == null) || ((vlanTags.capacity() % 4) == 0);
 
         this.parentFrame = parentFrame;
         this.destMacAddress = destMacAddress;
         this.srcMacAddress = srcMacAddress;
+        this.vlanTags = vlanTags;
         this.type = type;
     }
 
+    /**
+     * The ether type of the payload. For VLAN tagged frames this is the type
+     * following the innermost tag.
+     * 
+     * @return the ether type or null if it is one we don't know about
+     */
+    public EtherType getType() {
+        return this.type;
+    }
+
+    /**
+     * The number of VLAN tags, which will be 2 for QinQ frames.
+     * 
+     * @return
+     */
+    public int getVlanTagCount() {
+        return this.vlanTags == null ? 0 : this.vlanTags.capacity() / 4;
+    }
+
+    /**
+     * Get the VLAN identifier of one of the VLAN tags.
+     * 
+     * @param index the index of the tag where 0 (zero) is the outermost tag
+     * @return the 12 bit VLAN identifier
+     * @throws IndexOutOfBoundsException in case there is no such tag
+     */
+    public int getVlanId(final int index) throws IndexOutOfBoundsException {
+        if ((index < 0) || (index >= getVlanTagCount())) {
+            throw new IndexOutOfBoundsException("No VLAN tag at index " + index);
+        }
+        return this.vlanTags.getUnsignedShort((index * 4) + 2) & 0x0FFF;
+    }
+
     /**
      * Get the destination mac address as a raw byte buffer
      * 
@@ -130,6 +181,9 @@ public final class EthernetFrame extends AbstractFrame implements Layer2Frame {
         sb.append("Destination Mac Address: ").append(this.destMacAddress);
         sb.append("Source Mac Address: ").append(this.srcMacAddress);
         sb.append("EtherType: ").append(this.type);
+        for (int i = 0; i < getVlanTagCount(); ++i) {
+            sb.append(" VLAN: ").append(getVlanId(i));
+        }
 
         return sb.toString();
     }
@@ -147,15 +201,16 @@ public final class EthernetFrame extends AbstractFrame implements Layer2Frame {
      */
     @Override
     protected Frame framePayload(final FramerManager framerManager, final Buffer buffer) throws IOException {
-        switch(this.type){
-        case IPv4:
+        if (this.type == EtherType.IPv4) {
             final Framer framer = framerManager.getFramer(Protocol.IPv4);
             return framer.frame(this, buffer);
-        case IPv6:
-            throw new RuntimeException("Cant do ipv6 right now");
-        default:
-            throw new RuntimeException("Uknown ether type");
+        } else if (this.type == EtherType.IPv6) {
+            final Framer framer = framerManager.getFramer(Protocol.IPv6);
+            return framer.frame(this, buffer);
         }
+
+        // no other ether types right now
+        return fail(FramingError.UNSUPPORTED);
     }
 
     public static enum EtherType {
@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 import com.aboutsip.buffer.Buffer;
+import com.aboutsip.yajpcap.framer.FramingError;
 import com.aboutsip.yajpcap.packet.Packet;
 import com.aboutsip.yajpcap.packet.PacketParseException;
 import com.aboutsip.yajpcap.protocol.Protocol;
@@ -82,6 +83,16 @@ public interface Frame extends Externalizable {
      */
     Frame getNextFrame() throws IOException;
 
+    /**
+     * If the payload of this frame couldn't be framed, this is the reason
+     * why. Note that the payload isn't framed until someone asks for it so
+     * until {@link #getNextFrame()} has been called this will always be null.
+     * 
+     * @return the reason why the payload couldn't be framed or null if there
+     *         was no error.
+     */
+    FramingError getFramingError();
+
     /**
      * Get the payload of the frame. If null, then this frame doesn't have any
      * payload
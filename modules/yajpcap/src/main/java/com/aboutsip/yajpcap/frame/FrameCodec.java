@@ -0,0 +1,531 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.frame;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+import com.aboutsip.buffer.Buffer;
+import com.aboutsip.buffer.Buffers;
+import com.aboutsip.yajpcap.framer.FramerManager;
+import com.aboutsip.yajpcap.framer.FramingError;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * A compact binary encoding of a frame, which is what
+ * {@link Frame#writeExternal(java.io.ObjectOutput)} writes. It contains the
+ * original record, i.e., the record header (and therefore the arrival time)
+ * and the captured data, followed by where within the data each layer that
+ * has been framed so far starts and stops.
+ *
+ * When decoding, all the frames are created straight from those offsets so
+ * none of the framers are involved and nothing is framed again. Layers that
+ * hadn't been framed when the frame was encoded are framed lazily as usual.
+ *
+ * Only layers that are found within the record itself can be encoded. E.g.
+ * a SIP message that was reassembled from several TCP segments is not, and
+ * encoding will stop at the TCP layer.
+ *
+ * The format is:
+ *
+ * <pre>
+ * byte    version
+ * byte    byte order of the record header (0 = big endian, 1 = little endian)
+ * int     seconds, micro seconds, captured length, total length
+ * int     data link type
+ * long    offset of the record within its capture file
+ * int     length of the data
+ * byte[]  the data
+ *
+ * then for every layer, starting with the link layer:
+ *
+ * byte    layer (one of the LAYER constants)
+ * int[]   the start and stop offsets within the data of the buffers of the
+ *         frame, -1 for buffers that are null, followed by whatever else the
+ *         layer needs, e.g. the ethernet layer stores the number of VLAN tags
+ *         and the ether type as it appears on the wire (0 if unknown)
+ *
+ * byte    0, marking the end of the layers
+ * byte    whether the last layer has been framed, and if so, the framing
+ *         error (if any) of the last layer (one of the ERROR constants).
+ * </pre>
+ *
+ * All codes are fixed, i.e., they don't depend on the order in which the
+ * constants of any enum happen to be declared, and decoding an unknown code is
+ * treated as corrupt data.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class FrameCodec {
+
+    public static final int VERSION = 2;
+
+    private static final int END = 0;
+
+    private static final int ETHERNET = 1;
+
+    private static final int SLL = 2;
+
+    private static final int SLL2 = 3;
+
+    private static final int IPV4 = 4;
+
+    private static final int IPV6 = 5;
+
+    private static final int UDP = 6;
+
+    private static final int TCP = 7;
+
+    private static final int SIP = 8;
+
+    private static final int SDP = 9;
+
+    private static final int RTP = 10;
+
+    private static final int RTCP = 11;
+
+    private static final int ETHER_TYPE_NONE = 0;
+
+    private static final int ETHER_TYPE_IPV4 = 0x0800;
+
+    private static final int ETHER_TYPE_IPV6 = 0x86DD;
+
+    private static final int ERROR_NONE = 0;
+
+    private static final int ERROR_TRUNCATED = 1;
+
+    private static final int ERROR_MALFORMED = 2;
+
+    private static final int ERROR_UNSUPPORTED = 3;
+
+    /**
+     * The last layer hasn't been framed, i.e., it will be framed lazily.
+     */
+    private static final int NOT_FRAMED = 0;
+
+    /**
+     * The last layer has been framed but there was nothing more to it.
+     */
+    private static final int FRAMED = 1;
+
+    private FrameCodec() {
+        // only static methods
+    }
+
+    /**
+     * Encode the pcap frame and all of the frames within it that have been
+     * framed so far.
+     *
+     * @param frame
+     * @param out
+     * @throws IOException
+     */
+    public static void encode(final PcapFrame frame, final DataOutput out) throws IOException {
+        if (frame == null) {
+            throw new IllegalArgumentException("The frame cannot be null");
+        }
+
+        final PcapRecordHeader header = frame.getRecordHeader();
+        out.writeByte(VERSION);
+        out.writeByte(header.getByteOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 0);
+        out.writeInt((int) header.getTimeStampSeconds());
+        out.writeInt((int) header.getTimeStampMicroSeconds());
+        out.writeInt((int) header.getCapturedLength());
+        out.writeInt((int) header.getTotalLength());
+        out.writeInt(frame.getDataLinkType());
+        out.writeLong(frame.getOffset());
+
+        final Buffer payload = frame.getPayload();
+        final int length = payload == null ? 0 : payload.capacity();
+        final java.nio.ByteBuffer data = length == 0 ? null : Buffers.toByteBuffer(payload);
+        final int base = data == null ? 0 : data.position() - payload.getReaderIndex();
+        out.writeInt(length);
+        if (data != null) {
+            out.write(data.array(), base, length);
+        }
+
+        final Locator locator = new Locator(data, base, length);
+        AbstractFrame current = frame;
+        while (current.isFramed()) {
+            final Frame next = current.getNextFrame();
+            if ((next == null) || !encode(next, locator, out)) {
+                break;
+            }
+            current = (AbstractFrame) next;
+        }
+
+        out.writeByte(END);
+        if (current.isFramed() && (current.getNextFrame() == null)) {
+            final FramingError error = current.getFramingError();
+            out.writeByte(FRAMED);
+            out.writeByte(encode(error));
+        } else {
+            out.writeByte(NOT_FRAMED);
+        }
+    }
+
+    /**
+     * Decode a frame that was encoded through
+     * {@link #encode(PcapFrame, DataOutput)}.
+     *
+     * @param framerManager
+     *            the {@link FramerManager} to use for the layers that haven't
+     *            been framed.
+     * @param in
+     * @return the pcap frame with all of the layers that were framed when it
+     *         was encoded already in place.
+     * @throws IOException
+     *             in case of an unknown version or if the data is corrupt
+     */
+    public static PcapFrame decode(final FramerManager framerManager, final DataInput in) throws IOException {
+        if (framerManager == null) {
+            throw new IllegalArgumentException("The FramerManager cannot be null");
+        }
+
+        final int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unknown frame encoding version " + version);
+        }
+
+        final ByteOrder byteOrder = in.readUnsignedByte() == 1 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        final java.nio.ByteBuffer header = java.nio.ByteBuffer.allocate(16).order(byteOrder);
+        for (int i = 0; i < 4; ++i) {
+            header.putInt(in.readInt());
+        }
+        final int dataLinkType = in.readInt();
+        final long offset = in.readLong();
+
+        final int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Corrupt frame, negative length");
+        }
+
+        Buffer data = Buffers.EMPTY_BUFFER;
+        if (length > 0) {
+            final byte[] raw = new byte[length];
+            in.readFully(raw);
+            data = Buffers.wrap(raw);
+        }
+
+        final PcapFrame frame = new PcapFrame(framerManager, new PcapRecordHeader(byteOrder,
+                Buffers.wrap(header.array())), data, dataLinkType, offset);
+
+        AbstractFrame current = frame;
+        int start = 0;
+        try {
+            int layer;
+            while ((layer = in.readUnsignedByte()) != END) {
+                final int payloadStart = in.readInt();
+                final Buffer payload = slice(data, payloadStart, in.readInt());
+                final AbstractFrame next = decode(framerManager, layer, current, data, start, payload, in);
+                current.setNextFrame(next);
+                current = next;
+                start = payloadStart;
+            }
+        } catch (final ClassCastException e) {
+            throw new IOException("Corrupt frame, layers are out of order", e);
+        } catch (final IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt frame, layer outside of the data", e);
+        }
+
+        if (in.readUnsignedByte() == FRAMED) {
+            final FramingError error = decodeFramingError(in.readUnsignedByte());
+            current.setNextFrame(null);
+            current.setFramingError(error);
+        }
+
+        return frame;
+    }
+
+    /**
+     * Write the layer and its ranges.
+     *
+     * @return false if this isn't a frame we can encode, or if its buffers
+     *         aren't within the record, in which case nothing has been
+     *         written.
+     */
+    private static boolean encode(final Frame frame, final Locator locator, final DataOutput out)
+            throws IOException {
+        final Protocol protocol = frame.getProtocol();
+        final int layer;
+        int[] ranges;
+        if (protocol == Protocol.ETHERNET_II) {
+            final EthernetFrame ethernet = (EthernetFrame) frame;
+            layer = ETHERNET;
+            ranges = locator.locate(frame.getPayload());
+            if (ranges != null) {
+                ranges = append(ranges, ethernet.getVlanTagCount(), encode(ethernet.getType()));
+            }
+        } else if (protocol == Protocol.SLL) {
+            layer = SLL;
+            ranges = locator.locate(frame.getPayload());
+        } else if (protocol == Protocol.SLL2) {
+            layer = SLL2;
+            ranges = locator.locate(frame.getPayload());
+        } else if (protocol == Protocol.IPv4) {
+            layer = IPV4;
+            ranges = locator.locate(frame.getPayload());
+        } else if (protocol == Protocol.IPv6) {
+            final IPv6Frame ip = (IPv6Frame) frame;
+            layer = IPV6;
+            ranges = locator.locate(frame.getPayload(), ip.getExtensionHeaders());
+            if (ranges != null) {
+                ranges = append(ranges, ip.getNextHeader(), ip.isFragment() ? 1 : 0);
+            }
+        } else if (protocol == Protocol.UDP) {
+            layer = UDP;
+            ranges = locator.locate(frame.getPayload());
+        } else if (protocol == Protocol.TCP) {
+            layer = TCP;
+            ranges = locator.locate(frame.getPayload());
+        } else if (protocol == Protocol.SIP) {
+            final SipFrame sip = (SipFrame) frame;
+            layer = SIP;
+            ranges = locator.locate(frame.getPayload(), sip.getInitialLine(), sip.getHeaders());
+        } else if (protocol == Protocol.SDP) {
+            layer = SDP;
+            ranges = locator.locate(null, ((SDPFrame) frame).getRawSDP());
+        } else if (protocol == Protocol.RTP) {
+            layer = RTP;
+            ranges = locator.locate(frame.getPayload(), ((RtpFrame) frame).getHeaders());
+        } else if (protocol == Protocol.RTCP) {
+            final RtcpFrame rtcp = (RtcpFrame) frame;
+            layer = RTCP;
+            ranges = locator.locate(null, rtcp.getPackets());
+            if (ranges != null) {
+                ranges = append(ranges, rtcp.getCount());
+            }
+        } else {
+            return false;
+        }
+
+        if (ranges == null) {
+            return false;
+        }
+
+        out.writeByte(layer);
+        for (final int range : ranges) {
+            out.writeInt(range);
+        }
+        return true;
+    }
+
+    /**
+     * Create the frame of the layer, the payload of which has already been
+     * read.
+     *
+     * @param start
+     *            where the payload of the parent frame starts, which is where
+     *            this frame starts.
+     */
+    private static AbstractFrame decode(final FramerManager framerManager, final int layer,
+            final AbstractFrame parent, final Buffer data, final int start, final Buffer payload,
+            final DataInput in) throws IOException {
+        switch (layer) {
+        case ETHERNET:
+            final int tags = in.readInt();
+            final int type = in.readInt();
+            return new EthernetFrame(framerManager, (Layer1Frame) parent, data.slice(start, start + 6), data.slice(
+                    start + 6, start + 12), tags == 0 ? null : data.slice(start + 12, start + 12 + (tags * 4)),
+                    decodeEtherType(type), payload);
+        case SLL:
+            return new SllFrame(framerManager, Protocol.SLL, (Layer1Frame) parent, data.slice(start, start + 16),
+                    payload);
+        case SLL2:
+            return new SllFrame(framerManager, Protocol.SLL2, (Layer1Frame) parent, data.slice(start, start + 20),
+                    payload);
+        case IPV4:
+            final Buffer headers = data.slice(start, start + 20);
+            final int length = headers.getByte(0) & 0x0F;
+            final int options = length > 5 ? data.getInt(start + 20) : 0;
+            return new IPv4Frame(framerManager, (Layer2Frame) parent, length, headers, options, payload);
+        case IPV6:
+            final Buffer extensionHeaders = slice(data, in.readInt(), in.readInt());
+            final int nextHeader = in.readInt();
+            final boolean fragment = in.readInt() == 1;
+            return new IPv6Frame(framerManager, (Layer2Frame) parent, data.slice(start, start + 40),
+                    extensionHeaders, nextHeader, fragment, payload);
+        case UDP:
+            return new UDPFrame(framerManager, (Layer3Frame) parent, data.slice(start, start + 8), payload);
+        case TCP:
+            final int headerLength = ((data.getByte(start + 12) >>> 4) & 0x0F) * 4;
+            final Buffer tcpOptions = headerLength > 20 ? data.slice(start + 20, start + headerLength) : null;
+            return new TCPFrame(framerManager, (Layer3Frame) parent, data.slice(start, start + 20), tcpOptions,
+                    payload);
+        case SIP:
+            final Buffer initialLine = slice(data, in.readInt(), in.readInt());
+            return new SipFrame(framerManager, (Layer4Frame) parent, initialLine, slice(data, in.readInt(),
+                    in.readInt()), payload);
+        case SDP:
+            return new SDPFrame(framerManager, parent, slice(data, in.readInt(), in.readInt()));
+        case RTP:
+            return new RtpFrame(framerManager, (Layer4Frame) parent, slice(data, in.readInt(), in.readInt()), payload);
+        case RTCP:
+            final Buffer packets = slice(data, in.readInt(), in.readInt());
+            return new RtcpFrame(framerManager, (Layer4Frame) parent, packets, in.readInt());
+        default:
+            throw new IOException("Corrupt frame, unknown layer " + layer);
+        }
+    }
+
+    private static int encode(final EthernetFrame.EtherType type) {
+        if (type == null) {
+            return ETHER_TYPE_NONE;
+        }
+
+        switch (type) {
+        case IPv4:
+            return ETHER_TYPE_IPV4;
+        case IPv6:
+            return ETHER_TYPE_IPV6;
+        default:
+            throw new IllegalArgumentException("No code for ether type " + type);
+        }
+    }
+
+    private static EthernetFrame.EtherType decodeEtherType(final int code) throws IOException {
+        switch (code) {
+        case ETHER_TYPE_NONE:
+            return null;
+        case ETHER_TYPE_IPV4:
+            return EthernetFrame.EtherType.IPv4;
+        case ETHER_TYPE_IPV6:
+            return EthernetFrame.EtherType.IPv6;
+        default:
+            throw new IOException("Corrupt frame, unknown ether type " + code);
+        }
+    }
+
+    private static int encode(final FramingError error) {
+        if (error == null) {
+            return ERROR_NONE;
+        }
+
+        switch (error) {
+        case TRUNCATED:
+            return ERROR_TRUNCATED;
+        case MALFORMED:
+            return ERROR_MALFORMED;
+        case UNSUPPORTED:
+            return ERROR_UNSUPPORTED;
+        default:
+            throw new IllegalArgumentException("No code for framing error " + error);
+        }
+    }
+
+    private static FramingError decodeFramingError(final int code) throws IOException {
+        switch (code) {
+        case ERROR_NONE:
+            return null;
+        case ERROR_TRUNCATED:
+            return FramingError.TRUNCATED;
+        case ERROR_MALFORMED:
+            return FramingError.MALFORMED;
+        case ERROR_UNSUPPORTED:
+            return FramingError.UNSUPPORTED;
+        default:
+            throw new IOException("Corrupt frame, unknown framing error " + code);
+        }
+    }
+
+    /**
+     * Get the buffer at the given range of the record data.
+     */
+    private static Buffer slice(final Buffer data, final int start, final int stop) throws IOException {
+        if ((start == -1) && (stop == -1)) {
+            return null;
+        }
+
+        if ((start < 0) || (start > stop) || (stop > data.capacity())) {
+            throw new IOException("Corrupt frame, range [" + start + ", " + stop + ") is outside of the data");
+        }
+
+        if (start == stop) {
+            return Buffers.EMPTY_BUFFER;
+        }
+        return data.slice(start, stop);
+    }
+
+    private static int[] append(final int[] ranges, final int... extra) {
+        final int[] result = new int[ranges.length + extra.length];
+        System.arraycopy(ranges, 0, result, 0, ranges.length);
+        System.arraycopy(extra, 0, result, ranges.length, extra.length);
+        return result;
+    }
+
+    /**
+     * Figures out where buffers are within the record data, which only works
+     * for buffers that are slices of the very same byte array.
+     */
+    private static final class Locator {
+
+        private final java.nio.ByteBuffer data;
+
+        private final int base;
+
+        private final int length;
+
+        private Locator(final java.nio.ByteBuffer data, final int base, final int length) {
+            this.data = data;
+            this.base = base;
+            this.length = length;
+        }
+
+        /**
+         * Locate the payload followed by all the other buffers of a frame.
+         *
+         * @return the start and stop of every buffer, or null if any of them
+         *         isn't within the record.
+         */
+        private int[] locate(final Buffer payload, final Buffer... buffers) {
+            final int[] ranges = new int[(buffers.length + 1) * 2];
+            if (!locate(payload, ranges, 0)) {
+                return null;
+            }
+
+            for (int i = 0; i < buffers.length; ++i) {
+                if (!locate(buffers[i], ranges, (i + 1) * 2)) {
+                    return null;
+                }
+            }
+            return ranges;
+        }
+
+        private boolean locate(final Buffer buffer, final int[] ranges, final int index) {
+            if (buffer == null) {
+                ranges[index] = -1;
+                ranges[index + 1] = -1;
+                return true;
+            }
+
+            if (buffer.capacity() == 0) {
+                ranges[index] = 0;
+                ranges[index + 1] = 0;
+                return true;
+            }
+
+            if (this.data == null) {
+                return false;
+            }
+
+            final java.nio.ByteBuffer b = Buffers.toByteBuffer(buffer);
+            if (b.array() != this.data.array()) {
+                return false;
+            }
+
+            final int start = (b.position() - buffer.getReaderIndex()) - this.base;
+            final int stop = start + buffer.capacity();
+            if ((start < 0) || (stop > this.length)) {
+                return false;
+            }
+
+            ranges[index] = start;
+            ranges[index + 1] = stop;
+            return true;
+        }
+    }
+
+}
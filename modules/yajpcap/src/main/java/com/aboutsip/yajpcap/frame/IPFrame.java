@@ -26,6 +26,35 @@ public interface IPFrame extends Layer3Frame {
      */
     int getHeaderLength();
 
+    /**
+     * The upper 64 bits of the source address. IPv4 addresses are given as
+     * IPv4-mapped IPv6 addresses, i.e., ::ffff:a.b.c.d
+     * 
+     * @return
+     */
+    long getRawSourceIpHigh();
+
+    /**
+     * The lower 64 bits of the source address.
+     * 
+     * @return
+     */
+    long getRawSourceIpLow();
+
+    /**
+     * The upper 64 bits of the destination address.
+     * 
+     * @return
+     */
+    long getRawDestinationIpHigh();
+
+    /**
+     * The lower 64 bits of the destination address.
+     * 
+     * @return
+     */
+    long getRawDestinationIpLow();
+
     /**
      * {@inheritDoc}
      */
@@ -10,8 +10,10 @@ import java.io.OutputStream;
 import com.aboutsip.buffer.Buffer;
 import com.aboutsip.yajpcap.framer.Framer;
 import com.aboutsip.yajpcap.framer.FramerManager;
+import com.aboutsip.yajpcap.framer.FramingError;
 import com.aboutsip.yajpcap.packet.IPPacket;
 import com.aboutsip.yajpcap.packet.IPPacketImpl;
+import com.aboutsip.yajpcap.packet.IPv6Address;
 import com.aboutsip.yajpcap.packet.MACPacket;
 import com.aboutsip.yajpcap.packet.PacketParseException;
 import com.aboutsip.yajpcap.protocol.Protocol;
@@ -107,6 +109,117 @@ public final class IPv4Frame extends AbstractFrame implements IPFrame {
         return this.length;
     }
 
+    /**
+     * Get the raw source ip.
+     * 
+     * Note, these are the raw bits and should be treated as such. If you really
+     * want to print it, then you should treat it as unsigned
+     * 
+     * @return
+     */
+    public int getRawSourceIp() {
+        return this.headers.getInt(12);
+    }
+
+    /**
+     * Get the raw destination ip.
+     * 
+     * Note, these are the raw bits and should be treated as such. If you really
+     * want to print it, then you should treat it as unsigned
+     * 
+     * @return
+     */
+    public int getRawDestinationIp() {
+        return this.headers.getInt(16);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRawSourceIpHigh() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRawSourceIpLow() {
+        return IPv6Address.mapIPv4(getRawSourceIp());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRawDestinationIpHigh() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRawDestinationIpLow() {
+        return IPv6Address.mapIPv4(getRawDestinationIp());
+    }
+
+    /**
+     * The total length of the ip packet, headers and data, as stated in the
+     * header.
+     * 
+     * @return
+     */
+    public int getTotalLength() {
+        return this.headers.getUnsignedShort(2);
+    }
+
+    /**
+     * The identification, which is used to tell which fragments belong to
+     * which datagram.
+     * 
+     * @return
+     */
+    public int getIdentification() {
+        return this.headers.getUnsignedShort(4);
+    }
+
+    public boolean isDontFragment() {
+        return (this.headers.getUnsignedShort(6) & 0x4000) != 0;
+    }
+
+    public boolean isMoreFragments() {
+        return (this.headers.getUnsignedShort(6) & 0x2000) != 0;
+    }
+
+    /**
+     * The offset of this fragment within the datagram.
+     * 
+     * @return the offset in bytes
+     */
+    public int getFragmentOffset() {
+        return (this.headers.getUnsignedShort(6) & 0x1FFF) * 8;
+    }
+
+    /**
+     * Whether this ip packet is a fragment of a larger datagram.
+     * 
+     * @return
+     */
+    public boolean isFragment() {
+        return (this.headers.getUnsignedShort(6) & 0x3FFF) != 0;
+    }
+
+    /**
+     * The protocol number of the payload, e.g. 17 for UDP.
+     * 
+     * @return
+     */
+    public int getProtocolNumber() {
+        return this.headers.getUnsignedByte(9);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -129,12 +242,19 @@ public final class IPv4Frame extends AbstractFrame implements IPFrame {
 
     @Override
     protected Frame framePayload(final FramerManager framerManager, final Buffer payload) throws IOException {
-        final Framer framer = framerManager.getFramer(this.protocol);
+        final Framer framer = this.protocol == null ? null : framerManager.getFramer(this.protocol);
         if (framer != null) {
-            return framer.frame(this, payload);
+            if (!isFragment()) {
+                return framer.frame(this, payload);
+            }
+
+            // the fragment that completes the datagram gets to frame all of
+            // it, all the other fragments don't have a next frame.
+            final Buffer datagram = framerManager.getIPv4Reassembler().reassemble(this, payload);
+            return datagram == null ? null : framer.frame(this, datagram);
         }
 
-        throw new RuntimeException("Unknown protocol " + this.protocol);
+        return fail(FramingError.UNSUPPORTED);
     }
 
     /**
@@ -0,0 +1,224 @@
+/**
+ * 
+ */
+package com.aboutsip.yajpcap.frame;
+
+import java.io.IOException;
+import java.io.ObjectOutput;
+import java.io.OutputStream;
+
+import com.aboutsip.buffer.Buffer;
+import com.aboutsip.yajpcap.framer.Framer;
+import com.aboutsip.yajpcap.framer.FramerManager;
+import com.aboutsip.yajpcap.framer.FramingError;
+import com.aboutsip.yajpcap.packet.IPPacket;
+import com.aboutsip.yajpcap.packet.IPv6PacketImpl;
+import com.aboutsip.yajpcap.packet.MACPacket;
+import com.aboutsip.yajpcap.packet.PacketParseException;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * An IPv6 frame. The fixed header, the extension headers (if any) and the
+ * payload are all just views into the original buffer.
+ * 
+ * @author jonas@jonasborjesson.com
+ */
+public final class IPv6Frame extends AbstractFrame implements IPFrame {
+
+    private final Layer2Frame parentFrame;
+
+    /**
+     * The fixed 40 bytes of the ipv6 header
+     */
+    private final Buffer headers;
+
+    /**
+     * All the extension headers, or null if there are none.
+     */
+    private final Buffer extensionHeaders;
+
+    /**
+     * The protocol number of the upper layer protocol, i.e., the next header
+     * of the last extension header.
+     */
+    private final int nextHeader;
+
+    /**
+     * Whether this packet is a fragment of a larger packet.
+     */
+    private final boolean fragment;
+
+    /**
+     * @param headers the fixed 40 bytes of the ipv6 header
+     * @param extensionHeaders all the extension headers or null if there are
+     *            none
+     * @param nextHeader the protocol number of the payload
+     * @param fragment whether this is a fragment of a larger packet
+     * @param payload the payload of the ipv6 frame
+     */
+    public IPv6Frame(final FramerManager framerManager, final Layer2Frame parent, final Buffer headers,
+            final Buffer extensionHeaders, final int nextHeader, final boolean fragment, final Buffer payload) {
+        super(framerManager, Protocol.IPv6, payload);
+        assert parent != null;
+        assert headers != null;
+        this.parentFrame = parent;
+        this.headers = headers;
+        this.extensionHeaders = extensionHeaders;
+        this.nextHeader = nextHeader;
+        this.fragment = fragment;
+    }
+
+    /**
+     * The version of this ip frame, will always be 6
+     * 
+     * @return
+     */
+    @Override
+    public int getVersion() {
+        return 6;
+    }
+
+    /**
+     * The length of all the headers, i.e. the fixed header plus all extension
+     * headers, in bytes.
+     * 
+     * @return
+     */
+    @Override
+    public int getHeaderLength() {
+        return 40 + (this.extensionHeaders != null ? this.extensionHeaders.capacity() : 0);
+    }
+
+    public int getTrafficClass() {
+        return (this.headers.getUnsignedShort(0) >>> 4) & 0xFF;
+    }
+
+    public int getFlowLabel() {
+        return this.headers.getInt(0) & 0xFFFFF;
+    }
+
+    /**
+     * The length of everything following the fixed header, as stated in the
+     * header.
+     * 
+     * @return
+     */
+    public int getPayloadLength() {
+        return this.headers.getUnsignedShort(4);
+    }
+
+    public int getHopLimit() {
+        return this.headers.getUnsignedByte(7);
+    }
+
+    /**
+     * The protocol number of the payload, e.g. 17 for UDP. If there are any
+     * extension headers, this is the next header of the last one of them.
+     * 
+     * @return
+     */
+    public int getNextHeader() {
+        return this.nextHeader;
+    }
+
+    /**
+     * All the extension headers as they appeared on the wire.
+     * 
+     * @return the extension headers or null if there are none
+     */
+    public Buffer getExtensionHeaders() {
+        return this.extensionHeaders;
+    }
+
+    /**
+     * Whether this packet is a fragment of a larger packet. Note that
+     * fragmented ipv6 packets are not reassembled.
+     * 
+     * @return
+     */
+    public boolean isFragment() {
+        return this.fragment;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRawSourceIpHigh() {
+        return getLong(8);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRawSourceIpLow() {
+        return getLong(16);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRawDestinationIpHigh() {
+        return getLong(24);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRawDestinationIpLow() {
+        return getLong(32);
+    }
+
+    private long getLong(final int index) {
+        return ((long) this.headers.getInt(index) << 32) | (this.headers.getInt(index + 4) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeExternal(final ObjectOutput out) throws IOException {
+        this.parentFrame.writeExternal(out);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IPPacket parse() throws PacketParseException {
+        final MACPacket packet = this.parentFrame.parse();
+        return new IPv6PacketImpl(packet, this.headers);
+    }
+
+    @Override
+    protected Frame framePayload(final FramerManager framerManager, final Buffer payload) throws IOException {
+        if (this.fragment) {
+            return fail(FramingError.UNSUPPORTED);
+        }
+
+        final Protocol protocol = Protocol.valueOf((byte) this.nextHeader);
+        final Framer framer = protocol == null ? null : framerManager.getFramer(protocol);
+        if (framer != null) {
+            return framer.frame(this, payload);
+        }
+
+        return fail(FramingError.UNSUPPORTED);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(final OutputStream out) throws IOException {
+        this.parentFrame.write(out);
+    }
+
+    @Override
+    public long getArrivalTime() {
+        return this.parentFrame.getArrivalTime();
+    }
+
+}
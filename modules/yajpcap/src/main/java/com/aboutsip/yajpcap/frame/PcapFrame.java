@@ -8,8 +8,10 @@ import java.io.ObjectOutput;
 import java.io.OutputStream;
 
 import com.aboutsip.buffer.Buffer;
+import com.aboutsip.yajpcap.PcapChannelWriter;
 import com.aboutsip.yajpcap.framer.Framer;
 import com.aboutsip.yajpcap.framer.FramerManager;
+import com.aboutsip.yajpcap.framer.FramingError;
 import com.aboutsip.yajpcap.packet.PCapPacket;
 import com.aboutsip.yajpcap.packet.PacketParseException;
 import com.aboutsip.yajpcap.packet.impl.PCapPacketImpl;
@@ -29,21 +31,122 @@ public final class PcapFrame extends AbstractFrame implements Layer1Frame {
      */
     private final PcapRecordHeader header;
 
+    /**
+     * The data link type of the interface this frame was captured on, or -1
+     * (negative one) if it is the same as for the entire capture. Only pcapng
+     * files can have different link types for different frames.
+     */
+    private final int dataLinkType;
+
+    /**
+     * The offset within the capture file where the record of this frame
+     * starts, or -1 (negative one) if unknown.
+     */
+    private final long offset;
+
     /**
      * 
      */
     public PcapFrame(final FramerManager framerManager, final PcapRecordHeader header, final Buffer payload) {
+        this(framerManager, header, payload, -1);
+    }
+
+    public PcapFrame(final FramerManager framerManager, final PcapRecordHeader header, final Buffer payload,
+            final int dataLinkType) {
+        this(framerManager, header, payload, dataLinkType, -1);
+    }
+
+    /**
+     * 
+     * @param framerManager
+     * @param header
+     * @param payload
+     * @param dataLinkType
+     * @param offset
+     *            the offset within the capture file where the record (record
+     *            header and data) of this frame starts.
+     */
+    public PcapFrame(final FramerManager framerManager, final PcapRecordHeader header, final Buffer payload,
+            final int dataLinkType, final long offset) {
         super(framerManager, Protocol.PCAP, payload);
         assert framerManager != null;
         assert header != null;
         this.header = header;
+        this.dataLinkType = dataLinkType;
+        this.offset = offset;
+    }
+
+    /**
+     * The pcap record header of this frame.
+     * 
+     * @return
+     */
+    public PcapRecordHeader getRecordHeader() {
+        return this.header;
+    }
+
+    /**
+     * The offset within the capture file where the record of this frame
+     * starts. The record is the 16 byte record header followed by
+     * {@link #getRecordLength()} - 16 bytes of data, so it can be copied
+     * straight from the file, see {@link com.aboutsip.yajpcap.PcapExtractor}.
+     * 
+     * Every frame read through the record readers has an offset, no matter
+     * if the capture was opened as a file or a stream, which is the case for
+     * all the loops of {@link com.aboutsip.yajpcap.Pcap} that take a filter
+     * or a time range. However, the records can only be copied by the
+     * {@link com.aboutsip.yajpcap.PcapExtractor} when the capture is a file.
+     * 
+     * @return the offset or -1 (negative one) if unknown, e.g. if the frame
+     *         was framed straight off of a buffer (see
+     *         {@link com.aboutsip.yajpcap.framer.PcapFramer}), was decoded
+     *         through a {@link com.aboutsip.yajpcap.PcapDecoder} or came from
+     *         a pcapng file or a HEP packet.
+     */
+    public long getOffset() {
+        return this.offset;
+    }
+
+    /**
+     * The length of the record of this frame, i.e., the record header plus
+     * the captured data.
+     * 
+     * @return
+     */
+    public long getRecordLength() {
+        return 16 + this.header.getCapturedLength();
     }
 
+    /**
+     * The data link type of this frame.
+     * 
+     * @return the data link type or -1 (negative one) if it is the same as for
+     *         the entire capture
+     */
+    public int getDataLinkType() {
+        return this.dataLinkType;
+    }
 
     @Override
     protected Frame framePayload(final FramerManager framerManager, final Buffer payload) throws IOException {
-        final Framer sllFramer = framerManager.getFramer(Protocol.SLL);
+        final int linkType = this.dataLinkType != -1 ? this.dataLinkType : framerManager.getDataLinkType();
+        final Frame frame = framerManager.getFastPathDecoder().decode(this, payload, linkType);
+        if (frame != null) {
+            return frame;
+        }
 
+        // the data link type of the capture tells us what the link layer is
+        final Protocol linkLayer = FramerManager.getLinkLayerProtocol(linkType);
+        if (linkLayer != null) {
+            final Framer framer = framerManager.getFramer(linkLayer);
+            return framer.frame(this, payload);
+        } else if (linkType != -1) {
+            // a link type we don't know how to frame
+            return fail(FramingError.UNSUPPORTED);
+        }
+
+        // we don't know where this frame came from so we will have to guess
+        final Framer sllFramer = framerManager.getFramer(Protocol.SLL);
         if (sllFramer.accept(payload)) {
             return sllFramer.frame(this, payload);
         }
@@ -57,7 +160,7 @@ public final class PcapFrame extends AbstractFrame implements Layer1Frame {
      */
     @Override
     public void writeExternal(final ObjectOutput out) throws IOException {
-        // out.write(this.header);
+        FrameCodec.encode(this, out);
     }
 
     /**
@@ -82,6 +185,11 @@ public final class PcapFrame extends AbstractFrame implements Layer1Frame {
      */
     @Override
     public void write(final OutputStream out) throws IOException {
+        if (out instanceof PcapChannelWriter.FrameCollector) {
+            ((PcapChannelWriter.FrameCollector) out).collect(this);
+            return;
+        }
+
         this.header.write(out);
         out.write(super.getPayload().getArray());
     }
@@ -12,6 +12,23 @@ import com.aboutsip.buffer.Buffer;
  */
 public final class PcapGlobalHeader {
 
+    /**
+     * Ethernet, see http://www.tcpdump.org/linktypes.html for the full list of
+     * link types.
+     */
+    public static final int DLT_EN10MB = 1;
+
+    /**
+     * Linux cooked capture, which is what you get when capturing on "any".
+     */
+    public static final int DLT_LINUX_SLL = 113;
+
+    /**
+     * Linux cooked capture version 2, which newer versions of libpcap use when
+     * capturing on "any".
+     */
+    public static final int DLT_LINUX_SLL2 = 276;
+
     /**
      * See http://wiki.wireshark.org/Development/LibpcapFileFormat
      */
@@ -62,6 +79,16 @@ public final class PcapGlobalHeader {
      * @return
      */
     public static PcapGlobalHeader createDefaultHeader() {
+        return createDefaultHeader(DLT_EN10MB);
+    }
+
+    /**
+     * Same as {@link #createDefaultHeader()} but for the given data link type.
+     * 
+     * @param dataLinkType
+     * @return
+     */
+    public static PcapGlobalHeader createDefaultHeader(final int dataLinkType) {
         final byte[] body = new byte[20];
 
         // major version number
@@ -90,11 +117,11 @@ public final class PcapGlobalHeader {
         body[14] = (byte) 0x00;
         body[15] = (byte) 0x00;
 
-        // data link type - zero is ethernet
-        body[16] = (byte) 0x01;
-        body[17] = (byte) 0x00;
-        body[18] = (byte) 0x00;
-        body[19] = (byte) 0x00;
+        // data link type - one is ethernet
+        body[16] = (byte) dataLinkType;
+        body[17] = (byte) (dataLinkType >>> 8);
+        body[18] = (byte) (dataLinkType >>> 16);
+        body[19] = (byte) (dataLinkType >>> 24);
 
         return new PcapGlobalHeader(ByteOrder.LITTLE_ENDIAN, body);
     }
@@ -15,7 +15,7 @@ import com.aboutsip.buffer.Buffer;
  */
 public final class PcapRecordHeader {
 
-    private ByteOrder byteOrder;
+    private final ByteOrder byteOrder;
 
     private final Buffer body;
 
@@ -26,15 +26,26 @@ public final class PcapRecordHeader {
         assert body != null;
         assert body.capacity() == 16;
 
+        this.byteOrder = byteOrder;
         this.body = body;
     }
 
+    /**
+     * The byte order the record header is written in, which is the same as
+     * for the pcap it was read from.
+     * 
+     * @return
+     */
+    public ByteOrder getByteOrder() {
+        return this.byteOrder;
+    }
+
     public long getTimeStampSeconds() {
-        return PcapGlobalHeader.getUnsignedInt(0, this.body.getArray(), this.byteOrder);
+        return getUnsignedInt(0);
     }
 
     public long getTimeStampMicroSeconds() {
-        return PcapGlobalHeader.getUnsignedInt(4, this.body.getArray(), this.byteOrder);
+        return getUnsignedInt(4);
     }
 
     /**
@@ -45,7 +56,7 @@ public final class PcapRecordHeader {
      * @return
      */
     public long getTotalLength() {
-        return PcapGlobalHeader.getUnsignedInt(8, this.body.getArray(), this.byteOrder);
+        return getUnsignedInt(8);
     }
 
     /**
@@ -54,7 +65,19 @@ public final class PcapRecordHeader {
      * @return the length in bytes
      */
     public long getCapturedLength() {
-        return PcapGlobalHeader.getUnsignedInt(12, this.body.getArray(), this.byteOrder);
+        return getUnsignedInt(12);
+    }
+
+    /**
+     * Read an unsigned int straight out of the header without copying it
+     * first.
+     */
+    private long getUnsignedInt(final int index) {
+        final long value = this.body.getInt(index) & 0xFFFFFFFFL;
+        if (this.byteOrder == ByteOrder.BIG_ENDIAN) {
+            return value;
+        }
+        return Integer.reverseBytes((int) value) & 0xFFFFFFFFL;
     }
 
     public void write(final OutputStream out) throws IOException {
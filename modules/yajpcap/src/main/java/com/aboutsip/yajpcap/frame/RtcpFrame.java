@@ -0,0 +1,101 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.frame;
+
+import java.io.IOException;
+import java.io.ObjectOutput;
+import java.io.OutputStream;
+
+import com.aboutsip.buffer.Buffer;
+import com.aboutsip.yajpcap.framer.FramerManager;
+import com.aboutsip.yajpcap.packet.PacketParseException;
+import com.aboutsip.yajpcap.packet.TransportPacket;
+import com.aboutsip.yajpcap.packet.rtcp.RtcpPacket;
+import com.aboutsip.yajpcap.packet.rtcp.impl.RtcpPacketImpl;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * A compound RTCP packet. Nothing is carried within RTCP so this frame
+ * never has a payload to frame.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class RtcpFrame extends AbstractFrame implements Layer7Frame {
+
+    private final Layer4Frame parentFrame;
+
+    /**
+     * All the RTCP messages of the compound packet.
+     */
+    private final Buffer packets;
+
+    /**
+     * The number of RTCP messages within the compound packet.
+     */
+    private final int count;
+
+    public RtcpFrame(final FramerManager framerManager, final Layer4Frame parentFrame, final Buffer packets,
+            final int count) {
+        super(framerManager, Protocol.RTCP, null);
+        assert parentFrame != null;
+        this.parentFrame = parentFrame;
+        this.packets = packets;
+        this.count = count;
+    }
+
+    /**
+     * The number of RTCP messages within this compound packet.
+     *
+     * @return
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * All the RTCP messages of the compound packet.
+     */
+    Buffer getPackets() {
+        return this.packets;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RtcpPacket parse() throws PacketParseException {
+        final TransportPacket pkt = this.parentFrame.parse();
+        return new RtcpPacketImpl(pkt, this.packets);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeExternal(final ObjectOutput out) throws IOException {
+        this.parentFrame.writeExternal(out);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Frame framePayload(final FramerManager framerManager, final Buffer payload) throws IOException {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(final OutputStream out) throws IOException {
+        this.parentFrame.write(out);
+    }
+
+    @Override
+    public long getArrivalTime() {
+        return this.parentFrame.getArrivalTime();
+    }
+
+}
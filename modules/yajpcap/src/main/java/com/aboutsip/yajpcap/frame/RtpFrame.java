@@ -36,6 +36,13 @@ public class RtpFrame extends AbstractFrame implements Layer7Frame {
         this.payload = payload;
     }
 
+    /**
+     * The fixed RTP header including the CSRC list and header extension.
+     */
+    Buffer getHeaders() {
+        return this.headers;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -56,7 +56,7 @@ public final class SDPFrame extends AbstractFrame implements Layer7Frame {
      */
     @Override
     public void writeExternal(final ObjectOutput out) throws IOException {
-        throw new RuntimeException("Not yet implemented");
+        this.parentFrame.writeExternal(out);
     }
 
     /**
@@ -72,8 +72,8 @@ public final class SDPFrame extends AbstractFrame implements Layer7Frame {
      * {@inheritDoc}
      */
     @Override
-    public void write(final OutputStream out) {
-        throw new RuntimeException("Not yet implemented");
+    public void write(final OutputStream out) throws IOException {
+        this.parentFrame.write(out);
     }
 
     @Override
@@ -10,6 +10,7 @@ import java.io.OutputStream;
 import com.aboutsip.buffer.Buffer;
 import com.aboutsip.yajpcap.framer.Framer;
 import com.aboutsip.yajpcap.framer.FramerManager;
+import com.aboutsip.yajpcap.metrics.PipelineMetrics;
 import com.aboutsip.yajpcap.packet.PacketParseException;
 import com.aboutsip.yajpcap.packet.TransportPacket;
 import com.aboutsip.yajpcap.packet.sip.SipMessage;
@@ -103,12 +104,20 @@ public final class SipFrame extends AbstractFrame implements Layer7Frame {
      */
     @Override
     public SipMessage parse() throws PacketParseException {
+        final boolean timed = PipelineMetrics.isEnabled();
+        final long start = timed ? System.nanoTime() : 0;
         final TransportPacket pkt = this.parentFrame.parse();
         final SipInitialLine initialLine = SipInitialLine.parse(this.initialLine);
+        final SipMessage msg;
         if (initialLine.isRequestLine()) {
-            return new SipRequestImpl(pkt, (SipRequestLine) initialLine, this.headers, getPayload(), this);
+            msg = new SipRequestImpl(pkt, (SipRequestLine) initialLine, this.headers, getPayload(), this);
+        } else {
+            msg = new SipResponseImpl(pkt, (SipResponseLine) initialLine, this.headers, getPayload(), this);
         }
-        return new SipResponseImpl(pkt, (SipResponseLine) initialLine, this.headers, getPayload(), this);
+        if (timed) {
+            PipelineMetrics.getInstance().sipParsed(System.nanoTime() - start);
+        }
+        return msg;
     }
 
     /**
@@ -179,6 +188,12 @@ public final class SipFrame extends AbstractFrame implements Layer7Frame {
         Buffer contentType = null;
         Buffer line = null;
         while ((line = headers.readLine()) != null) {
+            // too short to be a content type header, and the message may
+            // have been cut short anywhere so don't assume anything
+            if (line.capacity() < 3) {
+                continue;
+            }
+
             // quick first test
             final byte a = line.getByte(0);
             final byte b = line.getByte(1);
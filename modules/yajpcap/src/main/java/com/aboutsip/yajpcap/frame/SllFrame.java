@@ -11,6 +11,7 @@ import com.aboutsip.buffer.Buffer;
 import com.aboutsip.yajpcap.framer.EthernetFramer;
 import com.aboutsip.yajpcap.framer.Framer;
 import com.aboutsip.yajpcap.framer.FramerManager;
+import com.aboutsip.yajpcap.framer.FramingError;
 import com.aboutsip.yajpcap.packet.MACPacket;
 import com.aboutsip.yajpcap.packet.MACPacketImpl;
 import com.aboutsip.yajpcap.packet.Packet;
@@ -22,6 +23,10 @@ import com.aboutsip.yajpcap.protocol.Protocol;
  * 
  * http://wiki.wireshark.org/SLL
  * 
+ * Both version 1 and version 2 of the cooked header are represented by this
+ * frame. Version 2 (http://www.tcpdump.org/linktypes/LINKTYPE_LINUX_SLL2.html)
+ * is 20 bytes long and has the protocol type first instead of last.
+ * 
  * @author jonas@jonasborjesson.com
  */
 public final class SllFrame extends AbstractFrame implements Layer2Frame {
@@ -36,21 +41,37 @@ public final class SllFrame extends AbstractFrame implements Layer2Frame {
      */
     public SllFrame(final FramerManager framerManager, final Layer1Frame parentFrame, final Buffer headers,
             final Buffer payload) {
-        super(framerManager, Protocol.SLL, payload);
+        this(framerManager, Protocol.SLL, parentFrame, headers, payload);
+    }
+
+    /**
+     * @param framerManager
+     * @param p either {@link Protocol#SLL} or {@link Protocol#SLL2}
+     * @param parentFrame
+     * @param headers the 16 (version 1) or 20 (version 2) bytes of cooked
+     *            header
+     * @param payload
+     */
+    public SllFrame(final FramerManager framerManager, final Protocol p, final Layer1Frame parentFrame,
+            final Buffer headers, final Buffer payload) {
+        super(framerManager, p, payload);
         assert parentFrame != null;
+        assert (p == Protocol.SLL) || (p == Protocol.SLL2);
         this.parentFrame = parentFrame;
         this.headers = headers;
     }
 
+    /**
+     * 
+     * @return the ether type or null if it is one we don't know about
+     * @throws IndexOutOfBoundsException
+     * @throws IOException
+     */
     public EthernetFrame.EtherType getType() throws IndexOutOfBoundsException, IOException {
-        final byte b1 = this.headers.getByte(14);
-        final byte b2 = this.headers.getByte(15);
-
-        try {
-            return EthernetFramer.getEtherType(b1, b2);
-        } catch (final UnknownEtherType e) {
-            throw new RuntimeException("uknown ether type");
-        }
+        final int offset = getProtocol() == Protocol.SLL2 ? 0 : 14;
+        final byte b1 = this.headers.getByte(offset);
+        final byte b2 = this.headers.getByte(offset + 1);
+        return EthernetFramer.getEtherTypeSafe(b1, b2);
     }
 
     /**
@@ -60,7 +81,8 @@ public final class SllFrame extends AbstractFrame implements Layer2Frame {
     public MACPacket parse() throws PacketParseException {
         try {
             final Packet parentPacket = this.parentFrame.parse();
-            final Buffer src = this.headers.slice(6, 12);
+            final Buffer src = getProtocol() == Protocol.SLL2 ? this.headers.slice(12, 18) : this.headers.slice(6,
+                    12);
             final String source = EthernetFrame.toHexString(src);
             return new MACPacketImpl(parentPacket, source, source);
         } catch (final IOException e) {
@@ -90,15 +112,16 @@ public final class SllFrame extends AbstractFrame implements Layer2Frame {
      */
     @Override
     protected Frame framePayload(final FramerManager framerManager, final Buffer buffer) throws IOException {
-        switch (getType()) {
-        case IPv4:
+        if (getType() == EthernetFrame.EtherType.IPv4) {
             final Framer framer = framerManager.getFramer(Protocol.IPv4);
             return framer.frame(this, buffer);
-        case IPv6:
-            throw new RuntimeException("Cant do ipv6 right now");
-        default:
-            throw new RuntimeException("Uknown ether type");
+        } else if (getType() == EthernetFrame.EtherType.IPv6) {
+            final Framer framer = framerManager.getFramer(Protocol.IPv6);
+            return framer.frame(this, buffer);
         }
+
+        // no other ether types right now
+        return fail(FramingError.UNSUPPORTED);
     }
 
     @Override
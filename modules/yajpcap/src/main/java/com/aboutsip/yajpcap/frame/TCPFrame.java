@@ -6,10 +6,14 @@ package com.aboutsip.yajpcap.frame;
 import java.io.IOException;
 import java.io.ObjectOutput;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import com.aboutsip.buffer.Buffer;
 import com.aboutsip.yajpcap.framer.Framer;
 import com.aboutsip.yajpcap.framer.FramerManager;
+import com.aboutsip.yajpcap.framer.SIPFramer;
 import com.aboutsip.yajpcap.packet.IPPacket;
 import com.aboutsip.yajpcap.packet.PacketParseException;
 import com.aboutsip.yajpcap.packet.TransportPacket;
@@ -34,6 +38,11 @@ public final class TCPFrame extends AbstractFrame implements Layer4Frame {
      */
     private final Buffer options;
 
+    /**
+     * All the application layer frames completed by this segment.
+     */
+    private List<Frame> applicationFrames = Collections.emptyList();
+
     /**
      * @param framerManager
      * @param p
@@ -146,6 +155,36 @@ public final class TCPFrame extends AbstractFrame implements Layer4Frame {
         return this.headers.getUnsignedShort(2);
     }
 
+    public long getSequenceNumber() {
+        return this.headers.getInt(4) & 0xFFFFFFFFL;
+    }
+
+    public long getAcknowledgementNumber() {
+        return this.headers.getInt(8) & 0xFFFFFFFFL;
+    }
+
+    public Layer3Frame getParentFrame() {
+        return this.parentFrame;
+    }
+
+    /**
+     * Get all the application layer frames that were completed by this
+     * segment. For most protocols that is just the next frame, if any, but
+     * SIP is reassembled across segments, which means that a single segment
+     * may complete none, one or several SIP messages. The first one of them
+     * is also the next frame of this segment.
+     * 
+     * @return
+     * @throws IOException
+     */
+    public List<Frame> getApplicationFrames() throws IOException {
+        final Frame next = getNextFrame();
+        if (this.applicationFrames.isEmpty() && (next != null)) {
+            return Collections.singletonList(next);
+        }
+        return this.applicationFrames;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -180,9 +219,24 @@ public final class TCPFrame extends AbstractFrame implements Layer4Frame {
             return null;
         }
 
-        final Framer framer = framerManager.getFramer(payload);
+        final Framer framer = framerManager.getFramer(this.parentFrame, Protocol.TCP, getSourcePort(),
+                getDestinationPort(), payload);
+        if ((framer instanceof SIPFramer) && (this.parentFrame instanceof IPFrame)) {
+            final List<Buffer> messages = framerManager.getTCPReassembler().reassemble(this, payload);
+            if (messages.isEmpty()) {
+                return null;
+            }
+
+            final List<Frame> frames = new ArrayList<Frame>(messages.size());
+            for (final Buffer message : messages) {
+                frames.add(learnMedia(framer.frame(this, message)));
+            }
+            this.applicationFrames = frames;
+            return frames.get(0);
+        }
+
         if (framer != null) {
-            return framer.frame(this, payload);
+            return learnMedia(framer.frame(this, payload));
         }
 
         // unknown payload
@@ -63,14 +63,10 @@ public final class UDPFrame extends AbstractFrame implements Layer4Frame {
             return null;
         }
 
-        final Framer framer = framerManager.getFramer(payload);
+        final Framer framer = framerManager.getFramer(this.parentFrame, Protocol.UDP, getSourcePort(),
+                getDestinationPort(), payload);
         if (framer != null) {
-            try {
-                return framer.frame(this, payload);
-            } catch (final RuntimeException e) {
-                e.printStackTrace();
-                return null;
-            }
+            return learnMedia(framer.frame(this, payload));
         }
 
         // unknown payload
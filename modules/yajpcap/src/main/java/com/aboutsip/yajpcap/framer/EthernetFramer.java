@@ -18,6 +18,21 @@ import com.aboutsip.yajpcap.protocol.Protocol;
  */
 public class EthernetFramer implements Layer2Framer {
 
+    /**
+     * 802.1Q VLAN tag
+     */
+    public static final int ETHERTYPE_8021Q = 0x8100;
+
+    /**
+     * 802.1ad, the outer tag of a QinQ frame
+     */
+    public static final int ETHERTYPE_8021AD = 0x88A8;
+
+    /**
+     * Pre-standard QinQ outer tag, still used by some older switches.
+     */
+    public static final int ETHERTYPE_QINQ = 0x9100;
+
     private final FramerManager framerManager;
 
     public EthernetFramer(final FramerManager framerManager) {
@@ -41,21 +56,49 @@ public class EthernetFramer implements Layer2Framer {
             throw new IllegalArgumentException("The parent frame cannot be null");
         }
 
+        if (buffer.readableBytes() < 14) {
+            this.framerManager.reportError(parent, FramingError.TRUNCATED);
+            return null;
+        }
+
+        // count the VLAN tags, if any, so we can grab them all in one go
+        final int start = buffer.getReaderIndex();
+        final int end = start + buffer.readableBytes();
+        int index = start + 12;
+        while (isVlanTag(buffer.getUnsignedShort(index))) {
+            index += 4;
+            if ((index + 2) > end) {
+                this.framerManager.reportError(parent, FramingError.TRUNCATED);
+                return null;
+            }
+        }
+        final int tags = (index - start - 12) / 4;
+
         final Buffer destMacAddress = buffer.readBytes(6);
         final Buffer srcMacAddress = buffer.readBytes(6);
+        final Buffer vlanTags = tags > 0 ? buffer.readBytes(tags * 4) : null;
+
+        // an ether type we don't know about will be reported once
+        // someone tries to frame the payload
         final byte b1 = buffer.readByte();
         final byte b2 = buffer.readByte();
-
-        EthernetFrame.EtherType etherType;
-        try {
-            etherType = getEtherType(b1, b2);
-        } catch (final UnknownEtherType e) {
-            throw new RuntimeException("uknown ether type");
-        }
+        final EthernetFrame.EtherType etherType = getEtherTypeSafe(b1, b2);
 
         final Buffer data = buffer.slice(buffer.capacity());
 
-        return new EthernetFrame(this.framerManager, parent, destMacAddress, srcMacAddress, etherType, data);
+        return new EthernetFrame(this.framerManager, parent, destMacAddress, srcMacAddress, vlanTags, etherType,
+                data);
+    }
+
+    /**
+     * Check whether the ether type is really the tag protocol identifier of
+     * an 802.1Q or 802.1ad (QinQ) VLAN tag.
+     * 
+     * @param etherType
+     * @return
+     */
+    public static boolean isVlanTag(final int etherType) {
+        return (etherType == ETHERTYPE_8021Q) || (etherType == ETHERTYPE_8021AD) || (etherType == ETHERTYPE_QINQ);
     }
 
     public static EthernetFrame.EtherType getEtherType(final byte b1, final byte b2) throws UnknownEtherType {
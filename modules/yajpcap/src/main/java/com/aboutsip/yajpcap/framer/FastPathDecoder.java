@@ -0,0 +1,164 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.framer;
+
+import java.io.IOException;
+
+import com.aboutsip.buffer.Buffer;
+import com.aboutsip.yajpcap.frame.AbstractFrame;
+import com.aboutsip.yajpcap.frame.EthernetFrame;
+import com.aboutsip.yajpcap.frame.Frame;
+import com.aboutsip.yajpcap.frame.IPv4Frame;
+import com.aboutsip.yajpcap.frame.Layer2Frame;
+import com.aboutsip.yajpcap.frame.PcapFrame;
+import com.aboutsip.yajpcap.frame.PcapGlobalHeader;
+import com.aboutsip.yajpcap.frame.SllFrame;
+import com.aboutsip.yajpcap.frame.TCPFrame;
+import com.aboutsip.yajpcap.frame.UDPFrame;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * Almost all of the traffic we see is Ethernet (possibly VLAN tagged) or Linux
+ * cooked carrying IPv4 carrying UDP or TCP. Instead of going through the
+ * generic framers, which each have to look up the next framer in the
+ * {@link FramerManager},
+ * the {@link FastPathDecoder} figures out where all of those layers start in
+ * one straight pass over the raw bytes and creates all the frames at once,
+ * already linked together.
+ *
+ * As soon as something is out of the ordinary (unknown data link type, not
+ * IPv4, IP options we can't deal with, fragments etc) we simply stop and
+ * leave the rest to the regular framers. The application layer is always
+ * left to the transport frame, which will use the {@link FramerManager} and
+ * its flow table to figure out what the payload is.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class FastPathDecoder {
+
+    private static final int ETHERTYPE_IPV4 = 0x0800;
+
+    private static final int IP_PROTOCOL_TCP = 6;
+
+    private static final int IP_PROTOCOL_UDP = 17;
+
+    private final FramerManager framerManager;
+
+    public FastPathDecoder(final FramerManager framerManager) {
+        assert framerManager != null;
+        this.framerManager = framerManager;
+    }
+
+    /**
+     * Decode the payload of the pcap frame.
+     *
+     * @param parent the pcap frame
+     * @param payload the payload of the pcap frame
+     * @param dataLinkType the data link type as found in the global pcap
+     *            header.
+     * @return the link layer frame or null if this isn't something the fast
+     *         path deals with, in which case you need to go through the
+     *         regular framers.
+     * @throws IOException
+     */
+    public Frame decode(final PcapFrame parent, final Buffer payload, final int dataLinkType)
+            throws IOException {
+        final int length = payload.capacity();
+
+        int etherType;
+        int ipOffset;
+        if (dataLinkType == PcapGlobalHeader.DLT_EN10MB) {
+            if (length < 14) {
+                return null;
+            }
+            etherType = payload.getUnsignedShort(12);
+            ipOffset = 14;
+            while (EthernetFramer.isVlanTag(etherType) && ((ipOffset + 4) <= length)) {
+                etherType = payload.getUnsignedShort(ipOffset + 2);
+                ipOffset += 4;
+            }
+        } else if (dataLinkType == PcapGlobalHeader.DLT_LINUX_SLL) {
+            if (length < 16) {
+                return null;
+            }
+            etherType = payload.getUnsignedShort(14);
+            ipOffset = 16;
+        } else if (dataLinkType == PcapGlobalHeader.DLT_LINUX_SLL2) {
+            if (length < 20) {
+                return null;
+            }
+            etherType = payload.getUnsignedShort(0);
+            ipOffset = 20;
+        } else {
+            return null;
+        }
+
+        if (etherType != ETHERTYPE_IPV4) {
+            return null;
+        }
+
+        final AbstractFrame link;
+        final Buffer linkPayload = payload.slice(ipOffset, length);
+        if (dataLinkType == PcapGlobalHeader.DLT_EN10MB) {
+            final Buffer vlanTags = ipOffset > 14 ? payload.slice(12, ipOffset - 2) : null;
+            link = new EthernetFrame(this.framerManager, parent, payload.slice(0, 6), payload.slice(6, 12),
+                    vlanTags, EthernetFrame.EtherType.IPv4, linkPayload);
+        } else if (dataLinkType == PcapGlobalHeader.DLT_LINUX_SLL) {
+            link = new SllFrame(this.framerManager, parent, payload.slice(0, 16), linkPayload);
+        } else {
+            link = new SllFrame(this.framerManager, Protocol.SLL2, parent, payload.slice(0, 20), linkPayload);
+        }
+
+        final FramingDepth depth = this.framerManager.getFramingDepth();
+        if (!depth.allows(3) || ((ipOffset + 20) > length)) {
+            return link;
+        }
+
+        final int versionAndLength = payload.getUnsignedByte(ipOffset);
+        final int ihl = versionAndLength & 0x0F;
+        final int transportOffset = ipOffset + (ihl * 4);
+        if (((versionAndLength >>> 4) != 4) || (ihl < 5) || (transportOffset > length)) {
+            return link;
+        }
+
+        final Buffer ipHeaders = payload.slice(ipOffset, ipOffset + 20);
+        final int options = ihl > 5 ? payload.getInt(ipOffset + 20) : 0;
+        final IPv4Frame ip = new IPv4Frame(this.framerManager, (Layer2Frame) link, ihl, ipHeaders, options, payload.slice(
+                transportOffset, length));
+        link.setNextFrame(ip);
+
+        // fragments are left to the regular framers
+        final int protocol = payload.getUnsignedByte(ipOffset + 9);
+        final int flagsAndOffset = payload.getUnsignedShort(ipOffset + 6);
+        if (!depth.allows(4) || ((flagsAndOffset & 0x3FFF) != 0)) {
+            return link;
+        }
+
+        AbstractFrame transport = null;
+        if ((protocol == IP_PROTOCOL_UDP) && ((transportOffset + 8) <= length)) {
+            transport = new UDPFrame(this.framerManager, ip, payload.slice(transportOffset, transportOffset + 8),
+                    payload.slice(transportOffset + 8, length));
+        } else if ((protocol == IP_PROTOCOL_TCP) && ((transportOffset + 20) <= length)) {
+            final int headerLength = ((payload.getUnsignedByte(transportOffset + 12) >>> 4) & 0x0F) * 4;
+            final int payloadOffset = transportOffset + headerLength;
+            if ((headerLength >= 20) && (payloadOffset <= length)) {
+                final Buffer tcpOptions = headerLength > 20 ? payload.slice(transportOffset + 20, payloadOffset) : null;
+                final Buffer data = payloadOffset < length ? payload.slice(payloadOffset, length) : null;
+                final TCPFrame tcp = new TCPFrame(this.framerManager, ip, payload.slice(transportOffset,
+                        transportOffset + 20), tcpOptions, data);
+                if (data == null) {
+                    this.framerManager.getTCPReassembler().close(tcp);
+                }
+                transport = tcp;
+            }
+        }
+
+        if (transport != null) {
+            ip.setNextFrame(transport);
+        }
+
+        return link;
+    }
+
+}
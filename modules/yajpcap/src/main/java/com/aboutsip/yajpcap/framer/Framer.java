@@ -30,7 +30,9 @@ public interface Framer<T extends Frame> {
      * @param buffer
      *            the buffer containing all the raw data
      * 
-     * @return a new frame
+     * @return a new frame or null if the buffer couldn't be framed, in
+     *         which case the reason has been reported through
+     *         {@link FramerManager#reportError(Frame, FramingError)}
      * @throws IOException
      *             in case something goes wrong when reading data from the
      *             buffer
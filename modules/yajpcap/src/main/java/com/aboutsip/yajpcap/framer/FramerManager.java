@@ -6,13 +6,21 @@ package com.aboutsip.yajpcap.framer;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import com.aboutsip.buffer.Buffer;
 import com.aboutsip.yajpcap.Clock;
 import com.aboutsip.yajpcap.Pcap;
+import com.aboutsip.yajpcap.flow.FlowTable;
+import com.aboutsip.yajpcap.frame.AbstractFrame;
+import com.aboutsip.yajpcap.frame.Frame;
+import com.aboutsip.yajpcap.frame.Layer3Frame;
+import com.aboutsip.yajpcap.frame.PcapGlobalHeader;
+import com.aboutsip.yajpcap.metrics.PipelineMetrics;
 import com.aboutsip.yajpcap.protocol.Protocol;
 
 /**
@@ -26,12 +34,55 @@ public final class FramerManager {
 
     private final Map<Protocol, Framer<?>> framers = new HashMap<Protocol, Framer<?>>();
 
+    /**
+     * The framers that may be carried directly by a transport protocol, which
+     * are the only ones worth asking about the payload of a transport frame.
+     */
+    private final Map<Protocol, Layer7Framer> layer7Framers = new EnumMap<Protocol, Layer7Framer>(Protocol.class);
+
     /**
      * The current time in the system, which is driven by
      * {@link Pcap#loop(com.aboutsip.yajpcap.FrameHandler)}.
      */
     private final PcapClock clock = new PcapClock();
 
+    /**
+     * Keeps track of the layer 7 protocol of all the flows we have seen so
+     * far.
+     */
+    private final FlowTable flowTable = new FlowTable(this.clock, FlowTable.DEFAULT_MAX_FLOWS);
+
+    /**
+     * How far down the protocol stack we will frame.
+     */
+    private volatile FramingDepth framingDepth = FramingDepth.APPLICATION;
+
+    /**
+     * The data link type of the capture we are framing, as found in the pcap
+     * global header, or -1 (negative one) if unknown.
+     */
+    private volatile int dataLinkType = -1;
+
+    /**
+     * The link layer protocol as given by the data link type, or null if the
+     * data link type is unknown or not supported.
+     */
+    private volatile Protocol linkLayerProtocol;
+
+    private final FastPathDecoder fastPathDecoder = new FastPathDecoder(this);
+
+    private final IPv4Reassembler reassembler = new IPv4Reassembler(this.clock);
+
+    private final TCPReassembler tcpReassembler = new TCPReassembler(this, this.clock);
+
+    /**
+     * The number of framing errors, indexed by the ordinal of the
+     * {@link FramingError}.
+     */
+    private final AtomicLongArray errors = new AtomicLongArray(FramingError.values().length);
+
+    private final PipelineMetrics metrics = PipelineMetrics.getInstance();
+
     static {
         // should be moved somewhere else but for now...
         instance.registerDefaultFramers();
@@ -41,6 +92,20 @@ public final class FramerManager {
         return instance;
     }
 
+    /**
+     * Create a new {@link FramerManager} with all the default framers
+     * registered. Unlike the shared instance, the new {@link FramerManager}
+     * has its own {@link Clock} and {@link FlowTable}, which is what you want
+     * when processing a single capture.
+     * 
+     * @return
+     */
+    public static final FramerManager createInstance() {
+        final FramerManager manager = new FramerManager();
+        manager.registerDefaultFramers();
+        return manager;
+    }
+
     /**
      * 
      */
@@ -55,7 +120,8 @@ public final class FramerManager {
     /**
      * Move the {@link Clock} to the specified time.
      * 
-     * @param time
+     * @param time the arrival time, in micro seconds, of the frame we are
+     *            about to process
      */
     public void tick(final long time) {
         this.clock.tick(time);
@@ -65,6 +131,127 @@ public final class FramerManager {
         return this.clock;
     }
 
+    public FlowTable getFlowTable() {
+        return this.flowTable;
+    }
+
+    /**
+     * The {@link IPv4Reassembler} that puts fragmented ip datagrams back
+     * together again.
+     * 
+     * @return
+     */
+    public IPv4Reassembler getIPv4Reassembler() {
+        return this.reassembler;
+    }
+
+    /**
+     * The {@link TCPReassembler} that puts the streams of the TCP connections
+     * carrying SIP back together again.
+     * 
+     * @return
+     */
+    public TCPReassembler getTCPReassembler() {
+        return this.tcpReassembler;
+    }
+
+    public FramingDepth getFramingDepth() {
+        return this.framingDepth;
+    }
+
+    /**
+     * Set how far down the protocol stack frames will be framed. Frames that
+     * already have been framed are not affected.
+     * 
+     * @param framingDepth
+     */
+    public void setFramingDepth(final FramingDepth framingDepth) {
+        if (framingDepth == null) {
+            throw new IllegalArgumentException("The framing depth cannot be null");
+        }
+        this.framingDepth = framingDepth;
+    }
+
+    /**
+     * @return the data link type or -1 (negative one) if unknown
+     */
+    public int getDataLinkType() {
+        return this.dataLinkType;
+    }
+
+    /**
+     * Set the data link type of the capture. Knowing the data link type
+     * allows the {@link FastPathDecoder} to be used for the most common
+     * protocol stacks.
+     * 
+     * @param dataLinkType
+     */
+    public void setDataLinkType(final int dataLinkType) {
+        this.linkLayerProtocol = getLinkLayerProtocol(dataLinkType);
+        this.dataLinkType = dataLinkType;
+    }
+
+    /**
+     * The link layer protocol of all the frames in the capture as given by the
+     * data link type.
+     * 
+     * @return the link layer protocol or null if the data link type is
+     *         unknown or isn't one we support
+     */
+    public Protocol getLinkLayerProtocol() {
+        return this.linkLayerProtocol;
+    }
+
+    /**
+     * Map a data link type to the link layer protocol.
+     * 
+     * @param dataLinkType
+     * @return the protocol or null if the data link type isn't one we support
+     */
+    public static Protocol getLinkLayerProtocol(final int dataLinkType) {
+        switch (dataLinkType) {
+        case PcapGlobalHeader.DLT_EN10MB:
+            return Protocol.ETHERNET_II;
+        case PcapGlobalHeader.DLT_LINUX_SLL:
+            return Protocol.SLL;
+        case PcapGlobalHeader.DLT_LINUX_SLL2:
+            return Protocol.SLL2;
+        default:
+            return null;
+        }
+    }
+
+    public FastPathDecoder getFastPathDecoder() {
+        return this.fastPathDecoder;
+    }
+
+    /**
+     * Report that the payload of a frame couldn't be framed. The frame will be
+     * marked with the error and the error will be counted.
+     * 
+     * @param frame the frame whose payload couldn't be framed
+     * @param error the reason
+     */
+    public void reportError(final Frame frame, final FramingError error) {
+        if (frame instanceof AbstractFrame) {
+            ((AbstractFrame) frame).setFramingError(error);
+        }
+        this.errors.incrementAndGet(error.ordinal());
+        if (PipelineMetrics.isEnabled()) {
+            this.metrics.malformed(error);
+        }
+    }
+
+    /**
+     * The number of times a particular framing error has been reported.
+     * 
+     * @param error
+     * @return
+     */
+    public long getErrorCount(final FramingError error) {
+        return this.errors.get(error.ordinal());
+    }
+
     /**
      * Register a new framer for a particular protocol.
      * 
@@ -77,6 +264,11 @@ public final class FramerManager {
             throw new IllegalArgumentException("The protocol or framer cannot be null");
         }
         this.framers.put(p, framer);
+        if (framer instanceof Layer7Framer) {
+            this.layer7Framers.put(p, (Layer7Framer) framer);
+        } else {
+            this.layer7Framers.remove(p);
+        }
     }
 
     /**
@@ -87,11 +279,14 @@ public final class FramerManager {
         registerFramer(Protocol.SIP, new SIPFramer(this));
         registerFramer(Protocol.SDP, new SDPFramer(this));
         registerFramer(Protocol.SLL, new SllFramer(this));
+        registerFramer(Protocol.SLL2, new Sll2Framer(this));
         registerFramer(Protocol.ETHERNET_II, new EthernetFramer(this));
         registerFramer(Protocol.IPv4, new IPv4Framer(this));
+        registerFramer(Protocol.IPv6, new IPv6Framer(this));
         registerFramer(Protocol.UDP, new UDPFramer(this));
         registerFramer(Protocol.TCP, new TCPFramer(this));
         registerFramer(Protocol.RTP, new RTPFramer(this));
+        registerFramer(Protocol.RTCP, new RTCPFramer(this));
     }
 
     /**
@@ -101,15 +296,13 @@ public final class FramerManager {
      * @return
      */
     public Framer<?> getFramer(final Buffer data) throws IOException {
-        // TODO: if we know which ports the data was sent from
-        // and came in on, we should be able to find a framer
-        // faster. Hence, allow the user to register known ports
-        // for certain protocols. However, this is just an optimization
-        // and we would still have to loop over all of them in case
-        // the port lookup doesn't turn out to be true
-
+        final boolean metrics = PipelineMetrics.isEnabled();
         for (final Framer<?> framer : this.framers.values()) {
-            if (framer.accept(data)) {
+            final boolean accepted = framer.accept(data);
+            if (metrics) {
+                this.metrics.acceptProbe(framer.getProtocol(), accepted);
+            }
+            if (accepted) {
                 return framer;
             }
         }
@@ -118,6 +311,67 @@ public final class FramerManager {
         return null;
     }
 
+    /**
+     * Try and find a framer for the payload of a transport frame. If we
+     * already know what protocol the flow is carrying we will skip asking the
+     * framers whether they accept the data. If we don't, we will probe the
+     * data but only with the framers of the protocols that can be carried
+     * directly by a transport protocol.
+     * 
+     * Only SIP flows are remembered since the accept checks of the other
+     * protocols are too loose to be trusted for the life of a flow. Media
+     * flows are learned from the SDP instead and if
+     * {@link FlowTable#setSdpRequiredForRtp(boolean)} has been turned on, RTP
+     * that hasn't been negotiated through SDP isn't recognized at all.
+     * 
+     * @param ip the ip frame that is carrying the transport frame
+     * @param transport the transport protocol, i.e. UDP or TCP
+     * @param srcPort the source port of the transport frame
+     * @param dstPort the destination port of the transport frame
+     * @param data the payload of the transport frame
+     * @return the framer or null if we have no idea what the data is
+     * @throws IOException
+     */
+    public Framer<?> getFramer(final Layer3Frame ip, final Protocol transport, final int srcPort,
+            final int dstPort, final Buffer data) throws IOException {
+        final Protocol known = this.flowTable.lookup(ip, transport, srcPort, dstPort);
+        if ((known == Protocol.RTP) || (known == Protocol.RTCP)) {
+            // RTP and RTCP may be sharing the same port, see RFC 5761
+            return getFramer(RTCPFramer.isMultiplexedRtcp(data) ? Protocol.RTCP : Protocol.RTP);
+        } else if (known != null) {
+            return getFramer(known);
+        }
+
+        final boolean metrics = PipelineMetrics.isEnabled();
+        Layer7Framer framer = null;
+        for (final Layer7Framer candidate : this.layer7Framers.values()) {
+            final boolean accepted = candidate.accept(data);
+            if (metrics) {
+                this.metrics.acceptProbe(candidate.getProtocol(), accepted);
+            }
+            if (accepted) {
+                framer = candidate;
+                break;
+            }
+        }
+
+        if (framer == null) {
+            return null;
+        }
+
+        final Protocol p = framer.getProtocol();
+        if ((p == Protocol.RTP) && this.flowTable.isSdpRequiredForRtp()) {
+            // not negotiated through any SDP we have seen so
+            // don't trust the RTP framer
+            return null;
+        }
+
+        if (p == Protocol.SIP) {
+            this.flowTable.learn(ip, transport, srcPort, dstPort, p);
+        }
+        return framer;
+    }
+
     private static class PcapClock implements Clock {
 
         private final AtomicLong currentTime = new AtomicLong();
@@ -131,11 +385,14 @@ public final class FramerManager {
             return this.currentTime.get();
         }
 
+        /**
+         * @param time the time in micro seconds
+         */
         public void tick(final long time) {
             // final SimpleDateFormat formatter = new SimpleDateFormat("yyyy.MM.dd HH:mm:ss.SSS");
             // final Date date = new Date(time / 1000);
             // System.out.println("Time is: " + formatter.format(date));
-            this.currentTime.set(time);
+            this.currentTime.set(time / 1000);
         }
 
     }
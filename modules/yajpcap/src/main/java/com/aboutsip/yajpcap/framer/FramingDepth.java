@@ -0,0 +1,59 @@
+/**
+ * 
+ */
+package com.aboutsip.yajpcap.framer;
+
+/**
+ * Controls how far down the stack of protocols a frame will be framed. E.g.,
+ * if all you care about is counting bytes per UDP port there is no reason to
+ * ask the layer 7 framers whether they recognize the payload.
+ * 
+ * @author jonas@jonasborjesson.com
+ */
+public enum FramingDepth {
+
+    /**
+     * Stop at the link layer, i.e., Ethernet or SLL.
+     */
+    LINK(2),
+
+    /**
+     * Stop at the network layer, i.e., IP.
+     */
+    NETWORK(3),
+
+    /**
+     * Stop at the transport layer, i.e., UDP or TCP.
+     */
+    TRANSPORT(4),
+
+    /**
+     * Frame everything we know about, which is the default.
+     */
+    APPLICATION(7);
+
+    private final int layer;
+
+    private FramingDepth(final int layer) {
+        this.layer = layer;
+    }
+
+    /**
+     * The deepest layer (as in the OSI model) that will be framed.
+     * 
+     * @return
+     */
+    public int getLayer() {
+        return this.layer;
+    }
+
+    /**
+     * Check whether frames belonging to the given layer should be framed.
+     * 
+     * @param layer
+     * @return
+     */
+    public boolean allows(final int layer) {
+        return layer <= this.layer;
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * 
+ */
+package com.aboutsip.yajpcap.framer;
+
+/**
+ * The reason why the payload of a frame couldn't be framed. Framing errors are
+ * not reported through exceptions since a noisy capture can have quite a few
+ * of them and filling in the stack traces would cost way more than the
+ * framing itself. Instead, the frame whose payload couldn't be framed is
+ * marked with the error (see
+ * {@link com.aboutsip.yajpcap.frame.Frame#getFramingError()}) and the
+ * {@link FramerManager} keeps count of how many times each error has
+ * occurred.
+ * 
+ * @author jonas@jonasborjesson.com
+ */
+public enum FramingError {
+
+    /**
+     * The payload ended before all the headers could be read, which typically
+     * is because the snap length of the capture was too small.
+     */
+    TRUNCATED,
+
+    /**
+     * The headers don't make any sense, e.g. an IPv4 header with a header
+     * length that is less than 5.
+     */
+    MALFORMED,
+
+    /**
+     * The payload is perfectly fine but it is a protocol, or uses a feature of
+     * a protocol, that we don't know how to frame.
+     */
+    UNSUPPORTED;
+
+}
@@ -48,6 +48,11 @@ public class IPv4Framer implements Layer3Framer {
                     + Layer2Frame.class.getCanonicalName());
         }
 
+        if (payload.readableBytes() < 20) {
+            this.framerManager.reportError(parent, FramingError.TRUNCATED);
+            return null;
+        }
+
         // the ipv4 headers are always 20 bytes unless
         // the length is greater than 5
         final Buffer headers = payload.readBytes(20);
@@ -57,8 +62,17 @@ public class IPv4Framer implements Layer3Framer {
         // final int version = ((i >>> 28) & 0x0F);
         // final int length = ((i >>> 24) & 0x0F);
 
-        final int version = ((b >>> 5) & 0x0F);
+        final int version = ((b >>> 4) & 0x0F);
         final int length = (b & 0x0F);
+        if ((version != 4) || (length < 5)) {
+            this.framerManager.reportError(parent, FramingError.MALFORMED);
+            return null;
+        }
+
+        if (payload.readableBytes() < ((length - 5) * 4)) {
+            this.framerManager.reportError(parent, FramingError.TRUNCATED);
+            return null;
+        }
 
         // byte 2 - dscp and ecn
         // final byte b2 = headers.readByte();
@@ -111,6 +125,12 @@ public class IPv4Framer implements Layer3Framer {
             // remember, this may have to be treated as unsigned
             // final int options = headers.readInt();
             options = payload.readInt();
+
+            // we only keep the first word of the options around
+            // but there may be up to 10 of them
+            if (length > 6) {
+                payload.readBytes((length - 6) * 4);
+            }
         }
 
         final Buffer data = payload.slice();
@@ -0,0 +1,315 @@
+/**
+ * 
+ */
+package com.aboutsip.yajpcap.framer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.aboutsip.buffer.Buffer;
+import com.aboutsip.buffer.Buffers;
+import com.aboutsip.yajpcap.Clock;
+import com.aboutsip.yajpcap.frame.IPv4Frame;
+
+/**
+ * Puts fragmented ipv4 datagrams back together again. The fragments are kept
+ * around, keyed by source, destination, identification and protocol, until
+ * the entire datagram has been seen at which point the payload of all the
+ * fragments are stitched together into one buffer, without copying any of
+ * it, and handed back to the {@link IPv4Frame} that completed the datagram.
+ * 
+ * Datagrams that don't complete within the timeout, as given by the
+ * {@link Clock} driven by the capture, are dropped. So are the oldest
+ * datagrams if the total number of bytes kept around would exceed the
+ * configured max, which guarantees that a flood of fragments that never
+ * complete can't eat up all of the heap.
+ * 
+ * @author jonas@jonasborjesson.com
+ */
+public final class IPv4Reassembler {
+
+    /**
+     * Same as the default of the Linux kernel.
+     */
+    public static final long DEFAULT_TIMEOUT = 30000;
+
+    public static final int DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * The max size of an ip datagram.
+     */
+    private static final int MAX_DATAGRAM_SIZE = 65535;
+
+    private final Clock clock;
+
+    /**
+     * All the incomplete datagrams, the oldest first.
+     */
+    private final Map<Key, Datagram> datagrams = new LinkedHashMap<Key, Datagram>();
+
+    private long timeout = DEFAULT_TIMEOUT;
+
+    private int maxBytes = DEFAULT_MAX_BYTES;
+
+    /**
+     * The number of bytes of all the fragments we are holding on to.
+     */
+    private int bytes;
+
+    private long reassembledCount;
+
+    private long droppedCount;
+
+    IPv4Reassembler(final Clock clock) {
+        assert clock != null;
+        this.clock = clock;
+    }
+
+    /**
+     * @param timeout the time in milliseconds we will wait for all the
+     *            fragments of a datagram to show up.
+     * @throws IllegalArgumentException in case the timeout is negative
+     */
+    public synchronized void setTimeout(final long timeout) throws IllegalArgumentException {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("The timeout cannot be negative");
+        }
+        this.timeout = timeout;
+    }
+
+    public synchronized long getTimeout() {
+        return this.timeout;
+    }
+
+    /**
+     * @param maxBytes the max number of bytes of fragments that will be kept
+     *            around waiting for their datagrams to complete.
+     * @throws IllegalArgumentException in case the max is negative
+     */
+    public synchronized void setMaxBytes(final int maxBytes) throws IllegalArgumentException {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("The max number of bytes cannot be negative");
+        }
+        this.maxBytes = maxBytes;
+        evict(null);
+    }
+
+    public synchronized int getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    /**
+     * @return the number of bytes of fragments we currently are holding on to
+     */
+    public synchronized int getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * @return the number of datagrams waiting for more fragments
+     */
+    public synchronized int getPendingCount() {
+        return this.datagrams.size();
+    }
+
+    /**
+     * @return the number of datagrams that have been put back together
+     */
+    public synchronized long getReassembledCount() {
+        return this.reassembledCount;
+    }
+
+    /**
+     * @return the number of incomplete datagrams that have been dropped,
+     *         either because they timed out or because we ran out of space.
+     */
+    public synchronized long getDroppedCount() {
+        return this.droppedCount;
+    }
+
+    /**
+     * Add a fragment.
+     * 
+     * @param frame the ip frame of the fragment
+     * @param payload the payload of the fragment
+     * @return the payload of the entire datagram if this fragment completed
+     *         it, otherwise null.
+     */
+    public synchronized Buffer reassemble(final IPv4Frame frame, final Buffer payload) {
+        expire(this.clock.currentTimeMillis());
+
+        // get rid of any link layer padding
+        final int length = Math.min(payload.readableBytes(), frame.getTotalLength() - (frame.getHeaderLength() * 4));
+        final int offset = frame.getFragmentOffset();
+        if ((length <= 0) || ((offset + length) > MAX_DATAGRAM_SIZE) || (length > this.maxBytes)) {
+            return null;
+        }
+
+        final Key key = new Key(frame);
+        Datagram datagram = this.datagrams.get(key);
+        if (datagram == null) {
+            datagram = new Datagram(this.clock.currentTimeMillis());
+            this.datagrams.put(key, datagram);
+        }
+
+        datagram.add(offset, payload.slice(payload.getReaderIndex(), payload.getReaderIndex() + length));
+        this.bytes += length;
+        if (!frame.isMoreFragments()) {
+            datagram.totalLength = offset + length;
+        }
+
+        if (!evict(datagram)) {
+            return null;
+        }
+
+        final Buffer result = datagram.assemble();
+        if (result != null) {
+            this.datagrams.remove(key);
+            this.bytes -= datagram.bytes;
+            ++this.reassembledCount;
+        }
+        return result;
+    }
+
+    /**
+     * Drop all the datagrams that have been waiting for too long.
+     */
+    private void expire(final long now) {
+        final Iterator<Datagram> it = this.datagrams.values().iterator();
+        while (it.hasNext()) {
+            final Datagram datagram = it.next();
+            if ((datagram.created + this.timeout) > now) {
+                return;
+            }
+            it.remove();
+            this.bytes -= datagram.bytes;
+            ++this.droppedCount;
+        }
+    }
+
+    /**
+     * Drop the oldest datagrams until we are within the max number of bytes.
+     * 
+     * @param current the datagram we are working on
+     * @return false if the current datagram had to be dropped
+     */
+    private boolean evict(final Datagram current) {
+        boolean keep = true;
+        final Iterator<Datagram> it = this.datagrams.values().iterator();
+        while ((this.bytes > this.maxBytes) && it.hasNext()) {
+            final Datagram datagram = it.next();
+            it.remove();
+            this.bytes -= datagram.bytes;
+            ++this.droppedCount;
+            keep &= datagram != current;
+        }
+        return keep;
+    }
+
+    private static final class Fragment {
+        private final int offset;
+        private final Buffer data;
+
+        private Fragment(final int offset, final Buffer data) {
+            this.offset = offset;
+            this.data = data;
+        }
+    }
+
+    private static final class Datagram {
+
+        private final long created;
+
+        /**
+         * The fragments ordered by their offset
+         */
+        private final List<Fragment> fragments = new ArrayList<Fragment>(4);
+
+        private int bytes;
+
+        /**
+         * Unknown until we have seen the last fragment.
+         */
+        private int totalLength = -1;
+
+        private Datagram(final long created) {
+            this.created = created;
+        }
+
+        private void add(final int offset, final Buffer data) {
+            int index = this.fragments.size();
+            while ((index > 0) && (this.fragments.get(index - 1).offset > offset)) {
+                --index;
+            }
+            this.fragments.add(index, new Fragment(offset, data));
+            this.bytes += data.capacity();
+        }
+
+        /**
+         * @return the payload of the entire datagram or null if we are still
+         *         missing some of it
+         */
+        private Buffer assemble() {
+            if (this.totalLength == -1) {
+                return null;
+            }
+
+            final List<Buffer> parts = new ArrayList<Buffer>(this.fragments.size());
+            int covered = 0;
+            for (final Fragment fragment : this.fragments) {
+                if (covered >= this.totalLength) {
+                    break;
+                }
+                if (fragment.offset > covered) {
+                    return null;
+                }
+
+                // overlapping fragments, the first one wins
+                final int end = Math.min(fragment.offset + fragment.data.capacity(), this.totalLength);
+                if (end > covered) {
+                    parts.add(fragment.data.slice(covered - fragment.offset, end - fragment.offset));
+                    covered = end;
+                }
+            }
+
+            if (covered < this.totalLength) {
+                return null;
+            }
+            return Buffers.wrap(parts.toArray(new Buffer[parts.size()]));
+        }
+    }
+
+    /**
+     * The source, destination, identification and protocol of the datagram.
+     */
+    private static final class Key {
+        private final long addresses;
+        private final int idAndProtocol;
+
+        private Key(final IPv4Frame frame) {
+            this.addresses = ((long) frame.getRawSourceIp() << 32) | (frame.getRawDestinationIp() & 0xFFFFFFFFL);
+            this.idAndProtocol = (frame.getIdentification() << 8) | frame.getProtocolNumber();
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * ((int) (this.addresses ^ (this.addresses >>> 32)))) + this.idAndProtocol;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if ((obj == null) || (getClass() != obj.getClass())) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return (this.addresses == other.addresses) && (this.idAndProtocol == other.idAndProtocol);
+        }
+    }
+
+}
@@ -0,0 +1,142 @@
+/**
+ * 
+ */
+package com.aboutsip.yajpcap.framer;
+
+import java.io.IOException;
+
+import com.aboutsip.buffer.Buffer;
+import com.aboutsip.yajpcap.frame.IPv6Frame;
+import com.aboutsip.yajpcap.frame.Layer2Frame;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * Frames IPv6 packets. The extension headers are walked, without copying
+ * anything, until we find the upper layer protocol, which is what will be
+ * framed next.
+ * 
+ * @author jonas@jonasborjesson.com
+ */
+public final class IPv6Framer implements Layer3Framer {
+
+    private static final int HOP_BY_HOP = 0;
+
+    private static final int ROUTING = 43;
+
+    private static final int FRAGMENT = 44;
+
+    private static final int AUTHENTICATION = 51;
+
+    private static final int DESTINATION_OPTIONS = 60;
+
+    private static final int MOBILITY = 135;
+
+    private static final int HOST_IDENTITY = 139;
+
+    private static final int SHIM6 = 140;
+
+    private static final int EXPERIMENTAL_1 = 253;
+
+    private static final int EXPERIMENTAL_2 = 254;
+
+    private final FramerManager framerManager;
+
+    public IPv6Framer(final FramerManager framerManager) {
+        this.framerManager = framerManager;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Protocol getProtocol() {
+        return Protocol.IPv6;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IPv6Frame frame(final Layer2Frame parent, final Buffer payload) throws IOException {
+        if (parent == null) {
+            throw new IllegalArgumentException("The parent frame cannot be null");
+        }
+
+        if (payload.readableBytes() < 40) {
+            this.framerManager.reportError(parent, FramingError.TRUNCATED);
+            return null;
+        }
+
+        final Buffer headers = payload.readBytes(40);
+        if (((headers.getByte(0) >>> 4) & 0x0F) != 6) {
+            this.framerManager.reportError(parent, FramingError.MALFORMED);
+            return null;
+        }
+
+        // get rid of any link layer padding. A payload length of zero means
+        // that this is a jumbogram, in which case we'll just take everything.
+        final int start = payload.getReaderIndex();
+        final int payloadLength = headers.getUnsignedShort(4);
+        int stop = payload.capacity();
+        if ((payloadLength > 0) && ((start + payloadLength) < stop)) {
+            stop = start + payloadLength;
+        }
+
+        int nextHeader = headers.getUnsignedByte(6);
+        boolean fragment = false;
+        int offset = start;
+        while (isExtensionHeader(nextHeader)) {
+            if ((offset + 8) > stop) {
+                this.framerManager.reportError(parent, FramingError.TRUNCATED);
+                return null;
+            }
+
+            final int length;
+            if (nextHeader == FRAGMENT) {
+                length = 8;
+                final int fragmentOffsetAndFlags = payload.getUnsignedShort(offset + 2);
+                fragment |= (fragmentOffsetAndFlags & 0xFFF9) != 0;
+            } else if (nextHeader == AUTHENTICATION) {
+                length = (payload.getUnsignedByte(offset + 1) + 2) * 4;
+            } else {
+                length = (payload.getUnsignedByte(offset + 1) + 1) * 8;
+            }
+
+            if ((offset + length) > stop) {
+                this.framerManager.reportError(parent, FramingError.TRUNCATED);
+                return null;
+            }
+
+            nextHeader = payload.getUnsignedByte(offset);
+            offset += length;
+        }
+
+        final Buffer extensionHeaders = offset > start ? payload.slice(start, offset) : null;
+        final Buffer data = offset < stop ? payload.slice(offset, stop) : null;
+        return new IPv6Frame(this.framerManager, parent, headers, extensionHeaders, nextHeader, fragment, data);
+    }
+
+    private static boolean isExtensionHeader(final int nextHeader) {
+        switch (nextHeader) {
+        case HOP_BY_HOP:
+        case ROUTING:
+        case FRAGMENT:
+        case AUTHENTICATION:
+        case DESTINATION_OPTIONS:
+        case MOBILITY:
+        case HOST_IDENTITY:
+        case SHIM6:
+        case EXPERIMENTAL_1:
+        case EXPERIMENTAL_2:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    @Override
+    public boolean accept(final Buffer data) {
+        return false;
+    }
+
+}
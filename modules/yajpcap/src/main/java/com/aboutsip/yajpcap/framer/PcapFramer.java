@@ -3,7 +3,6 @@
  */
 package com.aboutsip.yajpcap.framer;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.nio.ByteOrder;
 
@@ -56,34 +55,7 @@ public final class PcapFramer implements Layer1Framer {
         final int length = (int) header.getCapturedLength();
         final Buffer payload = buffer.readBytes(length);
 
-        final FramerManager framerManager = FramerManager.getInstance();
-        return new PcapFrame(framerManager, header, payload);
-    }
-
-    /**
-     * Frame the pcap frame. This frame is the entry into the pcap and we will
-     * always frame a pcap one before asking it to frame the rest
-     * 
-     * @param byteOrder
-     * @param in
-     * @return the framed PcapFrame or null if nothing left to frame in the
-     *         stream
-     * @throws IOException
-     */
-    public PcapFrame frame(final ByteOrder byteOrder, final BufferedInputStream in) throws IOException {
-        // not enough bytes in the stream
-        final int l = in.available();
-        if (l == -1) {
-            return null;
-        }
-
-        if (l < 16) {
-            return null;
-        }
-
-        final byte[] record = new byte[16];
-        in.read(record);
-        return null;
+        return new PcapFrame(this.framerManager, header, payload);
     }
 
     @Override
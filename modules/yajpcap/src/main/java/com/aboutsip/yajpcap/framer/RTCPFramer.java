@@ -0,0 +1,131 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.framer;
+
+import java.io.IOException;
+
+import com.aboutsip.buffer.Buffer;
+import com.aboutsip.yajpcap.frame.Layer4Frame;
+import com.aboutsip.yajpcap.frame.Layer7Frame;
+import com.aboutsip.yajpcap.frame.RtcpFrame;
+import com.aboutsip.yajpcap.packet.rtcp.RtcpMessage;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * Frames RTCP compound packets, see RFC 3550.
+ *
+ * RTCP and RTP look pretty much the same on the first two bits so when they
+ * are multiplexed on the same port, as described by RFC 5761, the only way
+ * of telling them apart is by looking at the second byte, which for RTCP
+ * will be within 192 - 223. See {@link #isMultiplexedRtcp(Buffer)}.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class RTCPFramer implements Layer7Framer {
+
+    private final FramerManager framerManager;
+
+    /**
+     *
+     */
+    public RTCPFramer(final FramerManager framerManager) {
+        this.framerManager = framerManager;
+    }
+
+    @Override
+    public Protocol getProtocol() {
+        return Protocol.RTCP;
+    }
+
+    /**
+     * Unlike RTP, a compound RTCP packet can be verified pretty well by
+     * walking all the RTCP packets within it. They all have to be version 2,
+     * one of the packet types we know about, and their lengths have to add up
+     * to exactly the size of the data.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean accept(final Buffer data) throws IOException {
+        final int start = data.getReaderIndex();
+        final int stop = data.capacity();
+        if ((stop - start) < 8) {
+            return false;
+        }
+
+        int offset = start;
+        while ((offset + 4) <= stop) {
+            final int b = data.getUnsignedByte(offset);
+            if (((b >>> 6) != 2) || !isKnownType(data.getUnsignedByte(offset + 1))) {
+                return false;
+            }
+            offset += (data.getUnsignedShort(offset + 2) + 1) * 4;
+        }
+
+        return offset == stop;
+    }
+
+    /**
+     * Check whether the data is RTCP when RTP and RTCP are sharing the same
+     * port, as described by RFC 5761.
+     *
+     * @param data
+     * @return
+     * @throws IOException
+     */
+    public static boolean isMultiplexedRtcp(final Buffer data) throws IOException {
+        final int start = data.getReaderIndex();
+        if ((data.capacity() - start) < 2) {
+            return false;
+        }
+
+        final int type = data.getUnsignedByte(start + 1);
+        return ((data.getUnsignedByte(start) >>> 6) == 2) && (type >= 192) && (type <= 223);
+    }
+
+    private static boolean isKnownType(final int type) {
+        return ((type >= RtcpMessage.SR) && (type <= RtcpMessage.PSFB)) || (type == RtcpMessage.XR);
+    }
+
+    @Override
+    public Layer7Frame frame(final Layer4Frame parent, final Buffer buffer) throws IOException {
+        if (parent == null) {
+            throw new IllegalArgumentException("The parent frame cannot be null");
+        }
+
+        final int start = buffer.getReaderIndex();
+        final int stop = buffer.capacity();
+        if ((stop - start) < 4) {
+            this.framerManager.reportError(parent, FramingError.TRUNCATED);
+            return null;
+        }
+
+        // make sure all the packets are within the buffer so that we
+        // don't have to worry about that when we parse them.
+        int offset = start;
+        int count = 0;
+        while (offset < stop) {
+            if ((offset + 4) > stop) {
+                this.framerManager.reportError(parent, FramingError.TRUNCATED);
+                return null;
+            }
+
+            if ((buffer.getUnsignedByte(offset) >>> 6) != 2) {
+                this.framerManager.reportError(parent, FramingError.MALFORMED);
+                return null;
+            }
+
+            final int length = (buffer.getUnsignedShort(offset + 2) + 1) * 4;
+            if ((offset + length) > stop) {
+                this.framerManager.reportError(parent, FramingError.TRUNCATED);
+                return null;
+            }
+            offset += length;
+            ++count;
+        }
+
+        return new RtcpFrame(this.framerManager, parent, buffer.slice(start, stop), count);
+    }
+
+}
@@ -45,25 +45,14 @@ public final class RTPFramer implements Layer7Framer {
 
         // a RTP packet has at least 12 bytes. Check that
         if (data.readableBytes() < 12) {
-            // not enough bytes but see if we actually could
-            // get another 12 bytes by forcing the underlying
-            // implementation to read further ahead
-            data.markReaderIndex();
-            try {
-                final Buffer b = data.readBytes(12);
-                if (b.capacity() < 12) {
-                    return false;
-                }
-            } catch (final IndexOutOfBoundsException e) {
-                e.printStackTrace();
-            }
-            data.resetReaderIndex();
+            return false;
         }
 
-        // check the version. Currently we only check for version 2
-        // and if this is true then we'll just return true.
+        // check the version. Currently we only check for version 2.
+        // RTCP has the same version so rule that out the way RFC 5761
+        // does it.
         final byte b = data.getByte(0);
-        return ((b & 0xC0) >> 6) == 0x02;
+        return (((b & 0xC0) >> 6) == 0x02) && !RTCPFramer.isMultiplexedRtcp(data);
     }
 
     @Override
@@ -72,25 +61,48 @@ public final class RTPFramer implements Layer7Framer {
             throw new IllegalArgumentException("The parent frame cannot be null");
         }
 
-        // An RTP packet has a least 12 bytes but can contain more depending on
-        // extensions, padding etc. Figure that out.
-        final Buffer headers = buffer.readBytes(12);
-        final Byte b = headers.getByte(0);
+        if (buffer.readableBytes() < 12) {
+            this.framerManager.reportError(parent, FramingError.TRUNCATED);
+            return null;
+        }
+
+        // The fixed header is followed by the CSRC list and possibly an
+        // extension header, all of which are kept as one slice of the
+        // original buffer. Padding is stripped off of the payload.
+        final int start = buffer.getReaderIndex();
+        final int stop = buffer.capacity();
+        final int b = buffer.getUnsignedByte(start);
         final boolean hasPadding = (b & 0x20) == 0x020;
         final boolean hasExtension = (b & 0x10) == 0x010;
         final int csrcCount = b & 0x0F;
 
+        int offset = start + 12 + (csrcCount * 4);
         if (hasExtension) {
-            final short extensionHeaders = buffer.readShort();
-            final int length = buffer.readUnsignedShort();
-            final Buffer extensionData = buffer.readBytes(length);
+            if ((offset + 4) > stop) {
+                this.framerManager.reportError(parent, FramingError.TRUNCATED);
+                return null;
+            }
+            offset += 4 + (buffer.getUnsignedShort(offset + 2) * 4);
         }
 
-        if (hasPadding || hasExtension || (csrcCount > 0)) {
-            throw new RuntimeException("TODO - have not implemented the case of handling padding, extensions etc");
-        }
+        if (offset > stop) {
+            this.framerManager.reportError(parent, FramingError.TRUNCATED);
+            return null;
+        }
+
+        int end = stop;
+        if (hasPadding) {
+            // the last octet is the number of padding octets, itself included
+            final int padding = buffer.getUnsignedByte(stop - 1);
+            if ((padding == 0) || ((offset + padding) > stop)) {
+                this.framerManager.reportError(parent, FramingError.MALFORMED);
+                return null;
+            }
+            end = stop - padding;
+        }
 
-        final Buffer payload = buffer.slice();
+        final Buffer headers = buffer.slice(start, offset);
+        final Buffer payload = offset < end ? buffer.slice(offset, end) : null;
         return new RtpFrame(this.framerManager, parent, headers, payload);
     }
 
@@ -38,7 +38,12 @@ public final class SDPFramer implements Framer {
     public SDPFrame frame(final Frame parent, final Buffer buffer) throws IOException {
         // nothing really to frame in the case of SDP.
         // just assuming that everything is ok
-        return new SDPFrame(this.framerManager, parent, buffer);
+        final SDPFrame sdp = new SDPFrame(this.framerManager, parent, buffer);
+
+        // learn the media flows ahead of time so that we don't have to
+        // guess whether the following packets are RTP or not
+        this.framerManager.getFlowTable().learn(sdp);
+        return sdp;
     }
 
     /**
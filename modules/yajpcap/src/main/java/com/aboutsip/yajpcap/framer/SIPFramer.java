@@ -8,6 +8,7 @@ import java.io.IOException;
 import com.aboutsip.buffer.Buffer;
 import com.aboutsip.yajpcap.frame.Layer4Frame;
 import com.aboutsip.yajpcap.frame.SipFrame;
+import com.aboutsip.yajpcap.metrics.PipelineMetrics;
 import com.aboutsip.yajpcap.protocol.Protocol;
 
 /**
@@ -16,6 +17,16 @@ import com.aboutsip.yajpcap.protocol.Protocol;
  */
 public final class SIPFramer implements Layer7Framer {
 
+    private static final byte[] CONTENT_LENGTH = "content-length".getBytes();
+
+    private static final byte[] CONTENT_LENGTH_COMPACT = "l".getBytes();
+
+    /**
+     * Returned when a Content-Length header has a value that doesn't fit in
+     * an int.
+     */
+    private static final int INVALID_CONTENT_LENGTH = -2;
+
     private final FramerManager framerManager;
 
     public SIPFramer(final FramerManager framerManager) {
@@ -43,6 +54,9 @@ public final class SIPFramer implements Layer7Framer {
             throw new IllegalArgumentException("The parent frame cannot be null");
         }
 
+        final boolean timed = PipelineMetrics.isEnabled();
+        final long start = timed ? System.nanoTime() : 0;
+
         // we just assume that the initial line
         // indeed is a correct sip line
         final Buffer initialLine = buffer.readLine();
@@ -65,11 +79,26 @@ public final class SIPFramer implements Layer7Framer {
             payload = buffer.slice();
         }
 
-        return new SipFrame(this.framerManager, parent, initialLine, headers, payload);
+        final SipFrame frame = new SipFrame(this.framerManager, parent, initialLine, headers, payload);
+        if (timed) {
+            PipelineMetrics.getInstance().sipFramed(System.nanoTime() - start);
+        }
+        return frame;
     }
 
     @Override
     public boolean accept(final Buffer data) throws IOException {
+        return isSipMessage(data);
+    }
+
+    /**
+     * Check whether the data looks like the beginning of a SIP message.
+     * 
+     * @param data
+     * @return
+     * @throws IOException
+     */
+    public static boolean isSipMessage(final Buffer data) throws IOException {
         // if the first three bytes matches anything if the first three bytes
         // matches anything of the below stuff, then it is likely to be a SIP
         // message in this data.
@@ -77,6 +106,10 @@ public final class SIPFramer implements Layer7Framer {
         // NOTE: it is not fool proof and we may in the future
         // want to check a little more before saying anything
 
+        if (data.readableBytes() < 3) {
+            return false;
+        }
+
         final byte a = data.getByte(0);
         final byte b = data.getByte(1);
         final byte c = data.getByte(2);
@@ -97,4 +130,96 @@ public final class SIPFramer implements Layer7Framer {
                 ((a == 'P') && (b == 'U') && (c == 'B')); // PUBLISH
     }
 
+    /**
+     * Get the value of the Content-Length header of a SIP message, which is
+     * what is used to delimit SIP messages on stream based transports such as
+     * TCP.
+     * 
+     * @param headers
+     *            the initial line and the headers of the message
+     * @return the content length, 0 (zero) if there is no Content-Length
+     *         header or -1 (negative one) if the value is too large to make
+     *         any sense.
+     * @throws IOException
+     */
+    static int getContentLength(final Buffer headers) throws IOException {
+        final int stop = headers.capacity();
+        int contentLength = 0;
+        int lineStart = headers.getReaderIndex();
+        for (int i = lineStart; i < stop; ++i) {
+            if (headers.getByte(i) == '\n') {
+                final int value = getContentLength(headers, lineStart, i);
+                if (value == INVALID_CONTENT_LENGTH) {
+                    return -1;
+                } else if (value != -1) {
+                    contentLength = value;
+                }
+                lineStart = i + 1;
+            }
+        }
+        return contentLength;
+    }
+
+    /**
+     * Get the value of the header line if it is a Content-Length header.
+     * 
+     * @return the content length, -1 (negative one) if this isn't a
+     *         Content-Length header or {@link #INVALID_CONTENT_LENGTH} if the
+     *         value overflows.
+     */
+    private static int getContentLength(final Buffer buffer, final int start, final int stop) throws IOException {
+        int colon = start;
+        while ((colon < stop) && (buffer.getByte(colon) != ':')) {
+            ++colon;
+        }
+        if (colon == stop) {
+            return -1;
+        }
+
+        int nameStop = colon;
+        while ((nameStop > start) && isWhitespace(buffer.getByte(nameStop - 1))) {
+            --nameStop;
+        }
+        if (!isHeaderName(buffer, start, nameStop, CONTENT_LENGTH)
+                && !isHeaderName(buffer, start, nameStop, CONTENT_LENGTH_COMPACT)) {
+            return -1;
+        }
+
+        int i = colon + 1;
+        while ((i < stop) && isWhitespace(buffer.getByte(i))) {
+            ++i;
+        }
+
+        int value = -1;
+        while (i < stop) {
+            final byte b = buffer.getByte(i++);
+            if ((b < '0') || (b > '9')) {
+                break;
+            }
+            final int digit = b - '0';
+            if ((value != -1) && (value > ((Integer.MAX_VALUE - digit) / 10))) {
+                return INVALID_CONTENT_LENGTH;
+            }
+            value = (value == -1 ? 0 : value * 10) + digit;
+        }
+        return value;
+    }
+
+    private static boolean isHeaderName(final Buffer buffer, final int start, final int stop, final byte[] name)
+            throws IOException {
+        if ((stop - start) != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; ++i) {
+            if (Character.toLowerCase((char) buffer.getByte(start + i)) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(final byte b) {
+        return (b == ' ') || (b == '\t');
+    }
+
 }
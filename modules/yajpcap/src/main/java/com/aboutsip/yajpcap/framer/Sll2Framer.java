@@ -0,0 +1,85 @@
+/**
+ * 
+ */
+package com.aboutsip.yajpcap.framer;
+
+import java.io.IOException;
+
+import com.aboutsip.buffer.Buffer;
+import com.aboutsip.yajpcap.frame.Layer1Frame;
+import com.aboutsip.yajpcap.frame.Layer2Frame;
+import com.aboutsip.yajpcap.frame.SllFrame;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * Version 2 of the linux cooked-mode capture, which is what newer versions of
+ * libpcap produce when capturing on the "any" device.
+ * 
+ * http://www.tcpdump.org/linktypes/LINKTYPE_LINUX_SLL2.html
+ * 
+ * The header is 20 bytes:
+ * 
+ * a 2-byte protocol type (the ether type);
+ * 
+ * 2 reserved bytes;
+ * 
+ * a 4-byte interface index;
+ * 
+ * a 2-byte ARPHRD_ type;
+ * 
+ * a 1-byte packet type;
+ * 
+ * a 1-byte link-layer address length;
+ * 
+ * an 8-byte link-layer address.
+ * 
+ * @author jonas@jonasborjesson.com
+ */
+public class Sll2Framer implements Layer2Framer {
+
+    private final FramerManager framerManager;
+
+    public Sll2Framer(final FramerManager framerManager) {
+        this.framerManager = framerManager;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Protocol getProtocol() {
+        return Protocol.SLL2;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Layer2Frame frame(final Layer1Frame parent, final Buffer buffer) throws IOException {
+        if (parent == null) {
+            throw new IllegalArgumentException("The parent frame cannot be null");
+        }
+
+        if (buffer.readableBytes() < 20) {
+            this.framerManager.reportError(parent, FramingError.TRUNCATED);
+            return null;
+        }
+
+        final Buffer headers = buffer.readBytes(20);
+        final Buffer payload = buffer.slice(buffer.capacity());
+        return new SllFrame(this.framerManager, Protocol.SLL2, parent, headers, payload);
+    }
+
+    /**
+     * There is nothing in the version 2 header that is distinct enough to
+     * probe for so this framer is only ever used when the data link type of
+     * the capture says so.
+     * 
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean accept(final Buffer buffer) throws IOException {
+        return false;
+    }
+
+}
@@ -74,6 +74,11 @@ public class SllFramer implements Layer2Framer {
             throw new IllegalArgumentException("The parent frame cannot be null");
         }
 
+        if (buffer.readableBytes() < 16) {
+            this.framerManager.reportError(parent, FramingError.TRUNCATED);
+            return null;
+        }
+
         final Buffer headers = buffer.readBytes(16);
         final Buffer payload = buffer.slice(buffer.capacity());
         return new SllFrame(this.framerManager, parent, headers, payload);
@@ -120,20 +125,16 @@ public class SllFramer implements Layer2Framer {
      */
     @Override
     public boolean accept(final Buffer buffer) throws IOException {
-        buffer.markReaderIndex();
-        try {
-            final Buffer test = buffer.readBytes(16);
-            final byte b1 = test.getByte(0);
-            final byte b2 = test.getByte(1);
-            final byte b14 = test.getByte(14);
-            final byte b15 = test.getByte(15);
-            return validatePacketType(b1, b2) && isKnownEtherType(b14, b15);
-        } catch (final IndexOutOfBoundsException e) {
-            System.err.println("Strange, we are blowing up all the time...");
+        if (buffer.readableBytes() < 16) {
             return false;
-        } finally {
-            buffer.resetReaderIndex();
         }
+
+        final int index = buffer.getReaderIndex();
+        final byte b1 = buffer.getByte(index);
+        final byte b2 = buffer.getByte(index + 1);
+        final byte b14 = buffer.getByte(index + 14);
+        final byte b15 = buffer.getByte(index + 15);
+        return validatePacketType(b1, b2) && isKnownEtherType(b14, b15);
     }
 
     private boolean isKnownEtherType(final byte b1, final byte b2) {
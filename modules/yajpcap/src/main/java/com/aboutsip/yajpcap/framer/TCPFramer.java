@@ -47,6 +47,11 @@ public final class TCPFramer implements Layer4Framer {
         // there can be an additional 40 bytes. The offset will tell us
         // how may 32-bit words there are.
 
+        if (buffer.readableBytes() < 20) {
+            this.framerManager.reportError(parent, FramingError.TRUNCATED);
+            return null;
+        }
+
         final Buffer headers = buffer.readBytes(20);
         Buffer options = null;
         Buffer payload = null;
@@ -57,7 +62,13 @@ public final class TCPFramer implements Layer4Framer {
         // and since we already have read that off the buffer, this
         // is what we have left to read
         final int size = ((offset >> 4) & 0x0F) - 5;
-        if (size > 0) {
+        if (size < 0) {
+            this.framerManager.reportError(parent, FramingError.MALFORMED);
+            return null;
+        } else if (buffer.readableBytes() < (size * 4)) {
+            this.framerManager.reportError(parent, FramingError.TRUNCATED);
+            return null;
+        } else if (size > 0) {
             options = buffer.readBytes(size * 4);
         }
 
@@ -66,7 +77,11 @@ public final class TCPFramer implements Layer4Framer {
             payload = buffer.slice();
         }
 
-        return new TCPFrame(this.framerManager, parent, headers, options, payload);
+        final TCPFrame frame = new TCPFrame(this.framerManager, parent, headers, options, payload);
+        if (payload == null) {
+            this.framerManager.getTCPReassembler().close(frame);
+        }
+        return frame;
     }
 
 
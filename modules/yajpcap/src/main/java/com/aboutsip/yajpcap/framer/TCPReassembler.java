@@ -0,0 +1,693 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.framer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.aboutsip.buffer.Buffer;
+import com.aboutsip.buffer.Buffers;
+import com.aboutsip.yajpcap.Clock;
+import com.aboutsip.yajpcap.frame.IPFrame;
+import com.aboutsip.yajpcap.frame.IPv4Frame;
+import com.aboutsip.yajpcap.frame.TCPFrame;
+
+/**
+ * Puts the byte streams of TCP connections back together again and chops
+ * them up into SIP messages, using the Content-Length header to figure out
+ * where one message ends and the next one begins. That way a SIP message
+ * that has been split across several segments, or several messages that
+ * have been coalesced into one segment, are framed correctly.
+ *
+ * Each direction of a connection is tracked separately. Segments that arrive
+ * out of order are kept until the gap has been filled and retransmitted data
+ * is simply ignored. The state of a connection is thrown away when the
+ * connection is reset, when it is closed (once the data before the FIN has
+ * been delivered) or when it has been idle for longer than the idle timeout,
+ * as given by the {@link Clock} driven by the capture. The idle connections
+ * are found through a timer wheel so checking for them is cheap no matter how
+ * many connections there are.
+ *
+ * The number of bytes kept around per direction is bounded. If a connection
+ * goes beyond that (e.g. because we missed a segment and are waiting for a
+ * gap that will never be filled) everything we have for that direction is
+ * dropped and we start over with the next segment, which will only be framed
+ * if it happens to start with a new SIP message. The same goes for a message
+ * whose Content-Length says that it is larger than that, which is reported
+ * as {@link FramingError#MALFORMED}.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class TCPReassembler {
+
+    public static final long DEFAULT_IDLE_TIMEOUT = 5 * 60 * 1000;
+
+    public static final int DEFAULT_MAX_BYTES = 256 * 1024;
+
+    /**
+     * The resolution of the timer wheel in milliseconds.
+     */
+    private static final long TICK = 1000;
+
+    /**
+     * The number of slots in the timer wheel. Must be a power of two.
+     */
+    private static final int SLOTS = 64;
+
+    private final FramerManager framerManager;
+
+    private final Clock clock;
+
+    private final Map<Key, Stream> streams = new HashMap<Key, Stream>();
+
+    /**
+     * Every stream is in exactly one slot, the one of the tick when the
+     * stream will be checked for being idle.
+     */
+    private final List<Set<Stream>> wheel = new ArrayList<Set<Stream>>(SLOTS);
+
+    /**
+     * The last tick we have processed or -1 (negative one) if we haven't
+     * processed any yet.
+     */
+    private long currentTick = -1;
+
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    private int maxBytes = DEFAULT_MAX_BYTES;
+
+    private long messageCount;
+
+    private long droppedBytes;
+
+    TCPReassembler(final FramerManager framerManager, final Clock clock) {
+        assert framerManager != null;
+        assert clock != null;
+        this.framerManager = framerManager;
+        this.clock = clock;
+        for (int i = 0; i < SLOTS; ++i) {
+            this.wheel.add(new HashSet<Stream>());
+        }
+    }
+
+    /**
+     * @param idleTimeout the time in milliseconds after which a connection
+     *            that hasn't seen any traffic is forgotten.
+     * @throws IllegalArgumentException in case the timeout is negative
+     */
+    public synchronized void setIdleTimeout(final long idleTimeout) throws IllegalArgumentException {
+        if (idleTimeout < 0) {
+            throw new IllegalArgumentException("The idle timeout cannot be negative");
+        }
+        this.idleTimeout = idleTimeout;
+    }
+
+    public synchronized long getIdleTimeout() {
+        return this.idleTimeout;
+    }
+
+    /**
+     * @param maxBytes the max number of bytes that will be buffered for each
+     *            direction of a connection.
+     * @throws IllegalArgumentException in case the max is negative
+     */
+    public synchronized void setMaxBytes(final int maxBytes) throws IllegalArgumentException {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("The max number of bytes cannot be negative");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized int getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    /**
+     * @return the number of connection directions we currently are tracking
+     */
+    public synchronized int getStreamCount() {
+        return this.streams.size();
+    }
+
+    /**
+     * @return the number of messages that have been delimited so far
+     */
+    public synchronized long getMessageCount() {
+        return this.messageCount;
+    }
+
+    /**
+     * @return the number of bytes we have thrown away, either because we ran
+     *         out of space or because they didn't look like SIP.
+     */
+    public synchronized long getDroppedBytes() {
+        return this.droppedBytes;
+    }
+
+    /**
+     * Add a segment to the stream it belongs to.
+     *
+     * @param frame the tcp frame of the segment
+     * @param payload the payload of the segment
+     * @return all the SIP messages that were completed by this segment, which
+     *         may very well be none.
+     * @throws IOException
+     */
+    public synchronized List<Buffer> reassemble(final TCPFrame frame, final Buffer payload) throws IOException {
+        if (!(frame.getParentFrame() instanceof IPFrame) || (payload == null)) {
+            close(frame);
+            return Collections.emptyList();
+        }
+
+        final IPFrame ip = (IPFrame) frame.getParentFrame();
+
+        final long now = this.clock.currentTimeMillis();
+        expire(now);
+
+        final Key key = new Key(ip, frame);
+        if (frame.isRST()) {
+            remove(key);
+            remove(key.reverse());
+            return Collections.emptyList();
+        }
+
+        Stream stream = this.streams.get(key);
+        if (stream == null) {
+            stream = new Stream(key);
+            this.streams.put(key, stream);
+            schedule(stream, now);
+        }
+        stream.lastSeen = now;
+
+        // get rid of any link layer padding. A reassembled ipv4 datagram
+        // doesn't have any and neither does ipv6, the framer already took
+        // care of it.
+        int length = payload.capacity();
+        if ((ip instanceof IPv4Frame) && !((IPv4Frame) ip).isFragment()) {
+            final IPv4Frame ipv4 = (IPv4Frame) ip;
+            length = ipv4.getTotalLength() - (ipv4.getHeaderLength() * 4) - frame.getHeaderLength();
+        }
+        final int seq = (int) frame.getSequenceNumber();
+        if (frame.isSYN()) {
+            stream.nextSeq = seq + 1;
+            stream.synced = true;
+        }
+
+        final int dataSeq = frame.isSYN() ? seq + 1 : seq;
+        List<Buffer> messages = Collections.emptyList();
+        if (length > 0) {
+            final int start = payload.getReaderIndex();
+            final int stop = Math.min(payload.capacity(), start + length);
+            if (stop > start) {
+                add(stream, dataSeq, payload.slice(start, stop));
+                messages = stream.delimit(frame);
+            }
+        }
+
+        if (frame.isFIN()) {
+            stream.fin(dataSeq + Math.max(0, length));
+        }
+
+        if (stream.isDone()) {
+            remove(key);
+        }
+
+        return messages;
+    }
+
+    /**
+     * Let the reassembler know about a segment that doesn't carry any data.
+     * Only resets and fins are of interest since they tear down the
+     * connection, everything else is ignored. A fin only tears down its
+     * direction of the connection once all the data before it has arrived.
+     *
+     * @param frame
+     */
+    public synchronized void close(final TCPFrame frame) {
+        if (!frame.isFIN() && !frame.isRST()) {
+            return;
+        }
+
+        if (!(frame.getParentFrame() instanceof IPFrame) || this.streams.isEmpty()) {
+            return;
+        }
+
+        final Key key = new Key((IPFrame) frame.getParentFrame(), frame);
+        if (frame.isRST()) {
+            remove(key);
+            remove(key.reverse());
+            return;
+        }
+
+        final Stream stream = this.streams.get(key);
+        if (stream != null) {
+            stream.fin((int) frame.getSequenceNumber());
+            if (stream.isDone()) {
+                remove(key);
+            }
+        }
+    }
+
+    private void add(final Stream stream, final int seq, final Buffer data) {
+        if (!stream.synced) {
+            // we missed the beginning of the connection so we'll just have to
+            // start with whatever we got
+            stream.nextSeq = seq;
+            stream.synced = true;
+        }
+
+        final int diff = seq - stream.nextSeq;
+        if (diff > 0) {
+            stream.addOutOfOrder(seq, data);
+        } else if ((-diff) < data.capacity()) {
+            stream.append(data.slice(-diff, data.capacity()));
+            stream.drainOutOfOrder();
+        }
+
+        if (stream.bytes > this.maxBytes) {
+            this.droppedBytes += stream.bytes;
+            stream.clear();
+        }
+    }
+
+    private void remove(final Key key) {
+        final Stream stream = this.streams.remove(key);
+        if (stream != null) {
+            this.wheel.get(stream.slot).remove(stream);
+        }
+    }
+
+    private void schedule(final Stream stream, final long time) {
+        stream.slot = (int) (((time + this.idleTimeout) / TICK) & (SLOTS - 1));
+        this.wheel.get(stream.slot).add(stream);
+    }
+
+    /**
+     * Advance the timer wheel to the current time and forget about all the
+     * streams that have been idle for too long. Streams that have seen
+     * traffic since they were scheduled are simply rescheduled.
+     *
+     * @param now
+     */
+    private void expire(final long now) {
+        final long tick = now / TICK;
+        if (this.currentTick == -1) {
+            this.currentTick = tick;
+            return;
+        }
+
+        // no need to go around the wheel more than once
+        final long from = Math.max(this.currentTick + 1, tick - SLOTS + 1);
+        for (long t = from; t <= tick; ++t) {
+            final Set<Stream> slot = this.wheel.get((int) (t & (SLOTS - 1)));
+            if (slot.isEmpty()) {
+                continue;
+            }
+
+            final List<Stream> reschedule = new ArrayList<Stream>();
+            final Iterator<Stream> it = slot.iterator();
+            while (it.hasNext()) {
+                final Stream stream = it.next();
+                it.remove();
+                if ((stream.lastSeen + this.idleTimeout) <= now) {
+                    this.streams.remove(stream.key);
+                } else {
+                    reschedule.add(stream);
+                }
+            }
+
+            for (final Stream stream : reschedule) {
+                schedule(stream, stream.lastSeen);
+            }
+        }
+        this.currentTick = Math.max(this.currentTick, tick);
+    }
+
+    private final class Stream {
+
+        private final Key key;
+
+        private boolean synced;
+
+        /**
+         * The sequence number of the next byte we expect.
+         */
+        private int nextSeq;
+
+        /**
+         * The data we have received in order but that hasn't been delivered
+         * as part of a message yet.
+         */
+        private final List<Buffer> data = new ArrayList<Buffer>(4);
+
+        private int available;
+
+        /**
+         * The segments that arrived ahead of the gap, ordered by sequence
+         * number.
+         */
+        private final List<Segment> outOfOrder = new ArrayList<Segment>(2);
+
+        /**
+         * The number of bytes kept in this stream, in order or not.
+         */
+        private int bytes;
+
+        private long lastSeen;
+
+        private int slot;
+
+        /**
+         * Whether we have seen a fin and if so, the sequence number it had,
+         * i.e., the sequence number following the last byte of data.
+         */
+        private boolean fin;
+
+        private int finSeq;
+
+        /**
+         * Whether the pending message, the one at the beginning of the in
+         * order data, looks like SIP.
+         */
+        private boolean verified;
+
+        /**
+         * The length of the pending message or -1 (negative one) if we
+         * haven't seen the end of its headers yet.
+         */
+        private int messageLength = -1;
+
+        /**
+         * How far we have gotten looking for the end of the headers of the
+         * pending message, both as the number of bytes and as the position
+         * in {@link #data}.
+         */
+        private int scanned;
+
+        private int scanIndex;
+
+        private int scanOffset;
+
+        /**
+         * The length and the last byte of the header line we currently are
+         * looking at.
+         */
+        private int lineLength;
+
+        private byte lastByte;
+
+        private Stream(final Key key) {
+            this.key = key;
+        }
+
+        private void append(final Buffer buffer) {
+            this.data.add(buffer);
+            this.available += buffer.capacity();
+            this.bytes += buffer.capacity();
+            this.nextSeq += buffer.capacity();
+        }
+
+        /**
+         * The other side has sent a fin.
+         */
+        private void fin(final int seq) {
+            this.fin = true;
+            this.finSeq = seq;
+        }
+
+        /**
+         * @return true if the other side has sent a fin and we have all the
+         *         data that came before it, or if we have lost track of the
+         *         data anyway.
+         */
+        private boolean isDone() {
+            return this.fin && (!this.synced || ((this.nextSeq - this.finSeq) >= 0));
+        }
+
+        private void addOutOfOrder(final int seq, final Buffer buffer) {
+            int index = this.outOfOrder.size();
+            while ((index > 0) && ((this.outOfOrder.get(index - 1).seq - seq) > 0)) {
+                --index;
+            }
+            this.outOfOrder.add(index, new Segment(seq, buffer));
+            this.bytes += buffer.capacity();
+        }
+
+        /**
+         * Move all the out of order segments that no longer are ahead of a
+         * gap over to the in order data.
+         */
+        private void drainOutOfOrder() {
+            while (!this.outOfOrder.isEmpty()) {
+                final Segment segment = this.outOfOrder.get(0);
+                final int diff = segment.seq - this.nextSeq;
+                if (diff > 0) {
+                    return;
+                }
+                this.outOfOrder.remove(0);
+                this.bytes -= segment.data.capacity();
+                if ((-diff) < segment.data.capacity()) {
+                    append(segment.data.slice(-diff, segment.data.capacity()));
+                }
+            }
+        }
+
+        /**
+         * Chop off as many complete SIP messages as possible from the in order
+         * data. Only the bytes that have been added since the last time are
+         * looked at, whatever we learned about the pending message before
+         * that is kept in {@link #messageLength} and friends.
+         *
+         * @param frame the tcp frame of the segment that was just added
+         * @return
+         * @throws IOException
+         */
+        private List<Buffer> delimit(final TCPFrame frame) throws IOException {
+            List<Buffer> messages = Collections.emptyList();
+            while (this.available > 0) {
+                if (!this.verified) {
+                    // keep-alives (RFC 5626) are just skipped
+                    consume(countLineFeeds());
+                    if (this.available < 3) {
+                        return messages;
+                    }
+
+                    final Buffer first = this.data.get(0);
+                    if (!SIPFramer.isSipMessage(first.capacity() >= 3 ? first : view(this.available))) {
+                        // we are not in sync with the stream
+                        TCPReassembler.this.droppedBytes += this.available;
+                        consume(this.available);
+                        return messages;
+                    }
+                    this.verified = true;
+                }
+
+                if (this.messageLength == -1) {
+                    final int headerLength = scanHeaders();
+                    if (headerLength == -1) {
+                        return messages;
+                    }
+                    final int contentLength = SIPFramer.getContentLength(view(headerLength));
+                    if ((contentLength < 0)
+                            || (((long) headerLength + contentLength) > TCPReassembler.this.maxBytes)) {
+                        // we'd never be able to buffer all of it anyway
+                        TCPReassembler.this.framerManager.reportError(frame, FramingError.MALFORMED);
+                        TCPReassembler.this.droppedBytes += this.available;
+                        clear();
+                        return messages;
+                    }
+                    this.messageLength = headerLength + contentLength;
+                }
+
+                if (this.available < this.messageLength) {
+                    return messages;
+                }
+
+                if (messages.isEmpty()) {
+                    messages = new ArrayList<Buffer>(2);
+                }
+                messages.add(view(this.messageLength));
+                ++TCPReassembler.this.messageCount;
+                consume(this.messageLength);
+                reset();
+            }
+            return messages;
+        }
+
+        /**
+         * Continue looking for the empty line that ends the headers of the
+         * pending message from where we left off.
+         *
+         * @return the length of the initial line and the headers, including
+         *         the empty line, or -1 (negative one) if we haven't seen all
+         *         of them yet.
+         * @throws IOException
+         */
+        private int scanHeaders() throws IOException {
+            while (this.scanIndex < this.data.size()) {
+                final Buffer buffer = this.data.get(this.scanIndex);
+                final int stop = buffer.capacity();
+                while (this.scanOffset < stop) {
+                    final byte b = buffer.getByte(this.scanOffset++);
+                    ++this.scanned;
+                    if (b != '\n') {
+                        ++this.lineLength;
+                        this.lastByte = b;
+                    } else if ((this.lineLength == 0) || ((this.lineLength == 1) && (this.lastByte == '\r'))) {
+                        return this.scanned;
+                    } else {
+                        this.lineLength = 0;
+                    }
+                }
+                ++this.scanIndex;
+                this.scanOffset = 0;
+            }
+            return -1;
+        }
+
+        /**
+         * @return the number of CR and LF at the beginning of the in order
+         *         data
+         * @throws IOException
+         */
+        private int countLineFeeds() throws IOException {
+            int count = 0;
+            for (final Buffer buffer : this.data) {
+                final int stop = buffer.capacity();
+                for (int i = 0; i < stop; ++i) {
+                    if (!isLineFeed(buffer.getByte(i))) {
+                        return count;
+                    }
+                    ++count;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * @return the first bytes of the in order data as a single buffer
+         */
+        private Buffer view(final int length) {
+            return Buffers.wrap(this.data.toArray(new Buffer[this.data.size()])).slice(0, length);
+        }
+
+        /**
+         * Forget what we know about the pending message, which is done once
+         * it has been delivered.
+         */
+        private void reset() {
+            this.verified = false;
+            this.messageLength = -1;
+            this.scanned = 0;
+            this.scanIndex = 0;
+            this.scanOffset = 0;
+            this.lineLength = 0;
+            this.lastByte = 0;
+        }
+
+        /**
+         * Throw away the first bytes of the in order data.
+         */
+        private void consume(final int count) {
+            int left = count;
+            while (left > 0) {
+                final Buffer first = this.data.get(0);
+                if (first.capacity() <= left) {
+                    this.data.remove(0);
+                    left -= first.capacity();
+                } else {
+                    this.data.set(0, first.slice(left, first.capacity()));
+                    left = 0;
+                }
+            }
+            this.available -= count;
+            this.bytes -= count;
+        }
+
+        /**
+         * Throw away everything and start over with the next segment.
+         */
+        private void clear() {
+            this.data.clear();
+            this.outOfOrder.clear();
+            this.available = 0;
+            this.bytes = 0;
+            this.synced = false;
+            reset();
+        }
+
+        private boolean isLineFeed(final byte b) {
+            return (b == '\r') || (b == '\n');
+        }
+    }
+
+    private static final class Segment {
+        private final int seq;
+        private final Buffer data;
+
+        private Segment(final int seq, final Buffer data) {
+            this.seq = seq;
+            this.data = data;
+        }
+    }
+
+    /**
+     * The source and destination of one direction of a connection.
+     */
+    private static final class Key {
+        private final long srcHigh;
+        private final long srcLow;
+        private final long dstHigh;
+        private final long dstLow;
+        private final int ports;
+
+        private Key(final IPFrame ip, final TCPFrame tcp) {
+            this(ip.getRawSourceIpHigh(), ip.getRawSourceIpLow(), ip.getRawDestinationIpHigh(),
+                    ip.getRawDestinationIpLow(), (tcp.getSourcePort() << 16) | tcp.getDestinationPort());
+        }
+
+        private Key(final long srcHigh, final long srcLow, final long dstHigh, final long dstLow, final int ports) {
+            this.srcHigh = srcHigh;
+            this.srcLow = srcLow;
+            this.dstHigh = dstHigh;
+            this.dstLow = dstLow;
+            this.ports = ports;
+        }
+
+        private Key reverse() {
+            return new Key(this.dstHigh, this.dstLow, this.srcHigh, this.srcLow, (this.ports << 16)
+                    | (this.ports >>> 16));
+        }
+
+        @Override
+        public int hashCode() {
+            long h = this.srcHigh;
+            h = (31 * h) + this.srcLow;
+            h = (31 * h) + this.dstHigh;
+            h = (31 * h) + this.dstLow;
+            return (31 * ((int) (h ^ (h >>> 32)))) + this.ports;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if ((obj == null) || (getClass() != obj.getClass())) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return (this.srcLow == other.srcLow) && (this.dstLow == other.dstLow) && (this.ports == other.ports)
+                    && (this.srcHigh == other.srcHigh) && (this.dstHigh == other.dstHigh);
+        }
+    }
+
+}
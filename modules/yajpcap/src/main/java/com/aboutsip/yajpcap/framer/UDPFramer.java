@@ -44,6 +44,11 @@ public class UDPFramer implements Layer4Framer {
         // UDP header is very simple. For our purposes, just
         // read the 8 bytes containing all the header fields
         // and the rest is just user data (payload of the udp packet)
+        if (buffer.readableBytes() < 8) {
+            this.framerManager.reportError(parent, FramingError.TRUNCATED);
+            return null;
+        }
+
         final Buffer headers = buffer.readBytes(8);
         final Buffer data = buffer.slice();
         return new UDPFrame(this.framerManager, parent, headers, data);
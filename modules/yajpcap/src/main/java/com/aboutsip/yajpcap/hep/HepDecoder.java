@@ -0,0 +1,347 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.hep;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.aboutsip.buffer.Buffer;
+import com.aboutsip.buffer.Buffers;
+import com.aboutsip.yajpcap.frame.PcapFrame;
+import com.aboutsip.yajpcap.frame.PcapGlobalHeader;
+import com.aboutsip.yajpcap.frame.PcapRecordHeader;
+import com.aboutsip.yajpcap.framer.FramerManager;
+
+/**
+ * Decodes HEPv3 packets, the encapsulation used by Homer capture agents
+ * (also known as EEP), into regular {@link PcapFrame}s.
+ *
+ * A HEP packet carries the captured message along with where it came from and
+ * where it was going, i.e., the IP addresses and ports, and when it was
+ * captured. Out of those we build the ethernet, IP and UDP headers the message
+ * would have had if it had been captured off of the wire, which means that
+ * the frames are framed by the very same framers as the frames read from a
+ * pcap (so you get the same {@link com.aboutsip.yajpcap.frame.SipFrame}s etc)
+ * and that they can be written to a pcap as is, using the header returned by
+ * {@link #getPcapHeader()}.
+ *
+ * Note that HEP carries one complete message per packet, so there is nothing
+ * to reassemble, and the message is always presented as UDP, whichever
+ * transport it actually was sent over. For SIP, the Via header of the message
+ * still tells you what that transport was.
+ *
+ * Capture agents also use HEP for other things than SIP, such as RTCP
+ * reports and logs, which typically are JSON and don't look anything like
+ * what was on the wire. Only packets with a protocol type of
+ * {@link #PROTOCOL_TYPE_SIP}, or without a protocol type at all, are decoded,
+ * the rest are skipped just like keep alives are.
+ *
+ * The decoder doesn't keep any state of its own so it can be shared between
+ * threads.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class HepDecoder {
+
+    /**
+     * The value of the protocol type chunk for SIP, which is the only
+     * protocol type we decode.
+     */
+    public static final int PROTOCOL_TYPE_SIP = 1;
+
+    private static final int CHUNK_IP_FAMILY = 1;
+
+    private static final int CHUNK_IP_PROTOCOL = 2;
+
+    private static final int CHUNK_IPV4_SOURCE = 3;
+
+    private static final int CHUNK_IPV4_DESTINATION = 4;
+
+    private static final int CHUNK_IPV6_SOURCE = 5;
+
+    private static final int CHUNK_IPV6_DESTINATION = 6;
+
+    private static final int CHUNK_SOURCE_PORT = 7;
+
+    private static final int CHUNK_DESTINATION_PORT = 8;
+
+    private static final int CHUNK_TIMESTAMP_SECONDS = 9;
+
+    private static final int CHUNK_TIMESTAMP_MICRO_SECONDS = 10;
+
+    private static final int CHUNK_PROTOCOL_TYPE = 11;
+
+    private static final int CHUNK_PAYLOAD = 15;
+
+    private static final int FAMILY_IPV4 = 2;
+
+    private static final int FAMILY_IPV6 = 10;
+
+    /**
+     * The pcap global header of the frames we produce. Every record header
+     * will be in the same byte order as this one.
+     */
+    private static final PcapGlobalHeader PCAP_HEADER = PcapGlobalHeader
+            .createDefaultHeader(PcapGlobalHeader.DLT_EN10MB);
+
+    private final FramerManager framerManager;
+
+    /**
+     *
+     * @param framerManager
+     *            the {@link FramerManager} the decoded frames will use to frame
+     *            their payloads.
+     */
+    public HepDecoder(final FramerManager framerManager) {
+        if (framerManager == null) {
+            throw new IllegalArgumentException("The FramerManager cannot be null");
+        }
+        this.framerManager = framerManager;
+    }
+
+    /**
+     * The pcap global header that goes with the frames produced by this
+     * decoder, which is what you need if you want to write them out to a
+     * pcap.
+     *
+     * @return
+     */
+    public static PcapGlobalHeader getPcapHeader() {
+        return PCAP_HEADER;
+    }
+
+    /**
+     * Decode a HEP packet. All the remaining bytes of the buffer are expected
+     * to be the HEP packet, and they will all be consumed.
+     *
+     * @param packet
+     * @return the frame or null if the packet doesn't carry a message, such
+     *         as a keep alive, or if the message isn't SIP.
+     * @throws IOException
+     *             in case the packet isn't a valid HEPv3 packet
+     */
+    public PcapFrame decode(final ByteBuffer packet) throws IOException {
+        final ByteBuffer hep = packet.slice().order(ByteOrder.BIG_ENDIAN);
+        packet.position(packet.limit());
+
+        if ((hep.remaining() < 6) || (hep.get(0) != 'H') || (hep.get(1) != 'E') || (hep.get(2) != 'P')
+                || (hep.get(3) != '3')) {
+            throw new IOException("Not a HEPv3 packet");
+        }
+
+        final int total = hep.getShort(4) & 0xFFFF;
+        if ((total < 6) || (total > hep.remaining())) {
+            throw new IOException("Corrupt HEP packet, the total length is " + total + " but got "
+                    + hep.remaining() + " bytes");
+        }
+
+        int family = FAMILY_IPV4;
+        byte[] source = null;
+        byte[] destination = null;
+        int sourcePort = 0;
+        int destinationPort = 0;
+        long seconds = -1;
+        long microSeconds = 0;
+        int payloadOffset = -1;
+        int payloadLength = 0;
+        int protocolType = PROTOCOL_TYPE_SIP;
+
+        int index = 6;
+        while (index < total) {
+            if ((total - index) < 6) {
+                throw new IOException("Corrupt HEP packet, truncated chunk header at " + index);
+            }
+
+            final int vendor = hep.getShort(index) & 0xFFFF;
+            final int type = hep.getShort(index + 2) & 0xFFFF;
+            final int length = hep.getShort(index + 4) & 0xFFFF;
+            if ((length < 6) || (length > (total - index))) {
+                throw new IOException("Corrupt HEP packet, chunk " + type + " has length " + length);
+            }
+
+            final int value = index + 6;
+            final int size = length - 6;
+            index += length;
+
+            // only the generic chunks are of interest to us
+            if (vendor != 0) {
+                continue;
+            }
+
+            switch (type) {
+            case CHUNK_IP_FAMILY:
+                family = getUnsigned(hep, value, size, type);
+                break;
+            case CHUNK_IPV4_SOURCE:
+                source = getAddress(hep, value, size, 4, type);
+                break;
+            case CHUNK_IPV4_DESTINATION:
+                destination = getAddress(hep, value, size, 4, type);
+                break;
+            case CHUNK_IPV6_SOURCE:
+                source = getAddress(hep, value, size, 16, type);
+                break;
+            case CHUNK_IPV6_DESTINATION:
+                destination = getAddress(hep, value, size, 16, type);
+                break;
+            case CHUNK_SOURCE_PORT:
+                sourcePort = getUnsigned(hep, value, size, type);
+                break;
+            case CHUNK_DESTINATION_PORT:
+                destinationPort = getUnsigned(hep, value, size, type);
+                break;
+            case CHUNK_TIMESTAMP_SECONDS:
+                seconds = getUnsigned(hep, value, size, type) & 0xFFFFFFFFL;
+                break;
+            case CHUNK_TIMESTAMP_MICRO_SECONDS:
+                microSeconds = getUnsigned(hep, value, size, type) & 0xFFFFFFFFL;
+                break;
+            case CHUNK_PAYLOAD:
+                payloadOffset = value;
+                payloadLength = size;
+                break;
+            case CHUNK_PROTOCOL_TYPE:
+                protocolType = getUnsigned(hep, value, size, type);
+                break;
+            case CHUNK_IP_PROTOCOL:
+            default:
+                // nothing we need, see the class comment on why we ignore the
+                // ip protocol
+                break;
+            }
+        }
+
+        if ((payloadOffset == -1) || (payloadLength == 0) || (protocolType != PROTOCOL_TYPE_SIP)) {
+            return null;
+        }
+
+        final int addressLength = family == FAMILY_IPV6 ? 16 : 4;
+        if ((family != FAMILY_IPV4) && (family != FAMILY_IPV6)) {
+            throw new IOException("Unknown IP family " + family + " in HEP packet");
+        }
+        if (source == null) {
+            source = new byte[addressLength];
+        }
+        if (destination == null) {
+            destination = new byte[addressLength];
+        }
+        if ((source.length != addressLength) || (destination.length != addressLength)) {
+            throw new IOException("The IP addresses of the HEP packet don't match its IP family");
+        }
+
+        if (seconds == -1) {
+            final long now = System.currentTimeMillis();
+            seconds = now / 1000;
+            microSeconds = (now % 1000) * 1000;
+        }
+
+        return createFrame(family == FAMILY_IPV6, source, destination, sourcePort, destinationPort, seconds,
+                microSeconds, hep, payloadOffset, payloadLength);
+    }
+
+    /**
+     * Build the record, ethernet, IP and UDP headers around the payload.
+     */
+    private PcapFrame createFrame(final boolean ipv6, final byte[] source, final byte[] destination,
+            final int sourcePort, final int destinationPort, final long seconds, final long microSeconds,
+            final ByteBuffer hep, final int payloadOffset, final int payloadLength) {
+        final int ipHeaderLength = ipv6 ? 40 : 20;
+        final int udpLength = 8 + payloadLength;
+        final int capturedLength = 14 + ipHeaderLength + udpLength;
+
+        final ByteBuffer record = ByteBuffer.allocate(16 + capturedLength);
+
+        // the record header
+        record.order(PCAP_HEADER.getByteOrder());
+        record.putInt((int) seconds);
+        record.putInt((int) microSeconds);
+        record.putInt(capturedLength);
+        record.putInt(capturedLength);
+        record.order(ByteOrder.BIG_ENDIAN);
+
+        // ethernet, we don't know the mac addresses so leave them as zeros
+        record.position(16 + 12);
+        record.putShort((short) (ipv6 ? 0x86DD : 0x0800));
+
+        final int ip = record.position();
+        if (ipv6) {
+            record.putInt(0x60000000);
+            record.putShort((short) udpLength);
+            record.put((byte) 17);
+            record.put((byte) 64);
+            record.put(source);
+            record.put(destination);
+        } else {
+            record.put((byte) 0x45);
+            record.put((byte) 0);
+            record.putShort((short) (20 + udpLength));
+            record.putShort((short) 0);
+            // don't fragment
+            record.putShort((short) 0x4000);
+            record.put((byte) 64);
+            record.put((byte) 17);
+            record.putShort((short) 0);
+            record.put(source);
+            record.put(destination);
+            record.putShort(ip + 10, checksum(record.array(), ip, 20));
+        }
+
+        // udp, the checksum is optional for ipv4 and we skip it for
+        // ipv6 as well since nobody will ever see these on the wire
+        record.putShort((short) sourcePort);
+        record.putShort((short) destinationPort);
+        record.putShort((short) udpLength);
+        record.putShort((short) 0);
+
+        final ByteBuffer payload = hep.duplicate();
+        payload.limit(payloadOffset + payloadLength).position(payloadOffset);
+        record.put(payload);
+
+        final Buffer data = Buffers.wrap(record.array());
+        final PcapRecordHeader header = new PcapRecordHeader(PCAP_HEADER.getByteOrder(), data.slice(0, 16));
+        return new PcapFrame(this.framerManager, header, data.slice(16, 16 + capturedLength));
+    }
+
+    private static int getUnsigned(final ByteBuffer hep, final int index, final int size, final int type)
+            throws IOException {
+        switch (size) {
+        case 1:
+            return hep.get(index) & 0xFF;
+        case 2:
+            return hep.getShort(index) & 0xFFFF;
+        case 4:
+            return hep.getInt(index);
+        default:
+            throw new IOException("Corrupt HEP packet, chunk " + type + " has an unexpected length of " + size);
+        }
+    }
+
+    private static byte[] getAddress(final ByteBuffer hep, final int index, final int size, final int expected,
+            final int type) throws IOException {
+        if (size != expected) {
+            throw new IOException("Corrupt HEP packet, chunk " + type + " has an unexpected length of " + size);
+        }
+        final byte[] address = new byte[size];
+        for (int i = 0; i < size; ++i) {
+            address[i] = hep.get(index + i);
+        }
+        return address;
+    }
+
+    /**
+     * The internet checksum of the IPv4 header.
+     */
+    private static short checksum(final byte[] buffer, final int offset, final int length) {
+        int sum = 0;
+        for (int i = offset; i < (offset + length); i += 2) {
+            sum += ((buffer[i] & 0xFF) << 8) | (buffer[i + 1] & 0xFF);
+        }
+        while ((sum >>> 16) != 0) {
+            sum = (sum & 0xFFFF) + (sum >>> 16);
+        }
+        return (short) ~sum;
+    }
+
+}
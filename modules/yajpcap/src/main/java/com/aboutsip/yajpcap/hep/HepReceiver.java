@@ -0,0 +1,330 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.hep;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.aboutsip.yajpcap.FrameHandler;
+import com.aboutsip.yajpcap.frame.PcapFrame;
+import com.aboutsip.yajpcap.frame.PcapGlobalHeader;
+import com.aboutsip.yajpcap.framer.FramerManager;
+
+/**
+ * Receives HEP packets from capture agents, such as SBCs exporting the SIP
+ * traffic they see, on a {@link DatagramChannel} and hands the decoded frames
+ * over to a {@link FrameHandler}, just as a {@link com.aboutsip.yajpcap.Pcap}
+ * would. See {@link HepDecoder} for what the frames look like.
+ *
+ * The channel is read by a number of background threads, each one receiving
+ * as many datagrams as are available, up to the batch size, before handing
+ * the resulting frames over to the {@link FrameHandler} in one go. The
+ * {@link FrameHandler} is only ever called by one thread at a time but since
+ * the datagrams are received by several threads, the frames are not
+ * necessarily handed over in the order they were received.
+ *
+ * Packets that cannot be decoded are dropped and counted, see
+ * {@link #getMalformedCount()}.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class HepReceiver implements Closeable {
+
+    public static final int DEFAULT_THREADS = 2;
+
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    /**
+     * The largest UDP datagram there is.
+     */
+    private static final int MAX_DATAGRAM_SIZE = 65535;
+
+    private final DatagramChannel channel;
+
+    private final FrameHandler handler;
+
+    private final FramerManager framerManager;
+
+    private final HepDecoder decoder;
+
+    private final int batchSize;
+
+    private final Thread[] threads;
+
+    /**
+     * Held while the {@link FrameHandler} is being called.
+     */
+    private final Object dispatchLock = new Object();
+
+    private final List<Selector> selectors = new ArrayList<Selector>();
+
+    private final AtomicLong received = new AtomicLong();
+
+    private final AtomicLong malformed = new AtomicLong();
+
+    private volatile IOException failure;
+
+    private volatile boolean closed;
+
+    /**
+     * Bind a new channel to the given address and start receiving on it.
+     *
+     * @param address
+     * @param handler
+     * @return
+     * @throws IOException
+     */
+    public static HepReceiver open(final SocketAddress address, final FrameHandler handler) throws IOException {
+        if (address == null) {
+            throw new IllegalArgumentException("The address cannot be null");
+        }
+
+        final DatagramChannel channel = DatagramChannel.open();
+        try {
+            channel.socket().bind(address);
+            return create(channel, handler, DEFAULT_THREADS, DEFAULT_BATCH_SIZE);
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        } catch (final IllegalArgumentException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Same as {@link #create(DatagramChannel, FrameHandler, int, int)} with
+     * the default number of threads and batch size.
+     *
+     * @param channel
+     * @param handler
+     * @return
+     * @throws IOException
+     */
+    public static HepReceiver create(final DatagramChannel channel, final FrameHandler handler)
+            throws IOException {
+        return create(channel, handler, DEFAULT_THREADS, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Start receiving on the channel, which must already be bound. The
+     * channel will be put in non-blocking mode and it will be closed when the
+     * receiver is closed.
+     *
+     * @param channel
+     * @param handler
+     * @param threads
+     *            the number of threads receiving from the channel
+     * @param batchSize
+     *            the max number of frames handed over to the
+     *            {@link FrameHandler} in one go
+     * @return
+     * @throws IOException
+     */
+    public static HepReceiver create(final DatagramChannel channel, final FrameHandler handler,
+            final int threads, final int batchSize) throws IOException {
+        if (channel == null) {
+            throw new IllegalArgumentException("The channel cannot be null");
+        }
+
+        if (handler == null) {
+            throw new IllegalArgumentException("The FrameHandler cannot be null");
+        }
+
+        if (threads <= 0) {
+            throw new IllegalArgumentException("The number of threads must be greater than zero");
+        }
+
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be greater than zero");
+        }
+
+        channel.configureBlocking(false);
+        final HepReceiver receiver = new HepReceiver(channel, handler, threads, batchSize);
+        try {
+            for (int i = 0; i < threads; ++i) {
+                final Selector selector = Selector.open();
+                receiver.selectors.add(selector);
+                channel.register(selector, SelectionKey.OP_READ);
+            }
+        } catch (final IOException e) {
+            receiver.close();
+            throw e;
+        }
+
+        for (final Thread thread : receiver.threads) {
+            thread.start();
+        }
+        return receiver;
+    }
+
+    /**
+     *
+     */
+    private HepReceiver(final DatagramChannel channel, final FrameHandler handler, final int threads,
+            final int batchSize) {
+        this.channel = channel;
+        this.handler = handler;
+        this.batchSize = batchSize;
+        this.framerManager = FramerManager.createInstance();
+        this.framerManager.setDataLinkType(HepDecoder.getPcapHeader().getDataLinkType());
+        this.decoder = new HepDecoder(this.framerManager);
+        this.threads = new Thread[threads];
+        for (int i = 0; i < threads; ++i) {
+            final int index = i;
+            this.threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    receive(HepReceiver.this.selectors.get(index));
+                }
+            }, "yajpcap-hep-receiver-" + i);
+            this.threads[i].setDaemon(true);
+        }
+    }
+
+    /**
+     * The pcap global header to use if you want to write the received frames
+     * to a pcap.
+     *
+     * @return
+     */
+    public PcapGlobalHeader getPcapHeader() {
+        return HepDecoder.getPcapHeader();
+    }
+
+    /**
+     * The address we are receiving on.
+     *
+     * @return
+     */
+    public SocketAddress getLocalAddress() {
+        return this.channel.socket().getLocalSocketAddress();
+    }
+
+    /**
+     * The number of HEP packets that have been decoded into frames.
+     *
+     * @return
+     */
+    public long getReceivedCount() {
+        return this.received.get();
+    }
+
+    /**
+     * The number of packets we have dropped because they couldn't be decoded.
+     *
+     * @return
+     */
+    public long getMalformedCount() {
+        return this.malformed.get();
+    }
+
+    /**
+     * Stop receiving and close the channel. Whatever the background threads
+     * already have received will have been handed over to the
+     * {@link FrameHandler} once this method returns.
+     *
+     * @throws IOException
+     *             in case any of the threads failed to receive from the
+     *             channel at any point.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+
+        this.closed = true;
+        for (final Selector selector : this.selectors) {
+            selector.wakeup();
+        }
+
+        boolean interrupted = false;
+        try {
+            for (final Thread thread : this.threads) {
+                while (thread.isAlive()) {
+                    try {
+                        thread.join();
+                    } catch (final InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        for (final Selector selector : this.selectors) {
+            selector.close();
+        }
+        this.channel.close();
+
+        if (this.failure != null) {
+            throw this.failure;
+        }
+    }
+
+    /**
+     * The loop of each one of the background threads.
+     */
+    private void receive(final Selector selector) {
+        final ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+        final List<PcapFrame> batch = new ArrayList<PcapFrame>(this.batchSize);
+        try {
+            while (!this.closed) {
+                selector.select();
+                selector.selectedKeys().clear();
+
+                while ((batch.size() < this.batchSize) && !this.closed) {
+                    buffer.clear();
+                    if (this.channel.receive(buffer) == null) {
+                        break;
+                    }
+                    buffer.flip();
+
+                    try {
+                        final PcapFrame frame = this.decoder.decode(buffer);
+                        if (frame != null) {
+                            batch.add(frame);
+                        }
+                    } catch (final IOException e) {
+                        this.malformed.incrementAndGet();
+                    }
+                }
+
+                dispatch(batch);
+                batch.clear();
+            }
+        } catch (final IOException e) {
+            if (!this.closed && (this.failure == null)) {
+                this.failure = e;
+            }
+        }
+    }
+
+    private void dispatch(final List<PcapFrame> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        synchronized (this.dispatchLock) {
+            for (final PcapFrame frame : batch) {
+                this.framerManager.tick(frame.getArrivalTime());
+                this.handler.nextFrame(frame);
+            }
+        }
+        this.received.addAndGet(batch.size());
+    }
+
+}
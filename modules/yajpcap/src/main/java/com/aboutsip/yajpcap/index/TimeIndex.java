@@ -0,0 +1,331 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.aboutsip.buffer.Buffers;
+import com.aboutsip.yajpcap.frame.PcapGlobalHeader;
+
+/**
+ * A {@link TimeIndex} maps time to the offset within a pcap file of the
+ * records captured at that time. Time is divided into buckets (one second by
+ * default) and for every bucket we keep the time and the offset of the first
+ * record that falls into it, which keeps the index small enough to be stored
+ * next to the capture as a sidecar file and read back in a few milliseconds.
+ *
+ * The index assumes that the records are stored in the order they were
+ * captured, which is what all capture tools do. A record that is older than
+ * the previous ones will simply not start a new bucket.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class TimeIndex {
+
+    /**
+     * The sidecar file of a capture is the name of the capture with this
+     * suffix appended.
+     */
+    public static final String SUFFIX = ".tidx";
+
+    /**
+     * One second, expressed in micro seconds just like the arrival time of
+     * the frames.
+     */
+    public static final long DEFAULT_BUCKET_SIZE = 1000000L;
+
+    private static final int MAGIC = 0x59544958;
+
+    private static final int VERSION = 1;
+
+    /**
+     * The magic, the version, the bucket size, the length of the capture and
+     * the number of entries.
+     */
+    private static final int HEADER_LENGTH = 4 + 4 + 8 + 8 + 4;
+
+    /**
+     * The time and the offset.
+     */
+    private static final int ENTRY_LENGTH = 8 + 8;
+
+    private final long bucketSize;
+
+    /**
+     * The length of the capture this index was built from, which is how we
+     * detect that the sidecar file is stale.
+     */
+    private final long captureLength;
+
+    private final long[] times;
+
+    private final long[] offsets;
+
+    private final int count;
+
+    TimeIndex(final long bucketSize, final long captureLength, final long[] times, final long[] offsets,
+            final int count) {
+        this.bucketSize = bucketSize;
+        this.captureLength = captureLength;
+        this.times = times;
+        this.offsets = offsets;
+        this.count = count;
+    }
+
+    /**
+     * The size of the time buckets in micro seconds.
+     *
+     * @return
+     */
+    public long getBucketSize() {
+        return this.bucketSize;
+    }
+
+    /**
+     * The length of the capture file this index was built from.
+     *
+     * @return
+     */
+    public long getCaptureLength() {
+        return this.captureLength;
+    }
+
+    /**
+     * The number of entries in this index, which is one per time bucket that
+     * has any records in it.
+     *
+     * @return
+     */
+    public int size() {
+        return this.count;
+    }
+
+    /**
+     * The arrival time of the first record of the given entry.
+     *
+     * @param index
+     * @return
+     */
+    public long getTime(final int index) {
+        checkIndex(index);
+        return this.times[index];
+    }
+
+    /**
+     * The offset within the capture of the first record of the given entry.
+     *
+     * @param index
+     * @return
+     */
+    public long getOffset(final int index) {
+        checkIndex(index);
+        return this.offsets[index];
+    }
+
+    /**
+     * Find the offset within the capture to start reading from in order to
+     * find the first record that arrived at or after the given time.
+     *
+     * @param timestamp the time in micro seconds
+     * @return the offset or -1 (negative one) if the index is empty
+     */
+    public long find(final long timestamp) {
+        if (this.count == 0) {
+            return -1;
+        }
+
+        // the last entry that isn't later than the timestamp
+        int low = 0;
+        int high = this.count - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (this.times[middle] <= timestamp) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return this.offsets[low];
+    }
+
+    private void checkIndex(final int index) {
+        if ((index < 0) || (index >= this.count)) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds, size " + this.count);
+        }
+    }
+
+    /**
+     * Write this index to the given file.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void write(final File file) throws IOException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(this.bucketSize);
+            out.writeLong(this.captureLength);
+            out.writeInt(this.count);
+            for (int i = 0; i < this.count; ++i) {
+                out.writeLong(this.times[i]);
+                out.writeLong(this.offsets[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Read an index previously written by {@link #write(File)}.
+     *
+     * @param file
+     * @return
+     * @throws IOException in case the file isn't a time index, if it is
+     *             truncated or corrupt or if anything goes wrong while
+     *             reading it
+     */
+    public static TimeIndex read(final File file) throws IOException {
+        final long length = file.length();
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if ((length < HEADER_LENGTH) || (in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+                throw new IOException("Not a time index: " + file);
+            }
+            final long bucketSize = in.readLong();
+            final long captureLength = in.readLong();
+            final int count = in.readInt();
+            if ((bucketSize <= 0) || (captureLength < 0) || (count < 0)
+                    || (length != (HEADER_LENGTH + ((long) count * ENTRY_LENGTH)))) {
+                throw new IOException("Corrupt time index: " + file);
+            }
+
+            final long[] times = new long[count];
+            final long[] offsets = new long[count];
+            for (int i = 0; i < count; ++i) {
+                times[i] = in.readLong();
+                offsets[i] = in.readLong();
+                // the records are indexed in the order they are stored
+                final long min = i == 0 ? 0 : offsets[i - 1] + 1;
+                if ((offsets[i] < min) || (offsets[i] >= captureLength)) {
+                    throw new IOException("Corrupt time index, entry " + i + " is out of order: " + file);
+                }
+            }
+            return new TimeIndex(bucketSize, captureLength, times, offsets, count);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * The sidecar file of the given capture.
+     *
+     * @param capture
+     * @return
+     */
+    public static File getSidecar(final File capture) {
+        return new File(capture.getPath() + SUFFIX);
+    }
+
+    /**
+     * Get the index for the capture. If there is a sidecar file that was
+     * built from the capture as it looks right now, that one will be used.
+     * Otherwise, which includes a sidecar that is truncated or corrupt, the
+     * index is built and we try to write it as a sidecar file so that the
+     * next time is fast. If the sidecar can't be written (e.g. a read-only
+     * directory) you still get the index, it just isn't saved.
+     *
+     * @param capture
+     * @return
+     * @throws IOException
+     */
+    public static TimeIndex load(final File capture) throws IOException {
+        final File sidecar = getSidecar(capture);
+        if (sidecar.isFile()) {
+            try {
+                final TimeIndex index = read(sidecar);
+                if (index.getCaptureLength() == capture.length()) {
+                    return index;
+                }
+            } catch (final IOException e) {
+                // a broken sidecar is no worse than a stale one, just build
+                // it again
+            }
+        }
+
+        final TimeIndex index = build(capture, DEFAULT_BUCKET_SIZE);
+        try {
+            index.write(sidecar);
+        } catch (final IOException e) {
+            // not being able to save it only means we have to build it again
+            // next time
+        }
+        return index;
+    }
+
+    /**
+     * Build the index of a pcap file. Only the record headers are read, the
+     * packet data is skipped altogether.
+     *
+     * @param capture
+     * @param bucketSize the size of the time buckets in micro seconds
+     * @return
+     * @throws IOException
+     */
+    public static TimeIndex build(final File capture, final long bucketSize) throws IOException {
+        final TimeIndexer indexer = new TimeIndexer(bucketSize);
+        final RandomAccessFile file = new RandomAccessFile(capture, "r");
+        try {
+            final FileChannel channel = file.getChannel();
+            final long length = channel.size();
+            final ByteBuffer buffer = ByteBuffer.allocate(24);
+            if (!readFully(channel, buffer, 0)) {
+                throw new IOException("Not a pcap, missing the global header: " + capture);
+            }
+            final PcapGlobalHeader header = PcapGlobalHeader.parse(Buffers.wrap(buffer.array()));
+
+            final byte[] recordHeader = buffer.array();
+            long position = 24;
+            while (readFully(channel, (ByteBuffer) buffer.clear().limit(16), position)) {
+                final long seconds = PcapGlobalHeader.getInt(0, recordHeader, header.getByteOrder()) & 0xFFFFFFFFL;
+                final long micros = PcapGlobalHeader.getInt(4, recordHeader, header.getByteOrder()) & 0xFFFFFFFFL;
+                final long captured = PcapGlobalHeader.getInt(8, recordHeader, header.getByteOrder()) & 0xFFFFFFFFL;
+                if ((position + 16 + captured) > length) {
+                    // truncated record, which we treat as the end of the file
+                    break;
+                }
+                indexer.add((seconds * 1000000) + micros, position);
+                position += 16 + captured;
+            }
+            return indexer.getIndex(length);
+        } finally {
+            file.close();
+        }
+    }
+
+    private static boolean readFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+            throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, offset);
+            if (read == -1) {
+                return false;
+            }
+            offset += read;
+        }
+        return true;
+    }
+
+}
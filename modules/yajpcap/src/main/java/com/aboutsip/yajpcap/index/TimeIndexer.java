@@ -0,0 +1,94 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.index;
+
+import com.aboutsip.yajpcap.record.RawRecord;
+
+/**
+ * Collects the entries of a {@link TimeIndex} as the records of a capture
+ * are read. Use it on its own through {@link TimeIndex#build(java.io.File, long)}
+ * or hand it to {@link com.aboutsip.yajpcap.Pcap#setTimeIndexer(TimeIndexer)}
+ * to have the index built on the fly while you are looping over the capture
+ * anyway.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class TimeIndexer {
+
+    private final long bucketSize;
+
+    private long[] times = new long[256];
+
+    private long[] offsets = new long[256];
+
+    private int count;
+
+    private long lastBucket = Long.MIN_VALUE;
+
+    /**
+     * @param bucketSize the size of the time buckets in micro seconds
+     * @throws IllegalArgumentException in case the bucket size isn't positive
+     */
+    public TimeIndexer(final long bucketSize) throws IllegalArgumentException {
+        if (bucketSize <= 0) {
+            throw new IllegalArgumentException("The bucket size must be positive");
+        }
+        this.bucketSize = bucketSize;
+    }
+
+    /**
+     * Add the record to the index. Only records that start a new time bucket
+     * will actually end up in the index.
+     *
+     * @param record
+     * @throws IllegalArgumentException in case the offset of the record is
+     *             unknown
+     */
+    public void add(final RawRecord record) throws IllegalArgumentException {
+        if (record.getOffset() < 0) {
+            throw new IllegalArgumentException("The offset of the record is unknown");
+        }
+        add(record.getArrivalTime(), record.getOffset());
+    }
+
+    /**
+     * @param time the arrival time in micro seconds of the record
+     * @param offset the offset of the record within the capture
+     */
+    public void add(final long time, final long offset) {
+        final long bucket = time / this.bucketSize;
+        if (bucket <= this.lastBucket) {
+            return;
+        }
+
+        if (this.count == this.times.length) {
+            final long[] newTimes = new long[this.count << 1];
+            final long[] newOffsets = new long[this.count << 1];
+            System.arraycopy(this.times, 0, newTimes, 0, this.count);
+            System.arraycopy(this.offsets, 0, newOffsets, 0, this.count);
+            this.times = newTimes;
+            this.offsets = newOffsets;
+        }
+
+        this.times[this.count] = time;
+        this.offsets[this.count] = offset;
+        ++this.count;
+        this.lastBucket = bucket;
+    }
+
+    /**
+     * Get the index of everything added so far.
+     *
+     * @param captureLength the length of the capture file
+     * @return
+     */
+    public TimeIndex getIndex(final long captureLength) {
+        final long[] indexTimes = new long[this.count];
+        final long[] indexOffsets = new long[this.count];
+        System.arraycopy(this.times, 0, indexTimes, 0, this.count);
+        System.arraycopy(this.offsets, 0, indexOffsets, 0, this.count);
+        return new TimeIndex(this.bucketSize, captureLength, indexTimes, indexOffsets, this.count);
+    }
+
+}
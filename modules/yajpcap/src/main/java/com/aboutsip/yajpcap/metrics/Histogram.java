@@ -0,0 +1,53 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.metrics;
+
+/**
+ * A histogram of durations, in nano seconds, with one bucket per power of
+ * two. The resolution is poor but recording is cheap and never contended,
+ * which is what matters when recording something per message, and it is
+ * enough to tell whether we are talking micro seconds or milli seconds.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class Histogram {
+
+    /**
+     * The number of buckets. Bucket i holds the durations in [2^(i-1), 2^i)
+     * nano seconds, bucket 0 the ones that were zero and the last bucket
+     * everything above 2^38 nano seconds, which is a bit more than four
+     * minutes.
+     */
+    public static final int BUCKETS = 40;
+
+    private static final int COUNT = BUCKETS;
+
+    private static final int TOTAL = BUCKETS + 1;
+
+    private final StripedCounters counters = new StripedCounters(BUCKETS + 2);
+
+    /**
+     * Record a duration.
+     *
+     * @param nanos
+     */
+    public void record(final long nanos) {
+        final long duration = Math.max(0, nanos);
+        this.counters.increment(bucket(duration));
+        this.counters.increment(COUNT);
+        this.counters.add(TOTAL, duration);
+    }
+
+    public HistogramSnapshot snapshot() {
+        final long[] values = this.counters.get();
+        final long[] buckets = new long[BUCKETS];
+        System.arraycopy(values, 0, buckets, 0, BUCKETS);
+        return new HistogramSnapshot(buckets, values[COUNT], values[TOTAL]);
+    }
+
+    static int bucket(final long nanos) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+}
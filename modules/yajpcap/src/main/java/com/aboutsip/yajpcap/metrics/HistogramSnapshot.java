@@ -0,0 +1,108 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.metrics;
+
+/**
+ * The state of a {@link Histogram} at a given point in time.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class HistogramSnapshot {
+
+    private final long[] buckets;
+
+    private final long count;
+
+    private final long total;
+
+    HistogramSnapshot(final long[] buckets, final long count, final long total) {
+        this.buckets = buckets;
+        this.count = count;
+        this.total = total;
+    }
+
+    /**
+     * The number of recorded durations.
+     *
+     * @return
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * The sum of all the recorded durations, in nano seconds.
+     *
+     * @return
+     */
+    public long getTotal() {
+        return this.total;
+    }
+
+    /**
+     * The mean of the recorded durations, in nano seconds, or zero if nothing
+     * has been recorded.
+     *
+     * @return
+     */
+    public long getMean() {
+        return this.count == 0 ? 0 : this.total / this.count;
+    }
+
+    /**
+     * The number of durations that ended up in the given bucket. See
+     * {@link Histogram#BUCKETS} for what the buckets are.
+     *
+     * @param bucket
+     * @return
+     */
+    public long getBucketCount(final int bucket) {
+        return this.buckets[bucket];
+    }
+
+    /**
+     * An upper bound, in nano seconds, of the given percentile of the recorded
+     * durations. Since the buckets are powers of two, the actual value is
+     * somewhere between half of this and this.
+     *
+     * @param percentile
+     *            e.g. 99.0 for the 99th percentile
+     * @return the upper bound or zero if nothing has been recorded
+     */
+    public long getPercentile(final double percentile) {
+        if ((percentile < 0) || (percentile > 100)) {
+            throw new IllegalArgumentException("The percentile must be between 0 and 100");
+        }
+
+        if (this.count == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil((percentile / 100.0) * this.count));
+        long seen = 0;
+        for (int i = 0; i < this.buckets.length; ++i) {
+            seen += this.buckets[i];
+            if (seen >= rank) {
+                return i == (this.buckets.length - 1) ? Long.MAX_VALUE : 1L << i;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * What has been recorded since an earlier snapshot of the same
+     * {@link Histogram}.
+     *
+     * @param earlier
+     * @return
+     */
+    public HistogramSnapshot since(final HistogramSnapshot earlier) {
+        final long[] delta = new long[this.buckets.length];
+        for (int i = 0; i < delta.length; ++i) {
+            delta[i] = this.buckets[i] - earlier.buckets[i];
+        }
+        return new HistogramSnapshot(delta, this.count - earlier.count, this.total - earlier.total);
+    }
+
+}
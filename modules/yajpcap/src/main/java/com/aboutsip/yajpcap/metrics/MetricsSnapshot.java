@@ -0,0 +1,174 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.metrics;
+
+import com.aboutsip.yajpcap.framer.FramingError;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * The state of the {@link PipelineMetrics} at a given point in time.
+ *
+ * A snapshot covers everything since the registry was created, or, if it was
+ * created through {@link #since(MetricsSnapshot)}, everything between the two
+ * snapshots. Either way, {@link #getInterval()} is the length of the period
+ * and the rates are calculated over it.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class MetricsSnapshot {
+
+    private final long[] values;
+
+    private final HistogramSnapshot sipFramingTime;
+
+    private final HistogramSnapshot sipParseTime;
+
+    private final long time;
+
+    private final long interval;
+
+    MetricsSnapshot(final long[] values, final HistogramSnapshot sipFramingTime,
+            final HistogramSnapshot sipParseTime, final long time, final long interval) {
+        this.values = values;
+        this.sipFramingTime = sipFramingTime;
+        this.sipParseTime = sipParseTime;
+        this.time = time;
+        this.interval = interval;
+    }
+
+    /**
+     * The length of the period this snapshot covers, in nano seconds.
+     *
+     * @return
+     */
+    public long getInterval() {
+        return this.interval;
+    }
+
+    public long getFrameCount(final Protocol protocol) {
+        return this.values[PipelineMetrics.FRAMES + protocol.ordinal()];
+    }
+
+    /**
+     * The number of bytes carried by the frames of the given protocol, i.e.,
+     * the size of their payloads.
+     *
+     * @param protocol
+     * @return
+     */
+    public long getByteCount(final Protocol protocol) {
+        return this.values[PipelineMetrics.BYTES + protocol.ordinal()];
+    }
+
+    /**
+     * The number of frames of the given protocol per second.
+     *
+     * @param protocol
+     * @return
+     */
+    public double getFrameRate(final Protocol protocol) {
+        return perSecond(getFrameCount(protocol));
+    }
+
+    /**
+     * The number of bytes carried by the frames of the given protocol per
+     * second.
+     *
+     * @param protocol
+     * @return
+     */
+    public double getByteRate(final Protocol protocol) {
+        return perSecond(getByteCount(protocol));
+    }
+
+    /**
+     * The number of times the framer of the given protocol accepted the data
+     * it was asked to probe.
+     *
+     * @param framer
+     * @return
+     */
+    public long getAcceptHits(final Protocol framer) {
+        return this.values[PipelineMetrics.ACCEPT_HITS + framer.ordinal()];
+    }
+
+    /**
+     * The number of times the framer of the given protocol rejected the data
+     * it was asked to probe.
+     *
+     * @param framer
+     * @return
+     */
+    public long getAcceptMisses(final Protocol framer) {
+        return this.values[PipelineMetrics.ACCEPT_MISSES + framer.ordinal()];
+    }
+
+    public long getMalformedCount(final FramingError error) {
+        return this.values[PipelineMetrics.MALFORMED + error.ordinal()];
+    }
+
+    /**
+     * The number of frames whose payload couldn't be framed, whatever the
+     * reason.
+     *
+     * @return
+     */
+    public long getMalformedCount() {
+        long count = 0;
+        for (final FramingError error : FramingError.values()) {
+            count += getMalformedCount(error);
+        }
+        return count;
+    }
+
+    public long getStartedStreams() {
+        return this.values[PipelineMetrics.STREAMS_STARTED];
+    }
+
+    public long getEndedStreams() {
+        return this.values[PipelineMetrics.STREAMS_ENDED];
+    }
+
+    /**
+     * The number of streams that have been started but not ended. For a
+     * snapshot created through {@link #since(MetricsSnapshot)} this is the
+     * change in open streams over the period.
+     *
+     * @return
+     */
+    public long getOpenStreams() {
+        return getStartedStreams() - getEndedStreams();
+    }
+
+    public HistogramSnapshot getSipFramingTime() {
+        return this.sipFramingTime;
+    }
+
+    public HistogramSnapshot getSipParseTime() {
+        return this.sipParseTime;
+    }
+
+    /**
+     * What has happened since an earlier snapshot.
+     *
+     * @param earlier
+     * @return
+     */
+    public MetricsSnapshot since(final MetricsSnapshot earlier) {
+        final long[] delta = new long[this.values.length];
+        for (int i = 0; i < delta.length; ++i) {
+            delta[i] = this.values[i] - earlier.values[i];
+        }
+        return new MetricsSnapshot(delta, this.sipFramingTime.since(earlier.sipFramingTime),
+                this.sipParseTime.since(earlier.sipParseTime), this.time, this.time - earlier.time);
+    }
+
+    private double perSecond(final long count) {
+        if (this.interval <= 0) {
+            return 0;
+        }
+        return (count * 1000000000.0) / this.interval;
+    }
+
+}
@@ -0,0 +1,306 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.aboutsip.yajpcap.framer.FramingError;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * Keeps track of what goes through the framing pipeline: how many frames and
+ * bytes of each protocol we have seen, how often the framers accept the data
+ * they are asked to probe, how many frames couldn't be framed, how long it
+ * takes to frame and parse SIP messages and how many streams are open.
+ *
+ * There is one registry per JVM, shared by every {@link com.aboutsip.yajpcap.Pcap},
+ * {@link com.aboutsip.yajpcap.framer.FramerManager} and stream handler, so it
+ * tells you what the process as a whole is doing. All the counters are
+ * {@link StripedCounters} so any number of threads can update them without
+ * getting in each other's way. To see what happened over a period of time,
+ * take a {@link #snapshot()} at the beginning and at the end of it and use
+ * {@link MetricsSnapshot#since(MetricsSnapshot)}.
+ *
+ * Nothing is collected until {@link #setEnabled(boolean)} has been called,
+ * and until then every hook in the pipeline is a single volatile read, the
+ * same way the {@link com.aboutsip.yajpcap.trace.Tracer} works. Whoever calls
+ * the update methods below is expected to check {@link #isEnabled()} first.
+ *
+ * The registry can be exposed over JMX through {@link #registerMBean()}.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class PipelineMetrics implements PipelineMetricsMXBean {
+
+    /**
+     * The name of the MBean, see {@link #registerMBean()}.
+     */
+    public static final String OBJECT_NAME = "com.aboutsip.yajpcap:type=PipelineMetrics";
+
+    private static final int PROTOCOLS = Protocol.values().length;
+
+    static final int FRAMES = 0;
+
+    static final int BYTES = FRAMES + PROTOCOLS;
+
+    static final int ACCEPT_HITS = BYTES + PROTOCOLS;
+
+    static final int ACCEPT_MISSES = ACCEPT_HITS + PROTOCOLS;
+
+    static final int MALFORMED = ACCEPT_MISSES + PROTOCOLS;
+
+    static final int STREAMS_STARTED = MALFORMED + FramingError.values().length;
+
+    static final int STREAMS_ENDED = STREAMS_STARTED + 1;
+
+    private static final int SIZE = STREAMS_ENDED + 1;
+
+    private static final PipelineMetrics instance = new PipelineMetrics();
+
+    private static volatile boolean enabled;
+
+    private final StripedCounters counters = new StripedCounters(SIZE);
+
+    private final Histogram sipFramingTime = new Histogram();
+
+    private final Histogram sipParseTime = new Histogram();
+
+    /**
+     * When the registry was created, as given by {@link System#nanoTime()}.
+     */
+    private final long created = System.nanoTime();
+
+    public static PipelineMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Start or stop collecting metrics. Whatever has been collected so far is
+     * kept either way.
+     *
+     * @param enabled
+     */
+    public static void setEnabled(final boolean enabled) {
+        PipelineMetrics.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     *
+     */
+    private PipelineMetrics() {
+        // left empty intentionally
+    }
+
+    /**
+     * Count a new frame.
+     *
+     * @param protocol
+     *            the protocol of the frame
+     * @param bytes
+     *            the number of bytes of its payload
+     */
+    public void frame(final Protocol protocol, final int bytes) {
+        final int index = protocol.ordinal();
+        this.counters.increment(FRAMES + index);
+        this.counters.add(BYTES + index, bytes);
+    }
+
+    /**
+     * Count the outcome of asking a framer whether it accepts some data.
+     *
+     * @param framer
+     *            the protocol of the framer
+     * @param accepted
+     */
+    public void acceptProbe(final Protocol framer, final boolean accepted) {
+        this.counters.increment((accepted ? ACCEPT_HITS : ACCEPT_MISSES) + framer.ordinal());
+    }
+
+    /**
+     * Count a frame whose payload couldn't be framed.
+     *
+     * @param error
+     */
+    public void malformed(final FramingError error) {
+        this.counters.increment(MALFORMED + error.ordinal());
+    }
+
+    /**
+     * Record how long it took to frame a SIP message.
+     *
+     * @param nanos
+     */
+    public void sipFramed(final long nanos) {
+        this.sipFramingTime.record(nanos);
+    }
+
+    /**
+     * Record how long it took to parse a SIP frame into a SIP message.
+     *
+     * @param nanos
+     */
+    public void sipParsed(final long nanos) {
+        this.sipParseTime.record(nanos);
+    }
+
+    public void streamStarted() {
+        this.counters.increment(STREAMS_STARTED);
+    }
+
+    public void streamEnded() {
+        this.counters.increment(STREAMS_ENDED);
+    }
+
+    /**
+     * Take a snapshot of all the metrics. The snapshot is not atomic, frames
+     * being processed while we take it may only be partially included.
+     *
+     * @return
+     */
+    public MetricsSnapshot snapshot() {
+        final long now = System.nanoTime();
+        return new MetricsSnapshot(this.counters.get(), this.sipFramingTime.snapshot(),
+                this.sipParseTime.snapshot(), now, now - this.created);
+    }
+
+    /**
+     * Register the registry with the platform MBean server under
+     * {@link #OBJECT_NAME}. Registering it more than once is harmless.
+     *
+     * @throws JMException
+     */
+    public void registerMBean() throws JMException {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, getObjectName());
+        } catch (final InstanceAlreadyExistsException e) {
+            // someone beat us to it
+        }
+    }
+
+    public void unregisterMBean() throws JMException {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(getObjectName());
+        } catch (final InstanceNotFoundException e) {
+            // wasn't registered
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getFrameCounts() {
+        return toMap(FRAMES);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getByteCounts() {
+        return toMap(BYTES);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getAcceptHits() {
+        return toMap(ACCEPT_HITS);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getAcceptMisses() {
+        return toMap(ACCEPT_MISSES);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getMalformedCounts() {
+        final Map<String, Long> map = new LinkedHashMap<String, Long>();
+        for (final FramingError error : FramingError.values()) {
+            map.put(error.name(), this.counters.get(MALFORMED + error.ordinal()));
+        }
+        return map;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getStartedStreams() {
+        return this.counters.get(STREAMS_STARTED);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getOpenStreams() {
+        return this.counters.get(STREAMS_STARTED) - this.counters.get(STREAMS_ENDED);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getSipFramingTime() {
+        return toMap(this.sipFramingTime.snapshot());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getSipParseTime() {
+        return toMap(this.sipParseTime.snapshot());
+    }
+
+    private Map<String, Long> toMap(final int offset) {
+        final Map<String, Long> map = new LinkedHashMap<String, Long>();
+        for (final Protocol protocol : Protocol.values()) {
+            map.put(protocol.name(), this.counters.get(offset + protocol.ordinal()));
+        }
+        return map;
+    }
+
+    private static Map<String, Long> toMap(final HistogramSnapshot histogram) {
+        final Map<String, Long> map = new LinkedHashMap<String, Long>();
+        map.put("count", histogram.getCount());
+        map.put("mean", histogram.getMean());
+        map.put("p50", histogram.getPercentile(50));
+        map.put("p90", histogram.getPercentile(90));
+        map.put("p99", histogram.getPercentile(99));
+        return map;
+    }
+
+    private static ObjectName getObjectName() {
+        try {
+            return new ObjectName(OBJECT_NAME);
+        } catch (final MalformedObjectNameException e) {
+            // can't happen, it is a constant
+            throw new RuntimeException(e);
+        }
+    }
+
+}
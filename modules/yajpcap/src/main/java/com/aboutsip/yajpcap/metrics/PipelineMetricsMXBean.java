@@ -0,0 +1,60 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.metrics;
+
+import java.util.Map;
+
+/**
+ * The management interface of the {@link PipelineMetrics}. All the maps are
+ * keyed by the name of the {@link com.aboutsip.yajpcap.protocol.Protocol} or
+ * {@link com.aboutsip.yajpcap.framer.FramingError} and all durations are in
+ * nano seconds.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public interface PipelineMetricsMXBean {
+
+    Map<String, Long> getFrameCounts();
+
+    Map<String, Long> getByteCounts();
+
+    /**
+     * The number of times the framer of each protocol accepted the data it
+     * was asked to probe.
+     *
+     * @return
+     */
+    Map<String, Long> getAcceptHits();
+
+    /**
+     * The number of times the framer of each protocol rejected the data it
+     * was asked to probe.
+     *
+     * @return
+     */
+    Map<String, Long> getAcceptMisses();
+
+    Map<String, Long> getMalformedCounts();
+
+    long getStartedStreams();
+
+    long getOpenStreams();
+
+    /**
+     * The count, mean and the 50th, 90th and 99th percentiles of the time it
+     * takes to frame a SIP message.
+     *
+     * @return
+     */
+    Map<String, Long> getSipFramingTime();
+
+    /**
+     * The count, mean and the 50th, 90th and 99th percentiles of the time it
+     * takes to parse a SIP frame into a SIP message.
+     *
+     * @return
+     */
+    Map<String, Long> getSipParseTime();
+
+}
@@ -0,0 +1,130 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed number of counters that many threads can update at the same time
+ * without fighting over the same cache line.
+ *
+ * The counters are kept in a number of stripes, each stripe holding its own
+ * copy of every counter, and a thread always updates the counters of the
+ * stripe its id maps to. Reading a counter means summing it up over all the
+ * stripes so reading is (a lot) more expensive than updating, which is the
+ * right trade-off for counters that are updated for every frame but only
+ * read every now and then.
+ *
+ * The stripes are laid out one after the other and each one is padded to a
+ * multiple of a cache line so two stripes never share one.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class StripedCounters {
+
+    /**
+     * The number of longs in a cache line (assuming 64 bytes, which is what
+     * pretty much everything we run on has).
+     */
+    private static final int LONGS_PER_CACHE_LINE = 8;
+
+    private static final int MAX_STRIPES = 64;
+
+    private static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+    private final AtomicLongArray counters;
+
+    private final int size;
+
+    /**
+     * The distance between the same counter in two stripes next to each
+     * other.
+     */
+    private final int width;
+
+    /**
+     *
+     * @param size
+     *            the number of counters
+     */
+    public StripedCounters(final int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("The number of counters must be greater than zero");
+        }
+        this.size = size;
+        this.width = ((size + LONGS_PER_CACHE_LINE - 1) / LONGS_PER_CACHE_LINE) * LONGS_PER_CACHE_LINE;
+        this.counters = new AtomicLongArray(this.width * STRIPES);
+    }
+
+    /**
+     * The number of counters.
+     *
+     * @return
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public void increment(final int counter) {
+        add(counter, 1);
+    }
+
+    public void add(final int counter, final long delta) {
+        this.counters.addAndGet(stripe() + counter, delta);
+    }
+
+    /**
+     * Sum up the counter over all the stripes. Updates made while we are
+     * summing may or may not be included.
+     *
+     * @param counter
+     * @return
+     */
+    public long get(final int counter) {
+        long sum = 0;
+        for (int stripe = 0; stripe < STRIPES; ++stripe) {
+            sum += this.counters.get((stripe * this.width) + counter);
+        }
+        return sum;
+    }
+
+    /**
+     * Sum up all the counters.
+     *
+     * @return an array with the value of every counter
+     */
+    public long[] get() {
+        final long[] values = new long[this.size];
+        for (int stripe = 0; stripe < STRIPES; ++stripe) {
+            final int offset = stripe * this.width;
+            for (int i = 0; i < this.size; ++i) {
+                values[i] += this.counters.get(offset + i);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * The offset of the stripe of the current thread.
+     */
+    private int stripe() {
+        final long id = Thread.currentThread().getId();
+        // thread ids are handed out in sequence so spread them out a bit in
+        // case they happen to be handed out in steps of the number of stripes
+        final int hash = (int) ((id * 0x9E3779B97F4A7C15L) >>> 32);
+        return (hash & (STRIPES - 1)) * this.width;
+    }
+
+    /**
+     * Twice the number of processors, rounded up to a power of two.
+     */
+    private static int stripes(final int processors) {
+        int stripes = 1;
+        while ((stripes < (processors * 2)) && (stripes < MAX_STRIPES)) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+}
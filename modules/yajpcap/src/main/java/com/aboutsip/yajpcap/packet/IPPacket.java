@@ -14,11 +14,73 @@ package com.aboutsip.yajpcap.packet;
  * 
  * The current version of YAJPcap is focused on IP anyway so...
  * 
+ * Both IPv4 and IPv6 packets are represented by this interface. All addresses
+ * are available as 128 bits, split up in two primitive longs, where IPv4
+ * addresses are given in their IPv4-mapped form (::ffff:a.b.c.d). The
+ * old 32-bit raw addresses are still there for IPv4.
+ * 
  * @author jonas@jonasborjesson.com
  */
 public interface IPPacket extends MACPacket {
 
+    /**
+     * The IP version, i.e. 4 or 6.
+     * 
+     * @return
+     */
+    int getIpVersion();
+
     String getSourceIP();
 
     String getDestinationIP();
+
+    /**
+     * Get the raw source ip.
+     * 
+     * Note, these are the raw bits and should be treated as such. If you really
+     * want to print it, then you should treat it as unsigned. For IPv6 this is
+     * the last 32 bits of the address.
+     * 
+     * @return
+     */
+    int getRawSourceIp();
+
+    /**
+     * Get the raw destination ip.
+     * 
+     * Note, these are the raw bits and should be treated as such. If you really
+     * want to print it, then you should treat it as unsigned. For IPv6 this is
+     * the last 32 bits of the address.
+     * 
+     * @return
+     */
+    int getRawDestinationIp();
+
+    /**
+     * The upper 64 bits of the source address.
+     * 
+     * @return
+     */
+    long getRawSourceIpHigh();
+
+    /**
+     * The lower 64 bits of the source address.
+     * 
+     * @return
+     */
+    long getRawSourceIpLow();
+
+    /**
+     * The upper 64 bits of the destination address.
+     * 
+     * @return
+     */
+    long getRawDestinationIpHigh();
+
+    /**
+     * The lower 64 bits of the destination address.
+     * 
+     * @return
+     */
+    long getRawDestinationIpLow();
 }
@@ -38,6 +38,14 @@ public final class IPPacketImpl implements IPPacket {
         // this.destinationIp = this.destinationIp;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getIpVersion() {
+        return 4;
+    }
+
     /**
      * Get the raw source ip.
      * 
@@ -46,6 +54,7 @@ public final class IPPacketImpl implements IPPacket {
      * 
      * @return
      */
+    @Override
     public int getRawSourceIp() {
         return this.headers.getInt(12);
     }
@@ -71,6 +80,7 @@ public final class IPPacketImpl implements IPPacket {
      * 
      * @return
      */
+    @Override
     public int getRawDestinationIp() {
         return this.headers.getInt(16);
     }
@@ -88,6 +98,37 @@ public final class IPPacketImpl implements IPPacket {
         return a + "." + b + "." + c + "." + d;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRawSourceIpHigh() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRawSourceIpLow() {
+        return IPv6Address.mapIPv4(getRawSourceIp());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRawDestinationIpHigh() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRawDestinationIpLow() {
+        return IPv6Address.mapIPv4(getRawDestinationIp());
+    }
 
     /**
      * {@inheritDoc}
@@ -0,0 +1,198 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.packet;
+
+import java.io.IOException;
+
+import com.aboutsip.buffer.Buffer;
+
+/**
+ * Helpers for dealing with 128-bit addresses stored as two primitive longs,
+ * the upper and lower 64 bits of the address. IPv4 addresses are represented
+ * as IPv4-mapped IPv6 addresses, i.e., ::ffff:a.b.c.d, so that the two
+ * versions can be treated the same way.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class IPv6Address {
+
+    /**
+     * The lower 64 bits of an IPv4-mapped address without the IPv4 address.
+     */
+    private static final long IPV4_MAPPED = 0x0000FFFF00000000L;
+
+    private IPv6Address() {
+        // left empty intentionally
+    }
+
+    /**
+     * The lower 64 bits of the IPv4-mapped address. The upper 64 bits are
+     * always zero.
+     *
+     * @param ip the raw ipv4 address
+     * @return
+     */
+    public static long mapIPv4(final int ip) {
+        return IPV4_MAPPED | (ip & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Check whether the address is an IPv4-mapped address.
+     *
+     * @param high
+     * @param low
+     * @return
+     */
+    public static boolean isIPv4Mapped(final long high, final long low) {
+        return (high == 0) && ((low & 0xFFFFFFFF00000000L) == IPV4_MAPPED);
+    }
+
+    /**
+     * Format the address the way RFC 5952 says, i.e., lower case hex without
+     * leading zeros and the longest run (at least two) of zero groups replaced
+     * by "::". IPv4-mapped addresses end with the dotted IPv4 address.
+     *
+     * @param high
+     * @param low
+     * @return
+     */
+    public static String toString(final long high, final long low) {
+        if (isIPv4Mapped(high, low)) {
+            return "::ffff:" + ((low >>> 24) & 0xFF) + "." + ((low >>> 16) & 0xFF) + "." + ((low >>> 8) & 0xFF) + "."
+                    + (low & 0xFF);
+        }
+
+        final int[] groups = new int[8];
+        for (int i = 0; i < 4; ++i) {
+            groups[i] = (int) ((high >>> (48 - (16 * i))) & 0xFFFF);
+            groups[i + 4] = (int) ((low >>> (48 - (16 * i))) & 0xFFFF);
+        }
+
+        int bestStart = -1;
+        int bestLength = 1;
+        for (int i = 0; i < 8; ++i) {
+            int j = i;
+            while ((j < 8) && (groups[j] == 0)) {
+                ++j;
+            }
+            if ((j - i) > bestLength) {
+                bestStart = i;
+                bestLength = j - i;
+            }
+            i = j;
+        }
+
+        final StringBuilder sb = new StringBuilder(39);
+        for (int i = 0; i < 8; ++i) {
+            if (i == bestStart) {
+                sb.append("::");
+                i += bestLength - 1;
+                continue;
+            }
+            if ((sb.length() > 0) && (sb.charAt(sb.length() - 1) != ':')) {
+                sb.append(':');
+            }
+            sb.append(Integer.toHexString(groups[i]));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parse the textual representation of an IPv6 address, such as
+     * <code>2001:db8::1</code>, starting at the given index of the buffer.
+     * The address ends at the first character that can't be part of it.
+     * Addresses with an embedded IPv4 address are not supported.
+     *
+     * @param buffer
+     * @param start
+     * @param result the upper and lower 64 bits will be stored here
+     * @return true if we found an address, false otherwise
+     * @throws IOException
+     */
+    public static boolean parse(final Buffer buffer, final int start, final long[] result) throws IOException {
+        final int[] groups = new int[8];
+        int count = 0;
+        int compressed = -1;
+        int group = 0;
+        int digits = 0;
+        int i = start;
+        final int length = buffer.capacity();
+        for (; i < length; ++i) {
+            final int value = Character.digit((char) buffer.getByte(i), 16);
+            if (value != -1) {
+                if (++digits > 4) {
+                    return false;
+                }
+                group = (group << 4) | value;
+                continue;
+            }
+
+            if (buffer.getByte(i) == '.') {
+                // embedded ipv4 address
+                return false;
+            } else if (buffer.getByte(i) != ':') {
+                break;
+            }
+
+            final boolean hasGroup = digits > 0;
+            if (hasGroup) {
+                if (count == 8) {
+                    return false;
+                }
+                groups[count++] = group;
+                group = 0;
+                digits = 0;
+            }
+
+            if (((i + 1) < length) && (buffer.getByte(i + 1) == ':')) {
+                if (compressed != -1) {
+                    return false;
+                }
+                compressed = count;
+                ++i;
+            } else if (!hasGroup) {
+                return false;
+            }
+        }
+
+        if (digits > 0) {
+            if (count == 8) {
+                return false;
+            }
+            groups[count++] = group;
+        } else if ((i > start) && (buffer.getByte(i - 1) == ':') && (compressed != count)) {
+            // ends with a single colon
+            return false;
+        }
+
+        if ((compressed == -1) && (count != 8)) {
+            return false;
+        }
+        if ((compressed != -1) && (count == 8)) {
+            return false;
+        }
+
+        // move everything after the "::" to the end
+        if (compressed != -1) {
+            final int tail = count - compressed;
+            for (int j = 0; j < tail; ++j) {
+                groups[7 - j] = groups[count - 1 - j];
+            }
+            for (int j = compressed; j < (8 - tail); ++j) {
+                groups[j] = 0;
+            }
+        }
+
+        long high = 0;
+        long low = 0;
+        for (int j = 0; j < 4; ++j) {
+            high = (high << 16) | groups[j];
+            low = (low << 16) | groups[j + 4];
+        }
+        result[0] = high;
+        result[1] = low;
+        return true;
+    }
+
+}
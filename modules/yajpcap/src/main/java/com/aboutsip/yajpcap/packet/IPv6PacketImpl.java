@@ -0,0 +1,134 @@
+/**
+ * 
+ */
+package com.aboutsip.yajpcap.packet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.aboutsip.buffer.Buffer;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public final class IPv6PacketImpl implements IPPacket {
+
+    private final MACPacket parent;
+
+    /**
+     * The fixed 40 bytes of the ipv6 header
+     */
+    private final Buffer headers;
+
+    public IPv6PacketImpl(final MACPacket parent, final Buffer headers) {
+        assert parent != null;
+        assert headers != null;
+        this.parent = parent;
+        this.headers = headers;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getIpVersion() {
+        return 6;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getSourceIP() {
+        return IPv6Address.toString(getRawSourceIpHigh(), getRawSourceIpLow());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getDestinationIP() {
+        return IPv6Address.toString(getRawDestinationIpHigh(), getRawDestinationIpLow());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getRawSourceIp() {
+        return this.headers.getInt(20);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getRawDestinationIp() {
+        return this.headers.getInt(36);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRawSourceIpHigh() {
+        return getLong(8);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRawSourceIpLow() {
+        return getLong(16);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRawDestinationIpHigh() {
+        return getLong(24);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRawDestinationIpLow() {
+        return getLong(32);
+    }
+
+    private long getLong(final int index) {
+        return ((long) this.headers.getInt(index) << 32) | (this.headers.getInt(index + 4) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void verify() {
+        // nothing to do for ip packets
+    }
+
+    @Override
+    public long getArrivalTime() {
+        return this.parent.getArrivalTime();
+    }
+
+    @Override
+    public String getSourceMacAddress() {
+        return this.parent.getSourceMacAddress();
+    }
+
+    @Override
+    public String getDestinationMacAddress() {
+        return this.parent.getDestinationMacAddress();
+    }
+
+    @Override
+    public void write(final OutputStream out) throws IOException {
+        throw new RuntimeException("Sorry, not implemented just yet.");
+    }
+
+}
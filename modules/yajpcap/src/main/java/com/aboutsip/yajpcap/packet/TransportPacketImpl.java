@@ -80,6 +80,41 @@ public final class TransportPacketImpl implements TransportPacket {
         return this.parent.getDestinationIP();
     }
 
+    @Override
+    public int getRawSourceIp() {
+        return this.parent.getRawSourceIp();
+    }
+
+    @Override
+    public int getRawDestinationIp() {
+        return this.parent.getRawDestinationIp();
+    }
+
+    @Override
+    public int getIpVersion() {
+        return this.parent.getIpVersion();
+    }
+
+    @Override
+    public long getRawSourceIpHigh() {
+        return this.parent.getRawSourceIpHigh();
+    }
+
+    @Override
+    public long getRawSourceIpLow() {
+        return this.parent.getRawSourceIpLow();
+    }
+
+    @Override
+    public long getRawDestinationIpHigh() {
+        return this.parent.getRawDestinationIpHigh();
+    }
+
+    @Override
+    public long getRawDestinationIpLow() {
+        return this.parent.getRawDestinationIpLow();
+    }
+
     @Override
     public String getSourceMacAddress() {
         return this.parent.getSourceMacAddress();
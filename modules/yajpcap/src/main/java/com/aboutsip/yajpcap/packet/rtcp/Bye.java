@@ -0,0 +1,30 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.packet.rtcp;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public interface Bye extends RtcpMessage {
+
+    /**
+     * The sources that are leaving.
+     *
+     * @return
+     * @throws IOException
+     */
+    List<Long> getSources() throws IOException;
+
+    /**
+     * The reason for leaving.
+     *
+     * @return the reason or null if none was given
+     * @throws IOException
+     */
+    String getReason() throws IOException;
+
+}
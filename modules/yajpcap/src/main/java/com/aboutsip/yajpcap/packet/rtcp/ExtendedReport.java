@@ -0,0 +1,36 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.packet.rtcp;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.aboutsip.buffer.Buffer;
+
+/**
+ * An extended report as defined by RFC 3611.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public interface ExtendedReport extends RtcpMessage {
+
+    /**
+     * The source that sent this report.
+     *
+     * @return
+     * @throws IOException
+     */
+    long getSsrc() throws IOException;
+
+    /**
+     * The report blocks of this report. Each block is returned as is,
+     * including its four byte header, so the block type is the first byte
+     * of each block.
+     *
+     * @return
+     * @throws IOException
+     */
+    List<Buffer> getReportBlocks() throws IOException;
+
+}
@@ -0,0 +1,24 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.packet.rtcp;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public interface ReceiverReport extends RtcpMessage {
+
+    /**
+     * The source that sent this report.
+     *
+     * @return
+     * @throws IOException
+     */
+    long getSsrc() throws IOException;
+
+    List<ReportBlock> getReportBlocks() throws IOException;
+
+}
@@ -0,0 +1,71 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.packet.rtcp;
+
+import java.io.IOException;
+
+/**
+ * The reception statistics for one source, as found in sender and receiver
+ * reports.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public interface ReportBlock {
+
+    /**
+     * The source the statistics are about.
+     *
+     * @return
+     * @throws IOException
+     */
+    long getSsrc() throws IOException;
+
+    /**
+     * The fraction of packets lost since the previous report, expressed as a
+     * fixed point number with the binary point at the left edge, i.e. the
+     * loss in percent is <code>getFractionLost() * 100 / 256</code>.
+     *
+     * @return
+     * @throws IOException
+     */
+    int getFractionLost() throws IOException;
+
+    /**
+     * The total number of packets lost, which may be negative if there are
+     * duplicates.
+     *
+     * @return
+     * @throws IOException
+     */
+    int getCumulativeLost() throws IOException;
+
+    long getExtendedHighestSeqNumber() throws IOException;
+
+    /**
+     * The interarrival jitter in timestamp units.
+     *
+     * @return
+     * @throws IOException
+     */
+    long getJitter() throws IOException;
+
+    /**
+     * The middle 32 bits of the NTP timestamp of the last sender report
+     * received from the source.
+     *
+     * @return
+     * @throws IOException
+     */
+    long getLastSenderReport() throws IOException;
+
+    /**
+     * The delay since the last sender report was received, in units of
+     * 1/65536 seconds.
+     *
+     * @return
+     * @throws IOException
+     */
+    long getDelaySinceLastSenderReport() throws IOException;
+
+}
@@ -0,0 +1,91 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.packet.rtcp;
+
+import java.io.IOException;
+
+import com.aboutsip.buffer.Buffer;
+
+/**
+ * One of the RTCP messages within a compound {@link RtcpPacket}. Messages
+ * of a type we don't know any details about, such as APP or the feedback
+ * messages of RFC 4585, are still available as plain {@link RtcpMessage}s.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public interface RtcpMessage {
+
+    /**
+     * Sender report
+     */
+    int SR = 200;
+
+    /**
+     * Receiver report
+     */
+    int RR = 201;
+
+    /**
+     * Source description
+     */
+    int SDES = 202;
+
+    int BYE = 203;
+
+    /**
+     * Application defined
+     */
+    int APP = 204;
+
+    /**
+     * Transport layer feedback, see RFC 4585
+     */
+    int RTPFB = 205;
+
+    /**
+     * Payload specific feedback, see RFC 4585
+     */
+    int PSFB = 206;
+
+    /**
+     * Extended report, see RFC 3611
+     */
+    int XR = 207;
+
+    /**
+     * The packet type, e.g. {@link #SR}.
+     *
+     * @return
+     * @throws IOException
+     */
+    int getType() throws IOException;
+
+    /**
+     * The five bits following the padding bit, which depending on the type
+     * is the number of report blocks, the number of sources or a sub type.
+     *
+     * @return
+     * @throws IOException
+     */
+    int getCount() throws IOException;
+
+    boolean hasPadding() throws IOException;
+
+    /**
+     * The length of this message in bytes, including the header and any
+     * padding.
+     *
+     * @return
+     * @throws IOException
+     */
+    int getLength() throws IOException;
+
+    /**
+     * The raw bytes of this message, including the header.
+     *
+     * @return
+     */
+    Buffer getRawMessage();
+
+}
@@ -0,0 +1,36 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.packet.rtcp;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.aboutsip.yajpcap.packet.impl.ApplicationPacket;
+
+/**
+ * A compound RTCP packet, i.e., one or more RTCP messages (what RFC 3550
+ * calls RTCP packets) stacked after each other in the same datagram.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public interface RtcpPacket extends ApplicationPacket {
+
+    /**
+     * All the RTCP messages of this compound packet in the order they appear.
+     *
+     * @return
+     * @throws IOException
+     */
+    List<RtcpMessage> getMessages() throws IOException;
+
+    /**
+     * Get the first sender or receiver report of this compound packet, which
+     * according to RFC 3550 always should be the first message.
+     *
+     * @return the report or null if there isn't any
+     * @throws IOException
+     */
+    ReceiverReport getReport() throws IOException;
+
+}
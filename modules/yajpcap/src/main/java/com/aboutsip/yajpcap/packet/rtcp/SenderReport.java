@@ -0,0 +1,37 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.packet.rtcp;
+
+import java.io.IOException;
+
+/**
+ * A sender report is a receiver report that also carries information about
+ * what the source itself has been sending.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public interface SenderReport extends ReceiverReport {
+
+    /**
+     * The 64 bit NTP timestamp of when the report was sent.
+     *
+     * @return
+     * @throws IOException
+     */
+    long getNtpTimestamp() throws IOException;
+
+    /**
+     * The same point in time as {@link #getNtpTimestamp()} but in the units
+     * of the RTP timestamps.
+     *
+     * @return
+     * @throws IOException
+     */
+    long getRtpTimestamp() throws IOException;
+
+    long getPacketCount() throws IOException;
+
+    long getOctetCount() throws IOException;
+
+}
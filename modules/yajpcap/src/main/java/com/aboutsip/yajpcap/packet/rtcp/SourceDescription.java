@@ -0,0 +1,59 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.packet.rtcp;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.aboutsip.buffer.Buffer;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public interface SourceDescription extends RtcpMessage {
+
+    int CNAME = 1;
+
+    int NAME = 2;
+
+    int EMAIL = 3;
+
+    int PHONE = 4;
+
+    int LOC = 5;
+
+    int TOOL = 6;
+
+    int NOTE = 7;
+
+    int PRIV = 8;
+
+    /**
+     * The sources that are being described, one per chunk.
+     *
+     * @return
+     * @throws IOException
+     */
+    List<Long> getSources() throws IOException;
+
+    /**
+     * Get an item describing one of the sources.
+     *
+     * @param ssrc the source
+     * @param type the type of item, e.g. {@link #CNAME}
+     * @return the value of the item or null if there is no such item
+     * @throws IOException
+     */
+    Buffer getItem(long ssrc, int type) throws IOException;
+
+    /**
+     * Convenience method for getting the CNAME item as a string.
+     *
+     * @param ssrc
+     * @return
+     * @throws IOException
+     */
+    String getCanonicalName(long ssrc) throws IOException;
+
+}
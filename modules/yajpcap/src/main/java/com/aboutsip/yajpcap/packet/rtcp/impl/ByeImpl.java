@@ -0,0 +1,57 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.packet.rtcp.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.aboutsip.buffer.Buffer;
+import com.aboutsip.yajpcap.packet.rtcp.Bye;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public final class ByeImpl extends RtcpMessageImpl implements Bye {
+
+    /**
+     * 
+     */
+    public ByeImpl(final Buffer raw) {
+        super(raw);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Long> getSources() throws IOException {
+        final int count = getCount();
+        final List<Long> sources = new ArrayList<Long>(count);
+        final int stop = getContentLength();
+        for (int i = 0; (i < count) && ((4 + (i * 4) + 4) <= stop); ++i) {
+            sources.add(getUnsignedInt(4 + (i * 4)));
+        }
+        return sources;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getReason() throws IOException {
+        final int offset = 4 + (getCount() * 4);
+        final int stop = getContentLength();
+        if (offset >= stop) {
+            return null;
+        }
+
+        final int length = getRawMessage().getUnsignedByte(offset);
+        if ((length == 0) || ((offset + 1 + length) > stop)) {
+            return null;
+        }
+        return getRawMessage().slice(offset + 1, offset + 1 + length).toString();
+    }
+
+}
@@ -0,0 +1,53 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.packet.rtcp.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.aboutsip.buffer.Buffer;
+import com.aboutsip.yajpcap.packet.rtcp.ExtendedReport;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public final class ExtendedReportImpl extends RtcpMessageImpl implements ExtendedReport {
+
+    /**
+     * 
+     */
+    public ExtendedReportImpl(final Buffer raw) {
+        super(raw);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSsrc() throws IOException {
+        return getUnsignedInt(4);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Buffer> getReportBlocks() throws IOException {
+        final List<Buffer> blocks = new ArrayList<Buffer>();
+        final Buffer raw = getRawMessage();
+        final int stop = getContentLength();
+        int offset = 8;
+        while ((offset + 4) <= stop) {
+            final int length = (raw.getUnsignedShort(offset + 2) + 1) * 4;
+            if ((offset + length) > stop) {
+                break;
+            }
+            blocks.add(raw.slice(offset, offset + length));
+            offset += length;
+        }
+        return blocks;
+    }
+
+}
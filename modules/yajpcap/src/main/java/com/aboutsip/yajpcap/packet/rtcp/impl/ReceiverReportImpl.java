@@ -0,0 +1,59 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.packet.rtcp.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.aboutsip.buffer.Buffer;
+import com.aboutsip.yajpcap.packet.rtcp.ReceiverReport;
+import com.aboutsip.yajpcap.packet.rtcp.ReportBlock;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class ReceiverReportImpl extends RtcpMessageImpl implements ReceiverReport {
+
+    /**
+     * 
+     */
+    public ReceiverReportImpl(final Buffer raw) {
+        super(raw);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final long getSsrc() throws IOException {
+        return getUnsignedInt(4);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final List<ReportBlock> getReportBlocks() throws IOException {
+        final int count = getCount();
+        final List<ReportBlock> blocks = new ArrayList<ReportBlock>(count);
+        final int stop = getContentLength();
+        int offset = getReportBlockOffset();
+        for (int i = 0; (i < count) && ((offset + ReportBlockImpl.LENGTH) <= stop); ++i) {
+            blocks.add(new ReportBlockImpl(getRawMessage().slice(offset, offset + ReportBlockImpl.LENGTH)));
+            offset += ReportBlockImpl.LENGTH;
+        }
+        return blocks;
+    }
+
+    /**
+     * Where the report blocks start.
+     *
+     * @return
+     */
+    protected int getReportBlockOffset() {
+        return 8;
+    }
+
+}
@@ -0,0 +1,89 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.packet.rtcp.impl;
+
+import java.io.IOException;
+
+import com.aboutsip.buffer.Buffer;
+import com.aboutsip.yajpcap.packet.rtcp.ReportBlock;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public final class ReportBlockImpl implements ReportBlock {
+
+    /**
+     * The size of a report block
+     */
+    public static final int LENGTH = 24;
+
+    private final Buffer block;
+
+    /**
+     * 
+     * @param block the 24 bytes of the report block
+     */
+    public ReportBlockImpl(final Buffer block) {
+        assert block != null;
+        this.block = block;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSsrc() throws IOException {
+        return this.block.getInt(0) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getFractionLost() throws IOException {
+        return this.block.getUnsignedByte(4);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCumulativeLost() throws IOException {
+        // signed 24 bits
+        return (this.block.getInt(4) << 8) >> 8;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getExtendedHighestSeqNumber() throws IOException {
+        return this.block.getInt(8) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getJitter() throws IOException {
+        return this.block.getInt(12) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLastSenderReport() throws IOException {
+        return this.block.getInt(16) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDelaySinceLastSenderReport() throws IOException {
+        return this.block.getInt(20) & 0xFFFFFFFFL;
+    }
+
+}
@@ -0,0 +1,123 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.packet.rtcp.impl;
+
+import java.io.IOException;
+
+import com.aboutsip.buffer.Buffer;
+import com.aboutsip.yajpcap.packet.rtcp.RtcpMessage;
+
+/**
+ * Base for all the RTCP messages. Everything is read straight out of the
+ * raw message as it is asked for.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public class RtcpMessageImpl implements RtcpMessage {
+
+    /**
+     * The entire message, including the header and any padding.
+     */
+    private final Buffer raw;
+
+    /**
+     * 
+     */
+    public RtcpMessageImpl(final Buffer raw) {
+        assert raw != null;
+        this.raw = raw;
+    }
+
+    /**
+     * Create the {@link RtcpMessage} matching the type of the raw message.
+     *
+     * @param raw
+     * @return
+     * @throws IOException
+     */
+    public static RtcpMessage create(final Buffer raw) throws IOException {
+        switch (raw.getUnsignedByte(1)) {
+        case SR:
+            return new SenderReportImpl(raw);
+        case RR:
+            return new ReceiverReportImpl(raw);
+        case SDES:
+            return new SourceDescriptionImpl(raw);
+        case BYE:
+            return new ByeImpl(raw);
+        case XR:
+            return new ExtendedReportImpl(raw);
+        default:
+            return new RtcpMessageImpl(raw);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final int getType() throws IOException {
+        return this.raw.getUnsignedByte(1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final int getCount() throws IOException {
+        return this.raw.getUnsignedByte(0) & 0x1F;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final boolean hasPadding() throws IOException {
+        return (this.raw.getUnsignedByte(0) & 0x20) == 0x20;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final int getLength() throws IOException {
+        return this.raw.capacity();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final Buffer getRawMessage() {
+        return this.raw;
+    }
+
+    /**
+     * The length of the message without any padding.
+     *
+     * @return
+     * @throws IOException
+     */
+    protected final int getContentLength() throws IOException {
+        final int length = this.raw.capacity();
+        if (!hasPadding()) {
+            return length;
+        }
+
+        final int padding = this.raw.getUnsignedByte(length - 1);
+        return padding < length ? length - padding : length;
+    }
+
+    /**
+     * Read an unsigned 32-bit value.
+     *
+     * @param index
+     * @return
+     * @throws IOException
+     */
+    protected final long getUnsignedInt(final int index) throws IOException {
+        return this.raw.getInt(index) & 0xFFFFFFFFL;
+    }
+
+}
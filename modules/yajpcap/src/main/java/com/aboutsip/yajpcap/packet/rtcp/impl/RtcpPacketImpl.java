@@ -0,0 +1,216 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.packet.rtcp.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.aboutsip.buffer.Buffer;
+import com.aboutsip.yajpcap.packet.TransportPacket;
+import com.aboutsip.yajpcap.packet.rtcp.ReceiverReport;
+import com.aboutsip.yajpcap.packet.rtcp.RtcpMessage;
+import com.aboutsip.yajpcap.packet.rtcp.RtcpPacket;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public final class RtcpPacketImpl implements RtcpPacket {
+
+    private final TransportPacket parent;
+
+    /**
+     * All the RTCP messages as one buffer. The framer has already made sure
+     * that the lengths of the messages all fit within it.
+     */
+    private final Buffer packets;
+
+    /**
+     * The messages, which are created the first time anyone asks for them.
+     */
+    private List<RtcpMessage> messages;
+
+    /**
+     * 
+     */
+    public RtcpPacketImpl(final TransportPacket parent, final Buffer packets) {
+        this.parent = parent;
+        this.packets = packets;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<RtcpMessage> getMessages() throws IOException {
+        if (this.messages == null) {
+            final List<RtcpMessage> list = new ArrayList<RtcpMessage>(3);
+            final int stop = this.packets.capacity();
+            int offset = 0;
+            while ((offset + 4) <= stop) {
+                final int length = (this.packets.getUnsignedShort(offset + 2) + 1) * 4;
+                if ((offset + length) > stop) {
+                    break;
+                }
+                list.add(RtcpMessageImpl.create(this.packets.slice(offset, offset + length)));
+                offset += length;
+            }
+            this.messages = list;
+        }
+        return this.messages;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ReceiverReport getReport() throws IOException {
+        for (final RtcpMessage msg : getMessages()) {
+            if (msg instanceof ReceiverReport) {
+                return (ReceiverReport) msg;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void verify() {
+        // nothing to verify, the framer already walked all the messages
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getArrivalTime() {
+        return this.parent.getArrivalTime();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSourcePort() {
+        return this.parent.getSourcePort();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getDestinationPort() {
+        return this.parent.getDestinationPort();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getSourceIP() {
+        return this.parent.getSourceIP();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getDestinationIP() {
+        return this.parent.getDestinationIP();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getRawSourceIp() {
+        return this.parent.getRawSourceIp();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getRawDestinationIp() {
+        return this.parent.getRawDestinationIp();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getIpVersion() {
+        return this.parent.getIpVersion();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRawSourceIpHigh() {
+        return this.parent.getRawSourceIpHigh();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRawSourceIpLow() {
+        return this.parent.getRawSourceIpLow();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRawDestinationIpHigh() {
+        return this.parent.getRawDestinationIpHigh();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRawDestinationIpLow() {
+        return this.parent.getRawDestinationIpLow();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getSourceMacAddress() {
+        return this.parent.getSourceMacAddress();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getDestinationMacAddress() {
+        return this.parent.getDestinationMacAddress();
+    }
+
+    @Override
+    public String toString() {
+        try {
+            final StringBuilder sb = new StringBuilder();
+            sb.append("RTCP messages=").append(getMessages().size());
+            sb.append(" src=").append(getSourceIP()).append(":").append(getSourcePort());
+            sb.append(" dst=").append(getDestinationIP()).append(":").append(getDestinationPort());
+            return sb.toString();
+        } catch (final IOException e) {
+            return super.toString();
+        }
+    }
+
+    @Override
+    public void write(final OutputStream out) throws IOException {
+        throw new RuntimeException("Sorry, not implemented just yet.");
+    }
+
+}
@@ -0,0 +1,65 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.packet.rtcp.impl;
+
+import java.io.IOException;
+
+import com.aboutsip.buffer.Buffer;
+import com.aboutsip.yajpcap.packet.rtcp.SenderReport;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public final class SenderReportImpl extends ReceiverReportImpl implements SenderReport {
+
+    /**
+     * 
+     */
+    public SenderReportImpl(final Buffer raw) {
+        super(raw);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getNtpTimestamp() throws IOException {
+        return (getUnsignedInt(8) << 32) | getUnsignedInt(12);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRtpTimestamp() throws IOException {
+        return getUnsignedInt(16);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getPacketCount() throws IOException {
+        return getUnsignedInt(20);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getOctetCount() throws IOException {
+        return getUnsignedInt(24);
+    }
+
+    /**
+     * The sender info is 20 bytes.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected int getReportBlockOffset() {
+        return 28;
+    }
+
+}
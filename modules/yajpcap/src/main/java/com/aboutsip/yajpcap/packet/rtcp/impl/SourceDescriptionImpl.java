@@ -0,0 +1,110 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.packet.rtcp.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.aboutsip.buffer.Buffer;
+import com.aboutsip.yajpcap.packet.rtcp.SourceDescription;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public final class SourceDescriptionImpl extends RtcpMessageImpl implements SourceDescription {
+
+    /**
+     * 
+     */
+    public SourceDescriptionImpl(final Buffer raw) {
+        super(raw);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Long> getSources() throws IOException {
+        final List<Long> sources = new ArrayList<Long>(getCount());
+        final int stop = getContentLength();
+        int offset = 4;
+        for (int i = 0; (i < getCount()) && ((offset + 4) <= stop); ++i) {
+            sources.add(getUnsignedInt(offset));
+            offset = nextChunk(offset, stop);
+        }
+        return sources;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer getItem(final long ssrc, final int type) throws IOException {
+        final Buffer raw = getRawMessage();
+        final int stop = getContentLength();
+        int offset = 4;
+        for (int i = 0; (i < getCount()) && ((offset + 4) <= stop); ++i) {
+            if (getUnsignedInt(offset) != ssrc) {
+                offset = nextChunk(offset, stop);
+                continue;
+            }
+
+            // the items of the chunk ends with a null octet
+            int item = offset + 4;
+            while ((item + 2) <= stop) {
+                final int itemType = raw.getUnsignedByte(item);
+                if (itemType == 0) {
+                    break;
+                }
+
+                final int length = raw.getUnsignedByte(item + 1);
+                if ((item + 2 + length) > stop) {
+                    break;
+                }
+
+                if (itemType == type) {
+                    return length > 0 ? raw.slice(item + 2, item + 2 + length) : null;
+                }
+                item += 2 + length;
+            }
+            return null;
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getCanonicalName(final long ssrc) throws IOException {
+        final Buffer cname = getItem(ssrc, CNAME);
+        return cname != null ? cname.toString() : null;
+    }
+
+    /**
+     * Find the start of the next chunk. Each chunk is the ssrc followed by a
+     * list of items, which is terminated by a null octet and then padded to
+     * the next 32-bit boundary.
+     *
+     * @param offset the offset of the current chunk
+     * @param stop
+     * @return
+     * @throws IOException
+     */
+    private int nextChunk(final int offset, final int stop) throws IOException {
+        final Buffer raw = getRawMessage();
+        int item = offset + 4;
+        while ((item < stop) && (raw.getUnsignedByte(item) != 0)) {
+            if ((item + 1) >= stop) {
+                return stop;
+            }
+            item += 2 + raw.getUnsignedByte(item + 1);
+        }
+
+        // skip the terminating null octet and the padding
+        return (item + 4) & ~3;
+    }
+
+}
@@ -5,6 +5,7 @@ package com.aboutsip.yajpcap.packet.rtp;
 
 import java.io.IOException;
 
+import com.aboutsip.buffer.Buffer;
 import com.aboutsip.yajpcap.packet.impl.ApplicationPacket;
 
 /**
@@ -22,14 +23,85 @@ public interface RtpPacket extends ApplicationPacket {
 
     int getPayloadType() throws IOException;
 
-    int getSeqNumber() throws IOException;
-
+    /**
+     * The sequence number, which is an unsigned 16-bit value.
+     * 
+     * @return
+     * @throws IOException
+     */
+    int getSeqNumber() throws IOException;
+
     long getTimestamp() throws IOException;
 
     long getSyncronizationSource() throws IOException;
 
+    /**
+     * The number of contributing sources (CSRC). Same as
+     * {@link #getContributingSourceCount()}.
+     * 
+     * @return
+     * @throws IOException
+     */
     int getContributingSource() throws IOException;
 
+    /**
+     * The number of contributing sources (CSRC) that follows the fixed header.
+     * 
+     * @return
+     * @throws IOException
+     */
+    int getContributingSourceCount() throws IOException;
+
+    /**
+     * Get one of the contributing sources.
+     * 
+     * @param index the index of the CSRC, which must be less than
+     *            {@link #getContributingSourceCount()}.
+     * @return
+     * @throws IndexOutOfBoundsException in case there is no such CSRC
+     * @throws IOException
+     */
+    long getContributingSource(int index) throws IndexOutOfBoundsException, IOException;
+
+    /**
+     * The 16 bits defined by the profile that starts the header extension,
+     * e.g. 0xBEDE for the one-byte header form of RFC 8285.
+     * 
+     * @return the profile specific value or -1 if there is no header
+     *         extension.
+     * @throws IOException
+     */
+    int getExtensionProfile() throws IOException;
+
+    /**
+     * The data of the header extension, i.e., without the four bytes of
+     * profile specific value and length that starts it.
+     * 
+     * @return the extension data or null if there is no header extension (or
+     *         it is empty)
+     * @throws IOException
+     */
+    Buffer getExtension() throws IOException;
+
+    /**
+     * Find an element in a header extension that is using any of the two
+     * general mechanisms defined by RFC 8285, i.e., the one-byte or the
+     * two-byte header form.
+     * 
+     * @param id the local identifier of the extension element
+     * @return the data of the element, null if the element isn't present or
+     *         if the header extension isn't using the RFC 8285 forms
+     * @throws IOException
+     */
+    Buffer getExtensionElement(int id) throws IOException;
+
+    /**
+     * The payload of the RTP packet, without any padding.
+     * 
+     * @return the payload or null if the packet doesn't carry any
+     */
+    Buffer getPayload();
+
     /**
      * Dump the entire {@link RtpPacket} as a raw byte-array.
      * 
@@ -15,15 +15,28 @@ import com.aboutsip.yajpcap.packet.rtp.RtpPacket;
  */
 public final class RtpPacketImpl implements RtpPacket {
 
+    /**
+     * The profile specific value of the one-byte header form of RFC 8285.
+     */
+    private static final int ONE_BYTE_PROFILE = 0xBEDE;
+
+    /**
+     * The two-byte header form of RFC 8285 uses 0x100 followed by 4 bits that
+     * are application specific.
+     */
+    private static final int TWO_BYTE_PROFILE = 0x1000;
+
     private final TransportPacket parent;
 
     /**
-     * All the RTP headers as one buffer.
+     * All the RTP headers as one buffer, i.e., the fixed header, the CSRC
+     * list and the header extension.
      */
     private final Buffer headers;
 
     /**
-     * The raw payload of the RTP packet. Is most likely audio or video.
+     * The raw payload of the RTP packet, without padding. Is most likely audio
+     * or video. Null if the packet is empty.
      */
     private final Buffer payload;
 
@@ -81,8 +94,7 @@ public final class RtpPacketImpl implements RtpPacket {
      */
     @Override
     public int getSeqNumber() throws IOException {
-        // TODO: this is not quite right...
-        return this.headers.getShort(2);
+        return this.headers.getUnsignedShort(2);
     }
 
     /**
@@ -108,7 +120,125 @@ public final class RtpPacketImpl implements RtpPacket {
      */
     @Override
     public int getContributingSource() throws IOException {
-        return this.headers.getByte(0) & 0x0F;
+        return getContributingSourceCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getContributingSourceCount() throws IOException {
+        return this.headers.getByte(0) & 0x0F;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getContributingSource(final int index) throws IndexOutOfBoundsException, IOException {
+        if ((index < 0) || (index >= getContributingSourceCount())) {
+            throw new IndexOutOfBoundsException("No CSRC at index " + index);
+        }
+        return this.headers.getInt(12 + (index * 4)) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getExtensionProfile() throws IOException {
+        if (!hasExtensions()) {
+            return -1;
+        }
+        return this.headers.getUnsignedShort(getExtensionOffset());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer getExtension() throws IOException {
+        if (!hasExtensions()) {
+            return null;
+        }
+
+        final int offset = getExtensionOffset();
+        final int length = this.headers.getUnsignedShort(offset + 2) * 4;
+        if (length == 0) {
+            return null;
+        }
+        return this.headers.slice(offset + 4, offset + 4 + length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer getExtensionElement(final int id) throws IOException {
+        final int profile = getExtensionProfile();
+        final boolean oneByte = profile == ONE_BYTE_PROFILE;
+        final boolean twoByte = (profile & 0xFFF0) == TWO_BYTE_PROFILE;
+        final Buffer extension = getExtension();
+        if ((!oneByte && !twoByte) || (extension == null)) {
+            return null;
+        }
+
+        final int length = extension.capacity();
+        int i = 0;
+        while (i < length) {
+            final int b = extension.getUnsignedByte(i);
+            if (b == 0) {
+                // padding
+                ++i;
+                continue;
+            }
+
+            final int elementId;
+            final int elementLength;
+            final int dataOffset;
+            if (oneByte) {
+                elementId = b >>> 4;
+                if (elementId == 15) {
+                    // reserved, means we should stop processing
+                    return null;
+                }
+                elementLength = (b & 0x0F) + 1;
+                dataOffset = i + 1;
+            } else {
+                if ((i + 1) >= length) {
+                    return null;
+                }
+                elementId = b;
+                elementLength = extension.getUnsignedByte(i + 1);
+                dataOffset = i + 2;
+            }
+
+            if ((dataOffset + elementLength) > length) {
+                return null;
+            }
+
+            if (elementId == id) {
+                return elementLength > 0 ? extension.slice(dataOffset, dataOffset + elementLength) : null;
+            }
+            i = dataOffset + elementLength;
+        }
+
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer getPayload() {
+        return this.payload;
+    }
+
+    /**
+     * The header extension follows the CSRC list.
+     */
+    private int getExtensionOffset() throws IOException {
+        return 12 + (getContributingSourceCount() * 4);
     }
 
     /**
@@ -160,6 +290,62 @@ public final class RtpPacketImpl implements RtpPacket {
         return this.parent.getDestinationIP();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getRawSourceIp() {
+        return this.parent.getRawSourceIp();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getRawDestinationIp() {
+        return this.parent.getRawDestinationIp();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getIpVersion() {
+        return this.parent.getIpVersion();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRawSourceIpHigh() {
+        return this.parent.getRawSourceIpHigh();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRawSourceIpLow() {
+        return this.parent.getRawSourceIpLow();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRawDestinationIpHigh() {
+        return this.parent.getRawDestinationIpHigh();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRawDestinationIpLow() {
+        return this.parent.getRawDestinationIpLow();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -194,11 +380,13 @@ public final class RtpPacketImpl implements RtpPacket {
     @Override
     public byte[] dumpPacket() {
         final int headerLength = this.headers.capacity();
-        final int payloadLength = this.payload.capacity();
+        final int payloadLength = this.payload != null ? this.payload.capacity() : 0;
 
         final byte[] dump = new byte[headerLength + payloadLength];
         System.arraycopy(this.headers.getArray(), 0, dump, 0, headerLength);
-        System.arraycopy(this.payload.getArray(), 0, dump, headerLength, payloadLength);
+        if (this.payload != null) {
+            System.arraycopy(this.payload.getArray(), 0, dump, headerLength, payloadLength);
+        }
         return dump;
     }
 
@@ -18,6 +18,8 @@ import com.aboutsip.yajpcap.packet.sip.header.FromHeader;
 import com.aboutsip.yajpcap.packet.sip.header.ToHeader;
 import com.aboutsip.yajpcap.packet.sip.header.impl.FromHeaderImpl;
 import com.aboutsip.yajpcap.packet.sip.header.impl.ToHeaderImpl;
+import com.aboutsip.yajpcap.trace.TraceEvent;
+import com.aboutsip.yajpcap.trace.Tracer;
 
 /**
  * @author jonas@jonasborjesson.com
@@ -130,14 +132,23 @@ public abstract class SipMessageImpl implements SipMessage {
             return h;
         }
 
-        while (this.headers.hasReadableBytes()) {
-            final SipHeader header = SipParser.nextHeader(this.headers);
-            if (header == null) {
-                return null;
+        final long start = Tracer.start(TraceEvent.Type.SIP_HEADER);
+        int parsed = 0;
+        try {
+            while (this.headers.hasReadableBytes()) {
+                final SipHeader header = SipParser.nextHeader(this.headers);
+                if (header == null) {
+                    return null;
+                }
+                ++parsed;
+                this.parsedHeaders.put(header.getName(), header);
+                if (header.getName().equals(headerName)) {
+                    return header;
+                }
             }
-            this.parsedHeaders.put(header.getName(), header);
-            if (header.getName().equals(headerName)) {
-                return header;
+        } finally {
+            if (start != Tracer.NOT_TRACED) {
+                Tracer.end(TraceEvent.Type.SIP_HEADER, start, headerName.toString(), parsed);
             }
         }
 
@@ -300,6 +311,41 @@ public abstract class SipMessageImpl implements SipMessage {
         return this.parent.getDestinationIP();
     }
 
+    @Override
+    public int getRawSourceIp() {
+        return this.parent.getRawSourceIp();
+    }
+
+    @Override
+    public int getRawDestinationIp() {
+        return this.parent.getRawDestinationIp();
+    }
+
+    @Override
+    public int getIpVersion() {
+        return this.parent.getIpVersion();
+    }
+
+    @Override
+    public long getRawSourceIpHigh() {
+        return this.parent.getRawSourceIpHigh();
+    }
+
+    @Override
+    public long getRawSourceIpLow() {
+        return this.parent.getRawSourceIpLow();
+    }
+
+    @Override
+    public long getRawDestinationIpHigh() {
+        return this.parent.getRawDestinationIpHigh();
+    }
+
+    @Override
+    public long getRawDestinationIpLow() {
+        return this.parent.getRawDestinationIpLow();
+    }
+
     @Override
     public String getSourceMacAddress() {
         return this.parent.getSourceMacAddress();
@@ -5,8 +5,8 @@ package com.aboutsip.yajpcap.protocol;
  * @author jonas@jonasborjesson.com
  */
 public enum Protocol {
-    ICMP("icmp"), IGMP("igmp"), TCP("tcp"), UDP("udp"), SCTP("sctp"), SIP("sip"), SDP("sdp"), ETHERNET_II("eth"), SLL("sll"), IPv4(
-"ip"), PCAP("pcap"), RTP("rtp"), UNKNOWN("unknown");
+    ICMP("icmp"), IGMP("igmp"), TCP("tcp"), UDP("udp"), SCTP("sctp"), SIP("sip"), SDP("sdp"), ETHERNET_II("eth"), SLL("sll"), SLL2("sll2"), IPv4(
+"ip"), IPv6("ipv6"), PCAP("pcap"), RTP("rtp"), RTCP("rtcp"), UNKNOWN("unknown");
 
     private final String name;
 
@@ -0,0 +1,347 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.record;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.regex.Pattern;
+
+import com.aboutsip.buffer.Buffers;
+import com.aboutsip.yajpcap.frame.PcapGlobalHeader;
+
+/**
+ * Reads the records of a pcap file that still is being written to, e.g. by
+ * tcpdump, much like <code>tail -f</code> does. Instead of returning false
+ * once we reach the end of the file, {@link #next(RawRecord)} waits for more
+ * records to show up and only returns false once the reader has been closed.
+ *
+ * A record that only has been partially written is left alone until the rest
+ * of it is there, i.e., we only ever read complete records.
+ *
+ * If a rotation pattern is given, the reader will move on to the next file
+ * matching the pattern, in the same directory, once the writer has started on
+ * it. The next file is the one whose name sorts right after the current one,
+ * which is the case for files named after the time they were started, such as
+ * the ones created by <code>tcpdump -G</code>. Anything that is left in the
+ * current file when we move on is read first.
+ *
+ * While waiting, the file is polled with a back off that starts at
+ * {@link #MIN_POLL_INTERVAL} and doubles, up to {@link #MAX_POLL_INTERVAL},
+ * for as long as nothing is written. As soon as we get a record we go back to
+ * polling often again.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class FollowingRecordReader implements RecordReader, Closeable {
+
+    /**
+     * The shortest time, in milliseconds, we'll wait before checking the file
+     * again.
+     */
+    public static final long MIN_POLL_INTERVAL = 5;
+
+    /**
+     * The longest time, in milliseconds, we'll wait before checking the file
+     * again.
+     */
+    public static final long MAX_POLL_INTERVAL = 500;
+
+    /**
+     * The pattern the names of the rotated files must match or null if we
+     * only follow the one file.
+     */
+    private final Pattern rotation;
+
+    /**
+     * Used for waiting on more data and for waking up whoever is waiting when
+     * we are closed.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * The header of the very first file, which is what records are created
+     * from.
+     */
+    private PcapGlobalHeader pcapHeader;
+
+    /**
+     * The header of the file we currently are reading from.
+     */
+    private PcapGlobalHeader header;
+
+    private File file;
+
+    private volatile FileChannel channel;
+
+    /**
+     * The offset within the current file of the next record.
+     */
+    private long position;
+
+    private final ByteBuffer recordHeader = ByteBuffer.allocate(16);
+
+    private volatile boolean closed;
+
+    /**
+     * Start following the given file. If the file is so new that not even
+     * the pcap global header has been written yet, this will block until it
+     * has.
+     *
+     * @param file
+     * @param rotation
+     *            the pattern the names of the files the capture is rotated
+     *            into must match, or null if the capture isn't rotated.
+     * @return
+     * @throws IOException
+     *             in case the file doesn't exist or if this thread is
+     *             interrupted while waiting for the header.
+     * @throws IllegalArgumentException
+     *             in case the file isn't a pcap file
+     */
+    public static FollowingRecordReader open(final File file, final Pattern rotation) throws IOException,
+            IllegalArgumentException {
+        if (file == null) {
+            throw new IllegalArgumentException("The file cannot be null");
+        }
+
+        final FileInputStream in = new FileInputStream(file);
+        final FollowingRecordReader reader = new FollowingRecordReader(file, in.getChannel(), rotation);
+        try {
+            reader.open(file);
+        } catch (final IOException e) {
+            reader.close();
+            throw e;
+        } catch (final IllegalArgumentException e) {
+            reader.close();
+            throw e;
+        }
+        return reader;
+    }
+
+    /**
+     *
+     */
+    private FollowingRecordReader(final File file, final FileChannel channel, final Pattern rotation) {
+        this.file = file;
+        this.channel = channel;
+        this.rotation = rotation;
+    }
+
+    /**
+     * The global header of the file we started following.
+     *
+     * @return
+     */
+    public PcapGlobalHeader getPcapHeader() {
+        return this.pcapHeader;
+    }
+
+    /**
+     * The file we currently are reading from.
+     *
+     * @return
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RawRecord createRecord() {
+        return new RawRecord(this.pcapHeader);
+    }
+
+    /**
+     * Wait for the next record to be written and read it into the supplied
+     * {@link RawRecord}.
+     *
+     * @return true if a record was read, false if this reader has been
+     *         closed.
+     * @throws InterruptedIOException
+     *             in case the thread is interrupted while waiting
+     */
+    @Override
+    public boolean next(final RawRecord record) throws IOException {
+        long interval = MIN_POLL_INTERVAL;
+        try {
+            while (!this.closed) {
+                if (read(record)) {
+                    return true;
+                }
+
+                final File next = findNextFile();
+                if (next != null) {
+                    // whoever is writing has moved on to the next file but
+                    // may have appended to this one since we last looked
+                    if (read(record)) {
+                        return true;
+                    }
+                    open(next);
+                    interval = MIN_POLL_INTERVAL;
+                    continue;
+                }
+
+                await(interval);
+                interval = Math.min(interval * 2, MAX_POLL_INTERVAL);
+            }
+        } catch (final ClosedChannelException e) {
+            if (!this.closed) {
+                throw e;
+            }
+        }
+
+        // we may have moved on to another file after we were closed
+        this.channel.close();
+        return false;
+    }
+
+    /**
+     * Stop following the file, which will have any thread currently waiting
+     * in {@link #next(RawRecord)} return false.
+     */
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        synchronized (this.lock) {
+            this.lock.notifyAll();
+        }
+        this.channel.close();
+    }
+
+    /**
+     * Read the next record from the current file, if it has been completely
+     * written.
+     */
+    private boolean read(final RawRecord record) throws IOException {
+        long size = this.channel.size();
+        if (size < this.position) {
+            // the file has been truncated, e.g. because the writer is using
+            // a ring buffer of files, so start over from the beginning
+            open(this.file);
+            size = this.channel.size();
+        }
+
+        if ((size - this.position) < 16) {
+            return false;
+        }
+
+        this.recordHeader.clear();
+        readFully(this.recordHeader, this.position);
+        final byte[] headerArray = this.recordHeader.array();
+        final long length = PcapGlobalHeader.getUnsignedInt(12, headerArray, this.header.getByteOrder())
+                & 0xFFFFFFFFL;
+        if (length > PcapRecordReader.getMaxCapturedLength(this.header)) {
+            throw new IOException("Corrupt pcap record, captured length is " + length);
+        }
+
+        final int capturedLength = (int) length;
+        if ((size - this.position - 16) < capturedLength) {
+            // not all of it has been written yet
+            return false;
+        }
+
+        System.arraycopy(headerArray, 0, record.getHeaderArray(), 0, 16);
+        readFully(ByteBuffer.wrap(record.ensureCapacity(capturedLength), 0, capturedLength), this.position + 16);
+        record.setDataLinkType(this.header.getDataLinkType());
+        record.setOffset(this.position);
+        record.load(capturedLength);
+        this.position += 16 + capturedLength;
+        return true;
+    }
+
+    /**
+     * Start reading the file from the beginning, which means that we first
+     * have to wait for its global header.
+     */
+    private void open(final File file) throws IOException {
+        if (file != this.file) {
+            this.channel.close();
+            this.channel = new FileInputStream(file).getChannel();
+            this.file = file;
+        }
+
+        final PcapGlobalHeader header = readHeader();
+        if (this.pcapHeader == null) {
+            this.pcapHeader = header;
+        } else if (header.getByteOrder() != this.pcapHeader.getByteOrder()) {
+            throw new IOException("The byte order of " + file + " differs from the file we started following");
+        }
+        this.header = header;
+        this.position = 24;
+    }
+
+    private PcapGlobalHeader readHeader() throws IOException {
+        long interval = MIN_POLL_INTERVAL;
+        while (this.channel.size() < 24) {
+            if (this.closed) {
+                throw new ClosedChannelException();
+            }
+            await(interval);
+            interval = Math.min(interval * 2, MAX_POLL_INTERVAL);
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(24);
+        readFully(buffer, 0);
+        return PcapGlobalHeader.parse(Buffers.wrap(buffer.array()));
+    }
+
+    /**
+     * Find the file the capture has been rotated into, if any.
+     */
+    private File findNextFile() {
+        if (this.rotation == null) {
+            return null;
+        }
+
+        final File[] files = this.file.getAbsoluteFile().getParentFile().listFiles();
+        if (files == null) {
+            return null;
+        }
+
+        final String current = this.file.getName();
+        File next = null;
+        for (final File candidate : files) {
+            final String name = candidate.getName();
+            if ((name.compareTo(current) > 0) && ((next == null) || (name.compareTo(next.getName()) < 0))
+                    && this.rotation.matcher(name).matches() && candidate.isFile()) {
+                next = candidate;
+            }
+        }
+        return next;
+    }
+
+    private void readFully(final ByteBuffer buffer, final long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            final int read = this.channel.read(buffer, offset);
+            if (read == -1) {
+                throw new IOException("Unexpected end of " + this.file);
+            }
+            offset += read;
+        }
+    }
+
+    private void await(final long interval) throws InterruptedIOException {
+        synchronized (this.lock) {
+            if (this.closed) {
+                return;
+            }
+            try {
+                this.lock.wait(interval);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + this.file + " to grow");
+            }
+        }
+    }
+
+}
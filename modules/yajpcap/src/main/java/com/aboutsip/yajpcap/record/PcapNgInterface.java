@@ -0,0 +1,161 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.record;
+
+/**
+ * Represents an Interface Description Block of a pcapng file, i.e., one of
+ * the interfaces the packets were captured on. Every interface has its own
+ * data link type and timestamp resolution and if the capture contains an
+ * Interface Statistics Block for the interface, the statistics will be
+ * available here as well once that block has been read.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class PcapNgInterface {
+
+    private final int id;
+
+    private final int dataLinkType;
+
+    private final int snapLength;
+
+    private String name;
+
+    /**
+     * The number of timestamp units per second. The default resolution is
+     * micro seconds.
+     */
+    private long timestampUnits = 1000000L;
+
+    /**
+     * The number of seconds to add to every timestamp.
+     */
+    private long timestampOffset;
+
+    private long receivedCount = -1;
+
+    private long droppedCount = -1;
+
+    PcapNgInterface(final int id, final int dataLinkType, final int snapLength) {
+        this.id = id;
+        this.dataLinkType = dataLinkType;
+        this.snapLength = snapLength;
+    }
+
+    /**
+     * The id of the interface, which is its index within the section it was
+     * described in.
+     *
+     * @return
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    public int getDataLinkType() {
+        return this.dataLinkType;
+    }
+
+    /**
+     * @return the max number of bytes captured per packet or zero if there is
+     *         no limit
+     */
+    public int getSnapLength() {
+        return this.snapLength;
+    }
+
+    /**
+     * @return the name of the interface or null if the capture doesn't say
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    void setName(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * The resolution of the timestamps of the packets captured on this
+     * interface expressed as the number of units per second, e.g. 1000000000
+     * for nano seconds.
+     *
+     * @return
+     */
+    public long getTimestampUnits() {
+        return this.timestampUnits;
+    }
+
+    void setTimestampUnits(final long timestampUnits) {
+        this.timestampUnits = timestampUnits;
+    }
+
+    /**
+     * @return the number of seconds that is added to all the timestamps
+     */
+    public long getTimestampOffset() {
+        return this.timestampOffset;
+    }
+
+    void setTimestampOffset(final long timestampOffset) {
+        this.timestampOffset = timestampOffset;
+    }
+
+    /**
+     * The number of packets received by the interface, as reported by the
+     * last Interface Statistics Block seen for this interface.
+     *
+     * @return the count or -1 (negative one) if unknown
+     */
+    public long getReceivedCount() {
+        return this.receivedCount;
+    }
+
+    void setReceivedCount(final long receivedCount) {
+        this.receivedCount = receivedCount;
+    }
+
+    /**
+     * The number of packets dropped by the interface, as reported by the last
+     * Interface Statistics Block seen for this interface.
+     *
+     * @return the count or -1 (negative one) if unknown
+     */
+    public long getDroppedCount() {
+        return this.droppedCount;
+    }
+
+    void setDroppedCount(final long droppedCount) {
+        this.droppedCount = droppedCount;
+    }
+
+    /**
+     * Convert a timestamp as found in the packet blocks into micro seconds.
+     *
+     * @param timestamp the timestamp in units of this interface
+     * @param result the array to store the seconds and the micro seconds in,
+     *            in that order
+     * @return the same array as passed in
+     */
+    long[] toSecondsAndMicros(final long timestamp, final long[] result) {
+        final long units = this.timestampUnits;
+        result[0] = (timestamp / units) + this.timestampOffset;
+        final long fraction = timestamp % units;
+        if (units == 1000000L) {
+            result[1] = fraction;
+        } else if (units <= (Long.MAX_VALUE / 1000000L)) {
+            result[1] = (fraction * 1000000L) / units;
+        } else {
+            result[1] = (long) (((double) fraction / units) * 1000000L);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Interface " + this.id + " (" + this.name + ") link type " + this.dataLinkType + " snaplen "
+                + this.snapLength + " units/s " + this.timestampUnits;
+    }
+
+}
@@ -0,0 +1,538 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.record;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.aboutsip.yajpcap.frame.PcapGlobalHeader;
+
+/**
+ * Reads the packets of a pcapng file into {@link RawRecord}s. Every packet is
+ * given a regular pcap record header, with the timestamp converted to micro
+ * seconds, so that the rest of yajpcap doesn't have to care about which format
+ * the capture was in.
+ *
+ * The following blocks are understood:
+ * <ul>
+ * <li>Section Header Block - every section has its own byte order and its own
+ * set of interfaces.</li>
+ * <li>Interface Description Block - the data link type, snap length and the
+ * options if_name, if_tsresol and if_tsoffset.</li>
+ * <li>Enhanced Packet Block, Simple Packet Block and the obsolete Packet
+ * Block.</li>
+ * <li>Interface Statistics Block - the options isb_ifrecv and isb_ifdrop are
+ * made available through {@link PcapNgInterface}.</li>
+ * </ul>
+ * Everything else, such as name resolution and the various index blocks some
+ * tools write, is skipped.
+ *
+ * See http://www.winpcap.org/ntar/draft/PCAP-DumpFileFormat.html
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class PcapNgRecordReader implements RecordReader {
+
+    public static final int SECTION_HEADER_BLOCK = 0x0A0D0D0A;
+
+    public static final int INTERFACE_DESCRIPTION_BLOCK = 0x00000001;
+
+    public static final int PACKET_BLOCK = 0x00000002;
+
+    public static final int SIMPLE_PACKET_BLOCK = 0x00000003;
+
+    public static final int INTERFACE_STATISTICS_BLOCK = 0x00000005;
+
+    public static final int ENHANCED_PACKET_BLOCK = 0x00000006;
+
+    private static final int BYTE_ORDER_MAGIC = 0x1A2B3C4D;
+
+    private static final int OPT_ENDOFOPT = 0;
+
+    private static final int IF_NAME = 2;
+
+    private static final int IF_TSRESOL = 9;
+
+    private static final int IF_TSOFFSET = 14;
+
+    private static final int ISB_IFRECV = 4;
+
+    private static final int ISB_IFDROP = 5;
+
+    /**
+     * We refuse to allocate anything bigger than this for a single block.
+     */
+    private static final int MAX_BLOCK_LENGTH = 64 * 1024 * 1024;
+
+    private final InputStream stream;
+
+    /**
+     * The interfaces of the current section, indexed by their id.
+     */
+    private final List<PcapNgInterface> sectionInterfaces = new ArrayList<PcapNgInterface>();
+
+    /**
+     * All the interfaces of all the sections seen so far.
+     */
+    private final List<PcapNgInterface> interfaces = new ArrayList<PcapNgInterface>();
+
+    private final long[] timestamp = new long[2];
+
+    private byte[] block = new byte[256];
+
+    private ByteOrder byteOrder;
+
+    /**
+     * Set as soon as we run out of data in the middle of a block, which
+     * typically happens when the capture was cut short. Just like the regular
+     * pcap reader we treat that as the end of the stream.
+     */
+    private boolean truncated;
+
+    /**
+     * The number of bytes read off of the stream so far.
+     */
+    private long position;
+
+    /**
+     * The offset within the file of the block we currently are reading.
+     */
+    private long blockOffset;
+
+    /**
+     * Create a new reader and read the first section header, and everything up
+     * until the first interface description, off of the stream.
+     *
+     * @param stream the stream positioned at the very beginning of the
+     *            pcapng file
+     * @throws IOException in case the stream doesn't start with a section
+     *             header or in case of any other problems reading it
+     */
+    public PcapNgRecordReader(final InputStream stream) throws IOException {
+        assert stream != null;
+        this.stream = stream;
+        if (!readFully(this.block, 0, 4)
+                || (PcapGlobalHeader.getInt(0, this.block, ByteOrder.BIG_ENDIAN) != SECTION_HEADER_BLOCK)) {
+            throw new IOException("Not a pcapng file, it doesn't start with a section header block");
+        }
+        readSectionHeader();
+        while (this.interfaces.isEmpty() && readBlock(null)) {
+            // keep going until we know the link type of the first interface
+        }
+    }
+
+    /**
+     * Check whether the first four bytes of a file are those of a pcapng
+     * file.
+     *
+     * @param magic
+     * @return
+     */
+    public static boolean isPcapNg(final byte[] magic) {
+        return (magic.length >= 4) && (magic[0] == PcapGlobalHeader.MAGIC_NGPCAP[0])
+                && (magic[1] == PcapGlobalHeader.MAGIC_NGPCAP[1]) && (magic[2] == PcapGlobalHeader.MAGIC_NGPCAP[2])
+                && (magic[3] == PcapGlobalHeader.MAGIC_NGPCAP[3]);
+    }
+
+    /**
+     * All the interfaces described so far. Since the interface statistics
+     * typically are written at the end of the capture, they may not be
+     * available until all the packets have been read.
+     *
+     * @return
+     */
+    public List<PcapNgInterface> getInterfaces() {
+        return Collections.unmodifiableList(this.interfaces);
+    }
+
+    /**
+     * The data link type of the first interface in the capture, which is
+     * what you would use if you need to write the packets out to a regular
+     * pcap.
+     *
+     * @return the data link type or -1 (negative one) if no interface has been
+     *         described
+     */
+    public int getDataLinkType() {
+        return this.interfaces.isEmpty() ? -1 : this.interfaces.get(0).getDataLinkType();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The record headers are always written in little endian, just like the
+     * ones created by {@link PcapGlobalHeader#createDefaultHeader(int)}.
+     */
+    @Override
+    public RawRecord createRecord() {
+        return new RawRecord(ByteOrder.LITTLE_ENDIAN, getDataLinkType());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean next(final RawRecord record) throws IOException {
+        assert record != null;
+        while (true) {
+            final long type = readBlockType();
+            if (type == -1) {
+                return false;
+            }
+            if (readBlock(type, record)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean readBlock(final RawRecord record) throws IOException {
+        final long type = readBlockType();
+        if (type == -1) {
+            return false;
+        }
+        readBlock(type, record);
+        return true;
+    }
+
+    /**
+     * @return the type of the next block or -1 (negative one) if there are no
+     *         more blocks
+     * @throws IOException
+     */
+    private long readBlockType() throws IOException {
+        this.blockOffset = this.position;
+        if (this.truncated || !readFully(this.block, 0, 4)) {
+            return -1;
+        }
+
+        // the section header block type reads the same in both byte orders
+        // which is why we can read it before we know the byte order
+        return PcapGlobalHeader.getInt(0, this.block, this.byteOrder) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Read the rest of the block.
+     *
+     * @param type the block type, which already has been read
+     * @param record the record to load packets into
+     * @return true if the block was a packet block and the record was loaded
+     * @throws IOException
+     */
+    private boolean readBlock(final long type, final RawRecord record) throws IOException {
+        if (type == SECTION_HEADER_BLOCK) {
+            readSectionHeader();
+            return false;
+        }
+
+        final int bodyLength = readBlockLength() - 12;
+        if (this.truncated) {
+            return false;
+        }
+
+        if ((type == ENHANCED_PACKET_BLOCK) || (type == PACKET_BLOCK)) {
+            return readPacket(type, bodyLength, record);
+        } else if (type == SIMPLE_PACKET_BLOCK) {
+            return readSimplePacket(bodyLength, record);
+        }
+
+        if (!readBody(bodyLength)) {
+            return false;
+        }
+
+        if (type == INTERFACE_DESCRIPTION_BLOCK) {
+            readInterfaceDescription(bodyLength);
+        } else if (type == INTERFACE_STATISTICS_BLOCK) {
+            readInterfaceStatistics(bodyLength);
+        }
+        return false;
+    }
+
+    /**
+     * A new section, which may have a different byte order than the previous
+     * one and which will describe its own interfaces.
+     *
+     * @throws IOException
+     */
+    private void readSectionHeader() throws IOException {
+        // block total length and the byte order magic
+        if (!readFully(this.block, 0, 8)) {
+            throw new IOException("Truncated pcapng section header block");
+        }
+
+        if (PcapGlobalHeader.getInt(4, this.block, ByteOrder.BIG_ENDIAN) == BYTE_ORDER_MAGIC) {
+            this.byteOrder = ByteOrder.BIG_ENDIAN;
+        } else if (PcapGlobalHeader.getInt(4, this.block, ByteOrder.LITTLE_ENDIAN) == BYTE_ORDER_MAGIC) {
+            this.byteOrder = ByteOrder.LITTLE_ENDIAN;
+        } else {
+            throw new IOException("Unknown byte order magic in pcapng section header block");
+        }
+
+        final int length = checkBlockLength(PcapGlobalHeader.getInt(0, this.block, this.byteOrder));
+        if (!readBody(length - 12 - 4)) {
+            throw new IOException("Truncated pcapng section header block");
+        }
+        this.sectionInterfaces.clear();
+    }
+
+    private void readInterfaceDescription(final int bodyLength) throws IOException {
+        if (bodyLength < 8) {
+            throw new IOException("Truncated pcapng interface description block");
+        }
+
+        final int linkType = PcapGlobalHeader.getUnsignedShort(0, this.block, this.byteOrder);
+        final int snapLength = PcapGlobalHeader.getInt(4, this.block, this.byteOrder);
+        final PcapNgInterface iface = new PcapNgInterface(this.interfaces.size(), linkType, snapLength);
+
+        int offset = 8;
+        while ((offset + 4) <= bodyLength) {
+            final int code = PcapGlobalHeader.getUnsignedShort(offset, this.block, this.byteOrder);
+            final int length = PcapGlobalHeader.getUnsignedShort(offset + 2, this.block, this.byteOrder);
+            final int value = offset + 4;
+            if ((code == OPT_ENDOFOPT) || ((value + length) > bodyLength)) {
+                break;
+            }
+
+            if (code == IF_NAME) {
+                iface.setName(new String(this.block, value, length, "UTF-8").trim());
+            } else if ((code == IF_TSRESOL) && (length >= 1)) {
+                iface.setTimestampUnits(getTimestampUnits(this.block[value]));
+            } else if ((code == IF_TSOFFSET) && (length >= 8)) {
+                iface.setTimestampOffset(getLong(value));
+            }
+            offset = value + pad(length);
+        }
+
+        this.sectionInterfaces.add(iface);
+        this.interfaces.add(iface);
+    }
+
+    private void readInterfaceStatistics(final int bodyLength) throws IOException {
+        if (bodyLength < 12) {
+            throw new IOException("Truncated pcapng interface statistics block");
+        }
+
+        final PcapNgInterface iface = getInterface(PcapGlobalHeader.getInt(0, this.block, this.byteOrder));
+        int offset = 12;
+        while ((offset + 4) <= bodyLength) {
+            final int code = PcapGlobalHeader.getUnsignedShort(offset, this.block, this.byteOrder);
+            final int length = PcapGlobalHeader.getUnsignedShort(offset + 2, this.block, this.byteOrder);
+            final int value = offset + 4;
+            if ((code == OPT_ENDOFOPT) || ((value + length) > bodyLength)) {
+                break;
+            }
+
+            if ((code == ISB_IFRECV) && (length >= 8)) {
+                iface.setReceivedCount(getLong(value));
+            } else if ((code == ISB_IFDROP) && (length >= 8)) {
+                iface.setDroppedCount(getLong(value));
+            }
+            offset = value + pad(length);
+        }
+    }
+
+    /**
+     * The Enhanced Packet Block and the obsolete Packet Block has the same
+     * layout, except that the latter only uses two bytes for the interface id
+     * followed by two bytes of drop count.
+     */
+    private boolean readPacket(final long type, final int bodyLength, final RawRecord record) throws IOException {
+        if (bodyLength < 20) {
+            throw new IOException("Corrupt pcapng packet block, the block is too short");
+        }
+        if (!readFully(this.block, 0, 20)) {
+            this.truncated = true;
+            return false;
+        }
+
+        final int id = type == PACKET_BLOCK ? PcapGlobalHeader.getUnsignedShort(0, this.block, this.byteOrder)
+                : PcapGlobalHeader.getInt(0, this.block, this.byteOrder);
+        final PcapNgInterface iface = getInterface(id);
+        final long high = PcapGlobalHeader.getInt(4, this.block, this.byteOrder) & 0xFFFFFFFFL;
+        final long low = PcapGlobalHeader.getInt(8, this.block, this.byteOrder) & 0xFFFFFFFFL;
+        final long capturedLength = PcapGlobalHeader.getInt(12, this.block, this.byteOrder) & 0xFFFFFFFFL;
+        final long totalLength = PcapGlobalHeader.getInt(16, this.block, this.byteOrder) & 0xFFFFFFFFL;
+        if (capturedLength > (bodyLength - 20)) {
+            throw new IOException("Corrupt pcapng packet block, captured length is " + capturedLength);
+        }
+
+        iface.toSecondsAndMicros((high << 32) | low, this.timestamp);
+        final boolean loaded = loadRecord(record, iface, (int) capturedLength, totalLength);
+        readBody(bodyLength - 20 - (int) capturedLength);
+        return loaded;
+    }
+
+    /**
+     * The Simple Packet Block always belongs to the first interface and
+     * doesn't have a timestamp.
+     */
+    private boolean readSimplePacket(final int bodyLength, final RawRecord record) throws IOException {
+        if (bodyLength < 4) {
+            throw new IOException("Corrupt pcapng simple packet block, the block is too short");
+        }
+        if (!readFully(this.block, 0, 4)) {
+            this.truncated = true;
+            return false;
+        }
+
+        final PcapNgInterface iface = getInterface(0);
+        final long totalLength = PcapGlobalHeader.getInt(0, this.block, this.byteOrder) & 0xFFFFFFFFL;
+        long capturedLength = Math.min(totalLength, bodyLength - 4);
+        if (iface.getSnapLength() > 0) {
+            capturedLength = Math.min(capturedLength, iface.getSnapLength());
+        }
+
+        this.timestamp[0] = 0;
+        this.timestamp[1] = 0;
+        final boolean loaded = loadRecord(record, iface, (int) capturedLength, totalLength);
+        readBody(bodyLength - 4 - (int) capturedLength);
+        return loaded;
+    }
+
+    /**
+     * Read the packet data straight into the record and create the pcap
+     * record header for it.
+     *
+     * @return false if there is no record to load the packet into
+     */
+    private boolean loadRecord(final RawRecord record, final PcapNgInterface iface, final int capturedLength,
+            final long totalLength) throws IOException {
+        if (record == null) {
+            // we are only looking for the interfaces so just skip the data
+            if (this.block.length < capturedLength) {
+                this.block = new byte[capturedLength];
+            }
+            this.truncated = !readFully(this.block, 0, capturedLength);
+            return false;
+        }
+
+        if (!readFully(record.ensureCapacity(capturedLength), 0, capturedLength)) {
+            this.truncated = true;
+            return false;
+        }
+
+        final byte[] header = record.getHeaderArray();
+        final ByteOrder order = record.getByteOrder();
+        putInt(header, 0, (int) this.timestamp[0], order);
+        putInt(header, 4, (int) this.timestamp[1], order);
+        putInt(header, 8, capturedLength, order);
+        putInt(header, 12, (int) totalLength, order);
+        record.setDataLinkType(iface.getDataLinkType());
+        record.setBlockOffset(this.blockOffset);
+        record.load(capturedLength);
+        return true;
+    }
+
+    private PcapNgInterface getInterface(final int id) throws IOException {
+        if ((id < 0) || (id >= this.sectionInterfaces.size())) {
+            throw new IOException("Corrupt pcapng file, there is no interface with id " + id);
+        }
+        return this.sectionInterfaces.get(id);
+    }
+
+    private int readBlockLength() throws IOException {
+        if (!readFully(this.block, 0, 4)) {
+            this.truncated = true;
+            return 12;
+        }
+        return checkBlockLength(PcapGlobalHeader.getInt(0, this.block, this.byteOrder));
+    }
+
+    private static int checkBlockLength(final int length) throws IOException {
+        if ((length < 12) || ((length % 4) != 0) || (length > MAX_BLOCK_LENGTH)) {
+            throw new IOException("Corrupt pcapng block, the block length is " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Read the given number of bytes into our block buffer, which is where
+     * the bodies of all the non-packet blocks end up, and the trailing block
+     * length, which we don't care about.
+     *
+     * @return false if the stream ended before the block did
+     */
+    private boolean readBody(final int length) throws IOException {
+        if (length < 0) {
+            throw new IOException("Corrupt pcapng block");
+        }
+
+        if (this.block.length < (length + 4)) {
+            this.block = new byte[length + 4];
+        }
+
+        if (this.truncated || !readFully(this.block, 0, length + 4)) {
+            this.truncated = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * if_tsresol - if the most significant bit is zero the rest is the
+     * negative power of ten, otherwise it is the negative power of two.
+     */
+    private static long getTimestampUnits(final byte resolution) throws IOException {
+        final int exponent = resolution & 0x7F;
+        if ((resolution & 0x80) == 0) {
+            if (exponent > 18) {
+                throw new IOException("Unsupported pcapng timestamp resolution 10^-" + exponent);
+            }
+            long units = 1;
+            for (int i = 0; i < exponent; ++i) {
+                units *= 10;
+            }
+            return units;
+        }
+
+        if (exponent > 62) {
+            throw new IOException("Unsupported pcapng timestamp resolution 2^-" + exponent);
+        }
+        return 1L << exponent;
+    }
+
+    private long getLong(final int offset) {
+        final long first = PcapGlobalHeader.getInt(offset, this.block, this.byteOrder) & 0xFFFFFFFFL;
+        final long second = PcapGlobalHeader.getInt(offset + 4, this.block, this.byteOrder) & 0xFFFFFFFFL;
+        if (this.byteOrder == ByteOrder.BIG_ENDIAN) {
+            return (first << 32) | second;
+        }
+        return (second << 32) | first;
+    }
+
+    private static int pad(final int length) {
+        return (length + 3) & ~3;
+    }
+
+    private static void putInt(final byte[] buffer, final int offset, final int value, final ByteOrder order) {
+        if (order == ByteOrder.BIG_ENDIAN) {
+            buffer[offset + 0] = (byte) (value >>> 24);
+            buffer[offset + 1] = (byte) (value >>> 16);
+            buffer[offset + 2] = (byte) (value >>> 8);
+            buffer[offset + 3] = (byte) value;
+        } else {
+            buffer[offset + 0] = (byte) value;
+            buffer[offset + 1] = (byte) (value >>> 8);
+            buffer[offset + 2] = (byte) (value >>> 16);
+            buffer[offset + 3] = (byte) (value >>> 24);
+        }
+    }
+
+    private boolean readFully(final byte[] buffer, final int offset, final int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            final int read = this.stream.read(buffer, offset + total, length - total);
+            if (read == -1) {
+                return false;
+            }
+            total += read;
+            this.position += read;
+        }
+        return true;
+    }
+
+}
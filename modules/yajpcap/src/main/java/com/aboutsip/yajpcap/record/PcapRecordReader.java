@@ -0,0 +1,120 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.record;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.aboutsip.yajpcap.PcapDecoder;
+import com.aboutsip.yajpcap.frame.PcapGlobalHeader;
+
+/**
+ * Reads the raw pcap records off of an {@link InputStream} straight into a
+ * {@link RawRecord} without creating any objects along the way. The stream
+ * is expected to be positioned right after the {@link PcapGlobalHeader}.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class PcapRecordReader implements RecordReader {
+
+    private final InputStream stream;
+
+    private final PcapGlobalHeader header;
+
+    private final long maxCapturedLength;
+
+    /**
+     * The offset within the file of the next record.
+     */
+    private long position;
+
+    /**
+     *
+     * @param header the global header of the pcap we are reading from.
+     * @param stream
+     */
+    public PcapRecordReader(final PcapGlobalHeader header, final InputStream stream) {
+        this(header, stream, 24);
+    }
+
+    /**
+     *
+     * @param header the global header of the pcap we are reading from.
+     * @param stream
+     * @param position the offset within the file the stream is positioned
+     *            at, which is where the next record starts. Only used for
+     *            keeping track of the {@link RawRecord#getOffset()}.
+     */
+    public PcapRecordReader(final PcapGlobalHeader header, final InputStream stream, final long position) {
+        assert header != null;
+        assert stream != null;
+        this.header = header;
+        this.stream = stream;
+        this.position = position;
+        this.maxCapturedLength = getMaxCapturedLength(header);
+    }
+
+    /**
+     * Records claiming to be larger than the snap length of the capture, or
+     * {@link PcapDecoder#MAX_RECORD_LENGTH}, whichever is larger, are
+     * considered to be corrupt. Without a limit a single corrupt record
+     * header could have us allocate gigabytes.
+     *
+     * @param header
+     * @return
+     */
+    static long getMaxCapturedLength(final PcapGlobalHeader header) {
+        return Math.max(header.getSnapLength(), PcapDecoder.MAX_RECORD_LENGTH);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RawRecord createRecord() {
+        return new RawRecord(this.header);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean next(final RawRecord record) throws IOException {
+        final byte[] recordHeader = record.getHeaderArray();
+        if (!readFully(recordHeader, 16)) {
+            return false;
+        }
+
+        final long length = PcapGlobalHeader.getUnsignedInt(12, recordHeader, this.header.getByteOrder())
+                & 0xFFFFFFFFL;
+        if (length > this.maxCapturedLength) {
+            throw new IOException("Corrupt pcap record, captured length is " + length);
+        }
+
+        final int capturedLength = (int) length;
+        if (!readFully(record.ensureCapacity(capturedLength), capturedLength)) {
+            // truncated capture, just like the PcapFramer we
+            // will treat it as the end of the stream
+            return false;
+        }
+
+        record.setOffset(this.position);
+        record.load(capturedLength);
+        this.position += 16 + capturedLength;
+        return true;
+    }
+
+    private boolean readFully(final byte[] buffer, final int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            final int read = this.stream.read(buffer, total, length - total);
+            if (read == -1) {
+                return false;
+            }
+            total += read;
+        }
+        return true;
+    }
+
+}
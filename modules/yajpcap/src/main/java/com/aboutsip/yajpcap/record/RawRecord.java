@@ -0,0 +1,500 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.record;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+
+import com.aboutsip.buffer.Buffer;
+import com.aboutsip.buffer.Buffers;
+import com.aboutsip.yajpcap.frame.PcapFrame;
+import com.aboutsip.yajpcap.frame.PcapGlobalHeader;
+import com.aboutsip.yajpcap.frame.PcapRecordHeader;
+import com.aboutsip.yajpcap.framer.EthernetFramer;
+import com.aboutsip.yajpcap.framer.FramerManager;
+
+/**
+ * A {@link RawRecord} is a reusable view of a single pcap record as it was
+ * read off of the stream, i.e., the 16 byte record header and the raw packet
+ * data. When a record is loaded, the offsets of the network, transport and
+ * application layers are computed in one pass so that anyone that is
+ * interested in e.g. the ports or the ip addresses can just go and read them
+ * without anything having to be framed.
+ *
+ * The same {@link RawRecord} is used over and over again by the
+ * {@link PcapRecordReader}, which means that you must not hold on to it. If
+ * you want to keep a record around, turn it into a {@link PcapFrame} through
+ * {@link #toFrame(FramerManager)}, which will copy the data.
+ *
+ * All offsets are relative to the beginning of the packet data (not
+ * including the record header). Only IPv4 over Ethernet (VLAN tagged or not)
+ * and Linux cooked (version 1 and 2) captures are decoded right now.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class RawRecord {
+
+    public static final int DLT_EN10MB = PcapGlobalHeader.DLT_EN10MB;
+
+    public static final int DLT_LINUX_SLL = PcapGlobalHeader.DLT_LINUX_SLL;
+
+    public static final int DLT_LINUX_SLL2 = PcapGlobalHeader.DLT_LINUX_SLL2;
+
+    public static final int IP_PROTOCOL_TCP = 6;
+
+    public static final int IP_PROTOCOL_UDP = 17;
+
+    private static final int ETHERTYPE_IPV4 = 0x0800;
+
+    private final ByteOrder byteOrder;
+
+    private int dataLinkType;
+
+    private final byte[] header = new byte[16];
+
+    private byte[] data;
+
+    private int capturedLength;
+
+    private long offset = -1;
+
+    /**
+     * Whether the offset points to a pcapng block rather than to a pcap
+     * record.
+     */
+    private boolean block;
+
+    private int networkOffset;
+
+    private int etherType;
+
+    private int transportOffset;
+
+    private int ipProtocol;
+
+    private int payloadOffset;
+
+    private int payloadLength;
+
+    /**
+     *
+     * @param header the global header of the pcap the records belong to.
+     */
+    public RawRecord(final PcapGlobalHeader header) {
+        this(header.getByteOrder(), header.getDataLinkType());
+    }
+
+    public RawRecord(final ByteOrder byteOrder, final int dataLinkType) {
+        assert byteOrder != null;
+        this.byteOrder = byteOrder;
+        this.dataLinkType = dataLinkType;
+        this.data = new byte[2048];
+    }
+
+    /**
+     * The raw record header. Note, this array is reused.
+     *
+     * @return
+     */
+    byte[] getHeaderArray() {
+        return this.header;
+    }
+
+    /**
+     * Make sure we can hold at least the given number of bytes of packet data
+     * and return the array to write into.
+     *
+     * @param length
+     * @return
+     */
+    byte[] ensureCapacity(final int length) {
+        if (this.data.length < length) {
+            int size = this.data.length;
+            while (size < length) {
+                size <<= 1;
+            }
+            this.data = new byte[size];
+        }
+        return this.data;
+    }
+
+    /**
+     * Called once the header and the data have been loaded into this record.
+     * Will figure out where all the layers are.
+     *
+     * @param capturedLength
+     */
+    void load(final int capturedLength) {
+        this.capturedLength = capturedLength;
+        this.networkOffset = -1;
+        this.etherType = -1;
+        this.transportOffset = -1;
+        this.ipProtocol = -1;
+        this.payloadOffset = -1;
+        this.payloadLength = 0;
+
+        if (this.dataLinkType == DLT_EN10MB) {
+            if (capturedLength < 14) {
+                return;
+            }
+            this.etherType = getUnsignedShort(12);
+            this.networkOffset = 14;
+            while (EthernetFramer.isVlanTag(this.etherType) && ((this.networkOffset + 4) <= capturedLength)) {
+                this.etherType = getUnsignedShort(this.networkOffset + 2);
+                this.networkOffset += 4;
+            }
+        } else if (this.dataLinkType == DLT_LINUX_SLL) {
+            if (capturedLength < 16) {
+                return;
+            }
+            this.etherType = getUnsignedShort(14);
+            this.networkOffset = 16;
+        } else if (this.dataLinkType == DLT_LINUX_SLL2) {
+            if (capturedLength < 20) {
+                return;
+            }
+            this.etherType = getUnsignedShort(0);
+            this.networkOffset = 20;
+        } else {
+            return;
+        }
+
+        if (this.etherType != ETHERTYPE_IPV4) {
+            return;
+        }
+
+        final int ip = this.networkOffset;
+        if (((ip + 20) > capturedLength) || (((this.data[ip] >>> 4) & 0x0F) != 4)) {
+            this.networkOffset = -1;
+            return;
+        }
+
+        this.ipProtocol = this.data[ip + 9] & 0xFF;
+
+        // if this is a fragment other than the first one there is no
+        // transport header in here
+        if ((getUnsignedShort(ip + 6) & 0x1FFF) != 0) {
+            return;
+        }
+
+        final int transport = ip + ((this.data[ip] & 0x0F) * 4);
+        if (this.ipProtocol == IP_PROTOCOL_UDP) {
+            if ((transport + 8) <= capturedLength) {
+                this.transportOffset = transport;
+                this.payloadOffset = transport + 8;
+            }
+        } else if (this.ipProtocol == IP_PROTOCOL_TCP) {
+            if ((transport + 20) <= capturedLength) {
+                final int headerLength = ((this.data[transport + 12] >>> 4) & 0x0F) * 4;
+                if ((transport + headerLength) <= capturedLength) {
+                    this.transportOffset = transport;
+                    this.payloadOffset = transport + headerLength;
+                }
+            }
+        }
+
+        if (this.payloadOffset != -1) {
+            // the link layer may have padded the packet (an ethernet frame is
+            // at least 60 bytes) so don't go beyond the end of the ip or udp
+            // datagram. A total length that is too small to even cover the
+            // headers is ignored, which is what you get for packets captured
+            // before the NIC segmented them.
+            int end = capturedLength;
+            final int totalLength = getUnsignedShort(ip + 2);
+            if (totalLength >= (transport - ip)) {
+                end = Math.min(end, ip + totalLength);
+            }
+
+            if (this.ipProtocol == IP_PROTOCOL_UDP) {
+                final int udpLength = getUnsignedShort(transport + 4);
+                if (udpLength >= 8) {
+                    end = Math.min(end, transport + udpLength);
+                }
+            }
+            this.payloadLength = Math.max(0, end - this.payloadOffset);
+        }
+    }
+
+    public int getDataLinkType() {
+        return this.dataLinkType;
+    }
+
+    /**
+     * In a pcapng file every interface has its own data link type so the
+     * reader has to update the record before loading it.
+     *
+     * @param dataLinkType
+     */
+    void setDataLinkType(final int dataLinkType) {
+        this.dataLinkType = dataLinkType;
+    }
+
+    public ByteOrder getByteOrder() {
+        return this.byteOrder;
+    }
+
+    /**
+     * The offset within the capture file where this record starts, i.e.,
+     * where its record header (or pcapng block) starts.
+     *
+     * @return the offset or -1 (negative one) if unknown
+     */
+    public long getOffset() {
+        return this.offset;
+    }
+
+    void setOffset(final long offset) {
+        this.offset = offset;
+        this.block = false;
+    }
+
+    /**
+     * Same as {@link #setOffset(long)} but for records that were read from a
+     * pcapng block.
+     *
+     * @param offset
+     */
+    void setBlockOffset(final long offset) {
+        this.offset = offset;
+        this.block = true;
+    }
+
+    /**
+     * The offset within the capture file of the pcap record, i.e., the 16
+     * byte record header followed by the packet data exactly as it would be
+     * written to a pcap. A pcapng block is laid out differently so records
+     * read from a pcapng file don't have one.
+     *
+     * @return the offset or -1 (negative one) if unknown
+     */
+    public long getRecordOffset() {
+        return this.block ? -1 : this.offset;
+    }
+
+    public long getTimeStampSeconds() {
+        return PcapGlobalHeader.getUnsignedInt(0, this.header, this.byteOrder) & 0xFFFFFFFFL;
+    }
+
+    public long getTimeStampMicroSeconds() {
+        return PcapGlobalHeader.getUnsignedInt(4, this.header, this.byteOrder) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * The arrival time in micro seconds. Same as
+     * {@link PcapFrame#getArrivalTime()}
+     *
+     * @return
+     */
+    public long getArrivalTime() {
+        return (getTimeStampSeconds() * 1000000) + getTimeStampMicroSeconds();
+    }
+
+    /**
+     * The length of the packet as it was on the wire.
+     *
+     * @return
+     */
+    public long getTotalLength() {
+        return PcapGlobalHeader.getUnsignedInt(8, this.header, this.byteOrder) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * The number of bytes of the packet that actually was captured.
+     *
+     * @return
+     */
+    public int getCapturedLength() {
+        return this.capturedLength;
+    }
+
+    /**
+     * The raw packet data. Note that the array may be larger than the record
+     * so use {@link #getCapturedLength()} and note that the array is reused.
+     *
+     * @return
+     */
+    public byte[] getArray() {
+        return this.data;
+    }
+
+    /**
+     * The offset to the network layer (e.g. the IPv4 header)
+     *
+     * @return the offset or -1 (negative one) if there is no network layer we
+     *         know of
+     */
+    public int getNetworkOffset() {
+        return this.networkOffset;
+    }
+
+    /**
+     * The ether type of the network layer.
+     *
+     * @return the ether type or -1 (negative one) if unknown
+     */
+    public int getEtherType() {
+        return this.etherType;
+    }
+
+    /**
+     * Check whether this is an IPv4 packet.
+     *
+     * @return
+     */
+    public boolean isIPv4() {
+        return this.ipProtocol != -1;
+    }
+
+    /**
+     * The protocol field of the IPv4 header.
+     *
+     * @return the protocol or -1 (negative one) if this isn't an IPv4 packet.
+     */
+    public int getIpProtocol() {
+        return this.ipProtocol;
+    }
+
+    /**
+     * Get the raw source ip. Only valid if {@link #isIPv4()} is true.
+     *
+     * @return
+     */
+    public int getRawSourceIp() {
+        return getInt(this.networkOffset + 12);
+    }
+
+    /**
+     * Get the raw destination ip. Only valid if {@link #isIPv4()} is true.
+     *
+     * @return
+     */
+    public int getRawDestinationIp() {
+        return getInt(this.networkOffset + 16);
+    }
+
+    /**
+     * The offset to the UDP or TCP header.
+     *
+     * @return the offset or -1 (negative one) if there is no UDP or TCP header
+     *         in this record.
+     */
+    public int getTransportOffset() {
+        return this.transportOffset;
+    }
+
+    public boolean isUDP() {
+        return (this.transportOffset != -1) && (this.ipProtocol == IP_PROTOCOL_UDP);
+    }
+
+    public boolean isTCP() {
+        return (this.transportOffset != -1) && (this.ipProtocol == IP_PROTOCOL_TCP);
+    }
+
+    /**
+     *
+     * @return the source port or -1 (negative one) if there is no UDP or TCP
+     *         header in this record.
+     */
+    public int getSourcePort() {
+        return this.transportOffset == -1 ? -1 : getUnsignedShort(this.transportOffset);
+    }
+
+    /**
+     *
+     * @return the destination port or -1 (negative one) if there is no UDP or
+     *         TCP header in this record.
+     */
+    public int getDestinationPort() {
+        return this.transportOffset == -1 ? -1 : getUnsignedShort(this.transportOffset + 2);
+    }
+
+    /**
+     * The offset to the payload of the UDP or TCP packet.
+     *
+     * @return the offset or -1 (negative one) if there is no UDP or TCP header
+     *         in this record.
+     */
+    public int getPayloadOffset() {
+        return this.payloadOffset;
+    }
+
+    /**
+     * The number of bytes of UDP or TCP payload that was captured.
+     *
+     * @return
+     */
+    public int getPayloadLength() {
+        return this.payloadLength;
+    }
+
+    public byte getByte(final int index) {
+        checkIndex(index, 1);
+        return this.data[index];
+    }
+
+    public int getUnsignedShort(final int index) {
+        checkIndex(index, 2);
+        return ((this.data[index] & 0xff) << 8) | (this.data[index + 1] & 0xff);
+    }
+
+    public int getInt(final int index) {
+        checkIndex(index, 4);
+        return ((this.data[index] & 0xff) << 24) | ((this.data[index + 1] & 0xff) << 16)
+                | ((this.data[index + 2] & 0xff) << 8) | (this.data[index + 3] & 0xff);
+    }
+
+    private void checkIndex(final int index, final int length) {
+        if ((index < 0) || ((index + length) > this.capturedLength)) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds");
+        }
+    }
+
+    /**
+     * Write this record, header and data, to the stream without creating any
+     * frames.
+     *
+     * @param out
+     * @param byteOrder the byte order the record header should be written in,
+     *            which is the byte order of the pcap we are writing to.
+     * @throws IOException
+     */
+    public void write(final OutputStream out, final ByteOrder byteOrder) throws IOException {
+        if (byteOrder == this.byteOrder) {
+            out.write(this.header, 0, 16);
+        } else {
+            final byte[] swapped = new byte[16];
+            for (int i = 0; i < 16; i += 4) {
+                swapped[i] = this.header[i + 3];
+                swapped[i + 1] = this.header[i + 2];
+                swapped[i + 2] = this.header[i + 1];
+                swapped[i + 3] = this.header[i];
+            }
+            out.write(swapped, 0, 16);
+        }
+        out.write(this.data, 0, this.capturedLength);
+    }
+
+    /**
+     * Turn this record into a {@link PcapFrame}. The data will be copied so
+     * the frame is safe to keep around after the record has been reused.
+     *
+     * @param framerManager
+     * @return
+     */
+    public PcapFrame toFrame(final FramerManager framerManager) {
+        final byte[] headerCopy = new byte[16];
+        System.arraycopy(this.header, 0, headerCopy, 0, 16);
+        final PcapRecordHeader recordHeader = new PcapRecordHeader(this.byteOrder, Buffers.wrap(headerCopy));
+
+        Buffer payload = Buffers.EMPTY_BUFFER;
+        if (this.capturedLength > 0) {
+            final byte[] dataCopy = new byte[this.capturedLength];
+            System.arraycopy(this.data, 0, dataCopy, 0, this.capturedLength);
+            payload = Buffers.wrap(dataCopy);
+        }
+        return new PcapFrame(framerManager, recordHeader, payload, this.dataLinkType, getRecordOffset());
+    }
+
+}
@@ -0,0 +1,34 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.record;
+
+import java.io.IOException;
+
+/**
+ * Reads the records of a capture, one at a time, into a reusable
+ * {@link RawRecord}. There is one implementation per file format.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public interface RecordReader {
+
+    /**
+     * Create a new {@link RawRecord} that is suitable for use with this
+     * reader.
+     *
+     * @return
+     */
+    RawRecord createRecord();
+
+    /**
+     * Read the next record into the supplied {@link RawRecord}.
+     *
+     * @param record
+     * @return true if a record was read, false if there are no more records in
+     *         the stream.
+     * @throws IOException
+     */
+    boolean next(RawRecord record) throws IOException;
+
+}
@@ -0,0 +1,114 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.trace;
+
+/**
+ * Something that happened while processing a capture, handed to the
+ * {@link TraceListener} by the {@link Tracer}.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class TraceEvent {
+
+    public enum Type {
+        /**
+         * A batch of records read by one of the loops of a
+         * {@link com.aboutsip.yajpcap.Pcap}. The name is null and the count is
+         * the number of records in the batch.
+         */
+        LOOP,
+
+        /**
+         * The payload of a frame being framed. The name is the protocol it
+         * was framed into, or "unknown" if no framer accepted it, and the
+         * count is the size of the payload.
+         */
+        FRAME,
+
+        /**
+         * A header being looked up, and parsed, in a SIP message. The name is
+         * the name of the header and the count is the number of headers that
+         * had to be parsed to find it.
+         */
+        SIP_HEADER,
+
+        /**
+         * A new stream was detected. The name is the id of the stream.
+         */
+        STREAM_START,
+
+        /**
+         * A stream ended. The name is the id of the stream.
+         */
+        STREAM_END;
+    }
+
+    private final Type type;
+
+    private final String name;
+
+    private final long start;
+
+    private final long duration;
+
+    private final long count;
+
+    TraceEvent(final Type type, final String name, final long start, final long duration, final long count) {
+        this.type = type;
+        this.name = name;
+        this.start = start;
+        this.duration = duration;
+        this.count = count;
+    }
+
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * What the event concerns, see {@link Type}. May be null.
+     *
+     * @return
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * When the event started, as given by {@link System#nanoTime()}.
+     *
+     * @return
+     */
+    public long getStart() {
+        return this.start;
+    }
+
+    /**
+     * How long the event took, in nano seconds. Always zero for events that
+     * just happen, such as a stream starting.
+     *
+     * @return
+     */
+    public long getDuration() {
+        return this.duration;
+    }
+
+    /**
+     * See {@link Type}.
+     *
+     * @return
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return this.type + " " + this.name + " " + this.duration + "ns " + this.count;
+    }
+
+}
@@ -0,0 +1,17 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.trace;
+
+/**
+ * Receives the events traced by the {@link Tracer}. The listener is called by
+ * the thread that did whatever the event is about, right after it did it, so
+ * it must be thread safe and it should be quick.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public interface TraceListener {
+
+    void traced(TraceEvent event);
+
+}
@@ -0,0 +1,195 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.trace;
+
+import java.util.Arrays;
+
+/**
+ * Traces what goes on inside the framing pipeline so that a slow job can be
+ * looked at while it is running: the batches of records read by the loops of
+ * a {@link com.aboutsip.yajpcap.Pcap}, the framing of every layer, the
+ * parsing of SIP headers and streams starting and ending. See
+ * {@link TraceEvent.Type} for the details.
+ *
+ * Nothing is traced until a {@link TraceListener} has been installed through
+ * {@link #setListener(TraceListener, int)} and until then every trace point
+ * is a single volatile read. Once installed, framing and SIP header events,
+ * of which there are many per record, are sampled, i.e., only every n:th one
+ * is timed and handed to the listener. The records read by the loops are
+ * reported in batches of {@link #BATCH_SIZE} and the stream events are rare
+ * enough to always be reported.
+ *
+ * The listener could, for instance, commit each event as a Flight Recorder
+ * event on a JVM that has one, which puts the events in the same recording
+ * as the GC and I/O of the job.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class Tracer {
+
+    /**
+     * Returned by {@link #start(TraceEvent.Type)} when the event isn't traced.
+     */
+    public static final long NOT_TRACED = -1;
+
+    /**
+     * The number of records reported in one {@link TraceEvent.Type#LOOP}
+     * event.
+     */
+    public static final int BATCH_SIZE = 1024;
+
+    private static volatile TraceListener listener;
+
+    private static volatile int sampleInterval = 1;
+
+    /**
+     * The number of events seen per type, used for the sampling. These are
+     * updated without any synchronization whatsoever, so when several
+     * threads are tracing we may sample a bit more or less often than we
+     * should, which is fine.
+     */
+    private static final int[] seen = new int[TraceEvent.Type.values().length];
+
+    /**
+     *
+     */
+    private Tracer() {
+        // left empty intentionally
+    }
+
+    /**
+     * Start tracing.
+     *
+     * @param listener
+     * @param sampleInterval
+     *            only every n:th framing and SIP header event will be traced,
+     *            1 (one) traces all of them.
+     */
+    public static void setListener(final TraceListener listener, final int sampleInterval) {
+        if (listener == null) {
+            throw new IllegalArgumentException("The listener cannot be null");
+        }
+
+        if (sampleInterval <= 0) {
+            throw new IllegalArgumentException("The sample interval must be greater than zero");
+        }
+
+        Arrays.fill(seen, 0);
+        Tracer.sampleInterval = sampleInterval;
+        Tracer.listener = listener;
+    }
+
+    /**
+     * Stop tracing.
+     */
+    public static void removeListener() {
+        listener = null;
+    }
+
+    public static boolean isEnabled() {
+        return listener != null;
+    }
+
+    /**
+     * Check whether an event of the given type should be traced and if so,
+     * when it started.
+     *
+     * @param type
+     * @return the start time of the event or {@link #NOT_TRACED}, in which
+     *         case {@link #end(TraceEvent.Type, long, String, long)} must not be
+     *         called.
+     */
+    public static long start(final TraceEvent.Type type) {
+        if (listener == null) {
+            return NOT_TRACED;
+        }
+
+        final int index = type.ordinal();
+        final int count = seen[index] + 1;
+        if (count < sampleInterval) {
+            seen[index] = count;
+            return NOT_TRACED;
+        }
+
+        seen[index] = 0;
+        return System.nanoTime();
+    }
+
+    /**
+     * Hand an event, which was started through
+     * {@link #start(TraceEvent.Type)}, over to the listener.
+     *
+     * @param type
+     * @param start
+     * @param name
+     * @param count
+     */
+    public static void end(final TraceEvent.Type type, final long start, final String name, final long count) {
+        final TraceListener listener = Tracer.listener;
+        if (listener != null) {
+            listener.traced(new TraceEvent(type, name, start, System.nanoTime() - start, count));
+        }
+    }
+
+    /**
+     * Hand an event that just happened, and therefore has no duration, over
+     * to the listener. These are never sampled.
+     *
+     * @param type
+     * @param name
+     */
+    public static void event(final TraceEvent.Type type, final String name) {
+        final TraceListener listener = Tracer.listener;
+        if (listener != null) {
+            listener.traced(new TraceEvent(type, name, System.nanoTime(), 0, 1));
+        }
+    }
+
+    /**
+     * Create a new {@link Batch} for a loop that is about to start.
+     *
+     * @return
+     */
+    public static Batch batch() {
+        return new Batch();
+    }
+
+    /**
+     * Keeps track of the records read by a loop and reports them in batches
+     * of {@link Tracer#BATCH_SIZE}. A batch is only used by the thread
+     * running the loop.
+     */
+    public static final class Batch {
+
+        private long start = System.nanoTime();
+
+        private int count;
+
+        private Batch() {
+            // use Tracer.batch()
+        }
+
+        /**
+         * Count one more record.
+         */
+        public void add() {
+            if (++this.count == BATCH_SIZE) {
+                end();
+            }
+        }
+
+        /**
+         * Report the records counted so far, if any, and start over. Call
+         * this when the loop ends.
+         */
+        public void end() {
+            if ((this.count > 0) && (listener != null)) {
+                Tracer.end(TraceEvent.Type.LOOP, this.start, null, this.count);
+            }
+            this.count = 0;
+            this.start = System.nanoTime();
+        }
+    }
+
+}
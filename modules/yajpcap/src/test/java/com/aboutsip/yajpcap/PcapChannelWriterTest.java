@@ -0,0 +1,247 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aboutsip.yajpcap.cursor.CursorHandler;
+import com.aboutsip.yajpcap.cursor.PacketCursor;
+import com.aboutsip.yajpcap.frame.Frame;
+import com.aboutsip.yajpcap.frame.PcapGlobalHeader;
+import com.aboutsip.yajpcap.frame.SipFrame;
+import com.aboutsip.yajpcap.packet.PacketParseException;
+import com.aboutsip.yajpcap.packet.sip.SipMessage;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class PcapChannelWriterTest extends YajTestBase {
+
+    private File file;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        this.file = File.createTempFile("channel", ".pcap");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+        this.file.delete();
+    }
+
+    /**
+     * Writing every frame we read back out again should give us the exact
+     * same capture. Use a really small batch so that we flush a bunch of
+     * times along the way.
+     */
+    @Test
+    public void testWriteAllFrames() throws Exception {
+        final Pcap pcap = Pcap.openStream(YajTestBase.class.getResourceAsStream("sipp.pcap"));
+        final PcapChannelWriter writer = PcapChannelWriter.create(this.defaultPcapHeader,
+                new FileOutputStream(this.file).getChannel(), 3, 512);
+        pcap.loop(new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                try {
+                    writer.write(frame);
+                } catch (final IOException e) {
+                    fail("Got an IOException in my test " + e.getMessage());
+                }
+            }
+        });
+        pcap.close();
+        writer.close();
+
+        assertThat(Arrays.equals(readFile(), readResource("sipp.pcap")), is(true));
+    }
+
+    /**
+     * Same as {@link #testWriteAllFrames()} but for the records, which are
+     * re-used by the reader and therefore have to be copied.
+     */
+    @Test
+    public void testWriteAllRecords() throws Exception {
+        final Pcap pcap = Pcap.openStream(YajTestBase.class.getResourceAsStream("sipp.pcap"));
+        final PcapChannelWriter writer = PcapChannelWriter.create(this.defaultPcapHeader,
+                new FileOutputStream(this.file).getChannel(), 4, 1024);
+        pcap.loopCursor(new CursorHandler() {
+            @Override
+            public void nextPacket(final PacketCursor packet) {
+                try {
+                    writer.write(packet.getRecord());
+                } catch (final IOException e) {
+                    fail("Got an IOException in my test " + e.getMessage());
+                }
+            }
+        });
+        pcap.close();
+        writer.close();
+
+        assertThat(Arrays.equals(readFile(), readResource("sipp.pcap")), is(true));
+    }
+
+    /**
+     * The batch fills up before the flush threshold is reached, which is when
+     * the staged data of the records must survive the flush. Over the whole
+     * capture we write a lot more than the threshold as well.
+     */
+    @Test
+    public void testWriteRecordsFullBatch() throws Exception {
+        assertWriteRecords(2, PcapChannelWriter.DEFAULT_FLUSH_THRESHOLD);
+        assertWriteRecords(3, 2048);
+        assertWriteRecords(7, 4096);
+    }
+
+    private void assertWriteRecords(final int batchSize, final int flushThreshold) throws Exception {
+        final Pcap pcap = Pcap.openStream(YajTestBase.class.getResourceAsStream("sipp.pcap"));
+        final PcapChannelWriter writer = PcapChannelWriter.create(this.defaultPcapHeader,
+                new FileOutputStream(this.file).getChannel(), batchSize, flushThreshold);
+        pcap.loopCursor(new CursorHandler() {
+            @Override
+            public void nextPacket(final PacketCursor packet) {
+                try {
+                    writer.write(packet.getRecord());
+                } catch (final IOException e) {
+                    fail("Got an IOException in my test " + e.getMessage());
+                }
+            }
+        });
+        pcap.close();
+        writer.close();
+
+        final byte[] expected = readResource("sipp.pcap");
+        final byte[] actual = readFile();
+        assertThat(actual.length, is(expected.length));
+        for (int i = 0; i < expected.length; ++i) {
+            if (actual[i] != expected[i]) {
+                fail("Byte " + i + " differs with batch size " + batchSize + " and threshold " + flushThreshold);
+            }
+        }
+    }
+
+    /**
+     * Only write the INVITE and BYE requests, both as {@link SipFrame}s and
+     * as {@link SipMessage}s, and make sure we can read them back in again.
+     */
+    @Test
+    public void testWriteSipFramesAndPackets() throws Exception {
+        assertWrite(false);
+        assertWrite(true);
+    }
+
+    @Test
+    public void testWrongDataLinkType() throws Exception {
+        final Pcap pcap = Pcap.openStream(YajTestBase.class.getResourceAsStream("sipp.pcap"));
+        final PcapChannelWriter writer = PcapChannelWriter.create(
+                PcapGlobalHeader.createDefaultHeader(PcapGlobalHeader.DLT_LINUX_SLL),
+                new FileOutputStream(this.file).getChannel());
+        final int[] errors = new int[1];
+        pcap.loopCursor(new CursorHandler() {
+            @Override
+            public void nextPacket(final PacketCursor packet) {
+                try {
+                    writer.write(packet.getRecord());
+                } catch (final IllegalArgumentException e) {
+                    ++errors[0];
+                } catch (final IOException e) {
+                    fail("Got an IOException in my test " + e.getMessage());
+                }
+            }
+        });
+        pcap.close();
+        writer.close();
+        assertThat(errors[0], is(30));
+
+        // and once closed we shouldn't accept anything else
+        try {
+            writer.write((Frame) null);
+            writer.write(this.defaultPcapFrame);
+            fail("Expected an IOException");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+    private void assertWrite(final boolean writePackets) throws Exception {
+        Pcap pcap = Pcap.openStream(YajTestBase.class.getResourceAsStream("sipp.pcap"));
+        final PcapChannelWriter writer = pcap.createChannelWriter(new FileOutputStream(this.file).getChannel());
+        pcap.loop(new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                try {
+                    final SipFrame sipFrame = (SipFrame) frame.getFrame(Protocol.SIP);
+                    final SipMessage msg = sipFrame.parse();
+                    if (msg.isRequest() && (msg.isInvite() || msg.isBye())) {
+                        if (writePackets) {
+                            writer.write(msg);
+                        } else {
+                            writer.write(sipFrame);
+                        }
+                    }
+                } catch (final IOException e) {
+                    fail("Got an IOException in my test " + e.getMessage());
+                } catch (final PacketParseException e) {
+                    fail("Got a PacketParseException in my test " + e.getMessage());
+                }
+            }
+        });
+        pcap.close();
+        writer.close();
+
+        pcap = Pcap.openFile(this.file);
+        final MethodCalculator calculator = new MethodCalculator();
+        pcap.loop(calculator);
+        pcap.close();
+
+        // only the 5 invites and 5 byes, no responses
+        assertThat(calculator.total, is(10));
+        assertThat(calculator.invite, is(5));
+        assertThat(calculator.bye, is(5));
+    }
+
+    private byte[] readFile() throws IOException {
+        return read(new FileInputStream(this.file));
+    }
+
+    private static byte[] readResource(final String resource) throws IOException {
+        return read(YajTestBase.class.getResourceAsStream(resource));
+    }
+
+    private static byte[] read(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+}
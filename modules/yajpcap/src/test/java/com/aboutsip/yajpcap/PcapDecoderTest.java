@@ -0,0 +1,156 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aboutsip.yajpcap.frame.Frame;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class PcapDecoderTest extends YajTestBase {
+
+    /**
+     * The raw sipp.pcap
+     */
+    private byte[] sipp;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        final InputStream in = YajTestBase.class.getResourceAsStream("sipp.pcap");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        this.sipp = out.toByteArray();
+    }
+
+    /**
+     * No matter how the stream is chopped up, we should get all the frames.
+     */
+    @Test
+    public void testChunkSizes() throws Exception {
+        for (final int size : new int[] { 1, 3, 15, 16, 17, 24, 100, 547, 1000, 4096, this.sipp.length }) {
+            final MethodCalculator calculator = new MethodCalculator();
+            final PcapDecoder decoder = PcapDecoder.create(calculator);
+            for (int i = 0; i < this.sipp.length; i += size) {
+                decoder.decode(ByteBuffer.wrap(this.sipp, i, Math.min(size, this.sipp.length - i)));
+            }
+            assertThat(calculator.total, is(30));
+            assertThat(calculator.invite, is(5));
+            assertThat(calculator.bye, is(5));
+            assertThat(decoder.getPendingBytes(), is(0));
+        }
+    }
+
+    /**
+     * A frame must be handed out as soon as the last byte of its record has
+     * been decoded, and it must be the same frame we would get from a
+     * {@link Pcap}.
+     */
+    @Test
+    public void testFrameAsSoonAsComplete() throws Exception {
+        final List<Frame> expected = new ArrayList<Frame>();
+        Pcap.openStream(YajTestBase.class.getResourceAsStream("sipp.pcap")).loop(new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                expected.add(frame);
+            }
+        });
+
+        final List<Frame> frames = new ArrayList<Frame>();
+        final PcapDecoder decoder = PcapDecoder.create(new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                frames.add(frame);
+            }
+        });
+
+        decoder.decode(ByteBuffer.wrap(this.sipp, 0, 23));
+        assertThat(decoder.getPcapHeader(), nullValue());
+        decoder.decode(ByteBuffer.wrap(this.sipp, 23, 1));
+        assertThat(decoder.getPcapHeader().getByteOrder(), is(this.defaultPcapHeader.getByteOrder()));
+
+        // the first record is 16 + 547 bytes, re-use the same chunk
+        final byte[] chunk = new byte[16 + 547];
+        System.arraycopy(this.sipp, 24, chunk, 0, chunk.length - 1);
+        decoder.decode(ByteBuffer.wrap(chunk, 0, chunk.length - 1));
+        assertThat(frames.size(), is(0));
+        assertThat(decoder.getPendingBytes(), is(chunk.length - 1));
+
+        chunk[0] = this.sipp[24 + chunk.length - 1];
+        decoder.decode(ByteBuffer.wrap(chunk, 0, 1));
+        assertThat(frames.size(), is(1));
+        assertThat(decoder.getPendingBytes(), is(0));
+
+        // and the rest in one go through a direct buffer
+        final ByteBuffer direct = ByteBuffer.allocateDirect(this.sipp.length);
+        direct.put(this.sipp, 24 + chunk.length, this.sipp.length - 24 - chunk.length);
+        direct.flip();
+        decoder.decode(direct);
+        assertThat(direct.hasRemaining(), is(false));
+        assertThat(frames.size(), is(30));
+
+        for (int i = 0; i < frames.size(); ++i) {
+            final Frame frame = frames.get(i);
+            assertThat(frame.getArrivalTime(), is(expected.get(i).getArrivalTime()));
+            assertThat(Arrays.equals(toByteArray(frame), toByteArray(expected.get(i))), is(true));
+        }
+    }
+
+    @Test
+    public void testCorruptRecord() throws Exception {
+        final byte[] corrupt = Arrays.copyOf(this.sipp, 24 + 16);
+        corrupt[24 + 11] = 0x7F;
+
+        final PcapDecoder decoder = PcapDecoder.create(new MethodCalculator());
+        try {
+            decoder.decode(corrupt, 0, corrupt.length);
+            fail("Expected an IOException");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testNotAPcap() throws Exception {
+        final PcapDecoder decoder = PcapDecoder.create(new MethodCalculator());
+        try {
+            decoder.decode(new byte[24], 0, 24);
+            fail("Expected an IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static byte[] toByteArray(final Frame frame) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        frame.write(out);
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,265 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aboutsip.yajpcap.filter.Filters;
+import com.aboutsip.yajpcap.frame.Frame;
+import com.aboutsip.yajpcap.frame.PcapFrame;
+import com.aboutsip.yajpcap.frame.SipFrame;
+import com.aboutsip.yajpcap.packet.PacketParseException;
+import com.aboutsip.yajpcap.packet.sip.SipMessage;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class PcapExtractorTest extends YajTestBase {
+
+    private File capture;
+
+    private File extracted;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        this.capture = File.createTempFile("sipp", ".pcap");
+        this.extracted = File.createTempFile("extracted", ".pcap");
+        final InputStream in = YajTestBase.class.getResourceAsStream("sipp.pcap");
+        final OutputStream out = new FileOutputStream(this.capture);
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        out.close();
+        in.close();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+        this.capture.delete();
+        this.extracted.delete();
+    }
+
+    /**
+     * The first record is right after the global header and every record
+     * after that follows the previous one.
+     */
+    @Test
+    public void testOffsets() throws Exception {
+        final List<Frame> frames = loop(false);
+        assertThat(frames.size(), is(30));
+
+        long offset = 24;
+        for (final Frame frame : frames) {
+            final PcapFrame pcapFrame = (PcapFrame) frame;
+            assertThat(pcapFrame.getOffset(), is(offset));
+            offset += pcapFrame.getRecordLength();
+        }
+        assertThat(offset, is(this.capture.length()));
+
+        // nothing to go on when framed straight off of a buffer
+        assertThat(this.defaultPcapFrame.getOffset(), is(-1L));
+
+        // but the record readers keep track of it for streams as well
+        final Pcap pcap = Pcap.openStream(new FileInputStream(this.capture));
+        final List<Frame> streamed = new ArrayList<Frame>();
+        pcap.loop(Filters.ALL, new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                streamed.add(frame);
+            }
+        });
+        pcap.close();
+        assertThat(streamed.size(), is(30));
+        for (int i = 0; i < streamed.size(); ++i) {
+            assertThat(((PcapFrame) streamed.get(i)).getOffset(), is(((PcapFrame) frames.get(i)).getOffset()));
+        }
+    }
+
+    /**
+     * Extracting all the frames should give us the exact same file back.
+     */
+    @Test
+    public void testExtractAll() throws Exception {
+        final Pcap pcap = Pcap.openFile(this.capture);
+        final List<Frame> frames = loop(false);
+        pcap.close();
+
+        // should still work even though the pcap has been closed
+        final PcapExtractor extractor = pcap.createExtractor();
+        final long written = extractor.extract(frames, this.extracted);
+        extractor.close();
+
+        assertThat(written, is(this.capture.length()));
+        assertThat(Arrays.equals(read(this.extracted), read(this.capture)), is(true));
+    }
+
+    /**
+     * Only extract the INVITE and BYE requests, which are spread out over the
+     * file, through the SIP frames.
+     */
+    @Test
+    public void testExtractSipFrames() throws Exception {
+        final List<Frame> frames = loop(true);
+        assertThat(frames.size(), is(10));
+
+        // the order is up to the caller
+        Collections.reverse(frames);
+        final PcapExtractor extractor = PcapExtractor.open(this.capture);
+        extractor.extract(frames, this.extracted);
+        extractor.close();
+
+        final MethodCalculator calculator = new MethodCalculator();
+        final Pcap pcap = Pcap.openFile(this.extracted);
+        pcap.loop(calculator);
+        pcap.close();
+        assertThat(calculator.total, is(10));
+        assertThat(calculator.invite, is(5));
+        assertThat(calculator.bye, is(5));
+    }
+
+    /**
+     * Frames that don't know where they came from are written the regular way.
+     */
+    @Test
+    public void testTransferTo() throws Exception {
+        final List<Frame> frames = loop(false);
+        final PcapExtractor extractor = PcapExtractor.open(this.capture);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(extractor.transferTo(frames.get(0), Channels.newChannel(out)), is(16L + 547));
+        final byte[] expected = Arrays.copyOfRange(read(this.capture), 24, 24 + 16 + 547);
+        assertThat(Arrays.equals(out.toByteArray(), expected), is(true));
+
+        out = new ByteArrayOutputStream();
+        assertThat(extractor.transferTo(this.defaultPcapFrame, Channels.newChannel(out)), is(16L + 547));
+        assertThat(Arrays.equals(out.toByteArray(), expected), is(true));
+        extractor.close();
+    }
+
+    /**
+     * A target that doesn't take any data must not make us spin forever.
+     */
+    @Test(timeout = 5000)
+    public void testTransferToNoProgress() throws Exception {
+        final List<Frame> frames = loop(false);
+        final PcapExtractor extractor = PcapExtractor.open(this.capture);
+        final WritableByteChannel full = new WritableByteChannel() {
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+                // nothing to close
+            }
+
+            @Override
+            public int write(final ByteBuffer src) {
+                return 0;
+            }
+        };
+
+        try {
+            extractor.transferTo(frames.get(0), full);
+            fail("Expected an IOException");
+        } catch (final IOException e) {
+            // expected
+        } finally {
+            extractor.close();
+        }
+    }
+
+    @Test
+    public void testNotAFile() throws Exception {
+        final Pcap pcap = Pcap.openStream(YajTestBase.class.getResourceAsStream("sipp.pcap"));
+        try {
+            pcap.createExtractor();
+            fail("Expected an IllegalStateException");
+        } catch (final IllegalStateException e) {
+            // expected
+        } finally {
+            pcap.close();
+        }
+    }
+
+    /**
+     * Loop over the capture and collect either the pcap frames or the INVITE
+     * and BYE requests.
+     */
+    private List<Frame> loop(final boolean sip) throws Exception {
+        final List<Frame> frames = new ArrayList<Frame>();
+        final Pcap pcap = Pcap.openFile(this.capture);
+        pcap.loop(new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                if (!sip) {
+                    frames.add(frame);
+                    return;
+                }
+
+                try {
+                    final SipFrame sipFrame = (SipFrame) frame.getFrame(Protocol.SIP);
+                    final SipMessage msg = sipFrame.parse();
+                    if (msg.isRequest() && (msg.isInvite() || msg.isBye())) {
+                        frames.add(sipFrame);
+                    }
+                } catch (final IOException e) {
+                    fail("Got an IOException in my test " + e.getMessage());
+                } catch (final PacketParseException e) {
+                    fail("Got a PacketParseException in my test " + e.getMessage());
+                }
+            }
+        });
+        pcap.close();
+        return frames;
+    }
+
+    private static byte[] read(final File file) throws IOException {
+        final InputStream in = new FileInputStream(file);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+}
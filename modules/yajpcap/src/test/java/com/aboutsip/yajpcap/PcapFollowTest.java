@@ -0,0 +1,258 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aboutsip.yajpcap.frame.Frame;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class PcapFollowTest extends YajTestBase {
+
+    private File directory;
+
+    /**
+     * The raw sipp.pcap
+     */
+    private byte[] sipp;
+
+    /**
+     * Where each of the 30 records of sipp.pcap start, and where the file
+     * ends.
+     */
+    private int[] offsets;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        this.directory = File.createTempFile("follow", "");
+        this.directory.delete();
+        this.directory.mkdir();
+
+        final InputStream in = YajTestBase.class.getResourceAsStream("sipp.pcap");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        this.sipp = out.toByteArray();
+
+        // sipp.pcap is little endian
+        this.offsets = new int[31];
+        this.offsets[0] = 24;
+        for (int i = 1; i < this.offsets.length; ++i) {
+            final int start = this.offsets[i - 1];
+            final int length = (this.sipp[start + 8] & 0xFF) | ((this.sipp[start + 9] & 0xFF) << 8)
+                    | ((this.sipp[start + 10] & 0xFF) << 16) | ((this.sipp[start + 11] & 0xFF) << 24);
+            this.offsets[i] = start + 16 + length;
+        }
+        assertThat(this.offsets[30], is(this.sipp.length));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+        for (final File file : this.directory.listFiles()) {
+            file.delete();
+        }
+        this.directory.delete();
+    }
+
+    /**
+     * Write the capture in chunks that end in the middle of records, which
+     * must not be read until they are complete.
+     */
+    @Test(timeout = 10000)
+    public void testFollowGrowingFile() throws Exception {
+        final File file = new File(this.directory, "growing.pcap");
+        final OutputStream out = new FileOutputStream(file);
+        append(out, 0, this.offsets[5] + 10);
+
+        final Pcap pcap = Pcap.follow(file);
+        final Follower follower = new Follower(pcap);
+        follower.awaitFrames(5);
+
+        append(out, this.offsets[5] + 10, this.offsets[17] - 3);
+        follower.awaitFrames(16);
+        Thread.sleep(50);
+        assertThat(follower.calculator.total, is(16));
+
+        append(out, this.offsets[17] - 3, this.sipp.length);
+        follower.awaitFrames(30);
+        out.close();
+
+        follower.close();
+        assertThat(follower.calculator.invite, is(5));
+        assertThat(follower.calculator.bye, is(5));
+    }
+
+    /**
+     * Nothing, not even the pcap global header, has been written when we
+     * start following the file.
+     */
+    @Test(timeout = 10000)
+    public void testFollowEmptyFile() throws Exception {
+        final File file = new File(this.directory, "empty.pcap");
+        final OutputStream out = new FileOutputStream(file);
+        append(out, 0, 10);
+
+        final Pcap[] pcap = new Pcap[1];
+        final Thread opener = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    pcap[0] = Pcap.follow(file);
+                } catch (final IOException e) {
+                    fail("Got an IOException in my test " + e.getMessage());
+                }
+            }
+        };
+        opener.start();
+        Thread.sleep(50);
+        append(out, 10, this.sipp.length);
+        out.close();
+        opener.join();
+
+        final Follower follower = new Follower(pcap[0]);
+        follower.awaitFrames(30);
+        follower.close();
+    }
+
+    /**
+     * The capture is rotated into a new file, the way tcpdump -G does it,
+     * and the last record of the first file isn't completed until after the
+     * second file has been created.
+     */
+    @Test(timeout = 10000)
+    public void testFollowRotation() throws Exception {
+        final File first = new File(this.directory, "sipp-20120623234509.pcap");
+        final OutputStream out1 = new FileOutputStream(first);
+        append(out1, 0, this.offsets[10] - 100);
+
+        final Pcap pcap = Pcap.follow(first, Pattern.compile("sipp-\\d{14}\\.pcap"));
+        final Follower follower = new Follower(pcap);
+        follower.awaitFrames(9);
+
+        // doesn't match the pattern so should be left alone
+        new FileOutputStream(new File(this.directory, "sipp-20120623234515.pcap.tmp")).close();
+
+        final File second = new File(this.directory, "sipp-20120623234512.pcap");
+        final OutputStream out2 = new FileOutputStream(second);
+        append(out2, 0, 24);
+        append(out1, this.offsets[10] - 100, this.offsets[10]);
+        out1.close();
+        append(out2, this.offsets[10], this.sipp.length);
+        out2.close();
+
+        follower.awaitFrames(30);
+        follower.close();
+        assertThat(follower.calculator.invite, is(5));
+        assertThat(follower.calculator.bye, is(5));
+    }
+
+    @Test
+    public void testNoSeek() throws Exception {
+        final File file = new File(this.directory, "seek.pcap");
+        final OutputStream out = new FileOutputStream(file);
+        append(out, 0, this.sipp.length);
+        out.close();
+
+        final Pcap pcap = Pcap.follow(file);
+        try {
+            pcap.seek(0);
+            fail("Expected an IllegalStateException");
+        } catch (final IllegalStateException e) {
+            // expected
+        } finally {
+            pcap.close();
+        }
+    }
+
+    private void append(final OutputStream out, final int from, final int to) throws IOException {
+        out.write(this.sipp, from, to - from);
+        out.flush();
+    }
+
+    /**
+     * Loops over the followed pcap in a thread of its own, just like you
+     * would with a live capture.
+     */
+    private static class Follower extends Thread {
+
+        private final Pcap pcap;
+
+        private final MethodCalculator calculator = new MethodCalculator() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                synchronized (this) {
+                    super.nextFrame(frame);
+                    this.notifyAll();
+                }
+            }
+        };
+
+        private Exception exception;
+
+        private Follower(final Pcap pcap) {
+            this.pcap = pcap;
+            setDaemon(true);
+            start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                this.pcap.loop(this.calculator);
+            } catch (final Exception e) {
+                this.exception = e;
+            }
+        }
+
+        private void awaitFrames(final int count) throws InterruptedException {
+            synchronized (this.calculator) {
+                while (this.calculator.total < count) {
+                    this.calculator.wait();
+                }
+            }
+        }
+
+        /**
+         * Closing the pcap must have the loop return.
+         */
+        private void close() throws Exception {
+            this.pcap.close();
+            join();
+            if (this.exception != null) {
+                throw this.exception;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+/**
+ * 
+ */
+package com.aboutsip.yajpcap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aboutsip.yajpcap.frame.Frame;
+import com.aboutsip.yajpcap.frame.PcapGlobalHeader;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class PcapMergerTest extends YajTestBase {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    @Test
+    public void testInterleaved() throws Exception {
+        final Pcap a = Pcap.openStream(createPcap(PcapGlobalHeader.DLT_EN10MB, RawData.rawEthernetFrame, 1, 3, 5));
+        final Pcap b = Pcap.openStream(createPcap(PcapGlobalHeader.DLT_EN10MB, RawData.tcpSyn, 2, 3, 4));
+        final List<Frame> frames = loop(new PcapMerger(Arrays.asList(a, b)));
+
+        assertThat(frames.size(), is(6));
+        final int lengthA = RawData.rawEthernetFrame.length;
+        final int lengthB = RawData.tcpSyn.length;
+        final long[] times = { 1, 2, 3, 3, 4, 5 };
+        final int[] lengths = { lengthA, lengthB, lengthA, lengthB, lengthB, lengthA };
+        for (int i = 0; i < frames.size(); ++i) {
+            assertThat(frames.get(i).getArrivalTime(), is(times[i] * 1000000L));
+            assertThat(frames.get(i).getPayload().capacity(), is(lengths[i]));
+        }
+    }
+
+    @Test
+    public void testMergeCaptures() throws Exception {
+        final List<Frame> frames = loop(new PcapMerger(Arrays.asList(open("fragmented_tcp_sip.pcap"),
+                open("sipp.pcap"))));
+        assertThat(frames.size(), is(49));
+        assertOrdered(frames);
+
+        // sipp.pcap was captured before the other one
+        assertThat(frames.get(0).getArrivalTime(), is(1340495109792454L));
+    }
+
+    /**
+     * Write the merged captures to a new pcap and make sure we get the same
+     * thing back.
+     */
+    @Test
+    public void testWrite() throws Exception {
+        final PcapMerger merger = new PcapMerger(Arrays.asList(open("sipp.pcap"), open("fragmented_tcp_sip.pcap")));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        merger.write(merger.createOutputStream(out));
+        merger.close();
+
+        final List<Frame> frames = new ArrayList<Frame>();
+        final Pcap pcap = Pcap.openStream(new ByteArrayInputStream(out.toByteArray()));
+        pcap.loop(new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                frames.add(frame);
+            }
+        });
+        assertThat(frames.size(), is(49));
+        assertOrdered(frames);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWriteDifferentLinkTypes() throws Exception {
+        final Pcap a = Pcap.openStream(createPcap(PcapGlobalHeader.DLT_EN10MB, RawData.rawEthernetFrame, 1));
+        final Pcap b = Pcap.openStream(createPcap(PcapGlobalHeader.DLT_LINUX_SLL, RawData.rawSLLFrame, 2));
+        final PcapMerger merger = new PcapMerger(Arrays.asList(a, b));
+        merger.write(merger.createOutputStream(new ByteArrayOutputStream()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNothingToMerge() throws Exception {
+        new PcapMerger(Collections.<Pcap> emptyList());
+    }
+
+    private static Pcap open(final String resource) throws IOException {
+        return Pcap.openStream(YajTestBase.class.getResourceAsStream(resource));
+    }
+
+    private static List<Frame> loop(final PcapMerger merger) throws IOException {
+        final List<Frame> frames = new ArrayList<Frame>();
+        merger.loop(new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                frames.add(frame);
+            }
+        });
+        merger.close();
+        return frames;
+    }
+
+    private static void assertOrdered(final List<Frame> frames) {
+        for (int i = 1; i < frames.size(); ++i) {
+            assertThat(frames.get(i - 1).getArrivalTime() <= frames.get(i).getArrivalTime(), is(true));
+        }
+    }
+
+    /**
+     * Create a little endian pcap with the same packet captured at the given
+     * times, in seconds.
+     */
+    private static InputStream createPcap(final int dataLinkType, final byte[] packet, final int... seconds)
+            throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PcapGlobalHeader.createDefaultHeader(dataLinkType).write(out);
+        for (final int second : seconds) {
+            final byte[] header = new byte[16];
+            header[0] = (byte) second;
+            header[8] = (byte) packet.length;
+            header[9] = (byte) (packet.length >> 8);
+            header[12] = (byte) packet.length;
+            header[13] = (byte) (packet.length >> 8);
+            out.write(header);
+            out.write(packet);
+        }
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+}
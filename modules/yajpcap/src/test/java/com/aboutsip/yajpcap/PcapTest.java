@@ -2,14 +2,26 @@ package com.aboutsip.yajpcap;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.aboutsip.yajpcap.filter.Filters;
+import com.aboutsip.yajpcap.frame.EthernetFrame;
 import com.aboutsip.yajpcap.frame.Frame;
+import com.aboutsip.yajpcap.frame.PcapGlobalHeader;
+import com.aboutsip.yajpcap.framer.FramingDepth;
+import com.aboutsip.yajpcap.framer.FramingError;
+import com.aboutsip.yajpcap.protocol.Protocol;
 
 public class PcapTest extends YajTestBase {
 
@@ -36,6 +48,197 @@ public class PcapTest extends YajTestBase {
         assertThat(handler.count, is(30));
     }
 
+    /**
+     * When we only frame up to the transport layer, no SIP frames should show
+     * up.
+     */
+    @Test
+    public void testFramingDepth() throws Exception {
+        final InputStream stream = YajTestBase.class.getResourceAsStream("sipp.pcap");
+        final Pcap pcap = Pcap.openStream(stream);
+        pcap.setFramingDepth(FramingDepth.TRANSPORT);
+        final ProtocolCounter handler = new ProtocolCounter();
+        pcap.loop(handler);
+        pcap.close();
+        assertThat(handler.udp, is(30));
+        assertThat(handler.sip, is(0));
+    }
+
+    /**
+     * With eager framing, everything should already have been framed when
+     * the frame is handed to us.
+     */
+    @Test
+    public void testEagerFraming() throws Exception {
+        final InputStream stream = YajTestBase.class.getResourceAsStream("sipp.pcap");
+        final Pcap pcap = Pcap.openStream(stream);
+        pcap.setEagerFraming(true);
+        final List<Frame> frames = new ArrayList<Frame>();
+        pcap.loop(new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                frames.add(frame);
+            }
+        });
+        pcap.close();
+
+        assertThat(frames.size(), is(30));
+        for (final Frame frame : frames) {
+            // all the way down to SIP and the SIP messages with a
+            // body should have their SDP framed as well
+            Frame f = frame;
+            int count = 1;
+            while ((f = f.getNextFrame()) != null) {
+                ++count;
+            }
+            assertThat(count >= 5, is(true));
+        }
+        assertThat(frames.get(0).getFrame(Protocol.SDP) != null, is(true));
+    }
+
+    /**
+     * The link layer is given by the data link type of the capture and not
+     * by guessing.
+     */
+    @Test
+    public void testSll2() throws Exception {
+        final byte[] sll2 = RawData.toSll2(RawData.rawSLLFrame);
+        final Pcap pcap = Pcap.openStream(createPcap(PcapGlobalHeader.DLT_LINUX_SLL2, sll2, sll2));
+        final List<Frame> frames = new ArrayList<Frame>();
+        pcap.loop(new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                frames.add(frame);
+            }
+        });
+        pcap.close();
+
+        assertThat(frames.size(), is(2));
+        for (final Frame frame : frames) {
+            assertThat(frame.getNextFrame().getProtocol(), is(Protocol.SLL2));
+            assertThat(frame.hasProtocol(Protocol.SIP), is(true));
+        }
+    }
+
+    @Test
+    public void testVlanTagged() throws Exception {
+        final byte[] dot1q = RawData.vlanTagged(RawData.rawEthernetFrame, 0x8100, 100);
+        final byte[] qinq = RawData.vlanTagged(RawData.rawEthernetFrame, 0x88A8, 10, 0x8100, 20);
+        Pcap pcap = Pcap.openStream(createPcap(PcapGlobalHeader.DLT_EN10MB, dot1q, qinq));
+        final List<Frame> frames = new ArrayList<Frame>();
+        pcap.loop(new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                frames.add(frame);
+            }
+        });
+        pcap.close();
+
+        assertThat(frames.size(), is(2));
+        final EthernetFrame first = (EthernetFrame) frames.get(0).getFrame(Protocol.ETHERNET_II);
+        assertThat(first.getVlanTagCount(), is(1));
+        assertThat(first.getVlanId(0), is(100));
+        final EthernetFrame second = (EthernetFrame) frames.get(1).getFrame(Protocol.ETHERNET_II);
+        assertThat(second.getVlanTagCount(), is(2));
+        assertThat(second.getVlanId(1), is(20));
+        assertThat(frames.get(1).hasProtocol(Protocol.SIP), is(true));
+
+        // and the filters must be able to see through the tags too
+        pcap = Pcap.openStream(createPcap(PcapGlobalHeader.DLT_EN10MB, dot1q, qinq));
+        final ProtocolCounter handler = new ProtocolCounter();
+        pcap.loop(Filters.compile("udp and dst port 5090"), handler);
+        pcap.close();
+        assertThat(handler.sip, is(2));
+    }
+
+    /**
+     * Broken packets are counted and marked but must not stop the loop.
+     */
+    @Test
+    public void testFramingErrors() throws Exception {
+        // the UDP header is cut short
+        final byte[] truncated = new byte[40];
+        System.arraycopy(RawData.rawEthernetFrame, 0, truncated, 0, truncated.length);
+
+        // an ARP packet
+        final byte[] arp = RawData.rawEthernetFrame.clone();
+        arp[12] = 0x08;
+        arp[13] = 0x06;
+
+        // IPv4 header length of 4 words
+        final byte[] malformed = RawData.rawEthernetFrame.clone();
+        malformed[14] = 0x44;
+
+        final Pcap pcap = Pcap.openStream(createPcap(PcapGlobalHeader.DLT_EN10MB, truncated, arp, malformed,
+                RawData.rawEthernetFrame));
+        pcap.setEagerFraming(true);
+        final List<Frame> frames = new ArrayList<Frame>();
+        pcap.loop(new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                frames.add(frame);
+            }
+        });
+        pcap.close();
+
+        assertThat(frames.size(), is(4));
+        assertThat(pcap.getFramingErrorCount(FramingError.TRUNCATED), is(1L));
+        assertThat(pcap.getFramingErrorCount(FramingError.UNSUPPORTED), is(1L));
+        assertThat(pcap.getFramingErrorCount(FramingError.MALFORMED), is(1L));
+
+        assertThat(frames.get(0).getFrame(Protocol.IPv4).getFramingError(), is(FramingError.TRUNCATED));
+        assertThat(frames.get(1).getFrame(Protocol.ETHERNET_II).getFramingError(), is(FramingError.UNSUPPORTED));
+        assertThat(frames.get(2).getFrame(Protocol.ETHERNET_II).getFramingError(), is(FramingError.MALFORMED));
+        assertThat(frames.get(3).hasProtocol(Protocol.SIP), is(true));
+        assertThat(frames.get(3).getFrame(Protocol.SIP).getFramingError() == null, is(true));
+    }
+
+    /**
+     * Create a little endian pcap with the given data link type and packets.
+     */
+    private static InputStream createPcap(final int dataLinkType, final byte[]... packets) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] header = new byte[24];
+        System.arraycopy(PcapGlobalHeader.MAGIC_LITTLE_ENDIAN, 0, header, 0, 4);
+        header[4] = 0x02;
+        header[6] = 0x04;
+        header[16] = (byte) 0xFF;
+        header[17] = (byte) 0xFF;
+        header[20] = (byte) dataLinkType;
+        header[21] = (byte) (dataLinkType >> 8);
+        out.write(header);
+
+        for (final byte[] packet : packets) {
+            final byte[] recordHeader = new byte[16];
+            recordHeader[8] = (byte) packet.length;
+            recordHeader[9] = (byte) (packet.length >> 8);
+            recordHeader[12] = (byte) packet.length;
+            recordHeader[13] = (byte) (packet.length >> 8);
+            out.write(recordHeader);
+            out.write(packet);
+        }
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    private static class ProtocolCounter implements FrameHandler {
+        public int udp;
+        public int sip;
+
+        @Override
+        public void nextFrame(final Frame frame) {
+            try {
+                if (frame.hasProtocol(Protocol.UDP)) {
+                    ++this.udp;
+                }
+                if (frame.hasProtocol(Protocol.SIP)) {
+                    ++this.sip;
+                }
+            } catch (final IOException e) {
+                fail("Got an IOException in my test " + e.getMessage());
+            }
+        }
+    }
+
     private static class FrameHandlerImpl implements FrameHandler {
         public int count;
 
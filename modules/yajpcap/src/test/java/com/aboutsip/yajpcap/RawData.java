@@ -520,4 +520,48 @@ public final class RawData {
         sipBuffer = b.slice(42, b.capacity());
     }
 
+    /**
+     * Insert VLAN tags into a raw ethernet frame.
+     * 
+     * @param frame the untagged ethernet frame
+     * @param tags pairs of tag protocol identifier (e.g. 0x8100) and VLAN id,
+     *            outermost tag first
+     * @return a new tagged frame
+     */
+    public static byte[] vlanTagged(final byte[] frame, final int... tags) {
+        final byte[] tagged = new byte[frame.length + (tags.length * 2)];
+        System.arraycopy(frame, 0, tagged, 0, 12);
+        int index = 12;
+        for (final int tag : tags) {
+            tagged[index++] = (byte) (tag >> 8);
+            tagged[index++] = (byte) tag;
+        }
+        System.arraycopy(frame, 12, tagged, index, frame.length - 12);
+        return tagged;
+    }
+
+    /**
+     * Convert a linux cooked (SLL) frame into a linux cooked version 2 frame.
+     * 
+     * @param frame
+     * @return
+     */
+    public static byte[] toSll2(final byte[] frame) {
+        final byte[] sll2 = new byte[frame.length + 4];
+        // protocol type
+        sll2[0] = frame[14];
+        sll2[1] = frame[15];
+        // interface index
+        sll2[7] = 2;
+        // ARPHRD_ type
+        sll2[8] = frame[2];
+        sll2[9] = frame[3];
+        // packet type and address length
+        sll2[10] = frame[1];
+        sll2[11] = frame[5];
+        System.arraycopy(frame, 6, sll2, 12, 8);
+        System.arraycopy(frame, 16, sll2, 20, frame.length - 16);
+        return sll2;
+    }
+
 }
@@ -0,0 +1,254 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aboutsip.yajpcap.RotatingPcapWriter.Rotation;
+import com.aboutsip.yajpcap.cursor.CursorHandler;
+import com.aboutsip.yajpcap.cursor.PacketCursor;
+import com.aboutsip.yajpcap.frame.Frame;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class RotatingPcapWriterTest extends YajTestBase {
+
+    private static final int FRAMES = 10000;
+
+    private File directory;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        this.directory = File.createTempFile("rotating", "");
+        this.directory.delete();
+        this.directory.mkdir();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+        for (final File file : this.directory.listFiles()) {
+            file.delete();
+        }
+        this.directory.delete();
+    }
+
+    /**
+     * sipp.pcap contains 30 records so 10 in each file gives us three files.
+     */
+    @Test
+    public void testRotateByCount() throws Exception {
+        final List<File> files = writeFrames(Rotation.byCount(10), "count-{index}.pcap");
+        assertThat(files.size(), is(3));
+        assertThat(files.get(2).getName(), is("count-2.pcap"));
+        for (final File file : files) {
+            assertThat(count(file), is(10));
+        }
+    }
+
+    @Test
+    public void testRotateBySize() throws Exception {
+        final List<File> files = writeFrames(Rotation.bySize(4096), "size-{index}.pcap");
+        assertThat(files.size() > 1, is(true));
+
+        int total = 0;
+        for (final File file : files) {
+            assertThat(file.length() <= 4096, is(true));
+            total += count(file);
+        }
+        assertThat(total, is(30));
+    }
+
+    /**
+     * The 30 records of sipp.pcap are spread out over 6 seconds, starting at
+     * 2012-06-23 23:45:09 UTC.
+     */
+    @Test
+    public void testRotateByInterval() throws Exception {
+        final List<File> files = writeFrames(Rotation.byInterval(1, TimeUnit.SECONDS), "sipp-{time}.pcap");
+        assertThat(files.size(), is(6));
+        assertThat(files.get(0).getName(), is("sipp-20120623-234509.pcap"));
+        assertThat(files.get(5).getName(), is("sipp-20120623-234514.pcap"));
+
+        int total = 0;
+        for (final File file : files) {
+            total += count(file);
+        }
+        assertThat(total, is(30));
+    }
+
+    @Test
+    public void testRotateByCountOrInterval() throws Exception {
+        final Rotation rotation = Rotation.byInterval(1, TimeUnit.HOURS).orByCount(20);
+        final List<File> files = writeFrames(rotation, "both-{index}-{time}.pcap");
+        assertThat(files.size(), is(2));
+        assertThat(files.get(0).getName(), is("both-0-20120623-230000.pcap"));
+        assertThat(count(files.get(0)), is(20));
+        assertThat(count(files.get(1)), is(10));
+    }
+
+    /**
+     * Records are re-used by the reader so make sure that they are copied
+     * before they are handed over to the background thread.
+     */
+    @Test
+    public void testWriteRecords() throws Exception {
+        final Pcap pcap = Pcap.openStream(YajTestBase.class.getResourceAsStream("sipp.pcap"));
+        final RotatingPcapWriter writer = pcap.createRotatingWriter(path("records-{index}.pcap"),
+                Rotation.byCount(15));
+        pcap.loopCursor(new CursorHandler() {
+            @Override
+            public void nextPacket(final PacketCursor packet) {
+                try {
+                    writer.write(packet.getRecord());
+                } catch (final IOException e) {
+                    fail("Got an IOException in my test " + e.getMessage());
+                }
+            }
+        });
+        pcap.close();
+        writer.close();
+
+        final List<File> files = writer.getFiles();
+        assertThat(files.size(), is(2));
+        assertThat(count(files.get(0)), is(15));
+        assertThat(count(files.get(1)), is(15));
+
+        final MethodCalculator calculator = new MethodCalculator();
+        Pcap.openFile(files.get(0)).loop(calculator);
+        Pcap.openFile(files.get(1)).loop(calculator);
+        assertThat(calculator.total, is(30));
+    }
+
+    /**
+     * The files would overwrite each other if there is nothing unique in the
+     * name.
+     */
+    @Test
+    public void testBadTemplate() throws Exception {
+        assertBadTemplate(Rotation.byCount(10), "capture.pcap");
+        assertBadTemplate(Rotation.byCount(10), "capture-{time}.pcap");
+        assertBadTemplate(Rotation.byInterval(1, TimeUnit.MINUTES), "capture.pcap");
+    }
+
+    @Test
+    public void testWriteAfterClose() throws Exception {
+        final RotatingPcapWriter writer = RotatingPcapWriter.create(this.defaultPcapHeader,
+                path("closed-{index}.pcap"), Rotation.byCount(10));
+        writer.write(this.defaultPcapFrame);
+        writer.close();
+        writer.close();
+        assertThat(writer.getFiles().size(), is(1));
+        assertThat(count(writer.getFiles().get(0)), is(1));
+
+        try {
+            writer.write(this.defaultPcapFrame);
+            fail("Expected an IOException");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * With room for a single frame in the queue the writer is bound to fall
+     * behind, which by default blocks us rather than losing anything.
+     */
+    @Test
+    public void testBlockWhenFull() throws Exception {
+        final RotatingPcapWriter writer = RotatingPcapWriter.create(this.defaultPcapHeader,
+                path("block-{index}.pcap"), Rotation.byCount(FRAMES), 1);
+        for (int i = 0; i < FRAMES; ++i) {
+            writer.write(this.defaultPcapFrame);
+        }
+        writer.close();
+        assertThat(writer.getDroppedCount(), is(0L));
+        assertThat(writer.getFiles().size(), is(1));
+        assertThat(count(writer.getFiles().get(0)), is(FRAMES));
+    }
+
+    @Test
+    public void testDropWhenFull() throws Exception {
+        final RotatingPcapWriter writer = RotatingPcapWriter.create(this.defaultPcapHeader,
+                path("drop-{index}.pcap"), Rotation.byCount(FRAMES), 1, RotatingPcapWriter.Overflow.DROP);
+        for (int i = 0; i < FRAMES; ++i) {
+            writer.write(this.defaultPcapFrame);
+        }
+        writer.close();
+        assertThat(writer.getDroppedCount() > 0, is(true));
+        assertThat(writer.getFiles().size(), is(1));
+        assertThat(count(writer.getFiles().get(0)) + writer.getDroppedCount(), is((long) FRAMES));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullOverflow() throws Exception {
+        RotatingPcapWriter.create(this.defaultPcapHeader, path("null-{index}.pcap"), Rotation.byCount(10), 1, null);
+    }
+
+    private void assertBadTemplate(final Rotation rotation, final String template) {
+        try {
+            RotatingPcapWriter.create(this.defaultPcapHeader, path(template), rotation);
+            fail("Expected an IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private List<File> writeFrames(final Rotation rotation, final String template) throws Exception {
+        final Pcap pcap = Pcap.openStream(YajTestBase.class.getResourceAsStream("sipp.pcap"));
+        final RotatingPcapWriter writer = pcap.createRotatingWriter(path(template), rotation);
+        pcap.loop(new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                try {
+                    writer.write(frame);
+                } catch (final IOException e) {
+                    fail("Got an IOException in my test " + e.getMessage());
+                }
+            }
+        });
+        pcap.close();
+        writer.close();
+        assertThat(writer.getDroppedCount(), is(0L));
+        return writer.getFiles();
+    }
+
+    private String path(final String name) {
+        return new File(this.directory, name).getPath();
+    }
+
+    private static int count(final File file) throws Exception {
+        final int[] count = new int[1];
+        final Pcap pcap = Pcap.openFile(file);
+        pcap.loop(new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                ++count[0];
+            }
+        });
+        pcap.close();
+        return count[0];
+    }
+
+}
@@ -0,0 +1,263 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.cursor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aboutsip.yajpcap.FrameHandler;
+import com.aboutsip.yajpcap.Pcap;
+import com.aboutsip.yajpcap.YajTestBase;
+import com.aboutsip.yajpcap.filter.Filters;
+import com.aboutsip.yajpcap.frame.Frame;
+import com.aboutsip.yajpcap.frame.PcapGlobalHeader;
+import com.aboutsip.yajpcap.frame.TCPFrame;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * @author jonas@jonasborjesson.com
+ *
+ */
+public class PacketCursorTest extends YajTestBase {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    /**
+     * Count the bytes per destination port, which is the typical use case for
+     * the flyweight mode.
+     */
+    @Test
+    public void testUdp() throws Exception {
+        final Pcap pcap = Pcap.openStream(YajTestBase.class.getResourceAsStream("sipp.pcap"));
+        final long[] bytes = new long[65536];
+        final int[] count = new int[1];
+        pcap.loopCursor(new CursorHandler() {
+            @Override
+            public void nextPacket(final PacketCursor packet) {
+                assertThat(packet.hasIPv4(), is(true));
+                assertThat(packet.hasTCP(), is(false));
+                assertThat(packet.hasRtp(), is(false));
+                assertThat(packet.getIPv4().getRawSourceIp(), is(0x7F000001));
+                assertThat(packet.getIPv4().getProtocol(), is(17));
+                assertThat(packet.getIPv4().getHeaderLength(), is(20));
+
+                final UDPCursor udp = packet.getUDP();
+                assertThat(udp.getLength(), is(packet.getPayloadLength() + 8));
+                bytes[udp.getDestinationPort()] += udp.getLength();
+                ++count[0];
+            }
+        });
+        pcap.close();
+
+        assertThat(count[0], is(30));
+        assertThat(bytes[5060] > 0, is(true));
+        assertThat(bytes[5090] > 0, is(true));
+    }
+
+    /**
+     * Make sure that the cursors agree with the regular frames.
+     */
+    @Test
+    public void testTcp() throws Exception {
+        final List<String> expected = new ArrayList<String>();
+        Pcap pcap = Pcap.openStream(YajTestBase.class.getResourceAsStream("fragmented_tcp_sip.pcap"));
+        pcap.loop(new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                try {
+                    final TCPFrame tcp = (TCPFrame) frame.getFrame(Protocol.TCP);
+                    expected.add(tcp.getSourcePort() + " " + tcp.getDestinationPort() + " " + tcp.isSYN() + " "
+                            + tcp.isACK() + " " + tcp.isFIN() + " " + tcp.isPSH());
+                } catch (final IOException e) {
+                    fail(e.getMessage());
+                }
+            }
+        });
+        pcap.close();
+
+        final List<String> actual = new ArrayList<String>();
+        pcap = Pcap.openStream(YajTestBase.class.getResourceAsStream("fragmented_tcp_sip.pcap"));
+        pcap.loopCursor(new CursorHandler() {
+            @Override
+            public void nextPacket(final PacketCursor packet) {
+                final TCPCursor tcp = packet.getTCP();
+                assertThat(packet.getUDP() == null, is(true));
+                actual.add(tcp.getSourcePort() + " " + tcp.getDestinationPort() + " " + tcp.isSYN() + " "
+                        + tcp.isACK() + " " + tcp.isFIN() + " " + tcp.isPSH());
+            }
+        });
+        pcap.close();
+
+        assertThat(actual.size(), is(19));
+        assertThat(actual, is(expected));
+    }
+
+    @Test
+    public void testFilteredLoop() throws Exception {
+        final Pcap pcap = Pcap.openStream(YajTestBase.class.getResourceAsStream("fragmented_tcp_sip.pcap"));
+        final int[] count = new int[1];
+        pcap.loopCursor(Filters.compile("tcp and dst port 5060"), new CursorHandler() {
+            @Override
+            public void nextPacket(final PacketCursor packet) {
+                assertThat(packet.getTCP().getDestinationPort(), is(5060));
+                ++count[0];
+            }
+        });
+        pcap.close();
+        assertThat(count[0], is(11));
+    }
+
+    @Test
+    public void testRtp() throws Exception {
+        final byte[] rtp = new byte[] {
+                (byte) 0x80, (byte) 0x88, 0x12, 0x34, // v=2, marker, pt=8, seq=0x1234
+                (byte) 0xFF, 0x00, 0x00, 0x01, // timestamp
+                (byte) 0xDE, (byte) 0xAD, (byte) 0xBE, (byte) 0xEF, // ssrc
+                0x01, 0x02, 0x03, 0x04 }; // payload
+        final Pcap pcap = Pcap.openStream(createPcap(createUdpPacket(6000, 6001, rtp)));
+        final int[] count = new int[1];
+        pcap.loopCursor(new CursorHandler() {
+            @Override
+            public void nextPacket(final PacketCursor packet) {
+                final RtpCursor cursor = packet.getRtp();
+                assertThat(cursor.getVersion(), is(2));
+                assertThat(cursor.hasMarker(), is(true));
+                assertThat(cursor.hasPadding(), is(false));
+                assertThat(cursor.hasExtensions(), is(false));
+                assertThat(cursor.getContributingSourceCount(), is(0));
+                assertThat(cursor.getPayloadType(), is(8));
+                assertThat(cursor.getSeqNumber(), is(0x1234));
+                assertThat(cursor.getTimestamp(), is(0xFF000001L));
+                assertThat(cursor.getSyncronizationSource(), is(0xDEADBEEFL));
+                assertThat(packet.getUDP().getSourcePort(), is(6000));
+                assertThat(packet.getUDP().getDestinationPort(), is(6001));
+                ++count[0];
+            }
+        });
+        assertThat(count[0], is(1));
+    }
+
+    /**
+     * A small packet padded by the ethernet layer to its minimum size of 60
+     * bytes. The padding is not part of the payload.
+     */
+    @Test
+    public void testEthernetPadding() throws Exception {
+        final byte[] packet = new byte[60];
+        final byte[] udp = createUdpPacket(6000, 6001, new byte[] { 1, 2, 3, 4 });
+        System.arraycopy(udp, 0, packet, 0, udp.length);
+        final Pcap pcap = Pcap.openStream(createPcap(packet));
+        final int[] count = new int[1];
+        pcap.loopCursor(new CursorHandler() {
+            @Override
+            public void nextPacket(final PacketCursor packet) {
+                assertThat(packet.getPayloadLength(), is(4));
+                assertThat(packet.getUDP().getLength(), is(12));
+                ++count[0];
+            }
+        });
+        assertThat(count[0], is(1));
+    }
+
+    /**
+     * A captured length way beyond the snap length is a corrupt record.
+     */
+    @Test
+    public void testCorruptCapturedLength() throws Exception {
+        final byte[] data = toByteArray(createPcap(createUdpPacket(6000, 6001, new byte[] { 1, 2, 3, 4 })));
+        data[24 + 14] = 0x10;
+        final Pcap pcap = Pcap.openStream(new ByteArrayInputStream(data));
+        try {
+            pcap.loopCursor(new CursorHandler() {
+                @Override
+                public void nextPacket(final PacketCursor packet) {
+                    fail("Expected the record to be rejected");
+                }
+            });
+            fail("Expected an IOException");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Create an Ethernet/IPv4/UDP packet with the given payload.
+     */
+    private static byte[] createUdpPacket(final int srcPort, final int dstPort, final byte[] payload) {
+        final byte[] packet = new byte[14 + 20 + 8 + payload.length];
+        packet[12] = 0x08;
+        packet[13] = 0x00;
+
+        packet[14] = 0x45;
+        final int ipLength = 20 + 8 + payload.length;
+        packet[16] = (byte) (ipLength >> 8);
+        packet[17] = (byte) ipLength;
+        packet[22] = 64;
+        packet[23] = 17;
+        packet[26] = 10;
+        packet[29] = 1;
+        packet[30] = 10;
+        packet[33] = 2;
+
+        packet[34] = (byte) (srcPort >> 8);
+        packet[35] = (byte) srcPort;
+        packet[36] = (byte) (dstPort >> 8);
+        packet[37] = (byte) dstPort;
+        packet[38] = (byte) ((8 + payload.length) >> 8);
+        packet[39] = (byte) (8 + payload.length);
+        System.arraycopy(payload, 0, packet, 42, payload.length);
+        return packet;
+    }
+
+    private static byte[] toByteArray(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            out.write(b);
+        }
+        return out.toByteArray();
+    }
+
+    private static InputStream createPcap(final byte[] packet) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PcapGlobalHeader.createDefaultHeader().write(out);
+        final byte[] header = new byte[16];
+        header[8] = (byte) packet.length;
+        header[9] = (byte) (packet.length >> 8);
+        header[12] = (byte) packet.length;
+        header[13] = (byte) (packet.length >> 8);
+        out.write(header);
+        out.write(packet);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+}
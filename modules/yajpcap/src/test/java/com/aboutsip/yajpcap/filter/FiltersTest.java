@@ -0,0 +1,174 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.filter;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aboutsip.yajpcap.FrameHandler;
+import com.aboutsip.yajpcap.Pcap;
+import com.aboutsip.yajpcap.YajTestBase;
+import com.aboutsip.yajpcap.frame.Frame;
+
+/**
+ * @author jonas@jonasborjesson.com
+ *
+ */
+public class FiltersTest extends YajTestBase {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    /**
+     * The sipp.pcap contains 30 SIP messages over UDP between port 5060 and
+     * 5090. 5 of them are INVITEs, 5 are BYEs and 15 are responses.
+     */
+    @Test
+    public void testFilterSipp() throws Exception {
+        assertThat(count("sipp.pcap", ""), is(30));
+        assertThat(count("sipp.pcap", "udp and port 5060"), is(30));
+        assertThat(count("sipp.pcap", "udp && port 5061"), is(0));
+        assertThat(count("sipp.pcap", "tcp"), is(0));
+        assertThat(count("sipp.pcap", "ip"), is(30));
+        assertThat(count("sipp.pcap", "src port 5090"), is(15));
+        assertThat(count("sipp.pcap", "dst port 5090"), is(15));
+        assertThat(count("sipp.pcap", "portrange 5061-5089"), is(0));
+        assertThat(count("sipp.pcap", "portrange 5050-5060"), is(30));
+        assertThat(count("sipp.pcap", "payload INVITE"), is(5));
+        assertThat(count("sipp.pcap", "payload \"SIP/2.0 \""), is(15));
+        assertThat(count("sipp.pcap", "host 127.0.0.1 and not payload BYE"), is(25));
+        assertThat(count("sipp.pcap", "payload INVITE or payload BYE"), is(10));
+        assertThat(count("sipp.pcap", "!(payload INVITE || payload BYE)"), is(20));
+        assertThat(count("sipp.pcap", "src host 127.0.0.2"), is(0));
+    }
+
+    /**
+     * Make sure that the frames we get out of a filtered loop are just as
+     * good as the ones from the regular loop.
+     */
+    @Test
+    public void testFilteredFramesCanBeParsed() throws Exception {
+        final InputStream stream = YajTestBase.class.getResourceAsStream("sipp.pcap");
+        final Pcap pcap = Pcap.openStream(stream);
+        final MethodCalculator calculator = new MethodCalculator();
+        pcap.loop(Filters.compile("payload INVITE or payload BYE"), calculator);
+        pcap.close();
+        assertThat(calculator.total, is(10));
+        assertThat(calculator.invite, is(5));
+        assertThat(calculator.bye, is(5));
+    }
+
+    @Test
+    public void testFilterTcp() throws Exception {
+        assertThat(count("fragmented_tcp_sip.pcap", "tcp"), is(19));
+        assertThat(count("fragmented_tcp_sip.pcap", "tcp and dst port 5060"), is(11));
+        assertThat(count("fragmented_tcp_sip.pcap", "dst host 10.108.158.224"), is(11));
+        assertThat(count("fragmented_tcp_sip.pcap", "port 41190 and payload SIP"), is(3));
+    }
+
+    /**
+     * Only the first fragment of a fragmented UDP packet carries the UDP
+     * header so none of the port filters should match the others, no matter
+     * how wide the range is.
+     */
+    @Test
+    public void testPortRangeWithoutTransport() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final InputStream in = YajTestBase.class.getResourceAsStream("sipp.pcap");
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+
+        // the global header, the record header and the ethernet header
+        // followed by the ip header, make the first record a fragment at
+        // offset 8
+        final byte[] pcap = out.toByteArray();
+        pcap[24 + 16 + 14 + 7] = 1;
+
+        assertThat(count(pcap, "udp"), is(30));
+        assertThat(count(pcap, "portrange 0-65535"), is(29));
+        assertThat(count(pcap, "src portrange 0-65535"), is(29));
+        assertThat(count(pcap, "dst portrange 0-65535"), is(29));
+        assertThat(count(pcap, "not src portrange 0-65535"), is(1));
+        assertThat(count(pcap, "not dst port 5090"), is(16));
+    }
+
+    @Test
+    public void testBadExpressions() throws Exception {
+        assertBadExpression("port");
+        assertBadExpression("port abc");
+        assertBadExpression("port 70000");
+        assertBadExpression("portrange 10");
+        assertBadExpression("portrange 20-10");
+        assertBadExpression("host 1.2.3");
+        assertBadExpression("host 1.2.3.256");
+        assertBadExpression("udp and");
+        assertBadExpression("(udp");
+        assertBadExpression("udp)");
+        assertBadExpression("whatever");
+        assertBadExpression("payload \"unterminated");
+        assertBadExpression("udp & tcp");
+    }
+
+    private static void assertBadExpression(final String expression) {
+        try {
+            Filters.compile(expression);
+            throw new AssertionError("Expected the expression \"" + expression + "\" to fail");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static int count(final String resource, final String expression) throws Exception {
+        return count(YajTestBase.class.getResourceAsStream(resource), expression);
+    }
+
+    private static int count(final byte[] pcap, final String expression) throws Exception {
+        return count(new ByteArrayInputStream(pcap), expression);
+    }
+
+    private static int count(final InputStream stream, final String expression) throws Exception {
+        final Pcap pcap = Pcap.openStream(stream);
+        final Counter counter = new Counter();
+        pcap.loop(Filters.compile(expression), counter);
+        pcap.close();
+        return counter.count;
+    }
+
+    private static class Counter implements FrameHandler {
+        public int count;
+
+        @Override
+        public void nextFrame(final Frame frame) {
+            ++this.count;
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.flow;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import com.aboutsip.yajpcap.packet.IPv6Address;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * @author jonas@jonasborjesson.com
+ *
+ */
+public class FlowKeyTest {
+
+    /**
+     * 10.0.0.1
+     */
+    private static final int LOW = 0x0A000001;
+
+    /**
+     * 192.168.0.1, which is negative as a signed int
+     */
+    private static final int HIGH = 0xC0A80001;
+
+    @Test
+    public void testDirectionAgnostic() throws Exception {
+        final FlowKey a = FlowKey.create(LOW, 5060, HIGH, 5090, Protocol.UDP);
+        final FlowKey b = FlowKey.create(HIGH, 5090, LOW, 5060, Protocol.UDP);
+        assertThat(a, is(b));
+        assertThat(a.hashCode(), is(b.hashCode()));
+        assertThat(a.getAddresses(), is(b.getAddresses()));
+        assertThat(a.getPorts(), is(b.getPorts()));
+    }
+
+    /**
+     * Addresses are compared as unsigned so the "lower" side is always the
+     * same regardless of the sign bit.
+     */
+    @Test
+    public void testNormalization() throws Exception {
+        final FlowKey key = FlowKey.create(HIGH, 5090, LOW, 5060, Protocol.UDP);
+        assertThat(key.getIpA(), is(LOW));
+        assertThat(key.getPortA(), is(5060));
+        assertThat(key.getIpB(), is(HIGH));
+        assertThat(key.getPortB(), is(5090));
+        assertThat(key.getTransport(), is(Protocol.UDP));
+        assertThat(key.toString(), is("10.0.0.1:5060 <-> 192.168.0.1:5090 udp"));
+
+        // same ip, the port decides
+        final FlowKey same = FlowKey.create(LOW, 65535, LOW, 80, Protocol.TCP);
+        assertThat(same.getPortA(), is(80));
+        assertThat(same.getPortB(), is(65535));
+        assertThat(same, is(FlowKey.create(LOW, 80, LOW, 65535, Protocol.TCP)));
+    }
+
+    @Test
+    public void testNotEqual() throws Exception {
+        final FlowKey key = FlowKey.create(LOW, 5060, HIGH, 5090, Protocol.UDP);
+        assertThat(key, not(FlowKey.create(LOW, 5060, HIGH, 5090, Protocol.TCP)));
+        assertThat(key, not(FlowKey.create(LOW, 5061, HIGH, 5090, Protocol.UDP)));
+        assertThat(key, not(FlowKey.create(LOW, 5090, HIGH, 5060, Protocol.UDP)));
+        assertThat(key, not(FlowKey.create(LOW + 1, 5060, HIGH, 5090, Protocol.UDP)));
+    }
+
+    @Test
+    public void testEndpoint() throws Exception {
+        final FlowKey endpoint = FlowKey.endpoint(HIGH, 6001, Protocol.UDP);
+        assertThat(endpoint, is(FlowKey.create(0, 0, HIGH, 6001, Protocol.UDP)));
+        assertThat(endpoint.getIpB(), is(HIGH));
+        assertThat(endpoint.getPortB(), is(6001));
+        assertThat(endpoint, not(FlowKey.endpoint(HIGH, 6002, Protocol.UDP)));
+    }
+
+    /**
+     * IPv6 flows are just as direction agnostic and IPv4-mapped addresses
+     * end up as the same key as the plain IPv4 address.
+     */
+    @Test
+    public void testIPv6() throws Exception {
+        final long prefix = 0x20010DB800000000L;
+        final FlowKey a = FlowKey.create(prefix, 2, 5060, prefix, 1, 5090, Protocol.UDP);
+        final FlowKey b = FlowKey.create(prefix, 1, 5090, prefix, 2, 5060, Protocol.UDP);
+        assertThat(a.isIPv6(), is(true));
+        assertThat(a, is(b));
+        assertThat(a.hashCode(), is(b.hashCode()));
+        assertThat(a.toString(), is("[2001:db8::1]:5090 <-> [2001:db8::2]:5060 udp"));
+        assertThat(a, not(FlowKey.create(prefix, 2, 5060, prefix, 1, 5090, Protocol.TCP)));
+        assertThat(a, not(FlowKey.create(prefix, 3, 5060, prefix, 1, 5090, Protocol.UDP)));
+        assertThat(FlowKey.endpoint(prefix, 1, 6000, Protocol.UDP), not(FlowKey.endpoint(prefix, 2, 6000,
+                Protocol.UDP)));
+
+        final FlowKey mapped = FlowKey.create(0, IPv6Address.mapIPv4(LOW), 5060, 0, IPv6Address.mapIPv4(HIGH), 5090,
+                Protocol.UDP);
+        assertThat(mapped.isIPv6(), is(false));
+        assertThat(mapped, is(FlowKey.create(LOW, 5060, HIGH, 5090, Protocol.UDP)));
+    }
+
+    @Test
+    public void testPacked() throws Exception {
+        final FlowKey key = FlowKey.create(HIGH, 5090, LOW, 5060, Protocol.UDP);
+        assertThat(FlowKey.packAddresses(LOW, 5060, HIGH, 5090), is(key.getAddresses()));
+        assertThat(FlowKey.packPorts(LOW, 5060, HIGH, 5090, Protocol.UDP), is(key.getPorts()));
+    }
+
+}
@@ -0,0 +1,104 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.flow;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * @author jonas@jonasborjesson.com
+ *
+ */
+public class FlowMapTest {
+
+    @Test
+    public void testPutGetRemove() throws Exception {
+        final FlowMap<String> map = new FlowMap<String>();
+        final FlowKey key = FlowKey.create(1, 2, 3, 4, Protocol.UDP);
+        assertThat(map.get(key), nullValue());
+        assertThat(map.put(key, "hello"), nullValue());
+        assertThat(map.size(), is(1));
+
+        // both directions
+        assertThat(map.get(FlowKey.create(3, 4, 1, 2, Protocol.UDP)), is("hello"));
+        assertThat(map.get(key.getAddresses(), key.getPorts()), is("hello"));
+
+        assertThat(map.put(key, "world"), is("hello"));
+        assertThat(map.size(), is(1));
+
+        assertThat(map.remove(key), is("world"));
+        assertThat(map.remove(key), nullValue());
+        assertThat(map.isEmpty(), is(true));
+        assertThat(map.containsKey(key), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullValue() throws Exception {
+        new FlowMap<String>().put(FlowKey.create(1, 2, 3, 4, Protocol.UDP), null);
+    }
+
+    /**
+     * The map only has room for 32-bit addresses.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testIPv6Key() throws Exception {
+        final FlowMap<String> map = new FlowMap<String>();
+        final FlowKey key = FlowKey.create(1L, 2L, 3, 4L, 5L, 6, Protocol.UDP);
+        assertThat(map.get(key), nullValue());
+        assertThat(map.containsKey(key), is(false));
+        map.put(key, "ipv6");
+    }
+
+    /**
+     * Insert and remove a lot of random flows and make sure we agree with a
+     * regular {@link HashMap} at all times. Mainly to verify that growing
+     * the table and the backward shift delete are working.
+     */
+    @Test
+    public void testAgainstHashMap() throws Exception {
+        final Random random = new Random(1234);
+        final FlowMap<Integer> map = new FlowMap<Integer>(4);
+        final Map<FlowKey, Integer> expected = new HashMap<FlowKey, Integer>();
+
+        for (int i = 0; i < 20000; ++i) {
+            // keep the key space small so that we get plenty of collisions
+            // and removals of existing keys
+            final FlowKey key = FlowKey.create(random.nextInt(64), random.nextInt(16), random.nextInt(64),
+                    random.nextInt(16), Protocol.UDP);
+            if (random.nextInt(3) == 0) {
+                assertThat(map.remove(key), is(expected.remove(key)));
+            } else {
+                assertThat(map.put(key, i), is(expected.put(key, i)));
+            }
+        }
+
+        assertThat(map.size(), is(expected.size()));
+        for (final Map.Entry<FlowKey, Integer> entry : expected.entrySet()) {
+            assertThat(map.get(entry.getKey()), is(entry.getValue()));
+        }
+
+        int count = 0;
+        for (final Integer value : map) {
+            assertThat(value != null, is(true));
+            ++count;
+        }
+        assertThat(count, is(expected.size()));
+
+        map.clear();
+        assertThat(map.size(), is(0));
+        for (final FlowKey key : expected.keySet()) {
+            assertThat(map.get(key), nullValue());
+        }
+    }
+
+}
@@ -0,0 +1,217 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.flow;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aboutsip.buffer.Buffers;
+import com.aboutsip.yajpcap.Clock;
+import com.aboutsip.yajpcap.YajTestBase;
+import com.aboutsip.yajpcap.frame.Frame;
+import com.aboutsip.yajpcap.frame.IPFrame;
+import com.aboutsip.yajpcap.frame.IPv4Frame;
+import com.aboutsip.yajpcap.frame.Layer1Frame;
+import com.aboutsip.yajpcap.frame.Layer2Frame;
+import com.aboutsip.yajpcap.frame.SDPFrame;
+import com.aboutsip.yajpcap.framer.EthernetFramer;
+import com.aboutsip.yajpcap.framer.FramerManager;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * @author jonas@jonasborjesson.com
+ *
+ */
+public class FlowTableTest extends YajTestBase {
+
+    /**
+     * 127.0.1.1
+     */
+    private static final int LOCALHOST = 0x7F000101;
+
+    private static final int OTHER_HOST = 0x0A000001;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    /**
+     * A flow should be found regardless of the direction of the packet.
+     */
+    @Test
+    public void testLearnFlow() throws Exception {
+        final FlowTable table = new FlowTable();
+        table.learn(ip(LOCALHOST, OTHER_HOST), Protocol.UDP, 5060, 5090, Protocol.SIP);
+        assertThat(table.lookup(ip(LOCALHOST, OTHER_HOST), Protocol.UDP, 5060, 5090), is(Protocol.SIP));
+        assertThat(table.lookup(ip(OTHER_HOST, LOCALHOST), Protocol.UDP, 5090, 5060), is(Protocol.SIP));
+
+        assertThat(table.lookup(ip(OTHER_HOST, LOCALHOST), Protocol.TCP, 5090, 5060), is((Protocol) null));
+        assertThat(table.lookup(ip(OTHER_HOST, LOCALHOST), Protocol.UDP, 5091, 5060), is((Protocol) null));
+        assertThat(table.size(), is(1));
+    }
+
+    /**
+     * Make sure that we forget about the least recently used flow once we
+     * go above the max.
+     */
+    @Test
+    public void testMaxFlows() throws Exception {
+        final FlowTable table = new FlowTable(2);
+        table.learn(ip(LOCALHOST, OTHER_HOST), Protocol.UDP, 1, 2, Protocol.SIP);
+        table.learn(ip(LOCALHOST, OTHER_HOST), Protocol.UDP, 3, 4, Protocol.SIP);
+
+        // touch the first one so the second one is the eldest
+        table.lookup(ip(LOCALHOST, OTHER_HOST), Protocol.UDP, 1, 2);
+        table.learn(ip(LOCALHOST, OTHER_HOST), Protocol.UDP, 5, 6, Protocol.SIP);
+
+        assertThat(table.size(), is(2));
+        assertThat(table.lookup(ip(LOCALHOST, OTHER_HOST), Protocol.UDP, 1, 2), is(Protocol.SIP));
+        assertThat(table.lookup(ip(LOCALHOST, OTHER_HOST), Protocol.UDP, 3, 4), nullValue());
+        assertThat(table.lookup(ip(LOCALHOST, OTHER_HOST), Protocol.UDP, 5, 6), is(Protocol.SIP));
+    }
+
+    /**
+     * Flows that haven't seen any traffic within the idle timeout, as given by
+     * the clock of the capture, should be forgotten.
+     */
+    @Test
+    public void testIdleTimeout() throws Exception {
+        final long[] now = new long[] { 1000 };
+        final FlowTable table = new FlowTable(new Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return now[0];
+            }
+        }, 10);
+        table.setIdleTimeout(100);
+        table.learn(ip(LOCALHOST, OTHER_HOST), Protocol.UDP, 1, 2, Protocol.SIP);
+        table.learnMedia(OTHER_HOST, 6000, Protocol.UDP, Protocol.RTP);
+
+        now[0] = 1050;
+        table.learn(ip(LOCALHOST, OTHER_HOST), Protocol.UDP, 3, 4, Protocol.SIP);
+        assertThat(table.lookup(ip(LOCALHOST, OTHER_HOST), Protocol.UDP, 1, 2), is(Protocol.SIP));
+
+        // the lookup above kept the first flow alive but nobody has used
+        // the media endpoint
+        now[0] = 1120;
+        assertThat(table.lookup(ip(LOCALHOST, OTHER_HOST), Protocol.UDP, 1, 2), is(Protocol.SIP));
+        assertThat(table.mediaSize(), is(0));
+        assertThat(table.size(), is(2));
+
+        now[0] = 1200;
+        assertThat(table.lookup(ip(LOCALHOST, OTHER_HOST), Protocol.UDP, 3, 4), nullValue());
+        assertThat(table.size(), is(1));
+    }
+
+    /**
+     * IPv6 flows are stored on a hash of their addresses so make sure that a
+     * different flow with the same ports is not mistaken for it.
+     */
+    @Test
+    public void testIPv6Flows() throws Exception {
+        final FlowTable table = new FlowTable();
+        table.learn(ip6(1, 2), Protocol.UDP, 5060, 5060, Protocol.SIP);
+        assertThat(table.lookup(ip6(1, 2), Protocol.UDP, 5060, 5060), is(Protocol.SIP));
+        assertThat(table.lookup(ip6(2, 1), Protocol.UDP, 5060, 5060), is(Protocol.SIP));
+        assertThat(table.lookup(ip6(1, 3), Protocol.UDP, 5060, 5060), nullValue());
+        assertThat(table.lookup(ip(1, 2), Protocol.UDP, 5060, 5060), nullValue());
+
+        table.learnMedia(0x20010DB800000000L, 7, 6000, Protocol.UDP, Protocol.RTP);
+        assertThat(table.lookup(ip6(7, 1), Protocol.UDP, 6000, 4000), is(Protocol.RTP));
+        assertThat(table.lookup(ip6(1, 7), Protocol.UDP, 4000, 6000), is(Protocol.RTP));
+        assertThat(table.lookup(ip6(1, 7), Protocol.UDP, 6000, 4000), nullValue());
+    }
+
+    /**
+     * The default INVITE in the test data contains an SDP advertising
+     * 127.0.1.1:6001 so any UDP traffic to or from that endpoint should be
+     * classified as RTP.
+     */
+    @Test
+    public void testLearnFromSdp() throws Exception {
+        final FramerManager manager = FramerManager.createInstance();
+        final EthernetFramer framer = new EthernetFramer(manager);
+        final Frame frame = framer.frame(mock(Layer1Frame.class), this.ethernetFrameBuffer);
+        final SDPFrame sdp = (SDPFrame) frame.getFrame(Protocol.SDP);
+        assertThat(sdp != null, is(true));
+
+        final FlowTable table = manager.getFlowTable();
+        assertThat(table.mediaSize(), is(1));
+        assertThat(table.lookup(ip(OTHER_HOST, LOCALHOST), Protocol.UDP, 12345, 6001), is(Protocol.RTP));
+        assertThat(table.lookup(ip(LOCALHOST, OTHER_HOST), Protocol.UDP, 6001, 12345), is(Protocol.RTP));
+        assertThat(table.lookup(ip(LOCALHOST, OTHER_HOST), Protocol.UDP, 6002, 12345), is((Protocol) null));
+        assertThat(table.lookup(ip(OTHER_HOST, LOCALHOST), Protocol.TCP, 12345, 6001), is((Protocol) null));
+    }
+
+    /**
+     * Media level connection lines overrides the session level one and only
+     * RTP profiles should be learned.
+     */
+    @Test
+    public void testLearnFromSdpMediaLevelConnection() throws Exception {
+        final String raw = "v=0\r\n" + "o=- 1 1 IN IP4 10.0.0.1\r\n" + "s=-\r\n" + "c=IN IP4 10.0.0.1\r\n"
+                + "t=0 0\r\n" + "m=audio 7000 RTP/AVP 0 8\r\n" + "c=IN IP4 192.168.0.10\r\n"
+                + "m=video 7002 RTP/SAVPF 96\r\n" + "m=application 7004 TCP/BFCP *\r\n";
+        final FramerManager manager = FramerManager.createInstance();
+        final SDPFrame sdp = new SDPFrame(manager, mock(Frame.class), Buffers.wrap(raw.getBytes("UTF-8")));
+
+        final FlowTable table = new FlowTable();
+        table.learn(sdp);
+        assertThat(table.mediaSize(), is(2));
+        assertThat(table.lookup(ip(OTHER_HOST, 0xC0A8000A), Protocol.UDP, 1, 7000), is(Protocol.RTP));
+        assertThat(table.lookup(ip(OTHER_HOST, 0x0A000001), Protocol.UDP, 1, 7000), is((Protocol) null));
+        assertThat(table.lookup(ip(OTHER_HOST, 0x0A000001), Protocol.UDP, 1, 7002), is(Protocol.RTP));
+        assertThat(table.lookup(ip(OTHER_HOST, 0x0A000001), Protocol.UDP, 1, 7004), is((Protocol) null));
+    }
+
+    private IPv4Frame ip(final int src, final int dst) throws Exception {
+        final byte[] headers = new byte[20];
+        headers[0] = 0x45;
+        headers[9] = 17;
+        write(headers, 12, src);
+        write(headers, 16, dst);
+        return new IPv4Frame(this.framerManager, mock(Layer2Frame.class), 5, Buffers.wrap(headers), 0, null);
+    }
+
+    /**
+     * An ipv6 frame between 2001:db8::src and 2001:db8::dst
+     */
+    private static IPFrame ip6(final long src, final long dst) {
+        final IPFrame ip = mock(IPFrame.class);
+        when(ip.getRawSourceIpHigh()).thenReturn(0x20010DB800000000L);
+        when(ip.getRawSourceIpLow()).thenReturn(src);
+        when(ip.getRawDestinationIpHigh()).thenReturn(0x20010DB800000000L);
+        when(ip.getRawDestinationIpLow()).thenReturn(dst);
+        return ip;
+    }
+
+    private static void write(final byte[] array, final int offset, final int value) {
+        array[offset] = (byte) (value >>> 24);
+        array[offset + 1] = (byte) (value >>> 16);
+        array[offset + 2] = (byte) (value >>> 8);
+        array[offset + 3] = (byte) value;
+    }
+
+}
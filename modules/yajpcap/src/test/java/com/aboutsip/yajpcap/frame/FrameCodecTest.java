@@ -0,0 +1,241 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.frame;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aboutsip.yajpcap.FrameHandler;
+import com.aboutsip.yajpcap.Pcap;
+import com.aboutsip.yajpcap.YajTestBase;
+import com.aboutsip.yajpcap.framer.FramingError;
+import com.aboutsip.yajpcap.packet.sip.SipMessage;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class FrameCodecTest extends YajTestBase {
+
+    private List<Frame> frames;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        this.frames = new ArrayList<Frame>();
+        final Pcap pcap = Pcap.openStream(YajTestBase.class.getResourceAsStream("sipp.pcap"));
+        pcap.loop(new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                FrameCodecTest.this.frames.add(frame);
+            }
+        });
+        pcap.close();
+        assertThat(this.frames.size(), is(30));
+    }
+
+    /**
+     * Every frame in sipp.pcap is ethernet, ipv4, udp and sip so once framed
+     * all of those layers should be there again when decoding, without
+     * anything having to be framed.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        for (final Frame frame : this.frames) {
+            frame.frameAll();
+            final SipFrame sip = (SipFrame) frame.getFrame(Protocol.SIP);
+
+            // any frame writes the entire frame, starting with the pcap frame
+            final PcapFrame decoded = decode(encode(sip));
+            assertSameFraming(decoded, (AbstractFrame) frame);
+            assertThat(decoded.getArrivalTime(), is(frame.getArrivalTime()));
+            assertThat(decoded.getOffset(), is(((PcapFrame) frame).getOffset()));
+            assertThat(Arrays.equals(toByteArray(decoded), toByteArray(frame)), is(true));
+
+            final SipFrame decodedSip = (SipFrame) decoded.getFrame(Protocol.SIP);
+            assertThat(decodedSip.getInitialLine(), is(sip.getInitialLine()));
+            assertThat(decodedSip.getHeaders(), is(sip.getHeaders()));
+            assertThat(decodedSip.getPayload(), is(sip.getPayload()));
+
+            final SipMessage msg = decodedSip.parse();
+            assertThat(msg.isRequest(), is(sip.parse().isRequest()));
+
+            final UDPFrame udp = (UDPFrame) decoded.getFrame(Protocol.UDP);
+            assertThat(udp.getDestinationPort(), is(((UDPFrame) frame.getFrame(Protocol.UDP)).getDestinationPort()));
+
+            final IPv4Frame ip = (IPv4Frame) decoded.getFrame(Protocol.IPv4);
+            assertThat(ip.getRawSourceIp(), is(((IPv4Frame) frame.getFrame(Protocol.IPv4)).getRawSourceIp()));
+        }
+    }
+
+    /**
+     * Nothing has been framed so only the record is encoded and the rest is
+     * framed lazily after decoding.
+     */
+    @Test
+    public void testNotFramed() throws Exception {
+        final PcapFrame frame = (PcapFrame) this.frames.get(0);
+        final PcapFrame decoded = decode(encode(frame));
+        assertThat(decoded.isFramed(), is(false));
+        assertThat(decoded.getArrivalTime(), is(1340495109792454L));
+        assertThat(decoded.getPayload().capacity(), is(547));
+        assertThat(decoded.hasProtocol(Protocol.SIP), is(true));
+        assertThat(((SipFrame) decoded.getFrame(Protocol.SIP)).parse().isInvite(), is(true));
+    }
+
+    /**
+     * Only part of the frame has been framed so that is what we get back.
+     */
+    @Test
+    public void testPartiallyFramed() throws Exception {
+        final PcapFrame frame = (PcapFrame) this.frames.get(0);
+        final Frame ethernet = frame.getNextFrame();
+        assertThat(ethernet.getProtocol(), is(Protocol.ETHERNET_II));
+
+        final PcapFrame decoded = decode(encode(ethernet));
+        assertSameFraming(decoded, frame);
+        assertThat(decoded.getFrame(Protocol.SIP), not(nullValue()));
+    }
+
+    @Test
+    public void testReadExternal() throws Exception {
+        final byte[] encoded = encode(this.frames.get(0));
+        try {
+            ((PcapFrame) this.frames.get(0)).readExternal(new ObjectInputStream(new ByteArrayInputStream(encoded)));
+            fail("Expected an IOException");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCorrupt() throws Exception {
+        final PcapFrame frame = (PcapFrame) this.frames.get(0);
+        frame.frameAll();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FrameCodec.encode(frame, new DataOutputStream(out));
+        final byte[] encoded = out.toByteArray();
+
+        final byte[] badVersion = encoded.clone();
+        badVersion[0] = 42;
+        assertCorrupt(badVersion);
+
+        // the layers start right after the 34 byte record header and the
+        // 547 bytes of data, first the ethernet layer and its payload range
+        final byte[] badRange = encoded.clone();
+        assertThat(badRange[34 + 547], is((byte) 1));
+        badRange[34 + 547 + 1] = 0x7F;
+        assertCorrupt(badRange);
+
+        assertCorrupt(Arrays.copyOf(encoded, encoded.length - 10));
+
+        // the ether type follows the payload range and the number of vlan
+        // tags and is stored as it appears on the wire
+        final int etherType = 34 + 547 + 1 + 8 + 4;
+        assertThat(new DataInputStream(new ByteArrayInputStream(encoded, etherType, 4)).readInt(), is(0x0800));
+        final byte[] badEtherType = encoded.clone();
+        badEtherType[etherType + 3] = 0x01;
+        assertCorrupt(badEtherType);
+    }
+
+    /**
+     * The framing error is stored as a fixed code, not as whatever position
+     * it happens to have within the enum.
+     */
+    @Test
+    public void testFramingError() throws Exception {
+        final PcapFrame frame = (PcapFrame) this.frames.get(0);
+        final AbstractFrame udp = (AbstractFrame) frame.getFrame(Protocol.UDP);
+        udp.setNextFrame(null);
+        udp.setFramingError(FramingError.MALFORMED);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FrameCodec.encode(frame, new DataOutputStream(out));
+        final byte[] encoded = out.toByteArray();
+        assertThat(encoded[encoded.length - 2], is((byte) 1));
+        assertThat(encoded[encoded.length - 1], is((byte) 2));
+
+        final PcapFrame decoded = FrameCodec.decode(this.framerManager, new DataInputStream(
+                new ByteArrayInputStream(encoded)));
+        assertSameFraming(decoded, frame);
+        assertThat(decoded.getFrame(Protocol.UDP).getFramingError(), is(FramingError.MALFORMED));
+
+        final byte[] badError = encoded.clone();
+        badError[badError.length - 1] = 42;
+        assertCorrupt(badError);
+    }
+
+    /**
+     * Walk the decoded frame and make sure that every layer that was framed
+     * in the original frame is framed in the decoded one as well, and nothing
+     * more.
+     */
+    private static void assertSameFraming(final AbstractFrame decoded, final AbstractFrame original)
+            throws IOException {
+        AbstractFrame d = decoded;
+        AbstractFrame o = original;
+        while (o != null) {
+            assertThat(d.getProtocol(), is(o.getProtocol()));
+            assertThat(d.isFramed(), is(o.isFramed()));
+            if (!o.isFramed()) {
+                return;
+            }
+            o = (AbstractFrame) o.getNextFrame();
+            d = (AbstractFrame) d.getNextFrame();
+        }
+        assertThat(d, nullValue());
+    }
+
+    private void assertCorrupt(final byte[] encoded) {
+        try {
+            FrameCodec.decode(this.framerManager, new DataInputStream(new ByteArrayInputStream(encoded)));
+            fail("Expected an IOException");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+    private static byte[] encode(final Frame frame) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ObjectOutputStream oos = new ObjectOutputStream(out);
+        frame.writeExternal(oos);
+        oos.close();
+        return out.toByteArray();
+    }
+
+    private PcapFrame decode(final byte[] encoded) throws IOException {
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(encoded));
+        final PcapFrame frame = FrameCodec.decode(this.framerManager, in);
+        assertThat(in.read(), is(-1));
+        return frame;
+    }
+
+    private static byte[] toByteArray(final Frame frame) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        frame.write(out);
+        return out.toByteArray();
+    }
+
+}
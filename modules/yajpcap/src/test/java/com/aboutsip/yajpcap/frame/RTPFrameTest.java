@@ -22,6 +22,9 @@ import com.aboutsip.buffer.Buffer;
 import com.aboutsip.buffer.Buffers;
 import com.aboutsip.yajpcap.RawData;
 import com.aboutsip.yajpcap.YajTestBase;
+import com.aboutsip.yajpcap.framer.FramerManager;
+import com.aboutsip.yajpcap.framer.FramingError;
+import com.aboutsip.yajpcap.framer.RTPFramer;
 import com.aboutsip.yajpcap.framer.SllFramer;
 import com.aboutsip.yajpcap.packet.Packet;
 import com.aboutsip.yajpcap.packet.rtp.RtpPacket;
@@ -50,6 +53,20 @@ public class RTPFrameTest extends YajTestBase {
         super.tearDown();
     }
 
+    /**
+     * When SDP is required, RTP that hasn't been negotiated is not
+     * recognized, no matter what the version bits say.
+     */
+    @Test
+    public void testUnnegotiatedRTP() throws Exception {
+        final FramerManager manager = FramerManager.createInstance();
+        manager.getFlowTable().setSdpRequiredForRtp(true);
+        final Frame frame = new SllFramer(manager).frame(mock(Layer1Frame.class), Buffers.wrap(RawData.rtp));
+        assertThat(frame.getFrame(Protocol.UDP) != null, is(true));
+        assertThat(frame.getFrame(Protocol.RTP) == null, is(true));
+        assertThat(manager.getFlowTable().size(), is(0));
+    }
+
     /**
      * Test frame an RTP packet all the way through.
      * 
@@ -76,6 +93,118 @@ public class RTPFrameTest extends YajTestBase {
         assertThat(rtp.getTimestamp(), is(8396320L));
     }
 
+    /**
+     * CSRC list, a one-byte header extension and padding all in the same
+     * packet.
+     */
+    @Test
+    public void testFrameFullHeader() throws Exception {
+        final byte[] raw = new byte[] {
+                (byte) 0xB2, (byte) 0xE0, (byte) 0xFF, (byte) 0xFE, // V=2 P X CC=2, M PT=96, seq
+                0x00, 0x00, 0x00, 0x10, // timestamp
+                0x01, 0x02, 0x03, 0x04, // ssrc
+                0x00, 0x00, 0x00, 0x01, // csrc 1
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, // csrc 2
+                (byte) 0xBE, (byte) 0xDE, 0x00, 0x02, // one-byte extension, 2 words
+                0x10, 0x2A, 0x00, 0x21, // id 1 len 1, padding, id 2 len 2
+                0x01, 0x02, 0x00, 0x00, // data of id 2, padding
+                0x0A, 0x0B, 0x0C, // payload
+                0x00, 0x00, 0x03 }; // padding
+        final RtpPacket rtp = (RtpPacket) frame(raw).parse();
+        assertThat(rtp.hasPadding(), is(true));
+        assertThat(rtp.hasExtensions(), is(true));
+        assertThat(rtp.hasMarker(), is(true));
+        assertThat(rtp.getPayloadType(), is(96));
+        assertThat(rtp.getSeqNumber(), is(65534));
+        assertThat(rtp.getSyncronizationSource(), is(0x01020304L));
+        assertThat(rtp.getContributingSourceCount(), is(2));
+        assertThat(rtp.getContributingSource(0), is(1L));
+        assertThat(rtp.getContributingSource(1), is(0xFFFFFFFFL));
+        assertThat(rtp.getExtensionProfile(), is(0xBEDE));
+        assertThat(rtp.getExtension().capacity(), is(8));
+        assertThat(rtp.getExtensionElement(1).capacity(), is(1));
+        assertThat(rtp.getExtensionElement(1).getByte(0), is((byte) 0x2A));
+        assertThat(rtp.getExtensionElement(2).getUnsignedShort(0), is(0x0102));
+        assertThat(rtp.getExtensionElement(3) == null, is(true));
+
+        assertThat(rtp.getPayload().capacity(), is(3));
+        assertThat(rtp.getPayload().getByte(0), is((byte) 0x0A));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testNoSuchContributingSource() throws Exception {
+        final byte[] raw = new byte[16];
+        raw[0] = (byte) 0x80;
+        ((RtpPacket) frame(raw).parse()).getContributingSource(0);
+    }
+
+    @Test
+    public void testTwoByteHeaderExtension() throws Exception {
+        final byte[] raw = new byte[] {
+                (byte) 0x90, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+                0x10, 0x00, 0x00, 0x02, // two-byte extension, 2 words
+                0x05, 0x00, 0x07, 0x03, // id 5 empty, id 7 len 3
+                0x41, 0x42, 0x43, 0x00,
+                0x01 }; // payload
+        final RtpPacket rtp = (RtpPacket) frame(raw).parse();
+        assertThat(rtp.getExtensionProfile(), is(0x1000));
+        assertThat(rtp.getExtensionElement(7).capacity(), is(3));
+        assertThat(rtp.getExtensionElement(7).getByte(2), is((byte) 0x43));
+        assertThat(rtp.getExtensionElement(5) == null, is(true));
+        assertThat(rtp.getPayload().capacity(), is(1));
+    }
+
+    /**
+     * Header extensions that aren't of the RFC 8285 kind are still framed,
+     * we just can't tell what is in them.
+     */
+    @Test
+    public void testOtherHeaderExtension() throws Exception {
+        final byte[] raw = new byte[] {
+                (byte) 0x90, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+                0x12, 0x34, 0x00, 0x01, 0x10, 0x2A, 0x00, 0x00 };
+        final RtpPacket rtp = (RtpPacket) frame(raw).parse();
+        assertThat(rtp.getExtensionProfile(), is(0x1234));
+        assertThat(rtp.getExtension().capacity(), is(4));
+        assertThat(rtp.getExtensionElement(1) == null, is(true));
+        assertThat(rtp.getPayload() == null, is(true));
+    }
+
+    @Test
+    public void testTruncatedAndMalformed() throws Exception {
+        final FramerManager manager = FramerManager.createInstance();
+
+        // claims to have 2 CSRCs
+        final byte[] csrc = new byte[16];
+        csrc[0] = (byte) 0x82;
+        assertThat(frame(manager, csrc) == null, is(true));
+
+        // extension longer than the packet
+        final byte[] extension = new byte[20];
+        extension[0] = (byte) 0x90;
+        extension[15] = 0x02;
+        assertThat(frame(manager, extension) == null, is(true));
+        assertThat(manager.getErrorCount(FramingError.TRUNCATED), is(2L));
+
+        // more padding than there is room for
+        final byte[] padding = new byte[16];
+        padding[0] = (byte) 0xA0;
+        padding[15] = 0x05;
+        assertThat(frame(manager, padding) == null, is(true));
+        padding[15] = 0x00;
+        assertThat(frame(manager, padding) == null, is(true));
+        assertThat(manager.getErrorCount(FramingError.MALFORMED), is(2L));
+    }
+
+    private Frame frame(final byte[] raw) throws Exception {
+        return frame(this.framerManager, raw);
+    }
+
+    private static Frame frame(final FramerManager manager, final byte[] raw) throws Exception {
+        final Layer4Frame parent = mock(Layer4Frame.class);
+        return new RTPFramer(manager).frame(parent, Buffers.wrap(raw));
+    }
+
     @Ignore
     @Test
     public void testPlaySinusWave() throws Exception {
@@ -3,11 +3,23 @@
  */
 package com.aboutsip.yajpcap.framer;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.aboutsip.buffer.Buffers;
+import com.aboutsip.yajpcap.RawData;
 import com.aboutsip.yajpcap.YajTestBase;
+import com.aboutsip.yajpcap.frame.EthernetFrame;
+import com.aboutsip.yajpcap.frame.Layer1Frame;
+import com.aboutsip.yajpcap.packet.Packet;
+import com.aboutsip.yajpcap.packet.sip.SipMessage;
+import com.aboutsip.yajpcap.protocol.Protocol;
 
 /**
  * @author jonas@jonasborjesson.com
@@ -41,4 +53,54 @@ public class EthernetFramerTest extends YajTestBase {
         this.framer.frame(null, this.ethernetFrameBuffer);
     }
 
+    @Test
+    public void testNoVlan() throws Exception {
+        final EthernetFrame frame = this.framer.frame(mock(Layer1Frame.class), this.ethernetFrameBuffer);
+        assertThat(frame.getVlanTagCount(), is(0));
+        assertThat(frame.getType(), is(EthernetFrame.EtherType.IPv4));
+    }
+
+    @Test
+    public void testVlanTagged() throws Exception {
+        final byte[] tagged = RawData.vlanTagged(RawData.rawEthernetFrame, 0x8100, 100);
+        final EthernetFrame frame = this.framer.frame(createParent(), Buffers.wrap(tagged));
+        assertThat(frame.getVlanTagCount(), is(1));
+        assertThat(frame.getVlanId(0), is(100));
+        assertThat(frame.getType(), is(EthernetFrame.EtherType.IPv4));
+        assertInvite(frame);
+    }
+
+    /**
+     * QinQ, i.e., an 802.1ad tag followed by an 802.1Q tag.
+     */
+    @Test
+    public void testQinQ() throws Exception {
+        final byte[] tagged = RawData.vlanTagged(RawData.rawEthernetFrame, 0x88A8, 10, 0x8100, 0x2014);
+        final EthernetFrame frame = this.framer.frame(createParent(), Buffers.wrap(tagged));
+        assertThat(frame.getVlanTagCount(), is(2));
+        assertThat(frame.getVlanId(0), is(10));
+
+        // the priority bits are not part of the id
+        assertThat(frame.getVlanId(1), is(20));
+        assertInvite(frame);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testNoSuchVlanTag() throws Exception {
+        final byte[] tagged = RawData.vlanTagged(RawData.rawEthernetFrame, 0x8100, 100);
+        this.framer.frame(createParent(), Buffers.wrap(tagged)).getVlanId(1);
+    }
+
+    private static Layer1Frame createParent() throws Exception {
+        final Layer1Frame parent = mock(Layer1Frame.class);
+        final Packet layer1Pkt = mock(Packet.class);
+        when(parent.parse()).thenReturn(layer1Pkt);
+        return parent;
+    }
+
+    private static void assertInvite(final EthernetFrame frame) throws Exception {
+        final SipMessage msg = (SipMessage) frame.getFrame(Protocol.SIP).parse();
+        assertThat(msg.getMethod().toString(), is("INVITE"));
+    }
+
 }
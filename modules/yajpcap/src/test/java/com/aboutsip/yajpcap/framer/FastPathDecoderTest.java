@@ -0,0 +1,153 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.framer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aboutsip.buffer.Buffer;
+import com.aboutsip.buffer.Buffers;
+import com.aboutsip.yajpcap.YajTestBase;
+import com.aboutsip.yajpcap.frame.Frame;
+import com.aboutsip.yajpcap.frame.IPv4Frame;
+import com.aboutsip.yajpcap.frame.Layer4Frame;
+import com.aboutsip.yajpcap.frame.PcapGlobalHeader;
+import com.aboutsip.yajpcap.frame.UDPFrame;
+import com.aboutsip.yajpcap.packet.TransportPacket;
+import com.aboutsip.yajpcap.protocol.Protocol;
+import com.aboutsip.yajpcap.record.PcapRecordReader;
+import com.aboutsip.yajpcap.record.RawRecord;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class FastPathDecoderTest extends YajTestBase {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    /**
+     * The fast path must end up with exactly the same frames as the regular
+     * framers do.
+     */
+    @Test
+    public void testSameAsGenericFramersUdp() throws Exception {
+        final List<String> fast = describe("sipp.pcap", true);
+        assertThat(fast.size(), is(30));
+        assertThat(fast, is(describe("sipp.pcap", false)));
+        assertThat(fast.get(0).contains(" sip:"), is(true));
+    }
+
+    @Test
+    public void testSameAsGenericFramersTcp() throws Exception {
+        final List<String> fast = describe("fragmented_tcp_sip.pcap", true);
+        assertThat(fast.size(), is(19));
+        assertThat(fast, is(describe("fragmented_tcp_sip.pcap", false)));
+    }
+
+    /**
+     * The layers below the application layer should already be linked
+     * together by the decoder.
+     */
+    @Test
+    public void testDecode() throws Exception {
+        final FramerManager manager = FramerManager.createInstance();
+        manager.setDataLinkType(PcapGlobalHeader.DLT_EN10MB);
+        final Frame frame = manager.getFastPathDecoder().decode(this.defaultPcapFrame, this.ethernetFrameBuffer,
+                manager.getDataLinkType());
+        assertThat(frame.getProtocol(), is(Protocol.ETHERNET_II));
+
+        final IPv4Frame ip = (IPv4Frame) frame.getNextFrame();
+        assertThat(ip.getHeaderLength(), is(5));
+        final UDPFrame udp = (UDPFrame) ip.getNextFrame();
+        assertThat(udp.getSourcePort(), is(5060));
+        assertThat(udp.getDestinationPort(), is(5090));
+        assertThat(udp.getFrame(Protocol.SIP) != null, is(true));
+    }
+
+    @Test
+    public void testUnknownDataLinkType() throws Exception {
+        final FastPathDecoder decoder = this.framerManager.getFastPathDecoder();
+        assertThat(decoder.decode(this.defaultPcapFrame, this.ethernetFrameBuffer, -1) == null, is(true));
+        assertThat(decoder.decode(this.defaultPcapFrame, this.ethernetFrameBuffer, 276) == null, is(true));
+    }
+
+    /**
+     * Anything but IPv4 is left to the regular framers.
+     */
+    @Test
+    public void testNotIPv4() throws Exception {
+        final byte[] data = new byte[60];
+        data[12] = (byte) 0x86;
+        data[13] = (byte) 0xdd;
+        final Buffer buffer = Buffers.wrap(data);
+        final FastPathDecoder decoder = this.framerManager.getFastPathDecoder();
+        assertThat(decoder.decode(this.defaultPcapFrame, buffer, PcapGlobalHeader.DLT_EN10MB) == null, is(true));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSetNextFrameTwice() throws Exception {
+        final IPv4Frame ip = (IPv4Frame) this.defaultPcapFrame.getFrame(Protocol.IPv4);
+        ip.getNextFrame();
+        ip.setNextFrame(null);
+    }
+
+    /**
+     * Frame all the records in the pcap and describe every layer of them as a
+     * string so that they are easy to compare.
+     */
+    private static List<String> describe(final String resource, final boolean fastPath) throws Exception {
+        final InputStream stream = YajTestBase.class.getResourceAsStream(resource);
+        final PcapGlobalHeader header = PcapGlobalHeader.parse(Buffers.wrap(stream));
+        final PcapRecordReader reader = new PcapRecordReader(header, stream);
+        final FramerManager manager = FramerManager.createInstance();
+        if (fastPath) {
+            manager.setDataLinkType(header.getDataLinkType());
+        }
+
+        final List<String> descriptions = new ArrayList<String>();
+        final RawRecord record = reader.createRecord();
+        while (reader.next(record)) {
+            final StringBuilder sb = new StringBuilder();
+            Frame frame = record.toFrame(manager);
+            while (frame != null) {
+                sb.append(frame.getName()).append(':');
+                if (frame instanceof Layer4Frame) {
+                    final TransportPacket pkt = ((Layer4Frame) frame).parse();
+                    sb.append(pkt.getSourcePort()).append('/').append(pkt.getDestinationPort());
+                } else {
+                    sb.append(-1);
+                }
+                sb.append(' ').append(frame.getPayload() == null ? 0 : frame.getPayload().capacity()).append(' ');
+                frame = frame.getNextFrame();
+            }
+            descriptions.add(sb.toString());
+        }
+        return descriptions;
+    }
+
+}
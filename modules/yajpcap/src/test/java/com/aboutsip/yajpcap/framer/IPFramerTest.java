@@ -3,11 +3,19 @@
  */
 package com.aboutsip.yajpcap.framer;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.aboutsip.buffer.Buffer;
+import com.aboutsip.buffer.Buffers;
 import com.aboutsip.yajpcap.YajTestBase;
+import com.aboutsip.yajpcap.frame.IPv4Frame;
+import com.aboutsip.yajpcap.frame.Layer2Frame;
 
 /**
  * @author jonas@jonasborjesson.com
@@ -53,5 +61,47 @@ public class IPFramerTest extends YajTestBase {
         framer.frame(null, this.ipv4FrameBuffer);
     }
 
+    @Test
+    public void testTruncated() throws Exception {
+        final long count = this.framerManager.getErrorCount(FramingError.TRUNCATED);
+        final IPv4Framer framer = new IPv4Framer(this.framerManager);
+        assertThat(framer.frame(mock(Layer2Frame.class), this.ipv4FrameBuffer.slice(19)) == null, is(true));
+        assertThat(this.framerManager.getErrorCount(FramingError.TRUNCATED), is(count + 1));
+    }
+
+    /**
+     * A header length of less than 5 words makes no sense.
+     */
+    @Test
+    public void testMalformed() throws Exception {
+        final long count = this.framerManager.getErrorCount(FramingError.MALFORMED);
+        final byte[] data = this.ipv4FrameBuffer.getArray();
+        data[0] = 0x44;
+        final IPv4Framer framer = new IPv4Framer(this.framerManager);
+        assertThat(framer.frame(mock(Layer2Frame.class), Buffers.wrap(data)) == null, is(true));
+        assertThat(this.framerManager.getErrorCount(FramingError.MALFORMED), is(count + 1));
+    }
+
+    /**
+     * Only the first word of the options is kept but all of them have to be
+     * skipped.
+     */
+    @Test
+    public void testOptions() throws Exception {
+        final byte[] original = this.ipv4FrameBuffer.getArray();
+        final byte[] data = new byte[original.length + 8];
+        System.arraycopy(original, 0, data, 0, 20);
+        System.arraycopy(original, 20, data, 28, original.length - 20);
+        data[0] = 0x47;
+        data[20] = 0x01;
+
+        final IPv4Framer framer = new IPv4Framer(this.framerManager);
+        final IPv4Frame frame = (IPv4Frame) framer.frame(mock(Layer2Frame.class), Buffers.wrap(data));
+        assertThat(frame.getHeaderLength(), is(7));
+        final Buffer payload = frame.getPayload();
+        assertThat(payload.capacity(), is(original.length - 20));
+        assertThat(payload.getByte(0), is(original[20]));
+    }
+
 
 }
@@ -0,0 +1,205 @@
+/**
+ * 
+ */
+package com.aboutsip.yajpcap.framer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aboutsip.yajpcap.FrameHandler;
+import com.aboutsip.yajpcap.Pcap;
+import com.aboutsip.yajpcap.RawData;
+import com.aboutsip.yajpcap.YajTestBase;
+import com.aboutsip.yajpcap.frame.Frame;
+import com.aboutsip.yajpcap.frame.IPv4Frame;
+import com.aboutsip.yajpcap.frame.PcapGlobalHeader;
+import com.aboutsip.yajpcap.frame.UDPFrame;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class IPv4ReassemblerTest extends YajTestBase {
+
+    /**
+     * The ip payload (the UDP header and the SIP message) of
+     * {@link RawData#rawEthernetFrame}
+     */
+    private byte[] datagram;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        this.datagram = new byte[RawData.rawEthernetFrame.length - 34];
+        System.arraycopy(RawData.rawEthernetFrame, 34, this.datagram, 0, this.datagram.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    @Test
+    public void testInOrder() throws Exception {
+        final List<Frame> frames = loop(null, fragment(0, 200, true), fragment(200, 400, true),
+                fragment(400, this.datagram.length, false));
+        assertThat(frames.get(0).hasProtocol(Protocol.UDP), is(false));
+        assertThat(frames.get(1).hasProtocol(Protocol.UDP), is(false));
+        assertReassembled(frames.get(2));
+    }
+
+    @Test
+    public void testOutOfOrder() throws Exception {
+        final List<Frame> frames = loop(null, fragment(400, this.datagram.length, false), fragment(0, 200, true),
+                fragment(200, 400, true));
+        assertThat(frames.get(0).hasProtocol(Protocol.UDP), is(false));
+        assertThat(frames.get(1).hasProtocol(Protocol.UDP), is(false));
+        assertReassembled(frames.get(2));
+    }
+
+    /**
+     * Duplicated and overlapping fragments should not mess things up.
+     */
+    @Test
+    public void testOverlapping() throws Exception {
+        final List<Frame> frames = loop(null, fragment(0, 200, true), fragment(0, 200, true),
+                fragment(104, 400, true), fragment(400, this.datagram.length, false));
+        assertReassembled(frames.get(3));
+    }
+
+    /**
+     * The last fragment shows up too late so the datagram should have been
+     * dropped by then.
+     */
+    @Test
+    public void testTimeout() throws Exception {
+        final Pcap pcap = Pcap.openStream(createPcap(new int[] { 0, 0, 31 }, fragment(0, 200, true),
+                fragment(200, 400, true), fragment(400, this.datagram.length, false)));
+        final List<Frame> frames = loop(pcap);
+        assertThat(frames.get(2).hasProtocol(Protocol.UDP), is(false));
+        assertThat(pcap.getIPv4Reassembler().getDroppedCount(), is(1L));
+        assertThat(pcap.getIPv4Reassembler().getPendingCount(), is(1));
+        assertThat(pcap.getIPv4Reassembler().getBytes(), is(this.datagram.length - 400));
+    }
+
+    /**
+     * When we run out of space the oldest datagrams are dropped.
+     */
+    @Test
+    public void testMaxBytes() throws Exception {
+        final Pcap pcap = Pcap.openStream(createPcap(new int[] { 0, 0, 0 }, fragment(0, 200, true),
+                fragment(200, 400, true), fragment(400, this.datagram.length, false)));
+        pcap.getIPv4Reassembler().setMaxBytes(300);
+        final List<Frame> frames = loop(pcap);
+        assertThat(frames.get(2).hasProtocol(Protocol.UDP), is(false));
+        assertThat(pcap.getIPv4Reassembler().getDroppedCount(), is(1L));
+        assertThat(pcap.getIPv4Reassembler().getBytes() <= 300, is(true));
+    }
+
+    /**
+     * The pcap only contains the first fragment of the INVITE, which means
+     * it can't be framed at all.
+     */
+    @Test
+    public void testFragmentedUdpSip() throws Exception {
+        final Pcap pcap = Pcap.openStream(YajTestBase.class.getResourceAsStream("fragmented_udp_sip.pcap"));
+        final List<Frame> frames = loop(pcap);
+        assertThat(frames.size(), is(6));
+
+        final IPv4Frame ip = (IPv4Frame) frames.get(0).getFrame(Protocol.IPv4);
+        assertThat(ip.isFragment(), is(true));
+        assertThat(ip.isMoreFragments(), is(true));
+        assertThat(ip.getFragmentOffset(), is(0));
+        assertThat(ip.getIdentification(), is(2915));
+        assertThat(ip.getNextFrame() == null, is(true));
+        assertThat(pcap.getIPv4Reassembler().getPendingCount(), is(1));
+
+        for (int i = 1; i < frames.size(); ++i) {
+            assertThat(frames.get(i).hasProtocol(Protocol.SIP), is(true));
+        }
+    }
+
+    private void assertReassembled(final Frame frame) throws Exception {
+        final UDPFrame udp = (UDPFrame) frame.getFrame(Protocol.UDP);
+        assertThat(udp.getSourcePort(), is(5060));
+        assertThat(udp.getDestinationPort(), is(5090));
+        final byte[] sip = new byte[this.datagram.length - 8];
+        System.arraycopy(this.datagram, 8, sip, 0, sip.length);
+        assertThat(udp.getPayload().getArray(), is(sip));
+        assertThat(frame.hasProtocol(Protocol.SIP), is(true));
+    }
+
+    private List<Frame> loop(final Pcap pcap, final byte[]... packets) throws IOException {
+        return loop(pcap == null ? Pcap.openStream(createPcap(new int[packets.length], packets)) : pcap);
+    }
+
+    private static List<Frame> loop(final Pcap pcap) throws IOException {
+        final List<Frame> frames = new ArrayList<Frame>();
+        pcap.setEagerFraming(true);
+        pcap.loop(new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                frames.add(frame);
+            }
+        });
+        return frames;
+    }
+
+    /**
+     * Create an Ethernet frame carrying the given part of the datagram.
+     */
+    private byte[] fragment(final int start, final int stop, final boolean more) {
+        final byte[] frame = new byte[34 + (stop - start)];
+        System.arraycopy(RawData.rawEthernetFrame, 0, frame, 0, 34);
+        System.arraycopy(this.datagram, start, frame, 34, stop - start);
+        final int totalLength = 20 + (stop - start);
+        frame[16] = (byte) (totalLength >> 8);
+        frame[17] = (byte) totalLength;
+        frame[18] = 0x12;
+        frame[19] = 0x34;
+        final int flagsAndOffset = (more ? 0x2000 : 0) | (start / 8);
+        frame[20] = (byte) (flagsAndOffset >> 8);
+        frame[21] = (byte) flagsAndOffset;
+        return frame;
+    }
+
+    /**
+     * Create a little endian pcap with the packets captured at the given
+     * times, in seconds.
+     */
+    private static InputStream createPcap(final int[] seconds, final byte[]... packets) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PcapGlobalHeader.createDefaultHeader().write(out);
+        for (int i = 0; i < packets.length; ++i) {
+            final byte[] header = new byte[16];
+            header[0] = (byte) seconds[i];
+            header[8] = (byte) packets[i].length;
+            header[9] = (byte) (packets[i].length >> 8);
+            header[12] = (byte) packets[i].length;
+            header[13] = (byte) (packets[i].length >> 8);
+            out.write(header);
+            out.write(packets[i]);
+        }
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+}
@@ -0,0 +1,295 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.framer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aboutsip.buffer.Buffers;
+import com.aboutsip.yajpcap.YajTestBase;
+import com.aboutsip.yajpcap.frame.Frame;
+import com.aboutsip.yajpcap.frame.IPv6Frame;
+import com.aboutsip.yajpcap.frame.Layer1Frame;
+import com.aboutsip.yajpcap.frame.Layer2Frame;
+import com.aboutsip.yajpcap.frame.UDPFrame;
+import com.aboutsip.yajpcap.packet.IPPacket;
+import com.aboutsip.yajpcap.packet.IPv6Address;
+import com.aboutsip.yajpcap.packet.Packet;
+import com.aboutsip.yajpcap.packet.sip.SipMessage;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class IPv6FramerTest extends YajTestBase {
+
+    /**
+     * 2001:db8::1
+     */
+    private static final long[] SOURCE = { 0x20010DB800000000L, 1L };
+
+    /**
+     * 2001:db8::2
+     */
+    private static final long[] DESTINATION = { 0x20010DB800000000L, 2L };
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    /**
+     * SIP over UDP over IPv6 should be framed just as it is over IPv4.
+     */
+    @Test
+    public void testFrameSip() throws Exception {
+        final Frame ethernet = frameEthernet(createPacket(17, null, udp()));
+        final IPv6Frame ip = (IPv6Frame) ethernet.getNextFrame();
+        assertThat(ip.getProtocol(), is(Protocol.IPv6));
+        assertThat(ip.getVersion(), is(6));
+        assertThat(ip.getHopLimit(), is(64));
+        assertThat(ip.getNextHeader(), is(17));
+        assertThat(ip.getHeaderLength(), is(40));
+        assertThat(ip.getExtensionHeaders() == null, is(true));
+        assertThat(ip.getRawSourceIpHigh(), is(SOURCE[0]));
+        assertThat(ip.getRawDestinationIpLow(), is(DESTINATION[1]));
+
+        final IPPacket pkt = ip.parse();
+        assertThat(pkt.getIpVersion(), is(6));
+        assertThat(pkt.getSourceIP(), is("2001:db8::1"));
+        assertThat(pkt.getDestinationIP(), is("2001:db8::2"));
+
+        final UDPFrame udp = (UDPFrame) ip.getNextFrame();
+        assertThat(udp.getSourcePort(), is(5060));
+        assertThat(udp.getDestinationPort(), is(5090));
+
+        final SipMessage msg = (SipMessage) ethernet.getFrame(Protocol.SIP).parse();
+        assertThat(msg.getMethod().toString(), is("INVITE"));
+        assertThat(msg.getSourceIP(), is("2001:db8::1"));
+        assertThat(msg.getRawSourceIpLow(), is(1L));
+        assertThat(msg.getIpVersion(), is(6));
+    }
+
+    /**
+     * The extension headers should be skipped and the upper layer protocol be
+     * taken from the last one of them.
+     */
+    @Test
+    public void testExtensionHeaders() throws Exception {
+        final byte[] ext = new byte[24];
+        // hop-by-hop followed by destination options
+        ext[0] = 60;
+        ext[1] = 0;
+        ext[8] = 17;
+        ext[9] = 1;
+
+        final Frame ethernet = frameEthernet(createPacket(0, ext, udp()));
+        final IPv6Frame ip = (IPv6Frame) ethernet.getNextFrame();
+        assertThat(ip.getNextHeader(), is(17));
+        assertThat(ip.getHeaderLength(), is(64));
+        assertThat(ip.getExtensionHeaders().capacity(), is(24));
+        assertThat(ip.isFragment(), is(false));
+        assertThat(ethernet.getFrame(Protocol.SIP) != null, is(true));
+    }
+
+    /**
+     * An atomic fragment, i.e. offset zero and no more fragments, is just a
+     * regular packet.
+     */
+    @Test
+    public void testAtomicFragment() throws Exception {
+        final byte[] ext = new byte[8];
+        ext[0] = 17;
+        final Frame ethernet = frameEthernet(createPacket(44, ext, udp()));
+        final IPv6Frame ip = (IPv6Frame) ethernet.getNextFrame();
+        assertThat(ip.isFragment(), is(false));
+        assertThat(ethernet.getFrame(Protocol.SIP) != null, is(true));
+    }
+
+    /**
+     * We don't reassemble IPv6 fragments so the payload is left alone.
+     */
+    @Test
+    public void testFragment() throws Exception {
+        final byte[] ext = new byte[8];
+        ext[0] = 17;
+        // more fragments
+        ext[3] = 1;
+        final Frame ethernet = frameEthernet(createPacket(44, ext, udp()));
+        final IPv6Frame ip = (IPv6Frame) ethernet.getNextFrame();
+        assertThat(ip.isFragment(), is(true));
+        assertThat(ip.getNextFrame() == null, is(true));
+        assertThat(ip.getFramingError(), is(FramingError.UNSUPPORTED));
+    }
+
+    @Test
+    public void testTruncatedExtensionHeader() throws Exception {
+        final byte[] ext = new byte[8];
+        ext[0] = 17;
+        // claims to be 16 bytes long
+        ext[1] = 1;
+        final FramerManager manager = FramerManager.createInstance();
+        final IPv6Framer framer = new IPv6Framer(manager);
+        final Layer2Frame parent = mock(Layer2Frame.class);
+        assertThat(framer.frame(parent, Buffers.wrap(createPacket(0, ext, null))) == null, is(true));
+        assertThat(manager.getErrorCount(FramingError.TRUNCATED), is(1L));
+    }
+
+    @Test
+    public void testNotVersion6() throws Exception {
+        final byte[] packet = createPacket(17, null, udp());
+        packet[0] = 0x45;
+        final FramerManager manager = FramerManager.createInstance();
+        final IPv6Framer framer = new IPv6Framer(manager);
+        assertThat(framer.frame(mock(Layer2Frame.class), Buffers.wrap(packet)) == null, is(true));
+        assertThat(manager.getErrorCount(FramingError.MALFORMED), is(1L));
+    }
+
+    /**
+     * Media advertised in an SDP with an IPv6 connection address should be
+     * recognized as RTP, just like over IPv4.
+     */
+    @Test
+    public void testRtpFromSdp() throws Exception {
+        final String sdp = "v=0\r\n" + "o=- 1 1 IN IP6 2001:db8::1\r\n" + "s=-\r\n" + "c=IN IP6 2001:db8::1\r\n"
+                + "t=0 0\r\n" + "m=audio 7000 RTP/AVP 0\r\n";
+        final String invite = "INVITE sip:bob@[2001:db8::2] SIP/2.0\r\n" + "Call-ID: ipv6\r\n"
+                + "Content-Type: application/sdp\r\n" + "Content-Length: " + sdp.length() + "\r\n\r\n" + sdp;
+
+        final FramerManager manager = FramerManager.createInstance();
+        manager.getFlowTable().setSdpRequiredForRtp(true);
+        final Frame sip = frameEthernet(manager, createPacket(17, null, udp(5060, 5060, invite.getBytes("UTF-8"))));
+        assertThat(sip.getFrame(Protocol.SDP) != null, is(true));
+        assertThat(manager.getFlowTable().mediaSize(), is(1));
+
+        final byte[] rtp = new byte[172];
+        rtp[0] = (byte) 0x80;
+        final Frame media = frameEthernet(manager, createPacket(17, null, udp(7000, 7002, rtp)));
+        assertThat(media.getFrame(Protocol.RTP) != null, is(true));
+
+        final Frame other = frameEthernet(manager, createPacket(17, null, udp(7004, 7002, rtp)));
+        assertThat(other.getFrame(Protocol.RTP) == null, is(true));
+    }
+
+    @Test
+    public void testAddressToString() throws Exception {
+        assertThat(IPv6Address.toString(0, 0), is("::"));
+        assertThat(IPv6Address.toString(0, 1), is("::1"));
+        assertThat(IPv6Address.toString(0x20010DB800000000L, 0x0000000000000001L), is("2001:db8::1"));
+        assertThat(IPv6Address.toString(0x20010DB800000001L, 0x0000000000010000L), is("2001:db8:0:1::1:0"));
+        assertThat(IPv6Address.toString(0x20010DB800010001L, 0x0001000100010001L), is("2001:db8:1:1:1:1:1:1"));
+        assertThat(IPv6Address.toString(0, IPv6Address.mapIPv4(0x7F000001)), is("::ffff:127.0.0.1"));
+    }
+
+    @Test
+    public void testParseAddress() throws Exception {
+        final long[] result = new long[2];
+        assertThat(IPv6Address.parse(Buffers.wrap("2001:db8::1\r\n"), 0, result), is(true));
+        assertThat(result[0], is(0x20010DB800000000L));
+        assertThat(result[1], is(1L));
+
+        assertThat(IPv6Address.parse(Buffers.wrap("::"), 0, result), is(true));
+        assertThat(result[0], is(0L));
+        assertThat(result[1], is(0L));
+
+        assertThat(IPv6Address.parse(Buffers.wrap("fe80::"), 0, result), is(true));
+        assertThat(result[0], is(0xFE80000000000000L));
+
+        assertThat(IPv6Address.parse(Buffers.wrap("1:2:3:4:5:6:7:8"), 0, result), is(true));
+        assertThat(result[1], is(0x0005000600070008L));
+
+        assertThat(IPv6Address.parse(Buffers.wrap("1:2:3"), 0, result), is(false));
+        assertThat(IPv6Address.parse(Buffers.wrap("1::2::3"), 0, result), is(false));
+        assertThat(IPv6Address.parse(Buffers.wrap("12345::"), 0, result), is(false));
+        assertThat(IPv6Address.parse(Buffers.wrap("::ffff:127.0.0.1"), 0, result), is(false));
+    }
+
+    private Frame frameEthernet(final byte[] ip) throws Exception {
+        return frameEthernet(this.framerManager, ip);
+    }
+
+    private static Frame frameEthernet(final FramerManager manager, final byte[] ip) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[12]);
+        out.write(0x86);
+        out.write(0xdd);
+        out.write(ip);
+        final Layer1Frame parent = mock(Layer1Frame.class);
+        final Packet pkt = mock(Packet.class);
+        when(parent.parse()).thenReturn(pkt);
+        return new EthernetFramer(manager).frame(parent, Buffers.wrap(out.toByteArray()));
+    }
+
+    private byte[] udp() throws Exception {
+        return udp(5060, 5090, this.sipFrameBuffer.getArray());
+    }
+
+    private static byte[] udp(final int srcPort, final int dstPort, final byte[] payload) {
+        final byte[] udp = new byte[8 + payload.length];
+        udp[0] = (byte) (srcPort >>> 8);
+        udp[1] = (byte) srcPort;
+        udp[2] = (byte) (dstPort >>> 8);
+        udp[3] = (byte) dstPort;
+        udp[4] = (byte) (udp.length >>> 8);
+        udp[5] = (byte) udp.length;
+        System.arraycopy(payload, 0, udp, 8, payload.length);
+        return udp;
+    }
+
+    /**
+     * Create an IPv6 packet.
+     *
+     * @param nextHeader the next header field of the fixed header
+     * @param extensionHeaders the raw extension headers, if any
+     * @param payload the upper layer payload, if any
+     */
+    private static byte[] createPacket(final int nextHeader, final byte[] extensionHeaders, final byte[] payload) {
+        final int extLength = extensionHeaders == null ? 0 : extensionHeaders.length;
+        final int payloadLength = payload == null ? 0 : payload.length;
+        final byte[] packet = new byte[40 + extLength + payloadLength];
+        packet[0] = 0x60;
+        packet[4] = (byte) ((extLength + payloadLength) >>> 8);
+        packet[5] = (byte) (extLength + payloadLength);
+        packet[6] = (byte) nextHeader;
+        packet[7] = 64;
+        write(packet, 8, SOURCE);
+        write(packet, 24, DESTINATION);
+        if (extensionHeaders != null) {
+            System.arraycopy(extensionHeaders, 0, packet, 40, extLength);
+        }
+        if (payload != null) {
+            System.arraycopy(payload, 0, packet, 40 + extLength, payloadLength);
+        }
+        return packet;
+    }
+
+    private static void write(final byte[] array, final int offset, final long[] address) {
+        for (int i = 0; i < 8; ++i) {
+            array[offset + i] = (byte) (address[0] >>> (56 - (8 * i)));
+            array[offset + 8 + i] = (byte) (address[1] >>> (56 - (8 * i)));
+        }
+    }
+
+}
@@ -0,0 +1,230 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.framer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aboutsip.buffer.Buffers;
+import com.aboutsip.yajpcap.YajTestBase;
+import com.aboutsip.yajpcap.frame.Frame;
+import com.aboutsip.yajpcap.frame.IPv4Frame;
+import com.aboutsip.yajpcap.frame.Layer2Frame;
+import com.aboutsip.yajpcap.frame.Layer4Frame;
+import com.aboutsip.yajpcap.frame.RtcpFrame;
+import com.aboutsip.yajpcap.frame.UDPFrame;
+import com.aboutsip.yajpcap.packet.rtcp.Bye;
+import com.aboutsip.yajpcap.packet.rtcp.ExtendedReport;
+import com.aboutsip.yajpcap.packet.rtcp.ReceiverReport;
+import com.aboutsip.yajpcap.packet.rtcp.ReportBlock;
+import com.aboutsip.yajpcap.packet.rtcp.RtcpMessage;
+import com.aboutsip.yajpcap.packet.rtcp.RtcpPacket;
+import com.aboutsip.yajpcap.packet.rtcp.SenderReport;
+import com.aboutsip.yajpcap.packet.rtcp.SourceDescription;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class RTCPFramerTest extends YajTestBase {
+
+    /**
+     * SR with one report block, SDES with a CNAME and a BYE with a reason.
+     */
+    private static final byte[] COMPOUND = new byte[] {
+            // SR, 1 report block, length 12
+            (byte) 0x81, (byte) 200, 0x00, 0x0C,
+            0x11, 0x22, 0x33, 0x44, // ssrc
+            (byte) 0xE0, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, // ntp
+            0x00, 0x00, 0x10, 0x00, // rtp timestamp
+            0x00, 0x00, 0x00, 0x64, // packet count
+            0x00, 0x00, 0x3E, (byte) 0x80, // octet count
+            0x55, 0x66, 0x77, (byte) 0x88, // report block ssrc
+            0x40, (byte) 0xFF, (byte) 0xFF, (byte) 0xFE, // fraction lost, cumulative lost (-2)
+            0x00, 0x01, 0x00, 0x10, // highest seq
+            0x00, 0x00, 0x00, 0x20, // jitter
+            0x12, 0x34, 0x56, 0x78, // lsr
+            0x00, 0x01, 0x00, 0x00, // dlsr
+            // SDES, 1 chunk, length 4
+            (byte) 0x81, (byte) 202, 0x00, 0x04,
+            0x11, 0x22, 0x33, 0x44,
+            0x01, 0x07, 'a', 'l', 'i', 'c', 'e', '@', 'x',
+            0x00, 0x00, 0x00,
+            // BYE, 1 source, length 2
+            (byte) 0x81, (byte) 203, 0x00, 0x02,
+            0x11, 0x22, 0x33, 0x44,
+            0x03, 'b', 'y', 'e' };
+
+    /**
+     * RR without report blocks followed by an XR with two blocks.
+     */
+    private static final byte[] RR_XR = new byte[] {
+            (byte) 0x80, (byte) 201, 0x00, 0x01,
+            0x01, 0x02, 0x03, 0x04,
+            (byte) 0x80, (byte) 207, 0x00, 0x05,
+            0x01, 0x02, 0x03, 0x04,
+            0x04, 0x00, 0x00, 0x02, 0x00, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x02, // RRT block
+            0x05, 0x00, 0x00, 0x00 }; // empty DLRR block
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    @Test
+    public void testAccept() throws Exception {
+        final RTCPFramer framer = new RTCPFramer(this.framerManager);
+        assertThat(framer.accept(Buffers.wrap(COMPOUND)), is(true));
+        assertThat(framer.accept(Buffers.wrap(RR_XR)), is(true));
+
+        // the lengths must add up exactly
+        final byte[] extra = new byte[COMPOUND.length + 4];
+        System.arraycopy(COMPOUND, 0, extra, 0, COMPOUND.length);
+        assertThat(framer.accept(Buffers.wrap(extra)), is(false));
+
+        final byte[] rtp = new byte[172];
+        rtp[0] = (byte) 0x80;
+        assertThat(framer.accept(Buffers.wrap(rtp)), is(false));
+    }
+
+    /**
+     * RTCP used to be mistaken for RTP since the version is the same.
+     */
+    @Test
+    public void testNotRtp() throws Exception {
+        final RTPFramer framer = new RTPFramer(this.framerManager);
+        assertThat(framer.accept(Buffers.wrap(COMPOUND)), is(false));
+        assertThat(framer.accept(Buffers.wrap(RR_XR)), is(false));
+        assertThat(RTCPFramer.isMultiplexedRtcp(Buffers.wrap(COMPOUND)), is(true));
+    }
+
+    @Test
+    public void testCompound() throws Exception {
+        final RtcpFrame frame = frame(this.framerManager, COMPOUND);
+        assertThat(frame.getProtocol(), is(Protocol.RTCP));
+        assertThat(frame.getCount(), is(3));
+        assertThat(frame.getNextFrame() == null, is(true));
+
+        final RtcpPacket rtcp = frame.parse();
+        final List<RtcpMessage> messages = rtcp.getMessages();
+        assertThat(messages.size(), is(3));
+
+        final SenderReport sr = (SenderReport) messages.get(0);
+        assertThat(sr.getType(), is(RtcpMessage.SR));
+        assertThat(sr.getLength(), is(52));
+        assertThat(sr.getSsrc(), is(0x11223344L));
+        assertThat(sr.getNtpTimestamp(), is(0xE000000000000001L));
+        assertThat(sr.getRtpTimestamp(), is(4096L));
+        assertThat(sr.getPacketCount(), is(100L));
+        assertThat(sr.getOctetCount(), is(16000L));
+        assertThat(rtcp.getReport() == sr, is(true));
+
+        final List<ReportBlock> blocks = sr.getReportBlocks();
+        assertThat(blocks.size(), is(1));
+        final ReportBlock block = blocks.get(0);
+        assertThat(block.getSsrc(), is(0x55667788L));
+        assertThat(block.getFractionLost(), is(64));
+        assertThat(block.getCumulativeLost(), is(-2));
+        assertThat(block.getExtendedHighestSeqNumber(), is(65552L));
+        assertThat(block.getJitter(), is(32L));
+        assertThat(block.getLastSenderReport(), is(0x12345678L));
+        assertThat(block.getDelaySinceLastSenderReport(), is(65536L));
+
+        final SourceDescription sdes = (SourceDescription) messages.get(1);
+        assertThat(sdes.getSources().size(), is(1));
+        assertThat(sdes.getSources().get(0), is(0x11223344L));
+        assertThat(sdes.getCanonicalName(0x11223344L), is("alice@x"));
+        assertThat(sdes.getItem(0x11223344L, SourceDescription.TOOL) == null, is(true));
+        assertThat(sdes.getCanonicalName(1L) == null, is(true));
+
+        final Bye bye = (Bye) messages.get(2);
+        assertThat(bye.getSources().get(0), is(0x11223344L));
+        assertThat(bye.getReason(), is("bye"));
+    }
+
+    @Test
+    public void testReceiverAndExtendedReport() throws Exception {
+        final RtcpPacket rtcp = frame(this.framerManager, RR_XR).parse();
+        final ReceiverReport rr = rtcp.getReport();
+        assertThat(rr instanceof SenderReport, is(false));
+        assertThat(rr.getSsrc(), is(0x01020304L));
+        assertThat(rr.getReportBlocks().isEmpty(), is(true));
+
+        final ExtendedReport xr = (ExtendedReport) rtcp.getMessages().get(1);
+        assertThat(xr.getSsrc(), is(0x01020304L));
+        assertThat(xr.getReportBlocks().size(), is(2));
+        assertThat(xr.getReportBlocks().get(0).getUnsignedByte(0), is((short) 4));
+        assertThat(xr.getReportBlocks().get(0).capacity(), is(12));
+        assertThat(xr.getReportBlocks().get(1).getUnsignedByte(0), is((short) 5));
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        final FramerManager manager = FramerManager.createInstance();
+        final byte[] truncated = new byte[COMPOUND.length - 4];
+        System.arraycopy(COMPOUND, 0, truncated, 0, truncated.length);
+        assertThat(frame(manager, truncated) == null, is(true));
+        assertThat(manager.getErrorCount(FramingError.TRUNCATED), is(1L));
+    }
+
+    /**
+     * When RTP and RTCP are sharing the same port (RFC 5761) we need to look
+     * at every packet to tell them apart, even though we already know that
+     * the flow is carrying media.
+     */
+    @Test
+    public void testMultiplexed() throws Exception {
+        final FramerManager manager = FramerManager.createInstance();
+        manager.getFlowTable().setSdpRequiredForRtp(true);
+        manager.getFlowTable().learnMedia(0x0A000001, 7000, Protocol.UDP, Protocol.RTP);
+
+        final byte[] rtp = new byte[172];
+        rtp[0] = (byte) 0x80;
+        assertThat(udp(manager, rtp).getNextFrame().getProtocol(), is(Protocol.RTP));
+        assertThat(udp(manager, COMPOUND).getNextFrame().getProtocol(), is(Protocol.RTCP));
+        assertThat(udp(manager, rtp).getNextFrame().getProtocol(), is(Protocol.RTP));
+    }
+
+    private static RtcpFrame frame(final FramerManager manager, final byte[] raw) throws Exception {
+        return (RtcpFrame) new RTCPFramer(manager).frame(mock(Layer4Frame.class), Buffers.wrap(raw));
+    }
+
+    /**
+     * Create a UDP frame from 10.0.0.2:7002 to 10.0.0.1:7000.
+     */
+    private static Frame udp(final FramerManager manager, final byte[] payload) throws Exception {
+        final byte[] ip = new byte[20];
+        ip[0] = 0x45;
+        ip[9] = 17;
+        ip[12] = 10;
+        ip[15] = 2;
+        ip[16] = 10;
+        ip[19] = 1;
+        final IPv4Frame ipFrame = new IPv4Frame(manager, mock(Layer2Frame.class), 5, Buffers.wrap(ip), 0, null);
+
+        final byte[] headers = new byte[] { 0x1B, 0x5A, 0x1B, 0x58, 0, 0, 0, 0 };
+        return new UDPFrame(manager, ipFrame, Buffers.wrap(headers), Buffers.wrap(payload));
+    }
+
+}
@@ -10,6 +10,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.aboutsip.buffer.Buffer;
+import com.aboutsip.buffer.Buffers;
 import com.aboutsip.yajpcap.YajTestBase;
 import com.aboutsip.yajpcap.frame.Layer4Frame;
 import com.aboutsip.yajpcap.frame.SipFrame;
@@ -111,4 +112,21 @@ public class SIPFramerTest extends YajTestBase {
         assertThat(frame.getPayload().readLine(), is((Buffer) null));
     }
 
+    @Test
+    public void testGetContentLength() throws Exception {
+        final int length = this.sipFrameBuffer.capacity();
+        assertThat(SIPFramer.getContentLength(this.sipFrameBuffer.slice(length - 129)), is(129));
+
+        assertThat(SIPFramer.getContentLength(Buffers.wrap("BYE sip:a@b SIP/2.0\r\nl: 3\r\n\r\n")), is(3));
+        assertThat(SIPFramer.getContentLength(Buffers.wrap("BYE sip:a@b SIP/2.0\r\nCONTENT-LENGTH : 0\r\n\r\n")),
+                is(0));
+        assertThat(SIPFramer.getContentLength(Buffers.wrap("BYE sip:a@b SIP/2.0\r\nTo: b\r\n\r\n")), is(0));
+        assertThat(SIPFramer.getContentLength(Buffers.wrap("BYE sip:a@b SIP/2.0\r\nl: 2147483647\r\n\r\n")),
+                is(Integer.MAX_VALUE));
+        assertThat(SIPFramer.getContentLength(Buffers.wrap("BYE sip:a@b SIP/2.0\r\nl: 2147483648\r\n\r\n")),
+                is(-1));
+        assertThat(SIPFramer.getContentLength(Buffers.wrap("BYE sip:a@b SIP/2.0\r\nl: 99999999999999\r\n\r\n")),
+                is(-1));
+    }
+
 }
@@ -69,4 +69,32 @@ public class SllFramerTest extends YajTestBase {
         assertThat(msg.getMethod().toString(), is("INVITE"));
     }
 
+    @Test
+    public void testFrameSll2() throws Exception {
+        final Layer1Frame parent = mock(Layer1Frame.class);
+        final Packet layer1Pkt = mock(Packet.class);
+        when(parent.parse()).thenReturn(layer1Pkt);
+        final Sll2Framer framer = new Sll2Framer(this.framerManager);
+        final Buffer buffer = Buffers.wrap(RawData.toSll2(RawData.rawSLLFrame));
+        assertThat(framer.accept(buffer), is(false));
+
+        final SllFrame frame = (SllFrame) framer.frame(parent, buffer);
+        assertThat(frame.getProtocol(), is(Protocol.SLL2));
+        assertThat(frame.getType(), is(EtherType.IPv4));
+        assertThat(frame.parse().getSourceMacAddress(), is("12:31:38:1B:7B:73"));
+
+        final SipMessage msg = (SipMessage) frame.getFrame(Protocol.SIP).parse();
+        assertThat(msg.getMethod().toString(), is("INVITE"));
+    }
+
+    /**
+     * Probing a buffer that is too short to be an SLL frame shouldn't blow
+     * up.
+     */
+    @Test
+    public void testAcceptShortBuffer() throws Exception {
+        final SllFramer framer = new SllFramer(this.framerManager);
+        assertThat(framer.accept(Buffers.wrap(new byte[] { 0x00, 0x04, 0x00 })), is(false));
+    }
+
 }
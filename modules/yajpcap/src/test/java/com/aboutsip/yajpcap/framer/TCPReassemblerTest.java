@@ -0,0 +1,362 @@
+/**
+ * 
+ */
+package com.aboutsip.yajpcap.framer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aboutsip.yajpcap.FrameHandler;
+import com.aboutsip.yajpcap.Pcap;
+import com.aboutsip.yajpcap.YajTestBase;
+import com.aboutsip.yajpcap.frame.Frame;
+import com.aboutsip.yajpcap.frame.PcapGlobalHeader;
+import com.aboutsip.yajpcap.frame.SipFrame;
+import com.aboutsip.yajpcap.frame.TCPFrame;
+import com.aboutsip.yajpcap.packet.sip.SipMessage;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class TCPReassemblerTest extends YajTestBase {
+
+    private static final int SEQ = 1000;
+
+    private byte[] message;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        this.message = this.sipFrameBuffer.getArray();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    /**
+     * The INVITE in this pcap is split across three segments.
+     */
+    @Test
+    public void testFragmentedTcpSip() throws Exception {
+        final Pcap pcap = Pcap.openStream(YajTestBase.class.getResourceAsStream("fragmented_tcp_sip.pcap"));
+        final List<SipFrame> frames = loop(pcap);
+        assertThat(frames.size(), is(6));
+
+        final SipMessage invite = frames.get(0).parse();
+        assertThat(invite.isInvite(), is(true));
+        assertThat(frames.get(0).getHeaders().capacity() > 4000, is(true));
+        assertThat(frames.get(0).getPayload().capacity(), is(137));
+        assertThat(frames.get(1).parse().isResponse(), is(true));
+        assertThat(frames.get(2).parse().isResponse(), is(true));
+        assertThat(frames.get(3).parse().isAck(), is(true));
+        assertThat(frames.get(4).parse().isBye(), is(true));
+        assertThat(frames.get(5).parse().isResponse(), is(true));
+
+        // both sides sent a fin
+        assertThat(pcap.getTCPReassembler().getStreamCount(), is(0));
+        assertThat(pcap.getTCPReassembler().getMessageCount(), is(6L));
+    }
+
+    /**
+     * Two messages in the same segment.
+     */
+    @Test
+    public void testCoalesced() throws Exception {
+        final byte[] data = new byte[2 * this.message.length];
+        System.arraycopy(this.message, 0, data, 0, this.message.length);
+        System.arraycopy(this.message, 0, data, this.message.length, this.message.length);
+        final List<SipFrame> frames = loop(segment(SEQ, data, 0, data.length));
+        assertThat(frames.size(), is(2));
+        assertThat(frames.get(0).getPayload().capacity(), is(129));
+        assertThat(frames.get(1).getPayload().capacity(), is(129));
+    }
+
+    /**
+     * Segments arriving out of order and retransmissions of data we already
+     * have seen.
+     */
+    @Test
+    public void testOutOfOrderAndRetransmission() throws Exception {
+        final int length = this.message.length;
+        final List<SipFrame> frames = loop(segment(SEQ, this.message, 0, 100),
+                segment(SEQ + 300, this.message, 300, length),
+                segment(SEQ, this.message, 0, 100),
+                segment(SEQ + 50, this.message, 50, 300),
+                segment(SEQ, this.message, 0, length));
+        assertThat(frames.size(), is(1));
+        assertThat(frames.get(0).getPayload().getArray(), is(this.sipFrameBuffer.slice(length - 129, length)
+                .getArray()));
+        assertThat(frames.get(0).parse().isInvite(), is(true));
+    }
+
+    /**
+     * A message trickling in a few bytes at a time, with the end of the
+     * headers and the Content-Length header split across segments, followed
+     * by the beginning of the next message.
+     */
+    @Test
+    public void testSmallSegments() throws Exception {
+        final int length = this.message.length;
+        final byte[] data = new byte[length + 10];
+        System.arraycopy(this.message, 0, data, 0, length);
+        System.arraycopy(this.message, 0, data, length, 10);
+
+        final List<byte[]> segments = new ArrayList<byte[]>();
+        for (int i = 0; i < data.length; i += 7) {
+            segments.add(segment(SEQ + i, data, i, Math.min(data.length, i + 7)));
+        }
+        final Pcap pcap = Pcap.openStream(createPcap(segments.toArray(new byte[segments.size()][])));
+        final List<SipFrame> frames = loop(pcap);
+        assertThat(frames.size(), is(1));
+        assertThat(frames.get(0).getPayload().getArray(), is(this.sipFrameBuffer.slice(length - 129, length)
+                .getArray()));
+        assertThat(frames.get(0).parse().isInvite(), is(true));
+        assertThat(pcap.getTCPReassembler().getDroppedBytes(), is(0L));
+    }
+
+    /**
+     * The segment carrying the fin arrives before one of the segments that
+     * came before it, which must not be lost.
+     */
+    @Test
+    public void testReorderedBeforeFin() throws Exception {
+        final int length = this.message.length;
+        final Pcap pcap = Pcap.openStream(createPcap(segment(SEQ, this.message, 0, 100),
+                fin(segment(SEQ + 300, this.message, 300, length)),
+                segment(SEQ + 100, this.message, 100, 300)));
+        final List<SipFrame> frames = loop(pcap);
+        assertThat(frames.size(), is(1));
+        assertThat(frames.get(0).parse().isInvite(), is(true));
+        assertThat(pcap.getTCPReassembler().getStreamCount(), is(0));
+    }
+
+    /**
+     * Same as above but with a fin that doesn't carry any data.
+     */
+    @Test
+    public void testReorderedBeforeEmptyFin() throws Exception {
+        final int length = this.message.length;
+        final Pcap pcap = Pcap.openStream(createPcap(segment(SEQ, this.message, 0, 100),
+                fin(segment(SEQ + length, this.message, 0, 0)),
+                segment(SEQ + 100, this.message, 100, length)));
+        final List<SipFrame> frames = loop(pcap);
+        assertThat(frames.size(), is(1));
+        assertThat(pcap.getTCPReassembler().getStreamCount(), is(0));
+    }
+
+    /**
+     * A Content-Length that overflows, or is larger than we are willing to
+     * buffer, makes the message malformed. The stream starts over with the
+     * next message.
+     */
+    @Test
+    public void testOversizedContentLength() throws Exception {
+        assertOversizedContentLength("2147483647");
+        assertOversizedContentLength("99999999999");
+        assertOversizedContentLength(Integer.toString(TCPReassembler.DEFAULT_MAX_BYTES));
+    }
+
+    private void assertOversizedContentLength(final String contentLength) throws Exception {
+        final byte[] bad = ("INVITE sip:a@b SIP/2.0\r\nContent-Length: " + contentLength + "\r\n\r\nabc")
+                .getBytes("UTF-8");
+        final int length = this.message.length;
+        final Pcap pcap = Pcap.openStream(createPcap(segment(SEQ, bad, 0, bad.length),
+                segment(SEQ + bad.length, this.message, 0, length)));
+        final List<FramingError> errors = new ArrayList<FramingError>();
+        final List<SipFrame> frames = new ArrayList<SipFrame>();
+        pcap.loop(new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                try {
+                    final TCPFrame tcp = (TCPFrame) frame.getFrame(Protocol.TCP);
+                    for (final Frame sip : tcp.getApplicationFrames()) {
+                        frames.add((SipFrame) sip);
+                    }
+                    errors.add(tcp.getFramingError());
+                } catch (final IOException e) {
+                    fail(e.getMessage());
+                }
+            }
+        });
+        assertThat(errors.get(0), is(FramingError.MALFORMED));
+        assertThat(errors.get(1) == null, is(true));
+        assertThat(frames.size(), is(1));
+        assertThat(frames.get(0).parse().isInvite(), is(true));
+        assertThat(pcap.getTCPReassembler().getDroppedBytes(), is((long) bad.length));
+    }
+
+    /**
+     * CRLF keep-alives between the messages are skipped.
+     */
+    @Test
+    public void testKeepAlive() throws Exception {
+        final int length = this.message.length;
+        final List<SipFrame> frames = loop(segment(SEQ, "\r\n\r\n".getBytes(), 0, 4),
+                segment(SEQ + 4, this.message, 0, length));
+        assertThat(frames.size(), is(1));
+    }
+
+    /**
+     * A segment is missing so we'll never be able to deliver anything after it,
+     * at least not until we run out of space and start over.
+     */
+    @Test
+    public void testMaxBytes() throws Exception {
+        final int length = this.message.length;
+        final Pcap pcap = Pcap.openStream(createPcap(segment(SEQ, this.message, 0, length),
+                segment(SEQ + length + 100, this.message, 100, length),
+                segment(SEQ + (2 * length), this.message, 0, length),
+                segment(SEQ + (3 * length), this.message, 0, length)));
+        pcap.getTCPReassembler().setMaxBytes(length);
+        final List<SipFrame> frames = loop(pcap);
+        assertThat(frames.size(), is(2));
+        assertThat(pcap.getTCPReassembler().getDroppedBytes(), is((long) ((2 * length) - 100)));
+    }
+
+    /**
+     * The capture started in the middle of a message. We don't know that the
+     * connection is carrying SIP until we see the beginning of the next one.
+     */
+    @Test
+    public void testMidStream() throws Exception {
+        final int length = this.message.length;
+        final Pcap pcap = Pcap.openStream(createPcap(segment(SEQ + 100, this.message, 100, length),
+                segment(SEQ + length, this.message, 0, length)));
+        final List<SipFrame> frames = loop(pcap);
+        assertThat(frames.size(), is(1));
+        assertThat(pcap.getTCPReassembler().getStreamCount(), is(1));
+    }
+
+    @Test
+    public void testIdleTimeout() throws Exception {
+        final Pcap pcap = Pcap.openStream(createPcap(new int[] { 0, 400 }, segment(SEQ, this.message, 0, 100),
+                segment(SEQ, this.message, 0, 100, 5062)));
+        loop(pcap);
+        assertThat(pcap.getTCPReassembler().getStreamCount(), is(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeMaxBytes() throws Exception {
+        this.framerManager.getTCPReassembler().setMaxBytes(-1);
+    }
+
+    private List<SipFrame> loop(final byte[]... packets) throws IOException {
+        return loop(Pcap.openStream(createPcap(packets)));
+    }
+
+    private static List<SipFrame> loop(final Pcap pcap) throws IOException {
+        final List<SipFrame> frames = new ArrayList<SipFrame>();
+        pcap.loop(new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                try {
+                    final TCPFrame tcp = (TCPFrame) frame.getFrame(Protocol.TCP);
+                    for (final Frame sip : tcp.getApplicationFrames()) {
+                        frames.add((SipFrame) sip);
+                    }
+                } catch (final IOException e) {
+                    fail(e.getMessage());
+                }
+            }
+        });
+        return frames;
+    }
+
+    private static byte[] segment(final int seq, final byte[] data, final int start, final int stop) {
+        return segment(seq, data, start, stop, 5060);
+    }
+
+    /**
+     * Create an Ethernet/IPv4/TCP packet with the given part of the data as
+     * its payload.
+     */
+    private static byte[] segment(final int seq, final byte[] data, final int start, final int stop,
+            final int srcPort) {
+        final int length = stop - start;
+        final byte[] packet = new byte[14 + 20 + 20 + length];
+        packet[12] = 0x08;
+        packet[13] = 0x00;
+
+        packet[14] = 0x45;
+        final int ipLength = 20 + 20 + length;
+        packet[16] = (byte) (ipLength >> 8);
+        packet[17] = (byte) ipLength;
+        packet[22] = 64;
+        packet[23] = 6;
+        packet[26] = 10;
+        packet[29] = 1;
+        packet[30] = 10;
+        packet[33] = 2;
+
+        packet[34] = (byte) (srcPort >> 8);
+        packet[35] = (byte) srcPort;
+        packet[36] = (byte) (5090 >> 8);
+        packet[37] = (byte) 5090;
+        packet[38] = (byte) (seq >> 24);
+        packet[39] = (byte) (seq >> 16);
+        packet[40] = (byte) (seq >> 8);
+        packet[41] = (byte) seq;
+        packet[46] = 0x50;
+        packet[47] = 0x18;
+        System.arraycopy(data, start, packet, 54, length);
+        return packet;
+    }
+
+    /**
+     * Set the fin flag of a packet created through
+     * {@link #segment(int, byte[], int, int)}.
+     */
+    private static byte[] fin(final byte[] packet) {
+        packet[47] |= 0x01;
+        return packet;
+    }
+
+    private static InputStream createPcap(final byte[]... packets) throws IOException {
+        return createPcap(new int[packets.length], packets);
+    }
+
+    /**
+     * Create a little endian pcap with the packets captured at the given
+     * times, in seconds.
+     */
+    private static InputStream createPcap(final int[] seconds, final byte[]... packets) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PcapGlobalHeader.createDefaultHeader().write(out);
+        for (int i = 0; i < packets.length; ++i) {
+            final byte[] header = new byte[16];
+            header[0] = (byte) seconds[i];
+            header[1] = (byte) (seconds[i] >> 8);
+            header[8] = (byte) packets[i].length;
+            header[9] = (byte) (packets[i].length >> 8);
+            header[12] = (byte) packets[i].length;
+            header[13] = (byte) (packets[i].length >> 8);
+            out.write(header);
+            out.write(packets[i]);
+        }
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+}
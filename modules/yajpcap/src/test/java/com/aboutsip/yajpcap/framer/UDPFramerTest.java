@@ -53,4 +53,13 @@ public class UDPFramerTest extends YajTestBase {
         assertThat(frame.getDestinationPort(), is(5090));
     }
 
+    @Test
+    public void testTruncated() throws Exception {
+        final IPFrame ipFrame = mock(IPFrame.class);
+        final long count = this.framerManager.getErrorCount(FramingError.TRUNCATED);
+        final UDPFramer framer = new UDPFramer(this.framerManager);
+        assertThat(framer.frame(ipFrame, this.udpFrameBuffer.slice(7)) == null, is(true));
+        assertThat(this.framerManager.getErrorCount(FramingError.TRUNCATED), is(count + 1));
+    }
+
 }
@@ -0,0 +1,262 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.hep;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aboutsip.buffer.Buffers;
+import com.aboutsip.yajpcap.FrameHandler;
+import com.aboutsip.yajpcap.Pcap;
+import com.aboutsip.yajpcap.PcapOutputStream;
+import com.aboutsip.yajpcap.YajTestBase;
+import com.aboutsip.yajpcap.frame.Frame;
+import com.aboutsip.yajpcap.frame.IPv4Frame;
+import com.aboutsip.yajpcap.frame.IPv6Frame;
+import com.aboutsip.yajpcap.frame.PcapFrame;
+import com.aboutsip.yajpcap.frame.SipFrame;
+import com.aboutsip.yajpcap.frame.UDPFrame;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class HepDecoderTest extends YajTestBase {
+
+    private HepDecoder decoder;
+
+    /**
+     * The HEP packets of all the messages in sipp.pcap
+     */
+    private List<byte[]> packets;
+
+    /**
+     * The frames the packets were created from.
+     */
+    private List<Frame> frames;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        this.decoder = new HepDecoder(this.framerManager);
+        this.frames = new ArrayList<Frame>();
+        Pcap.openStream(YajTestBase.class.getResourceAsStream("sipp.pcap")).loop(new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                HepDecoderTest.this.frames.add(frame);
+            }
+        });
+
+        this.packets = new ArrayList<byte[]>();
+        for (final Frame frame : this.frames) {
+            this.packets.add(encode(frame));
+        }
+    }
+
+    /**
+     * We should get the same SIP messages, addresses, ports and arrival times
+     * as in the pcap the HEP packets were created from.
+     */
+    @Test
+    public void testDecode() throws Exception {
+        for (int i = 0; i < this.packets.size(); ++i) {
+            final Frame expected = this.frames.get(i);
+            final PcapFrame frame = this.decoder.decode(ByteBuffer.wrap(this.packets.get(i)));
+            assertThat(frame.getArrivalTime(), is(expected.getArrivalTime()));
+
+            final IPv4Frame ip = (IPv4Frame) frame.getFrame(Protocol.IPv4);
+            final IPv4Frame expectedIp = (IPv4Frame) expected.getFrame(Protocol.IPv4);
+            assertThat(ip.getRawSourceIp(), is(expectedIp.getRawSourceIp()));
+            assertThat(ip.getRawDestinationIp(), is(expectedIp.getRawDestinationIp()));
+
+            final UDPFrame udp = (UDPFrame) frame.getFrame(Protocol.UDP);
+            final UDPFrame expectedUdp = (UDPFrame) expected.getFrame(Protocol.UDP);
+            assertThat(udp.getSourcePort(), is(expectedUdp.getSourcePort()));
+            assertThat(udp.getDestinationPort(), is(expectedUdp.getDestinationPort()));
+
+            final SipFrame sip = (SipFrame) frame.getFrame(Protocol.SIP);
+            final SipFrame expectedSip = (SipFrame) expected.getFrame(Protocol.SIP);
+            assertThat(sip.getInitialLine(), is(expectedSip.getInitialLine()));
+            assertThat(sip.parse().toString(), is(expectedSip.parse().toString()));
+        }
+    }
+
+    /**
+     * The frames must be possible to write to a pcap and then read back.
+     */
+    @Test
+    public void testWriteToPcap() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final PcapOutputStream pcapOut = PcapOutputStream.create(HepDecoder.getPcapHeader(), out);
+        for (final byte[] packet : this.packets) {
+            this.decoder.decode(ByteBuffer.wrap(packet)).write(pcapOut);
+        }
+        pcapOut.close();
+
+        final MethodCalculator calculator = new MethodCalculator();
+        Pcap.openStream(new java.io.ByteArrayInputStream(out.toByteArray())).loop(calculator);
+        assertThat(calculator.total, is(30));
+        assertThat(calculator.invite, is(5));
+        assertThat(calculator.bye, is(5));
+    }
+
+    @Test
+    public void testIPv6() throws Exception {
+        final byte[] source = new byte[16];
+        final byte[] destination = new byte[16];
+        source[15] = 1;
+        destination[0] = (byte) 0xFE;
+        destination[1] = (byte) 0x80;
+        destination[15] = 2;
+        final byte[] sip = toBytes(this.frames.get(0).getFrame(Protocol.UDP));
+        final byte[] packet = encode(10, source, destination, 5060, 5080, 1340495109, 792454, sip, true);
+
+        final PcapFrame frame = this.decoder.decode(ByteBuffer.wrap(packet));
+        assertThat(frame.getArrivalTime(), is(1340495109792454L));
+        final IPv6Frame ip = (IPv6Frame) frame.getFrame(Protocol.IPv6);
+        assertThat(ip.getRawSourceIpLow(), is(1L));
+        assertThat(ip.getRawDestinationIpLow(), is(2L));
+        assertThat(((UDPFrame) frame.getFrame(Protocol.UDP)).getDestinationPort(), is(5080));
+        assertThat(((SipFrame) frame.getFrame(Protocol.SIP)).parse().isInvite(), is(true));
+    }
+
+    /**
+     * Keep alives etc don't carry a payload so there is no frame.
+     */
+    @Test
+    public void testNoPayload() throws Exception {
+        final byte[] packet = encode(2, new byte[4], new byte[4], 5060, 5060, 1, 1, new byte[0], false);
+        assertThat(this.decoder.decode(ByteBuffer.wrap(packet)), nullValue());
+    }
+
+    /**
+     * Anything but SIP, e.g. the RTCP reports some agents send, is skipped
+     * while a packet without a protocol type is assumed to be SIP.
+     */
+    @Test
+    public void testProtocolType() throws Exception {
+        // the header followed by the ip family, ip protocol, addresses, ports
+        // and time stamp chunks
+        final int chunk = 6 + 7 + 7 + 10 + 10 + 8 + 8 + 10 + 10;
+        final byte[] packet = this.packets.get(0);
+        assertThat(packet[chunk + 3], is((byte) 11));
+        assertThat(packet[chunk + 6], is((byte) HepDecoder.PROTOCOL_TYPE_SIP));
+
+        final byte[] rtcp = packet.clone();
+        rtcp[chunk + 6] = 5;
+        assertThat(this.decoder.decode(ByteBuffer.wrap(rtcp)), nullValue());
+
+        final byte[] none = packet.clone();
+        none[chunk + 3] = (byte) 0xFF;
+        final PcapFrame frame = this.decoder.decode(ByteBuffer.wrap(none));
+        assertThat(((SipFrame) frame.getFrame(Protocol.SIP)).parse().isInvite(), is(true));
+    }
+
+    @Test
+    public void testCorrupt() throws Exception {
+        assertCorrupt("HEP2hello world".getBytes());
+        assertCorrupt("HEP3".getBytes());
+
+        final byte[] packet = this.packets.get(0);
+
+        // the total length is larger than the packet
+        assertCorrupt(Arrays.copyOf(packet, packet.length - 1));
+
+        // the length of the first chunk, the ip family, is too short
+        final byte[] chunk = packet.clone();
+        chunk[11] = 5;
+        assertCorrupt(chunk);
+
+        // the ip family is neither ipv4 or ipv6
+        final byte[] family = packet.clone();
+        family[12] = 7;
+        assertCorrupt(family);
+    }
+
+    private void assertCorrupt(final byte[] packet) {
+        try {
+            this.decoder.decode(ByteBuffer.wrap(packet));
+            fail("Expected an IOException");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Create the HEP packet for the UDP payload of a frame in sipp.pcap.
+     */
+    static byte[] encode(final Frame frame) throws IOException {
+        final IPv4Frame ip = (IPv4Frame) frame.getFrame(Protocol.IPv4);
+        final UDPFrame udp = (UDPFrame) frame.getFrame(Protocol.UDP);
+        final byte[] source = ByteBuffer.allocate(4).putInt(ip.getRawSourceIp()).array();
+        final byte[] destination = ByteBuffer.allocate(4).putInt(ip.getRawDestinationIp()).array();
+        final long time = frame.getArrivalTime();
+        return encode(2, source, destination, udp.getSourcePort(), udp.getDestinationPort(), time / 1000000,
+                time % 1000000, toBytes(udp), false);
+    }
+
+    /**
+     * Create a HEPv3 packet.
+     *
+     * @param vendorChunk
+     *            whether to add a vendor specific chunk, which should be
+     *            ignored.
+     */
+    static byte[] encode(final int family, final byte[] source, final byte[] destination, final int sourcePort,
+            final int destinationPort, final long seconds, final long microSeconds, final byte[] payload,
+            final boolean vendorChunk) {
+        final ByteBuffer buffer = ByteBuffer.allocate(1024 + payload.length);
+        buffer.put("HEP3".getBytes());
+        buffer.putShort((short) 0);
+        chunk(buffer, 0, 1, new byte[] { (byte) family });
+        chunk(buffer, 0, 2, new byte[] { 17 });
+        chunk(buffer, 0, family == 2 ? 3 : 5, source);
+        chunk(buffer, 0, family == 2 ? 4 : 6, destination);
+        if (vendorChunk) {
+            chunk(buffer, 0x0020, 1, new byte[] { 1, 2, 3 });
+        }
+        chunk(buffer, 0, 7, ByteBuffer.allocate(2).putShort((short) sourcePort).array());
+        chunk(buffer, 0, 8, ByteBuffer.allocate(2).putShort((short) destinationPort).array());
+        chunk(buffer, 0, 9, ByteBuffer.allocate(4).putInt((int) seconds).array());
+        chunk(buffer, 0, 10, ByteBuffer.allocate(4).putInt((int) microSeconds).array());
+        chunk(buffer, 0, 11, new byte[] { HepDecoder.PROTOCOL_TYPE_SIP });
+        chunk(buffer, 0, 12, ByteBuffer.allocate(4).putInt(2001).array());
+        if (payload.length > 0) {
+            chunk(buffer, 0, 15, payload);
+        }
+        buffer.putShort(4, (short) buffer.position());
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static void chunk(final ByteBuffer buffer, final int vendor, final int type, final byte[] value) {
+        buffer.putShort((short) vendor);
+        buffer.putShort((short) type);
+        buffer.putShort((short) (6 + value.length));
+        buffer.put(value);
+    }
+
+    private static byte[] toBytes(final Frame frame) throws IOException {
+        final ByteBuffer payload = Buffers.toByteBuffer(frame.getPayload());
+        final byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return bytes;
+    }
+
+}
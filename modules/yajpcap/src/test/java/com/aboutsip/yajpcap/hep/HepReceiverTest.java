@@ -0,0 +1,122 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.hep;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aboutsip.yajpcap.FrameHandler;
+import com.aboutsip.yajpcap.Pcap;
+import com.aboutsip.yajpcap.YajTestBase;
+import com.aboutsip.yajpcap.frame.Frame;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class HepReceiverTest extends YajTestBase {
+
+    private List<byte[]> packets;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        this.packets = new ArrayList<byte[]>();
+        Pcap.openStream(YajTestBase.class.getResourceAsStream("sipp.pcap")).loop(new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                try {
+                    HepReceiverTest.this.packets.add(HepDecoderTest.encode(frame));
+                } catch (final Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Send all the messages of sipp.pcap, along with some garbage, over the
+     * loopback interface and make sure we get them all.
+     */
+    @Test(timeout = 10000)
+    public void testReceive() throws Exception {
+        final Counter counter = new Counter();
+        final HepReceiver receiver = HepReceiver.open(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0),
+                counter);
+        final DatagramChannel sender = DatagramChannel.open();
+        sender.connect(receiver.getLocalAddress());
+
+        sender.write(ByteBuffer.wrap("not a hep packet".getBytes()));
+        for (final byte[] packet : this.packets) {
+            sender.write(ByteBuffer.wrap(packet));
+        }
+        sender.close();
+
+        counter.await(30);
+        receiver.close();
+        assertThat(receiver.getReceivedCount(), is(30L));
+        assertThat(receiver.getMalformedCount(), is(1L));
+        assertThat(counter.calculator.invite, is(5));
+        assertThat(counter.calculator.bye, is(5));
+        assertThat(counter.concurrent, is(false));
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        final HepReceiver receiver = HepReceiver.open(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0),
+                new Counter());
+        receiver.close();
+        receiver.close();
+        assertThat(receiver.getReceivedCount(), is(0L));
+    }
+
+    /**
+     * Counts the SIP messages and keeps track of whether it ever is called
+     * by more than one thread at a time.
+     */
+    private static class Counter implements FrameHandler {
+
+        private final MethodCalculator calculator = new MethodCalculator();
+
+        private int inside;
+
+        private boolean concurrent;
+
+        @Override
+        public void nextFrame(final Frame frame) {
+            synchronized (this) {
+                if (++this.inside > 1) {
+                    this.concurrent = true;
+                }
+            }
+
+            this.calculator.nextFrame(frame);
+
+            synchronized (this) {
+                --this.inside;
+                notifyAll();
+            }
+        }
+
+        private synchronized void await(final int count) throws InterruptedException {
+            while (this.calculator.total < count) {
+                wait();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,245 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.index;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aboutsip.yajpcap.FrameHandler;
+import com.aboutsip.yajpcap.Pcap;
+import com.aboutsip.yajpcap.YajTestBase;
+import com.aboutsip.yajpcap.frame.Frame;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class TimeIndexTest extends YajTestBase {
+
+    private static final long FIRST = 1340495109792454L;
+
+    private File capture;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        this.capture = File.createTempFile("sipp", ".pcap");
+        final InputStream in = YajTestBase.class.getResourceAsStream("sipp.pcap");
+        final OutputStream out = new FileOutputStream(this.capture);
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        out.close();
+        in.close();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+        TimeIndex.getSidecar(this.capture).delete();
+        this.capture.delete();
+    }
+
+    /**
+     * sipp.pcap contains 30 records spread out over 6 seconds.
+     */
+    @Test
+    public void testBuild() throws Exception {
+        final TimeIndex index = TimeIndex.build(this.capture, TimeIndex.DEFAULT_BUCKET_SIZE);
+        assertThat(index.size(), is(6));
+        assertThat(index.getTime(0), is(FIRST));
+        assertThat(index.getOffset(0), is(24L));
+        assertThat(index.getCaptureLength(), is(this.capture.length()));
+
+        assertThat(index.find(0), is(24L));
+        assertThat(index.find(FIRST), is(24L));
+        assertThat(index.find(1340495111500000L), is(index.getOffset(1)));
+        assertThat(index.find(1340495111792688L), is(index.getOffset(2)));
+        assertThat(index.find(Long.MAX_VALUE), is(index.getOffset(5)));
+    }
+
+    @Test
+    public void testWindow() throws Exception {
+        final Pcap pcap = Pcap.openFile(this.capture);
+        final List<Frame> frames = new ArrayList<Frame>();
+        pcap.loop(1340495111000000L, 1340495113000000L, new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                frames.add(frame);
+            }
+        });
+        pcap.close();
+
+        assertThat(frames.size(), is(12));
+        assertThat(frames.get(0).getArrivalTime(), is(1340495111792688L));
+        assertThat(frames.get(11).getArrivalTime(), is(1340495112795335L));
+        assertThat(TimeIndex.getSidecar(this.capture).isFile(), is(true));
+    }
+
+    /**
+     * The sidecar file should be read back as is, unless it was built from
+     * another version of the capture.
+     */
+    @Test
+    public void testSidecar() throws Exception {
+        final File sidecar = TimeIndex.getSidecar(this.capture);
+        final TimeIndex index = TimeIndex.load(this.capture);
+        assertThat(sidecar.isFile(), is(true));
+
+        final TimeIndex read = TimeIndex.read(sidecar);
+        assertThat(read.size(), is(index.size()));
+        for (int i = 0; i < index.size(); ++i) {
+            assertThat(read.getTime(i), is(index.getTime(i)));
+            assertThat(read.getOffset(i), is(index.getOffset(i)));
+        }
+
+        new TimeIndexer(TimeIndex.DEFAULT_BUCKET_SIZE).getIndex(17).write(sidecar);
+        assertThat(TimeIndex.load(this.capture).size(), is(6));
+    }
+
+    /**
+     * A truncated or corrupt sidecar file is simply built again, and
+     * rewritten, instead of making the seek fail.
+     */
+    @Test
+    public void testBrokenSidecar() throws Exception {
+        final File sidecar = TimeIndex.getSidecar(this.capture);
+        TimeIndex.load(this.capture);
+        final byte[] good = read(sidecar);
+
+        // truncated in the middle of the entries
+        assertBrokenSidecar(Arrays.copyOf(good, good.length - 5), good);
+
+        // just a piece of the header
+        assertBrokenSidecar(Arrays.copyOf(good, 10), good);
+
+        // the count says there are way more entries than there are
+        final byte[] count = good.clone();
+        count[24] = 0x7F;
+        assertBrokenSidecar(count, good);
+
+        // an offset beyond the end of the capture
+        final byte[] offset = good.clone();
+        offset[28 + 8] = 0x7F;
+        assertBrokenSidecar(offset, good);
+
+        // not a time index at all
+        final byte[] magic = good.clone();
+        magic[0] = 0;
+        assertBrokenSidecar(magic, good);
+
+        // and through the pcap, which is what seeking does
+        write(sidecar, Arrays.copyOf(good, good.length - 5));
+        final Pcap pcap = Pcap.openFile(this.capture);
+        final int[] looped = new int[1];
+        pcap.loop(1340495111000000L, 1340495113000000L, new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                ++looped[0];
+            }
+        });
+        pcap.close();
+        assertThat(looped[0], is(12));
+        assertThat(Arrays.equals(read(sidecar), good), is(true));
+    }
+
+    private void assertBrokenSidecar(final byte[] broken, final byte[] good) throws Exception {
+        final File sidecar = TimeIndex.getSidecar(this.capture);
+        write(sidecar, broken);
+        try {
+            TimeIndex.read(sidecar);
+            fail("Expected an IOException");
+        } catch (final IOException e) {
+            // expected
+        }
+
+        final TimeIndex index = TimeIndex.load(this.capture);
+        assertThat(index.size(), is(6));
+        assertThat(index.getOffset(0), is(24L));
+        assertThat(Arrays.equals(read(sidecar), good), is(true));
+    }
+
+    private static byte[] read(final File file) throws IOException {
+        final byte[] data = new byte[(int) file.length()];
+        final DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(data);
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    private static void write(final File file, final byte[] data) throws IOException {
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Building the index while looping should give the same index as the
+     * header only pass does.
+     */
+    @Test
+    public void testIndexWhileLooping() throws Exception {
+        final TimeIndexer indexer = new TimeIndexer(TimeIndex.DEFAULT_BUCKET_SIZE);
+        final Pcap pcap = Pcap.openStream(YajTestBase.class.getResourceAsStream("sipp.pcap"));
+        pcap.setTimeIndexer(indexer);
+        final int[] count = new int[1];
+        pcap.loop(new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                ++count[0];
+            }
+        });
+        assertThat(count[0], is(30));
+
+        final TimeIndex expected = TimeIndex.build(this.capture, TimeIndex.DEFAULT_BUCKET_SIZE);
+        final TimeIndex index = indexer.getIndex(this.capture.length());
+        assertThat(index.size(), is(expected.size()));
+        for (int i = 0; i < index.size(); ++i) {
+            assertThat(index.getTime(i), is(expected.getTime(i)));
+            assertThat(index.getOffset(i), is(expected.getOffset(i)));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSeekStream() throws Exception {
+        Pcap.openStream(YajTestBase.class.getResourceAsStream("sipp.pcap")).seek(FIRST);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadBucketSize() throws Exception {
+        new TimeIndexer(0);
+    }
+
+}
@@ -0,0 +1,199 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.metrics;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aboutsip.yajpcap.Pcap;
+import com.aboutsip.yajpcap.YajTestBase;
+import com.aboutsip.yajpcap.framer.FramingError;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class PipelineMetricsTest extends YajTestBase {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        PipelineMetrics.setEnabled(true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        PipelineMetrics.setEnabled(false);
+        super.tearDown();
+    }
+
+    /**
+     * Loop over sipp.pcap and make sure that everything we did shows up in the
+     * metrics.
+     */
+    @Test
+    public void testLoop() throws Exception {
+        final PipelineMetrics metrics = PipelineMetrics.getInstance();
+        final MetricsSnapshot before = metrics.snapshot();
+        final MethodCalculator calculator = new MethodCalculator();
+        Pcap.openStream(YajTestBase.class.getResourceAsStream("sipp.pcap")).loop(calculator);
+        final MetricsSnapshot delta = metrics.snapshot().since(before);
+
+        assertThat(calculator.total, is(30));
+        assertThat(delta.getFrameCount(Protocol.PCAP), is(30L));
+        assertThat(delta.getFrameCount(Protocol.SIP), is(30L));
+        assertThat(delta.getByteCount(Protocol.PCAP), is(size("sipp.pcap") - 24 - (30 * 16)));
+        assertThat(delta.getSipFramingTime().getCount(), is(30L));
+        assertThat(delta.getSipParseTime().getCount(), is(30L));
+        assertThat(delta.getAcceptHits(Protocol.SIP) > 0, is(true));
+        assertThat(delta.getMalformedCount(), is(0L));
+        assertThat(delta.getInterval() > 0, is(true));
+        assertThat(delta.getByteRate(Protocol.PCAP) > 0, is(true));
+    }
+
+    /**
+     * Nothing is collected while the metrics are turned off.
+     */
+    @Test
+    public void testDisabled() throws Exception {
+        PipelineMetrics.setEnabled(false);
+        final PipelineMetrics metrics = PipelineMetrics.getInstance();
+        final MetricsSnapshot before = metrics.snapshot();
+        Pcap.openStream(YajTestBase.class.getResourceAsStream("sipp.pcap")).loop(new MethodCalculator());
+        this.framerManager.reportError(this.defaultPcapFrame, FramingError.TRUNCATED);
+        final MetricsSnapshot delta = metrics.snapshot().since(before);
+
+        assertThat(PipelineMetrics.isEnabled(), is(false));
+        assertThat(delta.getFrameCount(Protocol.PCAP), is(0L));
+        assertThat(delta.getSipFramingTime().getCount(), is(0L));
+        assertThat(delta.getSipParseTime().getCount(), is(0L));
+        assertThat(delta.getAcceptHits(Protocol.SIP), is(0L));
+        assertThat(delta.getMalformedCount(), is(0L));
+    }
+
+    @Test
+    public void testMalformed() throws Exception {
+        final MetricsSnapshot before = PipelineMetrics.getInstance().snapshot();
+        this.framerManager.reportError(this.defaultPcapFrame, FramingError.TRUNCATED);
+        final MetricsSnapshot delta = PipelineMetrics.getInstance().snapshot().since(before);
+        assertThat(delta.getMalformedCount(FramingError.TRUNCATED), is(1L));
+        assertThat(delta.getMalformedCount(), is(1L));
+    }
+
+    /**
+     * No update may be lost when many threads update the same counter.
+     */
+    @Test(timeout = 10000)
+    public void testStripedCounters() throws Exception {
+        final StripedCounters counters = new StripedCounters(3);
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (final InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < 10000; ++j) {
+                        counters.increment(1);
+                        counters.add(2, 2);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(counters.get(0), is(0L));
+        assertThat(counters.get(1), is(80000L));
+        assertThat(counters.get()[2], is(160000L));
+    }
+
+    @Test
+    public void testHistogram() throws Exception {
+        final Histogram histogram = new Histogram();
+        assertThat(histogram.snapshot().getPercentile(99), is(0L));
+
+        for (int i = 0; i < 90; ++i) {
+            histogram.record(100);
+        }
+        for (int i = 0; i < 10; ++i) {
+            histogram.record(5000);
+        }
+        histogram.record(-1);
+
+        final HistogramSnapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount(), is(101L));
+        assertThat(snapshot.getTotal(), is(59000L));
+        assertThat(snapshot.getBucketCount(0), is(1L));
+        assertThat(snapshot.getPercentile(50), is(128L));
+        assertThat(snapshot.getPercentile(95), is(8192L));
+
+        histogram.record(1000);
+        final HistogramSnapshot delta = histogram.snapshot().since(snapshot);
+        assertThat(delta.getCount(), is(1L));
+        assertThat(delta.getMean(), is(1000L));
+        assertThat(delta.getPercentile(100), is(1024L));
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        final PipelineMetrics metrics = PipelineMetrics.getInstance();
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(PipelineMetrics.OBJECT_NAME);
+        metrics.registerMBean();
+        metrics.registerMBean();
+        try {
+            metrics.streamStarted();
+            final long open = (Long) server.getAttribute(name, "OpenStreams");
+            assertThat(open, is(metrics.getOpenStreams()));
+            metrics.streamEnded();
+
+            final TabularData frames = (TabularData) server.getAttribute(name, "FrameCounts");
+            assertThat(frames.size(), is(Protocol.values().length));
+        } finally {
+            metrics.unregisterMBean();
+        }
+        assertThat(server.isRegistered(name), is(false));
+    }
+
+    private static long size(final String resource) throws Exception {
+        final InputStream in = YajTestBase.class.getResourceAsStream(resource);
+        long size = 0;
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            size += read;
+        }
+        in.close();
+        return size;
+    }
+
+}
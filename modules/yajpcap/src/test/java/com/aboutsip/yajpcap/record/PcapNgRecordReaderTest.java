@@ -0,0 +1,264 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.record;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aboutsip.yajpcap.FrameHandler;
+import com.aboutsip.yajpcap.Pcap;
+import com.aboutsip.yajpcap.RawData;
+import com.aboutsip.yajpcap.YajTestBase;
+import com.aboutsip.yajpcap.cursor.CursorHandler;
+import com.aboutsip.yajpcap.cursor.PacketCursor;
+import com.aboutsip.yajpcap.filter.Filters;
+import com.aboutsip.yajpcap.frame.Frame;
+import com.aboutsip.yajpcap.frame.PcapGlobalHeader;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class PcapNgRecordReaderTest extends YajTestBase {
+
+    private static final ByteOrder LE = ByteOrder.LITTLE_ENDIAN;
+
+    private static final ByteOrder BE = ByteOrder.BIG_ENDIAN;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    /**
+     * Two interfaces with different link types and timestamp resolutions.
+     */
+    @Test
+    public void testMultipleInterfaces() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(sectionHeader(LE));
+        out.write(interfaceDescription(LE, PcapGlobalHeader.DLT_EN10MB, option(LE, 2, "eth0".getBytes("UTF-8")),
+                option(LE, 9, new byte[] { 9 })));
+        out.write(interfaceDescription(LE, PcapGlobalHeader.DLT_LINUX_SLL));
+        out.write(block(LE, 4, new byte[8])); // name resolution block, should be skipped
+        out.write(enhancedPacket(LE, 0, 1234567890123456789L, RawData.rawEthernetFrame));
+        out.write(enhancedPacket(LE, 1, 1234567890654321L, RawData.rawSLLFrame));
+        out.write(interfaceStatistics(LE, 0, option(LE, 4, longValue(LE, 10)), option(LE, 5, longValue(LE, 2))));
+
+        final Pcap pcap = Pcap.openStream(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(pcap.isPcapNg(), is(true));
+        final List<Frame> frames = loop(pcap);
+
+        assertThat(frames.size(), is(2));
+        assertThat(frames.get(0).getNextFrame().getProtocol(), is(Protocol.ETHERNET_II));
+        assertThat(frames.get(0).getArrivalTime(), is(1234567890123456L));
+        assertThat(frames.get(1).getNextFrame().getProtocol(), is(Protocol.SLL));
+        assertThat(frames.get(1).getArrivalTime(), is(1234567890654321L));
+        for (final Frame frame : frames) {
+            assertThat(frame.hasProtocol(Protocol.SIP), is(true));
+        }
+
+        final List<PcapNgInterface> interfaces = pcap.getInterfaces();
+        assertThat(interfaces.size(), is(2));
+        assertThat(interfaces.get(0).getName(), is("eth0"));
+        assertThat(interfaces.get(0).getTimestampUnits(), is(1000000000L));
+        assertThat(interfaces.get(0).getReceivedCount(), is(10L));
+        assertThat(interfaces.get(0).getDroppedCount(), is(2L));
+        assertThat(interfaces.get(1).getTimestampUnits(), is(1000000L));
+        assertThat(interfaces.get(1).getReceivedCount(), is(-1L));
+    }
+
+    /**
+     * Big endian with a binary timestamp resolution and an offset, and a
+     * simple packet block, which doesn't have a timestamp.
+     */
+    @Test
+    public void testBigEndian() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(sectionHeader(BE));
+        out.write(interfaceDescription(BE, PcapGlobalHeader.DLT_EN10MB, option(BE, 9, new byte[] { (byte) 0x8A }),
+                option(BE, 14, longValue(BE, 100))));
+        out.write(enhancedPacket(BE, 0, (1024 * 5) + 512, RawData.rawEthernetFrame));
+        out.write(simplePacket(BE, RawData.rawEthernetFrame));
+
+        final List<Frame> frames = loop(Pcap.openStream(new ByteArrayInputStream(out.toByteArray())));
+        assertThat(frames.size(), is(2));
+        assertThat(frames.get(0).getArrivalTime(), is(105500000L));
+        assertThat(frames.get(1).getArrivalTime(), is(0L));
+        assertThat(frames.get(1).hasProtocol(Protocol.SIP), is(true));
+    }
+
+    /**
+     * Every section has its own byte order and its own interfaces.
+     */
+    @Test
+    public void testMultipleSections() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(sectionHeader(LE));
+        out.write(interfaceDescription(LE, PcapGlobalHeader.DLT_EN10MB));
+        out.write(enhancedPacket(LE, 0, 1000000L, RawData.rawEthernetFrame));
+        out.write(sectionHeader(BE));
+        out.write(interfaceDescription(BE, PcapGlobalHeader.DLT_LINUX_SLL));
+        out.write(enhancedPacket(BE, 0, 2000000L, RawData.rawSLLFrame));
+
+        final Pcap pcap = Pcap.openStream(new ByteArrayInputStream(out.toByteArray()));
+        final List<Frame> frames = loop(pcap);
+        assertThat(frames.size(), is(2));
+        assertThat(frames.get(0).getNextFrame().getProtocol(), is(Protocol.ETHERNET_II));
+        assertThat(frames.get(1).getNextFrame().getProtocol(), is(Protocol.SLL));
+        assertThat(frames.get(1).getArrivalTime(), is(2000000L));
+        assertThat(pcap.getInterfaces().size(), is(2));
+    }
+
+    /**
+     * A capture that was cut short ends at the last complete packet.
+     */
+    @Test
+    public void testTruncated() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(sectionHeader(LE));
+        out.write(interfaceDescription(LE, PcapGlobalHeader.DLT_EN10MB));
+        out.write(enhancedPacket(LE, 0, 1000000L, RawData.rawEthernetFrame));
+        final byte[] last = enhancedPacket(LE, 0, 2000000L, RawData.rawEthernetFrame);
+        out.write(last, 0, last.length / 2);
+
+        final List<Frame> frames = loop(Pcap.openStream(new ByteArrayInputStream(out.toByteArray())));
+        assertThat(frames.size(), is(1));
+    }
+
+    /**
+     * The filters and the flyweight mode work on the records so they should
+     * work for pcapng as well.
+     */
+    @Test
+    public void testCursor() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(sectionHeader(LE));
+        out.write(interfaceDescription(LE, PcapGlobalHeader.DLT_EN10MB));
+        out.write(interfaceDescription(LE, PcapGlobalHeader.DLT_LINUX_SLL));
+        out.write(enhancedPacket(LE, 0, 1000000L, RawData.rawEthernetFrame));
+        out.write(enhancedPacket(LE, 1, 2000000L, RawData.rawSLLFrame));
+        out.write(enhancedPacket(LE, 0, 3000000L, RawData.tcpSyn));
+
+        final int[] count = new int[1];
+        final Pcap pcap = Pcap.openStream(new ByteArrayInputStream(out.toByteArray()));
+        pcap.loopCursor(Filters.compile("udp"), new CursorHandler() {
+            @Override
+            public void nextPacket(final PacketCursor packet) {
+                assertThat(packet.hasUDP(), is(true));
+                ++count[0];
+            }
+        });
+        assertThat(count[0], is(2));
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotPcapNg() throws Exception {
+        new PcapNgRecordReader(YajTestBase.class.getResourceAsStream("sipp.pcap"));
+    }
+
+    private static List<Frame> loop(final Pcap pcap) throws IOException {
+        final List<Frame> frames = new ArrayList<Frame>();
+        pcap.loop(new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                frames.add(frame);
+            }
+        });
+        pcap.close();
+        return frames;
+    }
+
+    private static byte[] sectionHeader(final ByteOrder order) {
+        final ByteBuffer body = ByteBuffer.allocate(16).order(order);
+        body.putInt(0x1A2B3C4D).putShort((short) 1).putShort((short) 0).putLong(-1);
+        return block(order, PcapNgRecordReader.SECTION_HEADER_BLOCK, body.array());
+    }
+
+    private static byte[] interfaceDescription(final ByteOrder order, final int linkType, final byte[]... options) {
+        final ByteBuffer body = ByteBuffer.allocate(8).order(order);
+        body.putShort((short) linkType).putShort((short) 0).putInt(65535);
+        return block(order, PcapNgRecordReader.INTERFACE_DESCRIPTION_BLOCK, concat(body.array(), options));
+    }
+
+    private static byte[] interfaceStatistics(final ByteOrder order, final int id, final byte[]... options) {
+        final ByteBuffer body = ByteBuffer.allocate(12).order(order);
+        body.putInt(id).putInt(0).putInt(0);
+        return block(order, PcapNgRecordReader.INTERFACE_STATISTICS_BLOCK, concat(body.array(), options));
+    }
+
+    private static byte[] enhancedPacket(final ByteOrder order, final int id, final long timestamp,
+            final byte[] packet) {
+        final ByteBuffer body = ByteBuffer.allocate(20 + ((packet.length + 3) & ~3)).order(order);
+        body.putInt(id).putInt((int) (timestamp >>> 32)).putInt((int) timestamp);
+        body.putInt(packet.length).putInt(packet.length).put(packet);
+        return block(order, PcapNgRecordReader.ENHANCED_PACKET_BLOCK, body.array());
+    }
+
+    private static byte[] simplePacket(final ByteOrder order, final byte[] packet) {
+        final ByteBuffer body = ByteBuffer.allocate(4 + packet.length).order(order);
+        body.putInt(packet.length).put(packet);
+        return block(order, PcapNgRecordReader.SIMPLE_PACKET_BLOCK, body.array());
+    }
+
+    /**
+     * An option, padded to 32 bits.
+     */
+    private static byte[] option(final ByteOrder order, final int code, final byte[] value) {
+        final ByteBuffer option = ByteBuffer.allocate(4 + ((value.length + 3) & ~3)).order(order);
+        option.putShort((short) code).putShort((short) value.length).put(value);
+        return option.array();
+    }
+
+    private static byte[] longValue(final ByteOrder order, final long value) {
+        return ByteBuffer.allocate(8).order(order).putLong(value).array();
+    }
+
+    private static byte[] concat(final byte[] body, final byte[]... options) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(body, 0, body.length);
+        for (final byte[] option : options) {
+            out.write(option, 0, option.length);
+        }
+        if (options.length > 0) {
+            out.write(new byte[4], 0, 4);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] block(final ByteOrder order, final int type, final byte[] body) {
+        final int length = 12 + ((body.length + 3) & ~3);
+        final ByteBuffer block = ByteBuffer.allocate(length).order(order);
+        block.putInt(type).putInt(length).put(body);
+        block.putInt(length - 4, length);
+        return block.array();
+    }
+
+}
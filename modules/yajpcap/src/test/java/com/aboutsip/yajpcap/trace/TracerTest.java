@@ -0,0 +1,160 @@
+/**
+ *
+ */
+package com.aboutsip.yajpcap.trace;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.aboutsip.yajpcap.FrameHandler;
+import com.aboutsip.yajpcap.Pcap;
+import com.aboutsip.yajpcap.YajTestBase;
+import com.aboutsip.yajpcap.frame.Frame;
+import com.aboutsip.yajpcap.frame.SipFrame;
+import com.aboutsip.yajpcap.protocol.Protocol;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class TracerTest extends YajTestBase {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        Tracer.removeListener();
+        super.tearDown();
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        assertThat(Tracer.isEnabled(), is(false));
+        assertThat(Tracer.start(TraceEvent.Type.FRAME), is(Tracer.NOT_TRACED));
+    }
+
+    /**
+     * Trace everything while looping over sipp.pcap.
+     */
+    @Test
+    public void testTraceAll() throws Exception {
+        final Collector collector = new Collector();
+        Tracer.setListener(collector, 1);
+        loop();
+        Tracer.removeListener();
+
+        final List<TraceEvent> loops = collector.get(TraceEvent.Type.LOOP);
+        assertThat(loops.size(), is(1));
+        assertThat(loops.get(0).getCount(), is(30L));
+        assertThat(loops.get(0).getName() == null, is(true));
+
+        // every record is framed all the way up to SIP
+        int sip = 0;
+        for (final TraceEvent event : collector.get(TraceEvent.Type.FRAME)) {
+            if (event.getName().equals(Protocol.SIP.getName())) {
+                ++sip;
+                assertThat(event.getCount() > 0, is(true));
+            }
+            assertThat(event.getDuration() >= 0, is(true));
+        }
+        assertThat(sip, is(30));
+
+        final List<TraceEvent> headers = collector.get(TraceEvent.Type.SIP_HEADER);
+        assertThat(headers.size(), is(30));
+        assertThat(headers.get(0).getName(), is("From"));
+        assertThat(headers.get(0).getCount() > 0, is(true));
+    }
+
+    @Test
+    public void testSampling() throws Exception {
+        final Collector all = new Collector();
+        Tracer.setListener(all, 1);
+        loop();
+
+        final Collector sampled = new Collector();
+        Tracer.setListener(sampled, 10);
+        loop();
+
+        final int frames = all.get(TraceEvent.Type.FRAME).size();
+        final int sampledFrames = sampled.get(TraceEvent.Type.FRAME).size();
+        assertThat(Math.abs(sampledFrames - (frames / 10)) <= 1, is(true));
+        assertThat(sampled.get(TraceEvent.Type.SIP_HEADER).size(), is(3));
+
+        // the loop batches are never sampled
+        assertThat(sampled.get(TraceEvent.Type.LOOP).size(), is(1));
+    }
+
+    @Test
+    public void testStreamEvents() throws Exception {
+        final Collector collector = new Collector();
+        Tracer.setListener(collector, 100);
+        Tracer.event(TraceEvent.Type.STREAM_START, "abc");
+        Tracer.event(TraceEvent.Type.STREAM_END, "abc");
+        assertThat(collector.events.size(), is(2));
+        assertThat(collector.events.get(0).getName(), is("abc"));
+        assertThat(collector.events.get(1).getType(), is(TraceEvent.Type.STREAM_END));
+    }
+
+    @Test
+    public void testBadArguments() throws Exception {
+        try {
+            Tracer.setListener(null, 1);
+            fail("Expected an IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            Tracer.setListener(new Collector(), 0);
+            fail("Expected an IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+        assertThat(Tracer.isEnabled(), is(false));
+    }
+
+    /**
+     * Loop over sipp.pcap and look up the From header of every message.
+     */
+    private static void loop() throws Exception {
+        Pcap.openStream(YajTestBase.class.getResourceAsStream("sipp.pcap")).loop(new FrameHandler() {
+            @Override
+            public void nextFrame(final Frame frame) {
+                try {
+                    ((SipFrame) frame.getFrame(Protocol.SIP)).parse().getFromHeader();
+                } catch (final Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+    }
+
+    private static class Collector implements TraceListener {
+
+        private final List<TraceEvent> events = new ArrayList<TraceEvent>();
+
+        @Override
+        public void traced(final TraceEvent event) {
+            this.events.add(event);
+        }
+
+        private List<TraceEvent> get(final TraceEvent.Type type) {
+            final List<TraceEvent> events = new ArrayList<TraceEvent>();
+            for (final TraceEvent event : this.events) {
+                if (event.getType() == type) {
+                    events.add(event);
+                }
+            }
+            return events;
+        }
+    }
+
+}